@@ -0,0 +1,72 @@
+package org.sqlite.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteConnection;
+
+/** Backs up an in-memory database to a file and restores it. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BackupBenchmark {
+    /** size of the database */
+    @Param({"1", "16"})
+    int megabytes;
+
+    private SQLiteConnection conn;
+    private File file;
+
+    @Setup
+    public void setUp() throws IOException, SQLException {
+        conn = (SQLiteConnection) new SQLiteConfig().createConnection("jdbc:sqlite:");
+        try (Statement stat = conn.createStatement()) {
+            stat.executeUpdate("create table t (b blob)");
+            stat.executeUpdate(
+                    "with recursive n(i) as (select 1 union all select i + 1 from n where i < "
+                            + megabytes * 256
+                            + ") insert into t select randomblob(4000) from n");
+        }
+        file = File.createTempFile("bench-backup", ".db");
+        conn.getDatabase().backup("main", file.getAbsolutePath(), null);
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        conn.close();
+        file.delete();
+    }
+
+    @Benchmark
+    public int backup() throws SQLException {
+        return conn.getDatabase().backup("main", file.getAbsolutePath(), null);
+    }
+
+    @Benchmark
+    public int restore() throws SQLException {
+        try (Connection target = new SQLiteConfig().createConnection("jdbc:sqlite:")) {
+            return ((SQLiteConnection) target)
+                    .getDatabase()
+                    .restore("main", file.getAbsolutePath(), null);
+        }
+    }
+}
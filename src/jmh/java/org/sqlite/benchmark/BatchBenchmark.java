@@ -0,0 +1,73 @@
+package org.sqlite.benchmark;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sqlite.SQLiteConfig;
+
+/** Inserts rows with {@link PreparedStatement#executeBatch()}, one transaction per batch. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchBenchmark {
+    @Param({"10", "1000"})
+    int batchSize;
+
+    private Connection conn;
+    private PreparedStatement insert;
+
+    @Setup
+    public void setUp() throws SQLException {
+        conn = new SQLiteConfig().createConnection("jdbc:sqlite:");
+        try (Statement stat = conn.createStatement()) {
+            stat.executeUpdate("create table t (id integer, s text, d real)");
+        }
+        conn.setAutoCommit(false);
+        insert = conn.prepareStatement("insert into t values (?, ?, ?)");
+    }
+
+    @TearDown(Level.Iteration)
+    public void clear() throws SQLException {
+        try (Statement stat = conn.createStatement()) {
+            stat.executeUpdate("delete from t");
+        }
+        conn.commit();
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        insert.close();
+        conn.close();
+    }
+
+    @Benchmark
+    public int[] executeBatch() throws SQLException {
+        for (int i = 0; i < batchSize; i++) {
+            insert.setLong(1, i);
+            insert.setString(2, "row");
+            insert.setDouble(3, i * 0.5);
+            insert.addBatch();
+        }
+        int[] counts = insert.executeBatch();
+        conn.commit();
+        return counts;
+    }
+}
@@ -0,0 +1,68 @@
+package org.sqlite.benchmark;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sqlite.Function;
+import org.sqlite.SQLiteConfig;
+
+/** Calls a scalar {@link Function} written in Java, per call. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FunctionBenchmark {
+    static final int CALLS = 10_000;
+
+    private Connection conn;
+    private PreparedStatement select;
+
+    @Setup
+    public void setUp() throws SQLException {
+        conn = new SQLiteConfig().createConnection("jdbc:sqlite:");
+        Function.create(
+                conn,
+                "inc",
+                new Function() {
+                    @Override
+                    protected void xFunc() throws SQLException {
+                        result(value_long(0) + 1);
+                    }
+                });
+        select =
+                conn.prepareStatement(
+                        "with recursive n(i) as (select 1 union all select i + 1 from n where i < "
+                                + CALLS
+                                + ") select sum(inc(i)) from n");
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        select.close();
+        conn.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CALLS)
+    public long scalarFunction() throws SQLException {
+        try (ResultSet rs = select.executeQuery()) {
+            return rs.getLong(1);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package org.sqlite.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.mc.SQLiteMCChacha20Config;
+import org.sqlite.mc.SQLiteMCSqlCipherConfig;
+
+/**
+ * Opens a connection to a database file and reads from it, in plain text and with the default key
+ * derivation of some ciphers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OpenBenchmark {
+    @Param({"none", "chacha20", "sqlcipher"})
+    String cipher;
+
+    private File file;
+    private String url;
+    private SQLiteConfig config;
+
+    @Setup
+    public void setUp() throws IOException, SQLException {
+        file = File.createTempFile("bench-open", ".db");
+        url = "jdbc:sqlite:file:" + file.getAbsolutePath();
+        switch (cipher) {
+            case "chacha20":
+                config = SQLiteMCChacha20Config.getDefault().withKey("bench").build();
+                break;
+            case "sqlcipher":
+                config = SQLiteMCSqlCipherConfig.getDefault().withKey("bench").build();
+                break;
+            default:
+                config = new SQLiteConfig();
+        }
+        try (Connection conn = config.createConnection(url);
+                Statement stat = conn.createStatement()) {
+            stat.executeUpdate("create table t (id integer primary key, s text)");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public int open() throws SQLException {
+        try (Connection conn = config.createConnection(url);
+                Statement stat = conn.createStatement()) {
+            return stat.executeQuery("select count(*) from t").getInt(1);
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package org.sqlite;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import org.sqlite.core.Codes;
+
+/**
+ * Provides an interface for creating table-valued functions that run Java code over batches of
+ * rows instead of one row at a time.
+ *
+ * <p>A batch function takes a query as its only argument. The native library runs the query,
+ * copies the values of a batch of its rows into one array per column, and calls {@link
+ * #xBatch(Batch)} once for the whole batch, which fills one array per output column. The
+ * function returns the columns of the query followed by the output columns, so the loops over
+ * the arrays run without any call across JNI, and can be optimized by the JIT. E.g.
+ *
+ * <pre>
+ *      BatchFunction.create(conn, "distance", new BatchFunction(
+ *              new String[] {"id", "lat", "lon"}, new String[] {"km"}) {
+ *          protected void xBatch(Batch batch) {
+ *              double[] lat = batch.getDoubles(1);
+ *              double[] lon = batch.getDoubles(2);
+ *              double[] km = batch.getOutput(0);
+ *              for (int i = 0; i &lt; batch.size(); i++) {
+ *                  km[i] = haversine(lat[i], lon[i], LAT, LON);
+ *              }
+ *          }
+ *      });
+ *
+ *      conn.createStatement().executeQuery(
+ *              "select id, km from distance('select id, lat, lon from points') where km &lt; 10");
+ * </pre>
+ *
+ * <p>The query runs on the connection of the statement using the function; it must return as
+ * many columns as the function has input columns. The function is called on the thread stepping
+ * the statement. A batch function cannot be used in views, triggers or the schema of the
+ * database, since its argument is arbitrary SQL.
+ *
+ * @see <a href="https://www.sqlite.org/vtab.html">https://www.sqlite.org/vtab.html</a>
+ */
+public abstract class BatchFunction {
+    /** Number of rows of a batch, unless the function says otherwise. */
+    public static final int DEFAULT_BATCH_SIZE = 1024;
+
+    /** Name of the hidden column of the query, the argument of the function. */
+    private static final String QUERY = "query";
+
+    final String[] inputs;
+    final String[] outputs;
+    final int batchSize;
+
+    /**
+     * @param inputs Names of the columns of the query.
+     * @param outputs Names of the columns computed by the function.
+     */
+    protected BatchFunction(String[] inputs, String[] outputs) {
+        this(inputs, outputs, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param inputs Names of the columns of the query.
+     * @param outputs Names of the columns computed by the function.
+     * @param batchSize Maximum number of rows passed to {@link #xBatch(Batch)} at once.
+     */
+    protected BatchFunction(String[] inputs, String[] outputs, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be at least 1: " + batchSize);
+        }
+        Set<String> names = new HashSet<>();
+        names.add(QUERY);
+        for (String name : concat(inputs, outputs)) {
+            if (!names.add(name.toLowerCase(Locale.ROOT))) {
+                throw new IllegalArgumentException("duplicate or reserved column name: " + name);
+            }
+        }
+        this.inputs = inputs.clone();
+        this.outputs = outputs.clone();
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Registers a batch function with the connection, as an eponymous virtual table.
+     *
+     * @param conn The connection.
+     * @param name The name of the function.
+     * @param f The function to register.
+     * @throws SQLException
+     */
+    public static void create(Connection conn, String name, BatchFunction f) throws SQLException {
+        if (!(conn instanceof SQLiteConnection)) {
+            throw new SQLException("connection must be to an SQLite db");
+        }
+        if (conn.isClosed()) {
+            throw new SQLException("connection closed");
+        }
+        if (((SQLiteConnection) conn).getDatabase().create_batch_function(name, f)
+                != Codes.SQLITE_OK) {
+            throw new SQLException("error creating batch function");
+        }
+    }
+
+    /**
+     * Removes a batch function from the given connection.
+     *
+     * @param conn The connection to remove the function from.
+     * @param name The name of the function.
+     * @throws SQLException
+     */
+    public static void destroy(Connection conn, String name) throws SQLException {
+        if (!(conn instanceof SQLiteConnection)) {
+            throw new SQLException("connection must be to an SQLite db");
+        }
+        ((SQLiteConnection) conn).getDatabase().destroy_batch_function(name);
+    }
+
+    /**
+     * Called by SQLite for each batch of rows of the query. Should read the input columns of the
+     * batch and fill its output columns; throw an SQLException to report an error.
+     *
+     * @param batch The rows; it is reused for the next batches.
+     * @throws SQLException
+     */
+    protected abstract void xBatch(Batch batch) throws SQLException;
+
+    /** @return The statement declaring the columns of the virtual table. */
+    public String getSchema() {
+        StringBuilder sql = new StringBuilder("CREATE TABLE x(");
+        for (String input : inputs) {
+            sql.append(quote(input)).append(", ");
+        }
+        for (String output : outputs) {
+            sql.append(quote(output)).append(" REAL, ");
+        }
+        return sql.append(QUERY).append(" HIDDEN)").toString();
+    }
+
+    /** @return Number of columns of the query. */
+    public int getInputCount() {
+        return inputs.length;
+    }
+
+    /** @return Number of columns computed by the function. */
+    public int getOutputCount() {
+        return outputs.length;
+    }
+
+    /** @return Maximum number of rows of a batch. */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /** Called from native code to create the batch of a cursor. */
+    final Batch newBatch() {
+        return new Batch(inputs.length, outputs.length, batchSize);
+    }
+
+    /** Called from native code once the values of a batch are copied. */
+    final void xCallBatch(Batch batch, int size) throws SQLException {
+        batch.size = size;
+        for (double[] output : batch.outputs) {
+            Arrays.fill(output, 0, size, Double.NaN);
+        }
+        xBatch(batch);
+    }
+
+    private static String quote(String name) {
+        return '"' + name.replace("\"", "\"\"") + '"';
+    }
+
+    private static String[] concat(String[] a, String[] b) {
+        String[] all = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, all, a.length, b.length);
+        return all;
+    }
+
+    /**
+     * The values of a batch of rows, one array per column. The arrays are as long as the maximum
+     * size of a batch; only the first {@link #size()} values are part of the batch.
+     */
+    public static final class Batch {
+        final double[][] doubles;
+        final long[][] longs;
+        final byte[][] types;
+        final double[][] outputs;
+        int size;
+
+        Batch(int inputs, int outputs, int capacity) {
+            this.doubles = new double[inputs][capacity];
+            this.longs = new long[inputs][capacity];
+            this.types = new byte[inputs][capacity];
+            this.outputs = new double[outputs][capacity];
+        }
+
+        /** @return Number of rows of the batch. */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @param input Index of the column of the query.
+         * @return The values of the column as floating point numbers, converted as by
+         *     sqlite3_column_double(): NULL is 0.
+         */
+        public double[] getDoubles(int input) {
+            return doubles[input];
+        }
+
+        /**
+         * @param input Index of the column of the query.
+         * @return The values of the column as integers, converted as by sqlite3_column_int64():
+         *     NULL is 0.
+         */
+        public long[] getLongs(int input) {
+            return longs[input];
+        }
+
+        /**
+         * @param input Index of the column of the query.
+         * @param row Index of the row in the batch.
+         * @return The type of the value, one of the SQLITE_INTEGER, SQLITE_FLOAT, SQLITE_TEXT,
+         *     SQLITE_BLOB and SQLITE_NULL constants of {@link Codes}.
+         */
+        public int getType(int input, int row) {
+            return types[input][row];
+        }
+
+        /**
+         * @param input Index of the column of the query.
+         * @param row Index of the row in the batch.
+         * @return True if the value is NULL.
+         */
+        public boolean isNull(int input, int row) {
+            return types[input][row] == Codes.SQLITE_NULL;
+        }
+
+        /**
+         * @param output Index of the column computed by the function.
+         * @return The array to store the values of the column in. It is filled with NaN, which
+         *     stands for NULL, before each batch.
+         */
+        public double[] getOutput(int output) {
+            return outputs[output];
+        }
+    }
+}
@@ -15,8 +15,12 @@
  */
 package org.sqlite;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.Arrays;
 import org.sqlite.core.Codes;
 import org.sqlite.core.DB;
 
@@ -300,6 +304,470 @@ public abstract class Function {
         }
     }
 
+    /**
+     * Provides an interface for creating SQLite user-defined scalar functions that are called
+     * with a single call into Java per row. Before {@link #xPacked()} is called, the native
+     * library copies all the arguments into a buffer shared with this object, and it reads the
+     * result back from the buffer once the call returns. Numeric arguments and results do not
+     * cross JNI at all; text and blob ones are still converted to and from Java objects.
+     *
+     * <p>Arguments are read with {@link #getLong(int)}, {@link #getDouble(int)}, {@link
+     * #getText(int)} and the like, and the result is set with {@link #setResult(long)} and the
+     * like; the result is NULL if none is set. Errors are reported by throwing an SQLException.
+     * These methods may only be used while {@link #xPacked()} runs. The buffer is reused for
+     * each call, so an instance must not be registered on connections used concurrently.
+     *
+     * @see Function
+     */
+    public abstract static class Packed extends Function {
+        /** Maximum number of arguments of a packed function. */
+        public static final int MAX_ARGS = 127;
+
+        // the layout of the buffer, shared with NativeDB.c: a header holding the number of
+        // arguments, the type and the value of the result, then one slot per argument holding
+        // its type and value
+        private static final int SLOT_SIZE = 16;
+        private static final int RESULT_TYPE = 4;
+        private static final int VALUE = 8;
+
+        final ByteBuffer buffer =
+                ByteBuffer.allocateDirect((MAX_ARGS + 1) * SLOT_SIZE)
+                        .order(ByteOrder.nativeOrder());
+        final Object[] objects = new Object[MAX_ARGS];
+        Object result;
+        private int count = 0;
+
+        /** @see org.sqlite.Function#xFunc() */
+        protected final void xFunc() {}
+
+        /**
+         * Called by SQLite as a custom function, with the arguments unpacked.
+         *
+         * @throws SQLException to report an error to SQLite.
+         */
+        protected abstract void xPacked() throws SQLException;
+
+        /** Called from native code once the arguments are packed. */
+        final void xCallPacked() throws SQLException {
+            unpackArgs();
+            try {
+                xPacked();
+            } finally {
+                releaseArgs();
+            }
+        }
+
+        final void unpackArgs() {
+            count = buffer.getInt(0);
+        }
+
+        final void releaseArgs() {
+            for (int i = 0; i < count; i++) {
+                objects[i] = null;
+            }
+            count = 0;
+        }
+
+        /** @return Number of arguments passed to the function. */
+        protected final int getArgCount() {
+            return count;
+        }
+
+        /**
+         * @param arg Index of the argument.
+         * @return The type of the argument, one of the SQLITE_INTEGER, SQLITE_FLOAT, SQLITE_TEXT,
+         *     SQLITE_BLOB and SQLITE_NULL constants of {@link Codes}.
+         * @throws SQLException if there is no such argument.
+         */
+        protected final int getType(int arg) throws SQLException {
+            checkArg(arg);
+            return buffer.getInt((arg + 1) * SLOT_SIZE);
+        }
+
+        /**
+         * @param arg Index of the argument.
+         * @return True if the argument is NULL.
+         * @throws SQLException if there is no such argument.
+         */
+        protected final boolean isNull(int arg) throws SQLException {
+            return getType(arg) == Codes.SQLITE_NULL;
+        }
+
+        /**
+         * @param arg Index of the argument.
+         * @return The argument as an integer: a REAL is truncated, a TEXT or BLOB is parsed, and
+         *     NULL or a value that is not a number is 0.
+         * @throws SQLException if there is no such argument.
+         */
+        protected final long getLong(int arg) throws SQLException {
+            int offset = (arg + 1) * SLOT_SIZE;
+            switch (getType(arg)) {
+                case Codes.SQLITE_INTEGER:
+                    return buffer.getLong(offset + VALUE);
+                case Codes.SQLITE_FLOAT:
+                    return (long) buffer.getDouble(offset + VALUE);
+                case Codes.SQLITE_NULL:
+                    return 0;
+                default:
+                    String text = getText(arg).trim();
+                    try {
+                        return Long.parseLong(text);
+                    } catch (NumberFormatException e) {
+                        return (long) parseDouble(text);
+                    }
+            }
+        }
+
+        /**
+         * @param arg Index of the argument.
+         * @return The argument as an integer, see {@link #getLong(int)}, truncated to an int.
+         * @throws SQLException if there is no such argument.
+         */
+        protected final int getInt(int arg) throws SQLException {
+            return (int) getLong(arg);
+        }
+
+        /**
+         * @param arg Index of the argument.
+         * @return The argument as a floating point number: a TEXT or BLOB is parsed, and NULL or
+         *     a value that is not a number is 0.
+         * @throws SQLException if there is no such argument.
+         */
+        protected final double getDouble(int arg) throws SQLException {
+            int offset = (arg + 1) * SLOT_SIZE;
+            switch (getType(arg)) {
+                case Codes.SQLITE_INTEGER:
+                    return buffer.getLong(offset + VALUE);
+                case Codes.SQLITE_FLOAT:
+                    return buffer.getDouble(offset + VALUE);
+                case Codes.SQLITE_NULL:
+                    return 0;
+                default:
+                    return parseDouble(getText(arg).trim());
+            }
+        }
+
+        /**
+         * @param arg Index of the argument.
+         * @return The argument as text: a number is formatted and a BLOB is decoded as UTF-8.
+         *     NULL is null.
+         * @throws SQLException if there is no such argument.
+         */
+        protected final String getText(int arg) throws SQLException {
+            int offset = (arg + 1) * SLOT_SIZE;
+            switch (getType(arg)) {
+                case Codes.SQLITE_INTEGER:
+                    return Long.toString(buffer.getLong(offset + VALUE));
+                case Codes.SQLITE_FLOAT:
+                    return Double.toString(buffer.getDouble(offset + VALUE));
+                case Codes.SQLITE_TEXT:
+                    return (String) objects[arg];
+                case Codes.SQLITE_BLOB:
+                    return new String((byte[]) objects[arg], StandardCharsets.UTF_8);
+                default:
+                    return null;
+            }
+        }
+
+        /**
+         * @param arg Index of the argument.
+         * @return The argument as bytes: TEXT and numbers are encoded as UTF-8 text. NULL is null.
+         *     The array of a BLOB may be modified, it is not used once the call returns.
+         * @throws SQLException if there is no such argument.
+         */
+        protected final byte[] getBlob(int arg) throws SQLException {
+            if (getType(arg) == Codes.SQLITE_BLOB) {
+                return (byte[]) objects[arg];
+            }
+            String text = getText(arg);
+            return text == null ? null : text.getBytes(StandardCharsets.UTF_8);
+        }
+
+        /** Sets the result to NULL. */
+        protected final void setNullResult() {
+            result = null;
+            buffer.putInt(RESULT_TYPE, Codes.SQLITE_NULL);
+        }
+
+        /** @param value The result. */
+        protected final void setResult(long value) {
+            result = null;
+            buffer.putInt(RESULT_TYPE, Codes.SQLITE_INTEGER);
+            buffer.putLong(VALUE, value);
+        }
+
+        /** @param value The result. */
+        protected final void setResult(double value) {
+            result = null;
+            buffer.putInt(RESULT_TYPE, Codes.SQLITE_FLOAT);
+            buffer.putDouble(VALUE, value);
+        }
+
+        /** @param value The result, or null for NULL. */
+        protected final void setResult(String value) {
+            result = value;
+            buffer.putInt(RESULT_TYPE, value == null ? Codes.SQLITE_NULL : Codes.SQLITE_TEXT);
+        }
+
+        /** @param value The result, or null for NULL. It is copied once the call returns. */
+        protected final void setResult(byte[] value) {
+            result = value;
+            buffer.putInt(RESULT_TYPE, value == null ? Codes.SQLITE_NULL : Codes.SQLITE_BLOB);
+        }
+
+        private void checkArg(int arg) throws SQLException {
+            if (arg < 0 || arg >= count) {
+                throw new SQLException("arg " + arg + " out bounds [0," + count + ")");
+            }
+        }
+
+        private static double parseDouble(String text) {
+            try {
+                return Double.parseDouble(text);
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Provides an interface for creating SQLite user-defined aggregate functions whose state is
+     * held by SQLite rather than by a clone of the function per group. The state of each group is
+     * made of the number of long and double slots given to the constructor, initialized by {@link
+     * #xInit()}, and of an optional object. The native library copies the state of the group and
+     * the packed arguments into buffers shared with this object before each call, and the state
+     * back once it returns, so a group costs no Java object nor JNI reference unless it uses
+     * {@link #setObjectState(Object)}.
+     *
+     * <p>Arguments are read as for {@link Packed}; the result is set in {@link #xFinal()}. E.g.
+     *
+     * <pre>
+     *      Function.create(conn, "mean", new Function.PackedAggregate(1, 1) {
+     *          protected void xStep() throws SQLException {
+     *              if (!isNull(0)) {
+     *                  setLongState(0, getLongState(0) + 1);
+     *                  setDoubleState(0, getDoubleState(0) + getDouble(0));
+     *              }
+     *          }
+     *          protected void xFinal() {
+     *              long count = getLongState(0);
+     *              if (count &gt; 0) setResult(getDoubleState(0) / count);
+     *          }
+     *      });
+     * </pre>
+     *
+     * @see Packed
+     */
+    public abstract static class PackedAggregate extends Packed {
+        static final int STEP = 0;
+        static final int FINAL = 1;
+        static final int INVERSE = 2;
+        static final int VALUE = 3;
+
+        // the layout of the state of a group, shared with NativeDB.c: a header holding whether
+        // the state is initialized and the handle of its object, then the long slots and the
+        // double slots. SQLite zeroes the state of a new group.
+        private static final int INITIALIZED = 0;
+        private static final int OBJECT = 4;
+        private static final int HEADER_SIZE = 8;
+
+        private final int longSlots;
+        private final int doubleSlots;
+        final ByteBuffer state;
+        private Object[] objectStates = new Object[0];
+        private int[] freeHandles = new int[0];
+        private int freeCount = 0;
+
+        /**
+         * @param longSlots Number of long slots of the state of a group.
+         * @param doubleSlots Number of double slots of the state of a group.
+         */
+        protected PackedAggregate(int longSlots, int doubleSlots) {
+            if (longSlots < 0 || doubleSlots < 0) {
+                throw new IllegalArgumentException("negative number of slots");
+            }
+            this.longSlots = longSlots;
+            this.doubleSlots = doubleSlots;
+            this.state =
+                    ByteBuffer.allocateDirect(HEADER_SIZE + 8 * (longSlots + doubleSlots))
+                            .order(ByteOrder.nativeOrder());
+        }
+
+        /** @see org.sqlite.Function.Packed#xPacked() */
+        protected final void xPacked() {}
+
+        /**
+         * Called before the first call for a group, to set the initial values of its state. The
+         * slots are 0 and the object state null unless it sets them.
+         *
+         * @throws SQLException to report an error to SQLite.
+         */
+        protected void xInit() throws SQLException {}
+
+        /**
+         * Called for each row of a group, with the arguments unpacked.
+         *
+         * @throws SQLException to report an error to SQLite.
+         */
+        protected abstract void xStep() throws SQLException;
+
+        /**
+         * Called once the rows of a group are stepped, to set the result. The object state of the
+         * group is released once it returns.
+         *
+         * @throws SQLException to report an error to SQLite.
+         */
+        protected abstract void xFinal() throws SQLException;
+
+        /** Called from native code once the state and the arguments are copied. */
+        final void xCallAggregate(int op) throws SQLException {
+            unpackArgs();
+            try {
+                if (state.getInt(INITIALIZED) == 0) {
+                    state.putInt(INITIALIZED, 1);
+                    xInit();
+                }
+                switch (op) {
+                    case STEP:
+                        xStep();
+                        break;
+                    case FINAL:
+                        xFinal();
+                        break;
+                    case INVERSE:
+                        ((PackedWindow) this).xInverse();
+                        break;
+                    default:
+                        ((PackedWindow) this).xValue();
+                }
+            } finally {
+                if (op == FINAL) {
+                    releaseObjectState();
+                }
+                releaseArgs();
+            }
+        }
+
+        /**
+         * @param slot Index of the long slot.
+         * @return Value of the slot for the current group.
+         */
+        protected final long getLongState(int slot) {
+            return state.getLong(offset(slot, longSlots, 0));
+        }
+
+        /**
+         * @param slot Index of the long slot.
+         * @param value New value of the slot for the current group.
+         */
+        protected final void setLongState(int slot, long value) {
+            state.putLong(offset(slot, longSlots, 0), value);
+        }
+
+        /**
+         * @param slot Index of the double slot.
+         * @return Value of the slot for the current group.
+         */
+        protected final double getDoubleState(int slot) {
+            return state.getDouble(offset(slot, doubleSlots, longSlots));
+        }
+
+        /**
+         * @param slot Index of the double slot.
+         * @param value New value of the slot for the current group.
+         */
+        protected final void setDoubleState(int slot, double value) {
+            state.putDouble(offset(slot, doubleSlots, longSlots), value);
+        }
+
+        /** @return The object state of the current group, or null if none was set. */
+        protected final Object getObjectState() {
+            int handle = state.getInt(OBJECT);
+            return handle == 0 ? null : objectStates[handle - 1];
+        }
+
+        /**
+         * Sets the object state of the current group, for states that do not fit in slots. It is
+         * kept by this function until the group is finalized.
+         *
+         * @param value The state.
+         */
+        protected final void setObjectState(Object value) {
+            int handle = state.getInt(OBJECT);
+            if (handle == 0) {
+                if (value == null) {
+                    return;
+                }
+                handle = newHandle();
+                state.putInt(OBJECT, handle);
+            }
+            objectStates[handle - 1] = value;
+        }
+
+        private int newHandle() {
+            if (freeCount > 0) {
+                return freeHandles[--freeCount];
+            }
+            int size = objectStates.length;
+            objectStates = Arrays.copyOf(objectStates, Math.max(16, size * 2));
+            freeHandles = new int[objectStates.length];
+            // keep the lowest handles first
+            for (int handle = objectStates.length; handle > size + 1; handle--) {
+                freeHandles[freeCount++] = handle;
+            }
+            return size + 1;
+        }
+
+        private void releaseObjectState() {
+            int handle = state.getInt(OBJECT);
+            if (handle != 0) {
+                objectStates[handle - 1] = null;
+                freeHandles[freeCount++] = handle;
+                state.putInt(OBJECT, 0);
+            }
+        }
+
+        private static int offset(int slot, int slots, int before) {
+            if (slot < 0 || slot >= slots) {
+                throw new IndexOutOfBoundsException(
+                        "slot " + slot + " out bounds [0," + slots + ")");
+            }
+            return HEADER_SIZE + 8 * (before + slot);
+        }
+    }
+
+    /**
+     * Provides an interface for creating SQLite user-defined window functions whose state is held
+     * by SQLite, see {@link PackedAggregate}.
+     *
+     * @see PackedAggregate
+     */
+    public abstract static class PackedWindow extends PackedAggregate {
+        /**
+         * @param longSlots Number of long slots of the state of a group.
+         * @param doubleSlots Number of double slots of the state of a group.
+         */
+        protected PackedWindow(int longSlots, int doubleSlots) {
+            super(longSlots, doubleSlots);
+        }
+
+        /**
+         * Called for each row leaving the window, with the arguments unpacked.
+         *
+         * @throws SQLException to report an error to SQLite.
+         * @see <a
+         *     href="https://sqlite.org/windowfunctions.html#user_defined_aggregate_window_functions">https://sqlite.org/windowfunctions.html#user_defined_aggregate_window_functions</a>
+         */
+        protected abstract void xInverse() throws SQLException;
+
+        /**
+         * Called to set the result for the current window.
+         *
+         * @throws SQLException to report an error to SQLite.
+         */
+        protected abstract void xValue() throws SQLException;
+    }
+
     /**
      * Provides an interface for creating SQLite user-defined aggregate functions.
      *
@@ -0,0 +1,484 @@
+package org.sqlite;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Non-blocking access to a connection. Statements run one at a time on a thread dedicated to the
+ * connection, and their results are delivered through {@link CompletableFuture}s, or row by row to
+ * a {@link Subscriber} that requests them as it is able to process them.
+ *
+ * <p>Updates passed to {@link #executeUpdate(String, Object...)} are queued, and all updates that
+ * are waiting when the thread gets to them run in a single transaction, each in its own savepoint
+ * so that a failing update does not affect the others. An update may therefore be committed
+ * before statements that were submitted earlier but are still waiting. If the connection is
+ * already in a transaction, the updates join it instead.
+ *
+ * <p>With a commit window, updates wait up to that long for others to join their transaction, or
+ * until a maximum number of them are waiting. Many small updates from different threads then
+ * share one commit, and one sync of the database file, instead of each paying for its own.
+ *
+ * <p>Futures are completed and subscribers called on the thread of the connection; they should
+ * not block it, and hand work over to other executors with the {@code *Async} methods of {@link
+ * CompletableFuture} if needed. Closing this object does not close the connection.
+ */
+public class SQLiteAsyncConnection implements AutoCloseable {
+    /** maximum number of rows delivered before other statements get a turn */
+    private static final int ROWS_PER_TURN = 256;
+
+    private final SQLiteConnection conn;
+    private final long commitWindow;
+    private final int maxBatchSize;
+    private final ScheduledExecutorService executor;
+    private final ConcurrentLinkedQueue<Update> updates = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingUpdates = new AtomicInteger();
+    private final AtomicBoolean updatesScheduled = new AtomicBoolean(false);
+
+    private boolean ownsConnection = false;
+
+    /**
+     * Statement to run on the thread of the connection.
+     *
+     * @param <T> Type of the result.
+     */
+    @FunctionalInterface
+    public interface Task<T> {
+        T run(SQLiteConnection conn) throws SQLException;
+    }
+
+    /**
+     * Converts the current row of a result set.
+     *
+     * @param <T> Type of the rows.
+     */
+    @FunctionalInterface
+    public interface RowMapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+
+    /**
+     * Receiver of the rows of a query, with the same contract as {@code
+     * java.util.concurrent.Flow.Subscriber}.
+     *
+     * @param <T> Type of the rows.
+     */
+    public interface Subscriber<T> {
+        void onSubscribe(Subscription subscription);
+
+        void onNext(T item);
+
+        void onError(Throwable throwable);
+
+        void onComplete();
+    }
+
+    /**
+     * Demand of a {@link Subscriber}, with the same contract as {@code
+     * java.util.concurrent.Flow.Subscription}.
+     */
+    public interface Subscription {
+        void request(long n);
+
+        void cancel();
+    }
+
+    /**
+     * Creates a facade over a connection, with its own thread.
+     *
+     * @param conn The connection to run statements on.
+     */
+    public SQLiteAsyncConnection(SQLiteConnection conn) {
+        this(conn, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates a facade over a connection, with its own thread, that commits updates together.
+     *
+     * @param conn The connection to run statements on.
+     * @param commitWindowMillis Time an update waits for others to join its transaction, in
+     *     milliseconds; 0 to run updates as soon as possible.
+     * @param maxBatchSize Number of waiting updates that are run without waiting any longer.
+     */
+    public SQLiteAsyncConnection(SQLiteConnection conn, long commitWindowMillis, int maxBatchSize) {
+        if (commitWindowMillis < 0 || maxBatchSize < 1) {
+            throw new IllegalArgumentException(
+                    "invalid commit window: " + commitWindowMillis + " ms, " + maxBatchSize);
+        }
+        this.conn = conn;
+        this.commitWindow = commitWindowMillis;
+        this.maxBatchSize = maxBatchSize;
+        this.executor =
+                Executors.newSingleThreadScheduledExecutor(
+                        r -> {
+                            Thread thread = new Thread(r, "sqlite-async");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+    }
+
+    /** @return The connection statements run on. */
+    public SQLiteConnection getConnection() {
+        return conn;
+    }
+
+    /** @return Time an update waits for others to join its transaction, in milliseconds. */
+    public long getCommitWindow() {
+        return commitWindow;
+    }
+
+    /** @return Number of waiting updates that are run without waiting any longer. */
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /** Makes {@link #close()} close the connection too, once the submitted statements ran. */
+    void closeConnectionOnClose() {
+        ownsConnection = true;
+    }
+
+    /**
+     * Runs a task on the thread of the connection.
+     *
+     * @param task The task to run.
+     * @return The result of the task.
+     */
+    public <T> CompletableFuture<T> submit(Task<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        execute(
+                () -> {
+                    if (future.isDone()) {
+                        return; // cancelled
+                    }
+                    try {
+                        future.complete(task.run(conn));
+                    } catch (Throwable e) {
+                        future.completeExceptionally(e);
+                    }
+                },
+                future);
+        return future;
+    }
+
+    /**
+     * Runs a query and collects its rows.
+     *
+     * @param sql The query.
+     * @param mapper Converts each row.
+     * @param params Values of the parameters of the query.
+     * @return The rows of the result.
+     */
+    public <T> CompletableFuture<List<T>> executeQuery(
+            String sql, RowMapper<T> mapper, Object... params) {
+        return submit(
+                c -> {
+                    try (PreparedStatement stat = prepare(sql, params);
+                            ResultSet rs = stat.executeQuery()) {
+                        List<T> rows = new ArrayList<>();
+                        while (rs.next()) {
+                            rows.add(mapper.map(rs));
+                        }
+                        return rows;
+                    }
+                });
+    }
+
+    /**
+     * Runs a query and delivers its rows as they are requested. The statement stays open between
+     * requests, without keeping other statements from running.
+     *
+     * @param sql The query.
+     * @param mapper Converts each row.
+     * @param subscriber Receives the rows.
+     * @param params Values of the parameters of the query.
+     */
+    public <T> void stream(
+            String sql, RowMapper<T> mapper, Subscriber<? super T> subscriber, Object... params) {
+        RowStream<T> stream = new RowStream<>(sql, params, mapper, subscriber);
+        subscriber.onSubscribe(stream);
+    }
+
+    /**
+     * Queues an update to run in a transaction with the other waiting updates.
+     *
+     * @param sql The statement.
+     * @param params Values of the parameters of the statement.
+     * @return The number of rows changed by the statement.
+     */
+    public CompletableFuture<Long> executeUpdate(String sql, Object... params) {
+        Update update = new Update(sql, params);
+        updates.offer(update);
+        int pending = pendingUpdates.incrementAndGet();
+        if (commitWindow > 0 && pending < maxBatchSize) {
+            if (updatesScheduled.compareAndSet(false, true)) {
+                schedule(this::runUpdates);
+            }
+        } else if (pending == maxBatchSize || updatesScheduled.compareAndSet(false, true)) {
+            execute(this::runUpdates, null);
+        }
+        return update.future;
+    }
+
+    /**
+     * Stops the thread of the connection once the statements already submitted have run. The
+     * connection is not closed, unless it was opened for this object.
+     */
+    public void close() {
+        if (executor.isShutdown()) {
+            return;
+        }
+        if (commitWindow > 0) {
+            // do not wait for the window of the last updates
+            execute(this::runUpdates, null);
+        }
+        if (ownsConnection) {
+            execute(
+                    () -> {
+                        try {
+                            conn.close();
+                        } catch (SQLException e) {
+                            // nothing left to report it to
+                        }
+                    },
+                    null);
+        }
+        executor.shutdown();
+    }
+
+    /** @return True if {@link #close()} was called. */
+    public boolean isClosed() {
+        return executor.isShutdown();
+    }
+
+    private void schedule(Runnable task) {
+        try {
+            executor.schedule(task, commitWindow, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            execute(task, null);
+        }
+    }
+
+    private void execute(Runnable task, CompletableFuture<?> future) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            SQLException closed = new SQLException("async connection is closed", e);
+            if (future != null) {
+                future.completeExceptionally(closed);
+            } else {
+                updatesScheduled.set(false);
+                for (Update update; (update = updates.poll()) != null; ) {
+                    pendingUpdates.decrementAndGet();
+                    update.future.completeExceptionally(closed);
+                }
+            }
+        }
+    }
+
+    private PreparedStatement prepare(String sql, Object[] params) throws SQLException {
+        PreparedStatement stat = conn.prepareStatement(sql);
+        try {
+            for (int i = 0; i < params.length; i++) {
+                stat.setObject(i + 1, params[i]);
+            }
+        } catch (SQLException e) {
+            stat.close();
+            throw e;
+        }
+        return stat;
+    }
+
+    /** Runs the waiting updates in one transaction. */
+    private void runUpdates() {
+        updatesScheduled.set(false);
+        List<Update> batch = new ArrayList<>();
+        for (Update update; (update = updates.poll()) != null; ) {
+            pendingUpdates.decrementAndGet();
+            if (!update.future.isDone()) {
+                batch.add(update);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            boolean begin = conn.getAutoCommit();
+            if (begin) {
+                conn.setAutoCommit(false);
+            }
+            boolean committed = false;
+            try {
+                for (Update update : batch) {
+                    Savepoint savepoint = conn.setSavepoint();
+                    try (PreparedStatement stat = prepare(update.sql, update.params)) {
+                        update.count = stat.executeLargeUpdate();
+                        conn.releaseSavepoint(savepoint);
+                    } catch (SQLException e) {
+                        conn.rollback(savepoint);
+                        conn.releaseSavepoint(savepoint);
+                        update.error = e;
+                    }
+                }
+                if (begin) {
+                    conn.setAutoCommit(true); // commits
+                }
+                committed = true;
+            } finally {
+                if (begin && !committed) {
+                    conn.getConnectionConfig().setAutoCommit(true);
+                    try {
+                        conn.getDatabase().exec("rollback;", true);
+                    } catch (SQLException e) {
+                        // the transaction was already rolled back
+                    }
+                }
+            }
+        } catch (Throwable e) {
+            for (Update update : batch) {
+                update.future.completeExceptionally(e);
+            }
+            return;
+        }
+
+        for (Update update : batch) {
+            if (update.error != null) {
+                update.future.completeExceptionally(update.error);
+            } else {
+                update.future.complete(update.count);
+            }
+        }
+    }
+
+    /** Update waiting to run. */
+    private static final class Update {
+        final String sql;
+        final Object[] params;
+        final CompletableFuture<Long> future = new CompletableFuture<>();
+        long count;
+        SQLException error;
+
+        Update(String sql, Object[] params) {
+            this.sql = sql;
+            this.params = params;
+        }
+    }
+
+    /** Query delivering rows on demand, run on the thread of the connection a turn at a time. */
+    private final class RowStream<T> implements Subscription, Runnable {
+        private final String sql;
+        private final Object[] params;
+        private final RowMapper<T> mapper;
+        private final Subscriber<? super T> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+        private volatile boolean cancelled = false;
+        private volatile IllegalArgumentException invalidRequest;
+
+        // only used on the thread of the connection
+        private PreparedStatement stat;
+        private ResultSet rs;
+        private boolean done = false;
+
+        RowStream(String sql, Object[] params, RowMapper<T> mapper, Subscriber<? super T> s) {
+            this.sql = sql;
+            this.params = params;
+            this.mapper = mapper;
+            this.subscriber = s;
+        }
+
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("non-positive request: " + n);
+            } else {
+                demand.getAndUpdate(d -> d + n < 0 ? Long.MAX_VALUE : d + n);
+            }
+            schedule();
+        }
+
+        public void cancel() {
+            cancelled = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    scheduled.set(false);
+                    if (!cancelled) {
+                        cancelled = true;
+                        subscriber.onError(new SQLException("async connection is closed", e));
+                    }
+                }
+            }
+        }
+
+        public void run() {
+            try {
+                if (done) {
+                    return;
+                }
+                if (cancelled) {
+                    finish();
+                    return;
+                }
+                if (invalidRequest != null) {
+                    finish();
+                    subscriber.onError(invalidRequest);
+                    return;
+                }
+                if (rs == null) {
+                    stat = prepare(sql, params);
+                    rs = stat.executeQuery();
+                }
+                for (int i = 0; i < ROWS_PER_TURN && demand.get() > 0 && !cancelled; i++) {
+                    if (!rs.next()) {
+                        finish();
+                        subscriber.onComplete();
+                        return;
+                    }
+                    T item = mapper.map(rs);
+                    demand.decrementAndGet();
+                    subscriber.onNext(item);
+                }
+                if (cancelled) {
+                    finish();
+                }
+            } catch (Throwable e) {
+                finish();
+                subscriber.onError(e);
+            } finally {
+                scheduled.set(false);
+                if (!done && (demand.get() > 0 || cancelled || invalidRequest != null)) {
+                    schedule();
+                }
+            }
+        }
+
+        private void finish() {
+            done = true;
+            try {
+                if (stat != null) stat.close();
+            } catch (SQLException e) {
+                // the rows were delivered
+            }
+            rs = null;
+            stat = null;
+        }
+    }
+}
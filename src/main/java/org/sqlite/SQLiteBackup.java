@@ -0,0 +1,137 @@
+package org.sqlite;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import org.sqlite.core.Codes;
+import org.sqlite.core.DB;
+import org.sqlite.core.DB.ProgressObserver;
+import org.sqlite.core.NativeHandle;
+
+/**
+ * An online backup of a database copied a few pages at a time, see {@link
+ * SQLiteConnection#backup(String, SQLiteConnection, String)}. Both connections are only held for
+ * the duration of a {@link #step(int)}, so other threads keep using them between steps, and {@link
+ * #run(int, int, ProgressObserver)} can throttle the copy to a number of pages per second.
+ *
+ * <p>Writes to the source through its own connection are copied along; a write through any other
+ * connection restarts the backup at the next step. Close the handle when done, otherwise it is
+ * finished with either connection.
+ *
+ * @see <a href="https://www.sqlite.org/backup.html">https://www.sqlite.org/backup.html</a>
+ */
+public class SQLiteBackup implements AutoCloseable {
+    /** Time to wait before retrying a step that found a database locked. */
+    private static final long BUSY_RETRY_MILLIS = 100;
+
+    private final DB source;
+    private final DB dest;
+    private final NativeHandle handle;
+    /** The connection opened on a destination file, closed with the backup, or null. */
+    private final SQLiteConnection owned;
+    private boolean done = false;
+
+    SQLiteBackup(DB source, DB dest, NativeHandle handle, SQLiteConnection owned) {
+        this.source = source;
+        this.dest = dest;
+        this.handle = handle;
+        this.owned = owned;
+    }
+
+    /**
+     * Copies the next pages.
+     *
+     * @param pages Number of pages to copy, or a negative number to copy all remaining pages.
+     * @return True if the backup is complete; false if pages remain, or if a database was locked
+     *     and nothing was copied.
+     * @throws SQLException if the backup failed.
+     */
+    public boolean step(int pages) throws SQLException {
+        return stepOnce(pages) == Codes.SQLITE_DONE;
+    }
+
+    /** @return True once the last page was copied. */
+    public boolean isDone() {
+        return done;
+    }
+
+    /** @return Number of pages left to copy as of the last step. */
+    public int getRemaining() throws SQLException {
+        return source.backupRemaining(handle);
+    }
+
+    /** @return Number of pages of the source database as of the last step. */
+    public int getPageCount() throws SQLException {
+        return source.backupPageCount(handle);
+    }
+
+    /**
+     * Copies all remaining pages, releasing both connections between steps. Steps that find a
+     * database locked are retried after a short wait.
+     *
+     * @param pagesPerStep Number of pages to copy at each step; larger steps copy faster but hold
+     *     the connections longer.
+     * @param pagesPerSecond Maximum number of pages to copy per second, or 0 for no limit.
+     * @param observer Called with the remaining and total number of pages after each step, or null.
+     * @throws SQLException if the backup failed or the thread was interrupted.
+     */
+    public void run(int pagesPerStep, int pagesPerSecond, ProgressObserver observer)
+            throws SQLException {
+        if (pagesPerStep <= 0 || pagesPerSecond < 0) {
+            throw new IllegalArgumentException(
+                    String.format(
+                            "invalid rate of %d pages per step and %d pages per second",
+                            pagesPerStep, pagesPerSecond));
+        }
+        long start = System.nanoTime();
+        long copied = 0;
+        while (!done) {
+            int rc = stepOnce(pagesPerStep);
+            if (observer != null) {
+                observer.progress(getRemaining(), getPageCount());
+            }
+            if (done) {
+                break;
+            }
+            long waitNanos = 0;
+            if ((rc & 0xFF) == Codes.SQLITE_BUSY || (rc & 0xFF) == Codes.SQLITE_LOCKED) {
+                waitNanos = TimeUnit.MILLISECONDS.toNanos(BUSY_RETRY_MILLIS);
+            } else if (pagesPerSecond > 0) {
+                copied += pagesPerStep;
+                long due = start + copied * TimeUnit.SECONDS.toNanos(1) / pagesPerSecond;
+                waitNanos = due - System.nanoTime();
+            }
+            if (waitNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(waitNanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("the backup was interrupted", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Finishes the backup, complete or not. Does nothing if it is closed already.
+     *
+     * @throws SQLException if a step of the backup failed.
+     */
+    public void close() throws SQLException {
+        try {
+            source.finishBackup(handle);
+        } finally {
+            if (owned != null) {
+                owned.close();
+            }
+        }
+    }
+
+    private int stepOnce(int pages) throws SQLException {
+        if (done) {
+            return Codes.SQLITE_DONE;
+        }
+        int rc = source.stepBackup(handle, dest, pages);
+        done = rc == Codes.SQLITE_DONE;
+        return rc;
+    }
+}
@@ -0,0 +1,281 @@
+package org.sqlite;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.sql.Blob;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import org.sqlite.core.DB;
+import org.sqlite.core.NativeHandle;
+
+/**
+ * A BLOB of a row, read and written in place with incremental I/O, see {@link
+ * SQLiteConnection#openBlob(String, String, String, long, boolean)}. Only the requested bytes are
+ * copied, so large BLOBs can be streamed without holding them in memory; direct buffers are read
+ * into and written from by SQLite without any copy in Java.
+ *
+ * <p>The size of the BLOB cannot be changed: write a zeroblob() of the right size with SQL first.
+ * The handle expires when the row is changed or deleted other than through it, after which every
+ * call fails with SQLITE_ABORT; {@link #reopen(long)} moves it to another row. Close it when done,
+ * otherwise it is closed with the connection.
+ *
+ * @see <a
+ *     href="https://www.sqlite.org/c3ref/blob_open.html">https://www.sqlite.org/c3ref/blob_open.html</a>
+ */
+public class SQLiteBlob implements Blob, AutoCloseable {
+    private final DB db;
+    private final NativeHandle handle;
+    private final boolean writable;
+
+    SQLiteBlob(DB db, NativeHandle handle, boolean writable) {
+        this.db = db;
+        this.handle = handle;
+        this.writable = writable;
+    }
+
+    /** @return True if the BLOB was opened for writing. */
+    public boolean isWritable() {
+        return writable;
+    }
+
+    /**
+     * Moves this handle to the same column of another row of the table.
+     *
+     * @param rowId Rowid of the other row.
+     * @throws SQLException if the row does not exist or the column does not hold a BLOB or text.
+     */
+    public void reopen(long rowId) throws SQLException {
+        db.reopenBlob(handle, rowId);
+    }
+
+    /** @return The size of the BLOB in bytes. */
+    public long length() throws SQLException {
+        return db.blobBytes(handle);
+    }
+
+    /**
+     * Reads bytes of the BLOB into a buffer, as many as remain in the buffer or in the BLOB.
+     *
+     * @param dst Buffer to read into; its position is advanced by the number of bytes read.
+     * @param offset Offset in the BLOB of the first byte to read, starting from 0.
+     * @return The number of bytes read, or -1 if the offset is at the end of the BLOB.
+     * @throws SQLException
+     */
+    public int read(ByteBuffer dst, long offset) throws SQLException {
+        int length = db.blobBytes(handle);
+        checkOffset(offset, length);
+        if (offset == length) {
+            return dst.hasRemaining() ? -1 : 0;
+        }
+        int n = (int) Math.min(dst.remaining(), length - offset);
+        ByteBuffer slice = dst.duplicate();
+        slice.limit(slice.position() + n);
+        db.readBlob(handle, slice, (int) offset);
+        dst.position(slice.position());
+        return n;
+    }
+
+    /**
+     * Writes the remaining bytes of a buffer into the BLOB.
+     *
+     * @param src Buffer to write from; its position is advanced by the number of bytes written.
+     * @param offset Offset in the BLOB of the first byte written, starting from 0.
+     * @throws SQLException if the BLOB is read-only or too small to hold the bytes.
+     */
+    public void write(ByteBuffer src, long offset) throws SQLException {
+        checkWritable();
+        int length = db.blobBytes(handle);
+        checkOffset(offset, length);
+        if (src.remaining() > length - offset) {
+            throw new SQLException(
+                    String.format(
+                            "cannot write %d bytes at offset %d of a BLOB of %d bytes",
+                            src.remaining(), offset, length));
+        }
+        db.writeBlob(handle, src, (int) offset);
+    }
+
+    /** @see java.sql.Blob#getBytes(long, int) */
+    public byte[] getBytes(long pos, int length) throws SQLException {
+        int size = db.blobBytes(handle);
+        checkOffset(pos - 1, size);
+        byte[] bytes = new byte[(int) Math.min(Math.max(length, 0), size - (pos - 1))];
+        db.readBlob(handle, ByteBuffer.wrap(bytes), (int) (pos - 1));
+        return bytes;
+    }
+
+    /** @see java.sql.Blob#getBinaryStream() */
+    public InputStream getBinaryStream() throws SQLException {
+        return new BlobInputStream(0, db.blobBytes(handle));
+    }
+
+    /** @see java.sql.Blob#getBinaryStream(long, long) */
+    public InputStream getBinaryStream(long pos, long length) throws SQLException {
+        int size = db.blobBytes(handle);
+        if (pos < 1 || length < 0 || pos - 1 + length > size) {
+            throw new SQLException(
+                    String.format(
+                            "invalid range of %d bytes at position %d of a BLOB of %d bytes",
+                            length, pos, size));
+        }
+        return new BlobInputStream(pos - 1, pos - 1 + length);
+    }
+
+    public long position(byte[] pattern, long start) throws SQLException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    public long position(Blob pattern, long start) throws SQLException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    /** @see java.sql.Blob#setBytes(long, byte[]) */
+    public int setBytes(long pos, byte[] bytes) throws SQLException {
+        return setBytes(pos, bytes, 0, bytes.length);
+    }
+
+    /** @see java.sql.Blob#setBytes(long, byte[], int, int) */
+    public int setBytes(long pos, byte[] bytes, int offset, int len) throws SQLException {
+        write(ByteBuffer.wrap(bytes, offset, len), pos - 1);
+        return len;
+    }
+
+    /** @see java.sql.Blob#setBinaryStream(long) */
+    public OutputStream setBinaryStream(long pos) throws SQLException {
+        checkWritable();
+        checkOffset(pos - 1, db.blobBytes(handle));
+        return new BlobOutputStream(pos - 1);
+    }
+
+    /** The size of a BLOB cannot be changed through its handle. */
+    public void truncate(long len) throws SQLException {
+        throw new SQLFeatureNotSupportedException("the size of a BLOB cannot be changed");
+    }
+
+    /** Closes the handle; same as {@link #close()}. */
+    public void free() throws SQLException {
+        close();
+    }
+
+    /**
+     * Closes the handle. Does nothing if it is closed already.
+     *
+     * @throws SQLException if a write to the BLOB failed.
+     */
+    public void close() throws SQLException {
+        db.closeBlob(handle);
+    }
+
+    private void checkWritable() throws SQLException {
+        if (!writable) {
+            throw new SQLException("the BLOB was opened read-only");
+        }
+    }
+
+    private static void checkOffset(long offset, int length) throws SQLException {
+        if (offset < 0 || offset > length) {
+            throw new SQLException(
+                    String.format("offset %d is out of a BLOB of %d bytes", offset, length));
+        }
+    }
+
+    private static IOException ioException(SQLException e) {
+        return new IOException(e.getMessage(), e);
+    }
+
+    /** Reads a range of the BLOB, straight into the arrays passed to it. */
+    private final class BlobInputStream extends InputStream {
+        private long offset;
+        private long mark;
+        private final long end;
+
+        BlobInputStream(long offset, long end) {
+            this.offset = offset;
+            this.mark = offset;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (off < 0 || len < 0 || len > b.length - off) {
+                throw new IndexOutOfBoundsException();
+            }
+            if (len == 0) {
+                return 0;
+            }
+            if (offset >= end) {
+                return -1;
+            }
+            int n = (int) Math.min(len, end - offset);
+            try {
+                db.readBlob(handle, ByteBuffer.wrap(b, off, n), (int) offset);
+            } catch (SQLException e) {
+                throw ioException(e);
+            }
+            offset += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, end - offset));
+            offset += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, end - offset);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public synchronized void mark(int readlimit) {
+            mark = offset;
+        }
+
+        @Override
+        public synchronized void reset() {
+            offset = mark;
+        }
+    }
+
+    /** Writes into the BLOB from the position it was opened at, without buffering. */
+    private final class BlobOutputStream extends OutputStream {
+        private long offset;
+
+        BlobOutputStream(long offset) {
+            this.offset = offset;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (off < 0 || len < 0 || len > b.length - off) {
+                throw new IndexOutOfBoundsException();
+            }
+            try {
+                SQLiteBlob.this.write(ByteBuffer.wrap(b, off, len), offset);
+            } catch (SQLException e) {
+                throw ioException(e);
+            }
+            offset += len;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package org.sqlite;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tells which tables of a database changed, to listeners registered by table name, without
+ * querying the tables. See {@link SQLiteDataSource#setChangeNotification(long)}.
+ *
+ * <p>The connections it watches report the tables changed by each committed transaction, once per
+ * table and transaction, whatever the number of rows changed. Changes made by other processes, or
+ * by connections it does not watch, are found by polling {@code PRAGMA data_version} on a
+ * connection of its own: this only reads the header of the write-ahead log, or of the database
+ * file, and does not touch the tables. As it cannot tell which tables changed, every listener is
+ * then notified, with {@code external} set. The data version also changes with the commits of the
+ * watched connections, so a process that writes as well gets these notifications for its own
+ * commits too.
+ *
+ * <p>Like {@link SQLiteUpdateListener}, it relies on the update hook of SQLite, which does not
+ * report the rows deleted by a DELETE without a WHERE clause, nor changes to WITHOUT ROWID tables.
+ *
+ * <p>Listeners are called one at a time on a thread of the notifier, after the commit completed;
+ * they may use any connection. Exceptions are reported to the uncaught exception handler of the
+ * thread.
+ *
+ * @see <a
+ *     href="https://www.sqlite.org/pragma.html#pragma_data_version">https://www.sqlite.org/pragma.html#pragma_data_version</a>
+ */
+public class SQLiteChangeNotifier implements AutoCloseable {
+    /**
+     * Number of transactions of a connection waiting to be notified, beyond which every listener
+     * is notified instead.
+     */
+    private static final int MAX_PENDING = 1024;
+
+    /** Receives the changes of a table. */
+    @FunctionalInterface
+    public interface Listener {
+        /**
+         * Called once per transaction that changed the table.
+         *
+         * @param table Name of the table the listener was registered for.
+         * @param external True if the change was found by polling the data version, so it may have
+         *     been made by another process and the table may not have changed at all.
+         */
+        void onChange(String table, boolean external);
+    }
+
+    private final ScheduledExecutorService executor;
+    private final SQLiteConnection pollConnection;
+    private final Map<String, Set<Listener>> listeners = new ConcurrentHashMap<>();
+    private final Map<SQLiteConnection, SQLiteTransactionListener> watched =
+            new ConcurrentHashMap<>();
+    private long dataVersion;
+
+    /**
+     * Creates a notifier watching no connection.
+     *
+     * @param pollConnection Connection polling the data version of the database, closed with the
+     *     notifier, or null not to look for the changes of other processes.
+     * @param pollMillis Time between two polls, in milliseconds.
+     * @throws SQLException if the data version cannot be read.
+     */
+    public SQLiteChangeNotifier(SQLiteConnection pollConnection, long pollMillis)
+            throws SQLException {
+        if (pollConnection != null && pollMillis <= 0) {
+            throw new IllegalArgumentException("invalid poll interval: " + pollMillis + " ms");
+        }
+        this.pollConnection = pollConnection;
+        this.executor =
+                Executors.newSingleThreadScheduledExecutor(
+                        r -> {
+                            Thread thread = new Thread(r, "sqlite-changes");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+        if (pollConnection != null) {
+            dataVersion = readDataVersion();
+            executor.scheduleWithFixedDelay(
+                    this::poll, pollMillis, pollMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Adds a listener for the changes of a table.
+     *
+     * @param table Name of the table, whatever the database it belongs to; case is ignored.
+     * @param listener The listener.
+     */
+    public void addListener(String table, Listener listener) {
+        if (listener == null) {
+            throw new NullPointerException("listener");
+        }
+        listeners.computeIfAbsent(key(table), k -> new CopyOnWriteArraySet<>()).add(listener);
+    }
+
+    /**
+     * Removes a listener for the changes of a table.
+     *
+     * @param table Name of the table the listener was added for.
+     * @param listener The listener.
+     */
+    public void removeListener(String table, Listener listener) {
+        Set<Listener> set = listeners.get(key(table));
+        if (set != null) {
+            set.remove(listener);
+        }
+    }
+
+    /**
+     * Reports the changes committed through a connection to the listeners, until the notifier is
+     * closed or the connection is no longer watched.
+     *
+     * @param conn The connection.
+     */
+    public void watch(SQLiteConnection conn) {
+        if (isClosed()) {
+            throw new IllegalStateException("the change notifier is closed");
+        }
+        // forget the connections closed meanwhile
+        watched.keySet().removeIf(c -> c.getDatabase().isClosed());
+
+        long[] sequence = {0};
+        SQLiteTransactionListener listener =
+                event -> {
+                    boolean missed = sequence[0] != 0 && event.getSequence() != sequence[0] + 1;
+                    sequence[0] = event.getSequence();
+                    if (missed) {
+                        notifyEveryListener(true);
+                    } else if (event.isCommitted()) {
+                        notifyTables(event);
+                    }
+                };
+        if (watched.putIfAbsent(conn, listener) == null) {
+            conn.addTransactionListener(listener, executor, MAX_PENDING);
+        }
+    }
+
+    /**
+     * Stops reporting the changes of a connection.
+     *
+     * @param conn The connection.
+     */
+    public void unwatch(SQLiteConnection conn) {
+        SQLiteTransactionListener listener = watched.remove(conn);
+        if (listener != null) {
+            conn.removeTransactionListener(listener);
+        }
+    }
+
+    /** @return True if the notifier is closed. */
+    public boolean isClosed() {
+        return executor.isShutdown();
+    }
+
+    /** Stops watching the connections and polling. Does nothing if it is closed already. */
+    @Override
+    public void close() {
+        if (isClosed()) {
+            return;
+        }
+        for (SQLiteConnection conn : watched.keySet()) {
+            unwatch(conn);
+        }
+        if (pollConnection != null) {
+            executor.execute(
+                    () -> {
+                        try {
+                            pollConnection.close();
+                        } catch (SQLException e) {
+                            // nothing left to report it to
+                        }
+                    });
+        }
+        executor.shutdown();
+    }
+
+    private static String key(String table) {
+        if (table == null) {
+            throw new NullPointerException("table");
+        }
+        return table.toLowerCase(Locale.ROOT);
+    }
+
+    private void notifyTables(SQLiteTransactionEvent event) {
+        // a batch holds one instance of each table name, so this hashes few distinct strings
+        Set<String> tables = new HashSet<>();
+        for (SQLiteUpdateBatch batch : event.getChanges()) {
+            for (int i = 0; i < batch.size(); i++) {
+                tables.add(batch.getTable(i));
+            }
+        }
+        Set<String> notified = new HashSet<>();
+        for (String table : tables) {
+            String key = key(table);
+            Set<Listener> set = listeners.get(key);
+            if (set != null && notified.add(key)) {
+                for (Listener listener : set) {
+                    call(listener, key, false);
+                }
+            }
+        }
+    }
+
+    private void notifyEveryListener(boolean external) {
+        for (Map.Entry<String, Set<Listener>> entry : listeners.entrySet()) {
+            for (Listener listener : entry.getValue()) {
+                call(listener, entry.getKey(), external);
+            }
+        }
+    }
+
+    private static void call(Listener listener, String table, boolean external) {
+        try {
+            listener.onChange(table, external);
+        } catch (RuntimeException e) {
+            Thread thread = Thread.currentThread();
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+        }
+    }
+
+    private void poll() {
+        try {
+            long version = readDataVersion();
+            if (version != dataVersion) {
+                dataVersion = version;
+                notifyEveryListener(true);
+            }
+        } catch (SQLException e) {
+            // the database may be busy or the notifier closing, try again at the next poll
+        }
+    }
+
+    private long readDataVersion() throws SQLException {
+        try (Statement stat = pollConnection.createStatement();
+                ResultSet rs = stat.executeQuery("PRAGMA data_version")) {
+            return rs.getLong(1);
+        }
+    }
+}
@@ -180,6 +180,13 @@ public class SQLiteConfig {
         pragmaParams.remove(Pragma.LIMIT_VDBE_OP.pragmaName);
         pragmaParams.remove(Pragma.LIMIT_WORKER_THREADS.pragmaName);
         pragmaParams.remove(Pragma.LIMIT_PAGE_COUNT.pragmaName);
+        pragmaParams.remove(Pragma.STATEMENT_CACHE_SIZE.pragmaName);
+        pragmaParams.remove(Pragma.STATEMENT_CACHE_BYTES.pragmaName);
+        pragmaParams.remove(Pragma.JAVA_BUSY_WAIT.pragmaName);
+        if (isJavaBusyWait()) {
+            // set when the connection was opened, the pragma would replace the busy handler
+            pragmaParams.remove(Pragma.BUSY_TIMEOUT.pragmaName);
+        }
 
         setupConnection(conn, pragmaParams, pragmaTable);
         try (Statement stat = conn.createStatement()) {
@@ -469,6 +476,18 @@ public class SQLiteConfig {
                 "Format to store and retrieve dates stored as text. Defaults to \"yyyy-MM-dd HH:mm:ss.SSS\"",
                 null),
         BUSY_TIMEOUT("busy_timeout", null),
+        STATEMENT_CACHE_SIZE(
+                "statement_cache_size",
+                "Maximum number of idle prepared statements kept for reuse by a connection. Defaults to 0 (disabled).",
+                null),
+        STATEMENT_CACHE_BYTES(
+                "statement_cache_bytes",
+                "Maximum memory used by the idle prepared statements kept for reuse by a connection, in bytes. Defaults to 0 (no limit).",
+                null),
+        JAVA_BUSY_WAIT(
+                "java_busy_wait",
+                "Wait for locks held by other connections by parking the thread in Java rather than sleeping in SQLite, so that virtual threads do not pin their carrier. Defaults to false.",
+                OnOff),
 
         // Keep compatibility for legacy Xenial JDBC implementation
         HEXKEY_MODE("hexkey_mode", toStringArray(HexKeyMode.values())),
@@ -523,6 +542,11 @@ public class SQLiteConfig {
     /**
      * Sets the open mode flags.
      *
+     * <p>The threading mode of a connection decides how it may be used by several threads. In
+     * serialized mode (the default, or {@link SQLiteOpenMode#FULLMUTEX}) different statements of
+     * the connection may be used by different threads at the same time. With {@link
+     * SQLiteOpenMode#NOMUTEX} the driver serializes all use of the connection instead.
+     *
      * @param mode The open mode.
      * @see <a
      *     href="http://www.sqlite.org/c3ref/c_open_autoproxy.html">http://www.sqlite.org/c3ref/c_open_autoproxy.html</a>
@@ -1171,4 +1195,61 @@ public class SQLiteConfig {
     public int getBusyTimeout() {
         return parseLimitPragma(Pragma.BUSY_TIMEOUT, 3000);
     }
+
+    /**
+     * Sets the number of idle prepared statements kept by each connection. A statement prepared
+     * with the same SQL text as a cached one reuses it instead of being compiled again; when it is
+     * closed, it is reset and kept for the next one. The least recently used statements are
+     * finalized when the cache is full.
+     *
+     * @param statements Maximum number of statements to keep; 0 to disable the cache.
+     */
+    public void setStatementCacheSize(int statements) {
+        set(Pragma.STATEMENT_CACHE_SIZE, statements);
+    }
+
+    /** @return Maximum number of idle prepared statements kept by each connection. */
+    public int getStatementCacheSize() {
+        return parseLimitPragma(Pragma.STATEMENT_CACHE_SIZE, 0);
+    }
+
+    /**
+     * Sets the maximum memory used by the idle prepared statements kept by each connection.
+     *
+     * @param bytes Maximum memory in bytes; 0 for no limit.
+     * @see #setStatementCacheSize(int)
+     */
+    public void setStatementCacheBytes(long bytes) {
+        setPragma(Pragma.STATEMENT_CACHE_BYTES, Long.toString(bytes));
+    }
+
+    /**
+     * Enables or disables waiting for locks held by other connections in Java. By default SQLite
+     * sleeps in native code until the busy timeout elapses, which pins the carrier of a virtual
+     * thread. When enabled, a statement that finds the database locked returns to Java, which parks
+     * the thread and steps the statement again until the busy timeout elapses. Statements that are
+     * not retried as a whole, such as SQL scripts run by {@link Statement#executeUpdate(String)} or
+     * batches, still wait in native code.
+     *
+     * @param enable True to wait in Java; false to wait in SQLite.
+     * @see #setBusyTimeout(int)
+     */
+    public void setJavaBusyWait(boolean enable) {
+        set(Pragma.JAVA_BUSY_WAIT, enable);
+    }
+
+    /** @return True if the busy timeout is waited for in Java; false otherwise. */
+    public boolean isJavaBusyWait() {
+        return getBoolean(Pragma.JAVA_BUSY_WAIT, "false");
+    }
+
+    /** @return Maximum memory used by the idle prepared statements of each connection. */
+    public long getStatementCacheBytes() {
+        try {
+            return Long.parseLong(
+                    pragmaTable.getProperty(Pragma.STATEMENT_CACHE_BYTES.pragmaName, "0"));
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
 }
@@ -9,6 +9,7 @@ import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLDecoder;
+import java.nio.ByteBuffer;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
@@ -18,6 +19,7 @@ import java.util.Set;
 import java.util.concurrent.Executor;
 import org.sqlite.core.CoreDatabaseMetaData;
 import org.sqlite.core.DB;
+import org.sqlite.core.ForeignDB;
 import org.sqlite.core.NativeDB;
 import org.sqlite.jdbc4.JDBC4DatabaseMetaData;
 
@@ -255,7 +257,10 @@ public abstract class SQLiteConnection implements Connection {
         DB db = null;
         try {
             NativeDB.load();
-            db = new NativeDB(url, fileName, config);
+            db =
+                    ForeignDB.isAvailable()
+                            ? new ForeignDB(url, fileName, config)
+                            : new NativeDB(url, fileName, config);
         } catch (Exception e) {
             SQLException err = new SQLException("Error opening connection");
             err.initCause(e);
@@ -434,6 +439,238 @@ public abstract class SQLiteConnection implements Connection {
         db.exec(connectionConfig.transactionPrefix(), getAutoCommit());
     }
 
+    /**
+     * Reads the runtime counters of the connection: page cache hits, misses, writes and spills,
+     * memory used by the schema and statements, and lookaside memory use.
+     *
+     * @return A snapshot of the counters.
+     * @throws SQLException
+     */
+    public SQLiteConnectionStatus getStatus() throws SQLException {
+        return getStatus(false);
+    }
+
+    /**
+     * Reads the runtime counters of the connection.
+     *
+     * @param reset True to reset the counters after reading them, to measure the next interval.
+     * @return A snapshot of the counters.
+     * @throws SQLException
+     * @see #getStatus()
+     */
+    public SQLiteConnectionStatus getStatus(boolean reset) throws SQLException {
+        checkOpen();
+        return new SQLiteConnectionStatus(db.db_status(SQLiteConnectionStatus.COUNT, reset));
+    }
+
+    /**
+     * Reads the memory counters of the SQLite library, which are shared by all connections:
+     * memory in use, highwater marks and allocation counts. They are 0 with the bundled library
+     * unless the {@code org.sqlite.memstatus} system property is true, see {@link
+     * SQLiteMemoryStatus}.
+     *
+     * @return A snapshot of the counters.
+     * @throws SQLException
+     */
+    public SQLiteMemoryStatus getMemoryStatus() throws SQLException {
+        return getMemoryStatus(false);
+    }
+
+    /**
+     * Reads the memory counters of the SQLite library.
+     *
+     * @param reset True to reset the highwater marks after reading them.
+     * @return A snapshot of the counters.
+     * @throws SQLException
+     * @see #getMemoryStatus()
+     */
+    public SQLiteMemoryStatus getMemoryStatus(boolean reset) throws SQLException {
+        return new SQLiteMemoryStatus(db.status64(SQLiteMemoryStatus.COUNT, reset));
+    }
+
+    /**
+     * Opens a BLOB of the main database for incremental I/O.
+     *
+     * @see #openBlob(String, String, String, long, boolean)
+     */
+    public SQLiteBlob openBlob(String table, String column, long rowId, boolean writable)
+            throws SQLException {
+        return openBlob("main", table, column, rowId, writable);
+    }
+
+    /**
+     * Opens the BLOB or text stored in a column of a row for incremental I/O, to read or write it
+     * in parts instead of as a whole. The handle must be closed before the connection, or it is
+     * closed with it.
+     *
+     * @param database Name of the database: "main", "temp" or the name of an attached database.
+     * @param table Name of the table.
+     * @param column Name of the column.
+     * @param rowId Rowid of the row.
+     * @param writable True to open the BLOB for reading and writing; false to only read it.
+     * @return The BLOB handle.
+     * @throws SQLException if the row does not exist or the column does not hold a BLOB or text.
+     * @see <a
+     *     href="https://www.sqlite.org/c3ref/blob_open.html">https://www.sqlite.org/c3ref/blob_open.html</a>
+     */
+    public SQLiteBlob openBlob(
+            String database, String table, String column, long rowId, boolean writable)
+            throws SQLException {
+        checkOpen();
+        return new SQLiteBlob(db, db.openBlob(database, table, column, rowId, writable), writable);
+    }
+
+    /**
+     * Starts an online backup of a database of this connection to another connection, for example
+     * one to an in-memory database. The destination database is overwritten as the pages are
+     * copied, with {@link SQLiteBackup#step(int)} or {@link SQLiteBackup#run(int, int,
+     * org.sqlite.core.DB.ProgressObserver)}, and the connections are free for other threads
+     * between steps.
+     *
+     * @param schema Name of the database to copy: "main", "temp" or the name of an attached
+     *     database.
+     * @param target Connection to copy to; it must not be in a transaction.
+     * @param targetSchema Name of the database of the target to overwrite.
+     * @return The backup handle, to close when done.
+     * @throws SQLException
+     * @see <a href="https://www.sqlite.org/backup.html">https://www.sqlite.org/backup.html</a>
+     */
+    public SQLiteBackup backup(String schema, SQLiteConnection target, String targetSchema)
+            throws SQLException {
+        checkOpen();
+        target.checkOpen();
+        DB dest = target.getDatabase();
+        return new SQLiteBackup(db, dest, db.openBackup(schema, dest, targetSchema), null);
+    }
+
+    /**
+     * Starts an online backup of a database of this connection to a file, which is created or
+     * overwritten. The file is held open by the backup until it is closed.
+     *
+     * @param schema Name of the database to copy.
+     * @param fileName Name of the file to copy to, or a "file:" URI.
+     * @return The backup handle, to close when done.
+     * @throws SQLException
+     * @see #backup(String, SQLiteConnection, String)
+     */
+    public SQLiteBackup backup(String schema, String fileName) throws SQLException {
+        checkOpen();
+        SQLiteConnection target = JDBC.createConnection(JDBC.PREFIX + fileName, new Properties());
+        try {
+            DB dest = target.getDatabase();
+            return new SQLiteBackup(db, dest, db.openBackup(schema, dest, "main"), target);
+        } catch (SQLException e) {
+            target.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Copies the content of a database into memory, as the bytes of the database file. This is
+     * the fastest way to snapshot a database, in particular an in-memory one, without a temporary
+     * file: the result can be written anywhere or loaded into another connection with {@link
+     * #deserialize(String, ByteBuffer, boolean)}.
+     *
+     * @param schema Name of the database: "main", "temp" or the name of an attached database.
+     * @return A direct buffer holding the database file, from position 0 to its limit.
+     * @throws SQLException if the database does not exist or is larger than 2 GiB.
+     * @see <a
+     *     href="https://www.sqlite.org/c3ref/serialize.html">https://www.sqlite.org/c3ref/serialize.html</a>
+     */
+    public ByteBuffer serialize(String schema) throws SQLException {
+        checkOpen();
+        return db.serialize(schema);
+    }
+
+    /**
+     * Replaces a database of this connection with an in-memory database holding the bytes of a
+     * database file, for example loaded from a file or returned by {@link #serialize(String)}.
+     *
+     * <p>A direct buffer opened read-only is used in place, without a copy: its content must not
+     * change while the connection uses it, and the connection keeps a reference to it until the
+     * database is replaced again or the connection is closed. Any other buffer is copied, and a
+     * writable database grows as needed.
+     *
+     * @param schema Name of the database: "main" or the name of an attached database.
+     * @param data The remaining bytes of the buffer; its position is not changed.
+     * @param readOnly True to open the database read-only.
+     * @throws SQLException if the database is in use by a transaction or a running statement.
+     * @see <a
+     *     href="https://www.sqlite.org/c3ref/deserialize.html">https://www.sqlite.org/c3ref/deserialize.html</a>
+     */
+    public void deserialize(String schema, ByteBuffer data, boolean readOnly)
+            throws SQLException {
+        checkOpen();
+        db.deserialize(schema, data, readOnly);
+    }
+
+    /**
+     * Sets a listener that receives the cost of each statement execution: steps, rows, time and
+     * the counters of sqlite3_stmt_status(), which are reset for every execution. By default no
+     * listener is set and no metrics are collected.
+     *
+     * @param listener The listener, or null to stop collecting metrics.
+     * @see <a
+     *     href="https://www.sqlite.org/c3ref/stmt_status.html">https://www.sqlite.org/c3ref/stmt_status.html</a>
+     */
+    public void setMetricsListener(SQLiteMetricsListener listener) {
+        db.setMetricsListener(listener);
+    }
+
+    /** @return The listener receiving the cost of statements, or null if none is set. */
+    public SQLiteMetricsListener getMetricsListener() {
+        return db.getMetricsListener();
+    }
+
+    /**
+     * Sets a listener that receives the given trace events of every statement. It replaces the
+     * previous listener; the events that are not given are not traced. Use {@link
+     * SQLiteTraceListener.Event#PROFILE} with a threshold to log the slow queries.
+     *
+     * @param listener The listener, or null to disable tracing.
+     * @param events The events to report.
+     * @throws SQLException
+     * @see #setTraceListener(SQLiteTraceListener, Set, long, int)
+     */
+    public void setTraceListener(
+            SQLiteTraceListener listener, Set<SQLiteTraceListener.Event> events)
+            throws SQLException {
+        setTraceListener(listener, events, 0, 1);
+    }
+
+    /**
+     * Sets a listener that receives the given trace events of every statement. The profile events
+     * of statements that took less than the threshold, and the statement and row events that are
+     * not sampled, are dropped by the native library without calling into Java.
+     *
+     * <p>The SQL text of statement and profile events includes the values of the parameters, which
+     * may have to be kept out of logs.
+     *
+     * @param listener The listener, or null to disable tracing.
+     * @param events The events to report.
+     * @param slowQueryNanos Minimum time in nanoseconds of the statements reported by profile
+     *     events; 0 to report all of them.
+     * @param sampleRate Report one in this number of statement and row events; 1 to report all of
+     *     them.
+     * @throws SQLException
+     * @see <a
+     *     href="https://www.sqlite.org/c3ref/trace_v2.html">https://www.sqlite.org/c3ref/trace_v2.html</a>
+     */
+    public void setTraceListener(
+            SQLiteTraceListener listener,
+            Set<SQLiteTraceListener.Event> events,
+            long slowQueryNanos,
+            int sampleRate)
+            throws SQLException {
+        checkOpen();
+        db.setTraceListener(listener, events, slowQueryNanos, sampleRate);
+    }
+
+    /** @return The listener receiving the trace events, or null if tracing is disabled. */
+    public SQLiteTraceListener getTraceListener() {
+        return db.getTraceListener();
+    }
+
     /**
      * Add a listener for DB update events, see https://www.sqlite.org/c3ref/update_hook.html
      *
@@ -452,6 +689,55 @@ public abstract class SQLiteConnection implements Connection {
         db.removeUpdateListener(listener);
     }
 
+    /**
+     * Add a listener receiving the DB update events in batches, once per transaction instead of
+     * once per row. The changes are buffered in native memory, so a bulk update does not call
+     * into Java for each row, see {@link SQLiteUpdateBatchListener}.
+     *
+     * @param listener The listener to receive batches of update events
+     */
+    public void addUpdateBatchListener(SQLiteUpdateBatchListener listener) {
+        db.addUpdateBatchListener(listener);
+    }
+
+    /**
+     * Remove a listener registered for batches of DB update events. The changes buffered for the
+     * current transaction are dropped once no such listener is left.
+     *
+     * @param listener The listener to no longer receive batches of update events
+     */
+    public void removeUpdateBatchListener(SQLiteUpdateBatchListener listener) {
+        db.removeUpdateBatchListener(listener);
+    }
+
+    /**
+     * Add a listener receiving the end of each transaction asynchronously, on an executor, with
+     * the rows changed by the transaction. SQLite commits without waiting for the listener; the
+     * events are delivered in order once the commit completed.
+     *
+     * <p>At most {@code maxPending} events wait for the listener: if it falls behind, the next
+     * events are dropped, which shows as a gap in {@link SQLiteTransactionEvent#getSequence()}.
+     * If the executor rejects a delivery, the events are delivered on the committing thread.
+     *
+     * @param listener The listener to receive transaction events
+     * @param executor The executor running the deliveries
+     * @param maxPending The number of events waiting for the listener, at most
+     */
+    public void addTransactionListener(
+            SQLiteTransactionListener listener, Executor executor, int maxPending) {
+        db.addTransactionListener(listener, executor, maxPending);
+    }
+
+    /**
+     * Remove a listener registered for transaction events. The events already queued are still
+     * delivered.
+     *
+     * @param listener The listener to no longer receive transaction events
+     */
+    public void removeTransactionListener(SQLiteTransactionListener listener) {
+        db.removeTransactionListener(listener);
+    }
+
     /**
      * Add a listener for DB commit/rollback events, see
      * https://www.sqlite.org/c3ref/commit_hook.html
@@ -0,0 +1,142 @@
+package org.sqlite;
+
+/**
+ * Snapshot of the runtime counters of a connection, read with sqlite3_db_status(). The page cache
+ * counters tell how well the cache size fits the load: a low {@link #getCacheHitRatio()} or many
+ * {@link #getCacheSpills()} suggest a larger {@link SQLiteConfig#setCacheSize(int)}.
+ *
+ * @see <a
+ *     href="https://www.sqlite.org/c3ref/c_dbstatus_options.html">https://www.sqlite.org/c3ref/c_dbstatus_options.html</a>
+ */
+public final class SQLiteConnectionStatus {
+    static final int LOOKASIDE_USED = 0;
+    static final int CACHE_USED = 1;
+    static final int SCHEMA_USED = 2;
+    static final int STMT_USED = 3;
+    static final int LOOKASIDE_HIT = 4;
+    static final int LOOKASIDE_MISS_SIZE = 5;
+    static final int LOOKASIDE_MISS_FULL = 6;
+    static final int CACHE_HIT = 7;
+    static final int CACHE_MISS = 8;
+    static final int CACHE_WRITE = 9;
+    static final int DEFERRED_FKS = 10;
+    static final int CACHE_USED_SHARED = 11;
+    static final int CACHE_SPILL = 12;
+    /** number of counters read */
+    static final int COUNT = 13;
+
+    /** current and highwater value of each counter */
+    private final int[] values;
+
+    SQLiteConnectionStatus(int[] values) {
+        this.values = values;
+    }
+
+    private int current(int op) {
+        return values[op * 2];
+    }
+
+    private int highwater(int op) {
+        return values[op * 2 + 1];
+    }
+
+    /** @return Number of lookaside memory slots in use. */
+    public int getLookasideUsed() {
+        return current(LOOKASIDE_USED);
+    }
+
+    /** @return Highest number of lookaside memory slots in use. */
+    public int getLookasideUsedHighwater() {
+        return highwater(LOOKASIDE_USED);
+    }
+
+    /** @return Number of allocations served from lookaside memory. */
+    public int getLookasideHits() {
+        return highwater(LOOKASIDE_HIT);
+    }
+
+    /** @return Number of allocations too large for lookaside memory. */
+    public int getLookasideMissesSize() {
+        return highwater(LOOKASIDE_MISS_SIZE);
+    }
+
+    /** @return Number of allocations made while all lookaside memory was in use. */
+    public int getLookasideMissesFull() {
+        return highwater(LOOKASIDE_MISS_FULL);
+    }
+
+    /** @return Heap memory used by the page cache of the connection, in bytes. */
+    public int getCacheUsed() {
+        return current(CACHE_USED);
+    }
+
+    /**
+     * @return Heap memory used by the page cache, in bytes, with caches shared with other
+     *     connections divided evenly among them.
+     */
+    public int getCacheUsedShared() {
+        return current(CACHE_USED_SHARED);
+    }
+
+    /** @return Number of pages found in the page cache. */
+    public int getCacheHits() {
+        return current(CACHE_HIT);
+    }
+
+    /** @return Number of pages that had to be read from the database file. */
+    public int getCacheMisses() {
+        return current(CACHE_MISS);
+    }
+
+    /** @return Number of dirty pages written to the database file. */
+    public int getCacheWrites() {
+        return current(CACHE_WRITE);
+    }
+
+    /** @return Number of dirty pages written in the middle of a transaction to free cache space. */
+    public int getCacheSpills() {
+        return current(CACHE_SPILL);
+    }
+
+    /** @return Fraction of page reads found in the page cache, or 1 if no page was read. */
+    public double getCacheHitRatio() {
+        long reads = (long) getCacheHits() + getCacheMisses();
+        return reads == 0 ? 1 : (double) getCacheHits() / reads;
+    }
+
+    /** @return Heap memory used by the schemas of the attached databases, in bytes. */
+    public int getSchemaUsed() {
+        return current(SCHEMA_USED);
+    }
+
+    /** @return Heap memory used by the prepared statements of the connection, in bytes. */
+    public int getStatementsUsed() {
+        return current(STMT_USED);
+    }
+
+    /** @return True if deferred foreign key constraints are currently violated. */
+    public boolean hasDeferredForeignKeyViolations() {
+        return current(DEFERRED_FKS) != 0;
+    }
+
+    @Override
+    public String toString() {
+        return "SQLiteConnectionStatus[cacheUsed="
+                + getCacheUsed()
+                + ", cacheHits="
+                + getCacheHits()
+                + ", cacheMisses="
+                + getCacheMisses()
+                + ", cacheWrites="
+                + getCacheWrites()
+                + ", cacheSpills="
+                + getCacheSpills()
+                + ", schemaUsed="
+                + getSchemaUsed()
+                + ", statementsUsed="
+                + getStatementsUsed()
+                + ", lookasideUsed="
+                + getLookasideUsed()
+                + "]";
+    }
+}
@@ -46,6 +46,13 @@ public class SQLiteDataSource implements DataSource {
     private String url = JDBC.PREFIX; // use memory database in default
     private String databaseName = ""; // the name of the current database
 
+    private long commitWindow = -1; // write coalescing disabled by default
+    private int commitBatchSize = 0;
+    private transient SQLiteAsyncConnection writeCoalescer;
+
+    private long changePollMillis = -1; // change notification disabled by default
+    private transient SQLiteChangeNotifier changeNotifier;
+
     /** Default constructor. */
     public SQLiteDataSource() {
         this.config = new SQLiteConfig(); // default configuration
@@ -402,6 +409,36 @@ public class SQLiteDataSource implements DataSource {
         config.setTempStore(TempStore.valueOf(storeType));
     }
 
+    /**
+     * Sets the number of idle prepared statements kept for reuse by each connection.
+     *
+     * @param statements Maximum number of statements to keep; 0 to disable the cache.
+     * @see SQLiteConfig#setStatementCacheSize(int)
+     */
+    public void setStatementCacheSize(int statements) {
+        config.setStatementCacheSize(statements);
+    }
+
+    /**
+     * Sets the maximum memory used by the idle prepared statements of each connection.
+     *
+     * @param bytes Maximum memory in bytes; 0 for no limit.
+     * @see SQLiteConfig#setStatementCacheBytes(long)
+     */
+    public void setStatementCacheBytes(long bytes) {
+        config.setStatementCacheBytes(bytes);
+    }
+
+    /**
+     * Enables or disables waiting for locks held by other connections in Java.
+     *
+     * @param enable True to wait in Java; false to wait in SQLite.
+     * @see SQLiteConfig#setJavaBusyWait(boolean)
+     */
+    public void setJavaBusyWait(boolean enable) {
+        config.setJavaBusyWait(enable);
+    }
+
     /**
      * Set the value of the sqlite3_temp_directory global variable, which many operating-system
      * interface backends use to determine where to store temporary tables and indices.
@@ -437,6 +474,87 @@ public class SQLiteDataSource implements DataSource {
         config.setUserVersion(version);
     }
 
+    /**
+     * Enables queuing updates from many threads on a connection of their own, where they are
+     * committed together in one immediate transaction, see {@link #getWriteCoalescer()}.
+     *
+     * @param windowMillis Time an update waits for others to join its transaction, in
+     *     milliseconds.
+     * @param maxBatchSize Number of waiting updates that are committed without waiting any longer.
+     */
+    public void setWriteCoalescing(long windowMillis, int maxBatchSize) {
+        if (windowMillis < 0 || maxBatchSize < 1) {
+            throw new IllegalArgumentException(
+                    "invalid write coalescing: " + windowMillis + " ms, " + maxBatchSize);
+        }
+        this.commitWindow = windowMillis;
+        this.commitBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Returns the write coalescer of this data source, opening its connection on first use. Each
+     * update passed to {@link SQLiteAsyncConnection#executeUpdate(String, Object...)} gets its own
+     * change count or exception, while the waiting updates share a single BEGIN IMMEDIATE ...
+     * COMMIT. Closing the coalescer closes its connection; the next call opens a new one.
+     *
+     * @return The write coalescer.
+     * @throws SQLException if write coalescing is not enabled or the connection cannot be opened.
+     * @see #setWriteCoalescing(long, int)
+     */
+    public synchronized SQLiteAsyncConnection getWriteCoalescer() throws SQLException {
+        if (commitWindow < 0) {
+            throw new SQLException("write coalescing is not enabled");
+        }
+        if (writeCoalescer == null || writeCoalescer.isClosed()) {
+            SQLiteConnection conn = getConnection(null, null);
+            conn.getConnectionConfig().setTransactionMode(TransactionMode.IMMEDIATE);
+            writeCoalescer = new SQLiteAsyncConnection(conn, commitWindow, commitBatchSize);
+            writeCoalescer.closeConnectionOnClose();
+        }
+        return writeCoalescer;
+    }
+
+    /**
+     * Enables change notification: the connections of this data source report the tables they
+     * change to the listeners of {@link #getChangeNotifier()}.
+     *
+     * @param pollMillis Time between two checks of the data version of the database, to find the
+     *     changes made by other processes, in milliseconds; 0 not to check it.
+     */
+    public void setChangeNotification(long pollMillis) {
+        if (pollMillis < 0) {
+            throw new IllegalArgumentException("invalid poll interval: " + pollMillis + " ms");
+        }
+        this.changePollMillis = pollMillis;
+    }
+
+    /**
+     * Returns the change notifier of this data source, watching every connection it opens. With a
+     * poll interval, the notifier opens a connection of its own to check the data version of the
+     * database. Closing the notifier stops it; the next call opens a new one.
+     *
+     * @return The change notifier.
+     * @throws SQLException if change notification is not enabled or the connection cannot be
+     *     opened.
+     * @see #setChangeNotification(long)
+     */
+    public synchronized SQLiteChangeNotifier getChangeNotifier() throws SQLException {
+        if (changePollMillis < 0) {
+            throw new SQLException("change notification is not enabled");
+        }
+        if (changeNotifier == null || changeNotifier.isClosed()) {
+            SQLiteConnection pollConnection =
+                    changePollMillis > 0 ? JDBC.createConnection(url, config.toProperties()) : null;
+            try {
+                changeNotifier = new SQLiteChangeNotifier(pollConnection, changePollMillis);
+            } catch (SQLException | RuntimeException e) {
+                if (pollConnection != null) pollConnection.close();
+                throw e;
+            }
+        }
+        return changeNotifier;
+    }
+
     // codes for the DataSource interface
 
     /** @see javax.sql.DataSource#getConnection() */
@@ -449,7 +567,16 @@ public class SQLiteDataSource implements DataSource {
         Properties p = config.toProperties();
         if (username != null) p.put("user", username);
         if (password != null) p.put("pass", password);
-        return JDBC.createConnection(url, p);
+        SQLiteConnection conn = JDBC.createConnection(url, p);
+        if (changePollMillis >= 0) {
+            try {
+                getChangeNotifier().watch(conn);
+            } catch (SQLException | RuntimeException e) {
+                conn.close();
+                throw e;
+            }
+        }
+        return conn;
     }
 
     /** @see javax.sql.DataSource#getLogWriter() */
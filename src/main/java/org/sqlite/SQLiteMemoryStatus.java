@@ -0,0 +1,102 @@
+package org.sqlite;
+
+/**
+ * Snapshot of the memory counters of the SQLite library, shared by all connections of the
+ * process, read with sqlite3_status64().
+ *
+ * <p>Keeping the counters takes a global mutex on every allocation, so the bundled library is built
+ * without them, and the memory counters are then 0. Set the {@code org.sqlite.memstatus} system
+ * property to {@code true} before the driver is loaded to collect them.
+ *
+ * @see <a
+ *     href="https://www.sqlite.org/c3ref/c_status_malloc_count.html">https://www.sqlite.org/c3ref/c_status_malloc_count.html</a>
+ */
+public final class SQLiteMemoryStatus {
+    static final int MEMORY_USED = 0;
+    static final int PAGECACHE_USED = 1;
+    static final int PAGECACHE_OVERFLOW = 2;
+    static final int MALLOC_SIZE = 5;
+    static final int PARSER_STACK = 6;
+    static final int PAGECACHE_SIZE = 7;
+    static final int MALLOC_COUNT = 9;
+    /** number of counters read */
+    static final int COUNT = 10;
+
+    /** current and highwater value of each counter */
+    private final long[] values;
+
+    SQLiteMemoryStatus(long[] values) {
+        this.values = values;
+    }
+
+    private long current(int op) {
+        return values[op * 2];
+    }
+
+    private long highwater(int op) {
+        return values[op * 2 + 1];
+    }
+
+    /** @return Heap memory currently allocated by SQLite, in bytes. */
+    public long getMemoryUsed() {
+        return current(MEMORY_USED);
+    }
+
+    /** @return Highest heap memory allocated by SQLite, in bytes. */
+    public long getMemoryHighwater() {
+        return highwater(MEMORY_USED);
+    }
+
+    /** @return Number of separate allocations currently held by SQLite. */
+    public long getMallocCount() {
+        return current(MALLOC_COUNT);
+    }
+
+    /** @return Highest number of separate allocations held by SQLite. */
+    public long getMallocCountHighwater() {
+        return highwater(MALLOC_COUNT);
+    }
+
+    /** @return Size of the largest allocation requested, in bytes. */
+    public long getLargestMalloc() {
+        return highwater(MALLOC_SIZE);
+    }
+
+    /** @return Number of pages used from the static page cache memory, if configured. */
+    public long getPageCacheUsed() {
+        return current(PAGECACHE_USED);
+    }
+
+    /** @return Page cache memory that did not fit the static page cache, in bytes. */
+    public long getPageCacheOverflow() {
+        return current(PAGECACHE_OVERFLOW);
+    }
+
+    /** @return Highest page cache memory that did not fit the static page cache, in bytes. */
+    public long getPageCacheOverflowHighwater() {
+        return highwater(PAGECACHE_OVERFLOW);
+    }
+
+    /** @return Size of the largest page cache allocation requested, in bytes. */
+    public long getLargestPageCacheAllocation() {
+        return highwater(PAGECACHE_SIZE);
+    }
+
+    /** @return Deepest parser stack reached, if SQLite was built with YYTRACKMAXSTACKDEPTH. */
+    public long getParserStackHighwater() {
+        return highwater(PARSER_STACK);
+    }
+
+    @Override
+    public String toString() {
+        return "SQLiteMemoryStatus[memoryUsed="
+                + getMemoryUsed()
+                + ", memoryHighwater="
+                + getMemoryHighwater()
+                + ", mallocCount="
+                + getMallocCount()
+                + ", largestMalloc="
+                + getLargestMalloc()
+                + "]";
+    }
+}
@@ -0,0 +1,14 @@
+package org.sqlite;
+
+/**
+ * Receives the cost of each statement execution of a connection, see {@link
+ * SQLiteConnection#setMetricsListener(SQLiteMetricsListener)}.
+ *
+ * <p>It is called on the thread that resets or closes the statement, while holding its lock, so
+ * it should only record or queue the metrics. Group them by {@link
+ * SQLiteStatementMetrics#getSql()} to find the statements that are run often or scan full tables.
+ */
+public interface SQLiteMetricsListener {
+
+    void onStatement(SQLiteStatementMetrics metrics);
+}
@@ -0,0 +1,121 @@
+package org.sqlite;
+
+/**
+ * Cost of one execution of a statement, from its first step until it was reset or finalized.
+ *
+ * @see <a
+ *     href="https://www.sqlite.org/c3ref/c_stmtstatus_counter.html">https://www.sqlite.org/c3ref/c_stmtstatus_counter.html</a>
+ */
+public final class SQLiteStatementMetrics {
+    private final String sql;
+    private final long steps;
+    private final long rows;
+    private final long elapsedNanos;
+    private final long nativeNanos;
+    private final int fullscanSteps;
+    private final int sorts;
+    private final int autoindexes;
+    private final int vmSteps;
+    private final int reprepares;
+
+    public SQLiteStatementMetrics(
+            String sql,
+            long steps,
+            long rows,
+            long elapsedNanos,
+            long nativeNanos,
+            int fullscanSteps,
+            int sorts,
+            int autoindexes,
+            int vmSteps,
+            int reprepares) {
+        this.sql = sql;
+        this.steps = steps;
+        this.rows = rows;
+        this.elapsedNanos = elapsedNanos;
+        this.nativeNanos = nativeNanos;
+        this.fullscanSteps = fullscanSteps;
+        this.sorts = sorts;
+        this.autoindexes = autoindexes;
+        this.vmSteps = vmSteps;
+        this.reprepares = reprepares;
+    }
+
+    /** @return The SQL text the statement was prepared from. */
+    public String getSql() {
+        return sql;
+    }
+
+    /** @return Number of calls to sqlite3_step(), or of batch entries run. */
+    public long getSteps() {
+        return steps;
+    }
+
+    /** @return Number of result rows returned. */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * @return Time from the first step until the statement was reset or finalized, in nanoseconds,
+     *     including the time the application spent between steps.
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /** @return Time spent in native code stepping the statement, in nanoseconds. */
+    public long getNativeNanos() {
+        return nativeNanos;
+    }
+
+    /** @return Number of forward steps in a full table scan (SQLITE_STMTSTATUS_FULLSCAN_STEP). */
+    public int getFullscanSteps() {
+        return fullscanSteps;
+    }
+
+    /** @return Number of sort operations (SQLITE_STMTSTATUS_SORT). */
+    public int getSorts() {
+        return sorts;
+    }
+
+    /** @return Number of rows inserted into automatic indexes (SQLITE_STMTSTATUS_AUTOINDEX). */
+    public int getAutoindexes() {
+        return autoindexes;
+    }
+
+    /** @return Number of virtual machine operations (SQLITE_STMTSTATUS_VM_STEP). */
+    public int getVmSteps() {
+        return vmSteps;
+    }
+
+    /** @return Number of times the statement was prepared again (SQLITE_STMTSTATUS_REPREPARE). */
+    public int getReprepares() {
+        return reprepares;
+    }
+
+    @Override
+    public String toString() {
+        return "SQLiteStatementMetrics[sql="
+                + sql
+                + ", steps="
+                + steps
+                + ", rows="
+                + rows
+                + ", elapsedNanos="
+                + elapsedNanos
+                + ", nativeNanos="
+                + nativeNanos
+                + ", fullscanSteps="
+                + fullscanSteps
+                + ", sorts="
+                + sorts
+                + ", autoindexes="
+                + autoindexes
+                + ", vmSteps="
+                + vmSteps
+                + ", reprepares="
+                + reprepares
+                + "]";
+    }
+}
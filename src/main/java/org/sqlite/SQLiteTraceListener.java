@@ -0,0 +1,56 @@
+package org.sqlite;
+
+/**
+ * Receives the trace events of a connection, see {@link
+ * SQLiteConnection#setTraceListener(SQLiteTraceListener, java.util.Set, long, int)}. Only the
+ * events the listener was registered for are reported; the others are not traced by SQLite at all.
+ *
+ * <p>It is called on the thread that steps the statement, while SQLite runs it, so it must not use
+ * the connection and should only record or queue the event. Exceptions are thrown to the code that
+ * stepped the statement.
+ *
+ * @see <a
+ *     href="https://www.sqlite.org/c3ref/trace_v2.html">https://www.sqlite.org/c3ref/trace_v2.html</a>
+ */
+public interface SQLiteTraceListener {
+
+    /** The events that can be traced. */
+    enum Event {
+        /** A statement starts running, see {@link #onStatement(String)}. */
+        STATEMENT(0x01),
+        /** A statement finished, see {@link #onProfile(String, long)}. */
+        PROFILE(0x02),
+        /** A statement returned a row, see {@link #onRow(String)}. */
+        ROW(0x04);
+
+        /** The SQLITE_TRACE_* constant of the event. */
+        public final int mask;
+
+        Event(int mask) {
+            this.mask = mask;
+        }
+    }
+
+    /**
+     * Called when a statement starts running, including the statements run by triggers.
+     *
+     * @param sql The SQL text with the values of the parameters, or a comment naming the trigger
+     *     for the statements of triggers.
+     */
+    default void onStatement(String sql) {}
+
+    /**
+     * Called when a statement finished running, if it took at least the slow query threshold.
+     *
+     * @param sql The SQL text with the values of the parameters.
+     * @param nanos The time it took in nanoseconds, as measured by SQLite.
+     */
+    default void onProfile(String sql, long nanos) {}
+
+    /**
+     * Called when a statement returned a row.
+     *
+     * @param sql The SQL text, without the values of the parameters.
+     */
+    default void onRow(String sql) {}
+}
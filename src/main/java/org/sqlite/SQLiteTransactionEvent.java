@@ -0,0 +1,54 @@
+package org.sqlite;
+
+import java.util.Collections;
+import java.util.List;
+
+/** The end of a transaction, delivered to a {@link SQLiteTransactionListener}. */
+public final class SQLiteTransactionEvent {
+    private final long sequence;
+    private final boolean committed;
+    private final List<SQLiteUpdateBatch> changes;
+
+    /**
+     * @param sequence Number of the transaction.
+     * @param committed True if the transaction committed, false if it rolled back.
+     * @param changes The rows changed by the transaction.
+     */
+    public SQLiteTransactionEvent(
+            long sequence, boolean committed, List<SQLiteUpdateBatch> changes) {
+        this.sequence = sequence;
+        this.committed = committed;
+        this.changes = Collections.unmodifiableList(changes);
+    }
+
+    /**
+     * @return Number of the transaction, counting from 1 the transactions that ended on the
+     *     connection since its first transaction listener was added. A gap means that the events
+     *     in between were dropped, as the listener fell behind.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /** @return True if the transaction committed, false if it rolled back. */
+    public boolean isCommitted() {
+        return committed;
+    }
+
+    /**
+     * @return The rows changed by a committed transaction, in the order they were changed, or an
+     *     empty list for a rollback. The changes of a ROLLBACK TO a savepoint are included.
+     */
+    public List<SQLiteUpdateBatch> getChanges() {
+        return changes;
+    }
+
+    /** @return Number of rows changed by a committed transaction. */
+    public int getChangeCount() {
+        int count = 0;
+        for (SQLiteUpdateBatch batch : changes) {
+            count += batch.size();
+        }
+        return count;
+    }
+}
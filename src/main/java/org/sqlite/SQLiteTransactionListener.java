@@ -0,0 +1,23 @@
+package org.sqlite;
+
+/**
+ * Receives the end of the transactions of a connection asynchronously, see {@link
+ * SQLiteConnection#addTransactionListener(SQLiteTransactionListener, java.util.concurrent.Executor,
+ * int)}. Unlike a {@link SQLiteCommitListener}, it is not called while SQLite commits, so a slow
+ * listener does not hold the write lock of the database.
+ *
+ * <p>The events are delivered one at a time, in the order of the transactions, on the threads of
+ * the executor. The listener may use other connections, but not the one it listens to.
+ * Exceptions are reported to the uncaught exception handler of the thread and do not stop the
+ * delivery of the next events.
+ */
+@FunctionalInterface
+public interface SQLiteTransactionListener {
+
+    /**
+     * Called once a transaction committed or rolled back.
+     *
+     * @param event The end of the transaction.
+     */
+    void onTransaction(SQLiteTransactionEvent event);
+}
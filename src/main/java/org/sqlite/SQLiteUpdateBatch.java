@@ -0,0 +1,100 @@
+package org.sqlite;
+
+/**
+ * The rows changed through a connection, delivered to a {@link SQLiteUpdateBatchListener}. The
+ * changes are held in primitive arrays, as recorded by SQLite, and are only turned into objects
+ * when read.
+ */
+public final class SQLiteUpdateBatch {
+    /** Maximum number of changes of a batch, buffered before the transaction commits. */
+    public static final int MAX_SIZE = 4096;
+
+    private final int size;
+    private final byte[] types;
+    private final int[] tables;
+    private final long[] rowIds;
+    private final String[] databaseNames;
+    private final String[] tableNames;
+
+    /**
+     * Creates a batch over arrays filled by the native library; they are not copied.
+     *
+     * @param size Number of changes.
+     * @param types SQLITE_INSERT, SQLITE_DELETE or SQLITE_UPDATE code of each change.
+     * @param tables Index in the names of the table of each change.
+     * @param rowIds Rowid of each change.
+     * @param databaseNames Database names of the tables.
+     * @param tableNames Table names of the tables.
+     */
+    public SQLiteUpdateBatch(
+            int size,
+            byte[] types,
+            int[] tables,
+            long[] rowIds,
+            String[] databaseNames,
+            String[] tableNames) {
+        this.size = size;
+        this.types = types;
+        this.tables = tables;
+        this.rowIds = rowIds;
+        this.databaseNames = databaseNames;
+        this.tableNames = tableNames;
+    }
+
+    /** @return Number of changes of the batch. */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index Index of the change, from 0 to {@link #size()} excluded.
+     * @return The kind of change.
+     */
+    public SQLiteUpdateListener.Type getType(int index) {
+        checkIndex(index);
+        switch (types[index]) {
+            case 18:
+                return SQLiteUpdateListener.Type.INSERT;
+            case 9:
+                return SQLiteUpdateListener.Type.DELETE;
+            case 23:
+                return SQLiteUpdateListener.Type.UPDATE;
+            default:
+                throw new AssertionError("Unknown type: " + types[index]);
+        }
+    }
+
+    /**
+     * @param index Index of the change, from 0 to {@link #size()} excluded.
+     * @return Name of the database of the changed row: "main", "temp" or the name of an attached
+     *     database.
+     */
+    public String getDatabase(int index) {
+        checkIndex(index);
+        return databaseNames[tables[index]];
+    }
+
+    /**
+     * @param index Index of the change, from 0 to {@link #size()} excluded.
+     * @return Name of the table of the changed row.
+     */
+    public String getTable(int index) {
+        checkIndex(index);
+        return tableNames[tables[index]];
+    }
+
+    /**
+     * @param index Index of the change, from 0 to {@link #size()} excluded.
+     * @return Rowid of the changed row.
+     */
+    public long getRowId(int index) {
+        checkIndex(index);
+        return rowIds[index];
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package org.sqlite;
+
+/**
+ * Receives the rows changed through a connection in batches, see {@link
+ * SQLiteConnection#addUpdateBatchListener(SQLiteUpdateBatchListener)}. Unlike a {@link
+ * SQLiteUpdateListener}, which is called back for every row, the changes are buffered in native
+ * memory and delivered once per transaction, just before it commits; in auto-commit mode that is
+ * once per statement. A transaction changing more than {@link SQLiteUpdateBatch#MAX_SIZE} rows is
+ * delivered in several batches, as the buffer fills up.
+ *
+ * <p>The changes of a transaction that is rolled back are dropped, but the batches delivered
+ * before the buffer filled up were already received: {@link #onRollback()} tells that they are
+ * void. A ROLLBACK TO a savepoint does not drop the changes made since the savepoint.
+ *
+ * <p>It is called on the thread that commits, while SQLite runs the statement, so it must not use
+ * the connection. Exceptions are thrown to the code that ran the statement.
+ *
+ * @see <a
+ *     href="https://www.sqlite.org/c3ref/update_hook.html">https://www.sqlite.org/c3ref/update_hook.html</a>
+ */
+public interface SQLiteUpdateBatchListener {
+
+    /**
+     * Called with the rows changed since the previous batch, in the order they were changed.
+     *
+     * @param batch The changes.
+     */
+    void onUpdates(SQLiteUpdateBatch batch);
+
+    /** Called when a transaction is rolled back, including the batches it already delivered. */
+    default void onRollback() {}
+}
@@ -0,0 +1,109 @@
+package org.sqlite.core;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.sqlite.BusyHandler;
+
+/**
+ * Busy handler that waits for locks held by other connections in Java instead of in SQLite, see
+ * {@link org.sqlite.SQLiteConfig#setJavaBusyWait(boolean)}.
+ *
+ * <p>While a statement is stepped for the first time by {@link #step(long)}, the handler gives up
+ * at once, so that sqlite3_step() returns SQLITE_BUSY. The thread is then parked and the statement
+ * stepped again, which sqlite3_step() allows since nothing was done yet, until the busy timeout
+ * elapses. SQLite only invokes the handler if waiting cannot deadlock, so SQLITE_BUSY is returned
+ * at once otherwise. All other calls that find the database locked, such as a statement that
+ * already returned rows and would start over, sleep in the handler like sqlite3_busy_timeout().
+ */
+final class BusyWait extends BusyHandler implements Codes {
+    /** delays between attempts in milliseconds, the same as sqlite3_busy_timeout() */
+    private static final int[] DELAYS = {1, 2, 5, 10, 15, 20, 25, 25, 25, 50, 50, 100};
+
+    private final NativeDB db;
+    /** per thread, the flag set by the handler during a step that is retried in Java */
+    private final ThreadLocal<boolean[]> retried = new ThreadLocal<>();
+
+    private volatile int timeout = 0;
+
+    BusyWait(NativeDB db) {
+        this.db = db;
+    }
+
+    /** @param ms Time to wait for locks in milliseconds. */
+    void setTimeout(int ms) {
+        this.timeout = ms;
+    }
+
+    /**
+     * Steps a statement, waiting for locks in Java if it has not been stepped yet.
+     *
+     * @param stmt Pointer to the statement.
+     * @return The result of the last call to sqlite3_step().
+     * @throws SQLException
+     */
+    int step(long stmt) throws SQLException {
+        int ms = timeout;
+        if (ms <= 0 || db.stmt_busy(stmt)) {
+            return db._step(stmt);
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ms);
+        boolean[] outer = retried.get();
+        try {
+            for (int count = 0; ; count++) {
+                boolean[] busy = new boolean[1];
+                retried.set(busy);
+                int rc = db._step(stmt);
+                if (!busy[0] || (rc & 0xFF) != SQLITE_BUSY || !park(count, deadline)) {
+                    return rc;
+                }
+            }
+        } finally {
+            retried.set(outer);
+        }
+    }
+
+    /**
+     * Parks the thread before the next attempt.
+     *
+     * @return True if the thread was parked; false if the timeout elapsed or it was interrupted.
+     */
+    private boolean park(int count, long deadline) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0 || Thread.currentThread().isInterrupted()) {
+            return false;
+        }
+        long delay = TimeUnit.MILLISECONDS.toNanos(DELAYS[Math.min(count, DELAYS.length - 1)]);
+        LockSupport.parkNanos(this, Math.min(delay, remaining));
+        return true;
+    }
+
+    @Override
+    protected int callback(int nbPrevInvok) {
+        boolean[] busy = retried.get();
+        if (busy != null) {
+            busy[0] = true;
+            return 0;
+        }
+
+        // same as sqlite3_busy_timeout()
+        int ms = timeout;
+        int count = Math.min(nbPrevInvok, DELAYS.length - 1);
+        int delay = DELAYS[count];
+        int prior = 0;
+        for (int i = 0; i < count; i++) prior += DELAYS[i];
+        if (count == DELAYS.length - 1) prior += delay * (nbPrevInvok - count);
+        if (prior + delay > ms) {
+            delay = ms - prior;
+            if (delay <= 0) return 0;
+        }
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        }
+        return 1;
+    }
+}
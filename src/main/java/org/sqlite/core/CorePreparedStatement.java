@@ -16,6 +16,8 @@
 
 package org.sqlite.core;
 
+import java.io.InputStream;
+import java.io.Reader;
 import java.sql.Date;
 import java.sql.SQLException;
 import java.util.Arrays;
@@ -29,6 +31,8 @@ public abstract class CorePreparedStatement extends JDBC4Statement {
     protected int columnCount;
     protected int paramCount;
     protected int batchQueryCount;
+    /** parameter rows added to the batch; the current parameters are kept in batch */
+    private ParameterBatch batchRows;
 
     /**
      * Constructs a prepared statement on a provided connection.
@@ -51,6 +55,16 @@ public abstract class CorePreparedStatement extends JDBC4Statement {
         batchPos = 0;
     }
 
+    /** @see java.sql.PreparedStatement#addBatch() */
+    public void addBatch() throws SQLException {
+        checkOpen();
+        if (batchRows == null) {
+            batchRows = new ParameterBatch(paramCount);
+        }
+        batchRows.add(batch);
+        batchQueryCount++;
+    }
+
     /** @see org.sqlite.jdbc3.JDBC3Statement#executeBatch() */
     @Override
     public int[] executeBatch() throws SQLException {
@@ -65,8 +79,7 @@ public abstract class CorePreparedStatement extends JDBC4Statement {
         }
 
         try {
-            return conn.getDatabase()
-                    .executeBatch(pointer, batchQueryCount, batch, conn.getAutoCommit());
+            return conn.getDatabase().executeBatch(pointer, batchRows, conn.getAutoCommit());
         } finally {
             clearBatch();
         }
@@ -76,6 +89,9 @@ public abstract class CorePreparedStatement extends JDBC4Statement {
     @Override
     public void clearBatch() throws SQLException {
         super.clearBatch();
+        if (batchRows != null) {
+            batchRows.clear();
+        }
         batchQueryCount = 0;
     }
 
@@ -112,6 +128,34 @@ public abstract class CorePreparedStatement extends JDBC4Statement {
         batch[batchPos + pos - 1] = value;
     }
 
+    /**
+     * Assigns a stream to the parameter at the specific position, to be read when the statement
+     * is executed. The stream must be set again to execute the statement again.
+     *
+     * @param pos Index of the parameter, starting from 1.
+     * @param in The stream of the value.
+     * @param length Number of bytes to read, or -1 to read until the end of the stream.
+     * @param text True to bind the bytes as UTF-8 text, false as a BLOB.
+     * @throws SQLException
+     */
+    protected void batchStream(int pos, InputStream in, long length, boolean text)
+            throws SQLException {
+        batch(pos, in == null ? null : new StreamParameter(in, length, text));
+    }
+
+    /**
+     * Assigns a character stream to the parameter at the specific position, to be read when the
+     * statement is executed. The reader must be set again to execute the statement again.
+     *
+     * @param pos Index of the parameter, starting from 1.
+     * @param reader The characters of the value.
+     * @param length Number of characters to read, or -1 to read until the end of the reader.
+     * @throws SQLException
+     */
+    protected void batchStream(int pos, Reader reader, long length) throws SQLException {
+        batch(pos, reader == null ? null : StreamParameter.of(reader, length));
+    }
+
     /** Store the date in the user's preferred format (text, int, or real) */
     protected void setDateByMilliseconds(int pos, Long value, Calendar calendar)
             throws SQLException {
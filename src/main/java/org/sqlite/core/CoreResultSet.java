@@ -19,6 +19,7 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
 import org.sqlite.SQLiteConnectionConfig;
 
 /** Implements a JDBC ResultSet. */
@@ -38,8 +39,13 @@ public abstract class CoreResultSet implements Codes {
 
     protected boolean[][] meta = null;
 
-    /** 0 means no limit, must check against maxRows */
+    /**
+     * Fetch size; when greater than 1, rows are stepped that many at a time into {@link #block}.
+     * Kept across executions of the statement, like maxRows.
+     */
     protected int limitRows;
+    /** rows stepped ahead of the statement, or null if values are read from the statement */
+    protected RowBlock block = null;
     /** number of current row, starts at 1 (0 is for before loading data) */
     protected int row = 0;
     /** last column accessed, for wasNull(). -1 if none */
@@ -126,7 +132,7 @@ public abstract class CoreResultSet implements Codes {
         cols = null;
         colsMeta = null;
         meta = null;
-        limitRows = 0;
+        block = null;
         row = 0;
         lastCol = -1;
         columnNameToIndex = null;
@@ -136,8 +142,9 @@ public abstract class CoreResultSet implements Codes {
             return;
         }
 
-        DB db = stmt.getDatabase();
-        synchronized (db) {
+        ReentrantLock lock = stmt.getDatabase().getLock();
+        lock.lock();
+        try {
             if (!stmt.pointer.isClosed()) {
                 stmt.pointer.safeRunInt(DB::reset);
 
@@ -146,6 +153,8 @@ public abstract class CoreResultSet implements Codes {
                     ((Statement) stmt).close();
                 }
             }
+        } finally {
+            lock.unlock();
         }
 
         open = false;
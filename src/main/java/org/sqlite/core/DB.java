@@ -15,12 +15,26 @@
  */
 package org.sqlite.core;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
 import java.sql.BatchUpdateException;
 import java.sql.SQLException;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import org.sqlite.BatchFunction;
 import org.sqlite.BusyHandler;
 import org.sqlite.Collation;
 import org.sqlite.Function;
@@ -29,6 +43,12 @@ import org.sqlite.SQLiteCommitListener;
 import org.sqlite.SQLiteConfig;
 import org.sqlite.SQLiteErrorCode;
 import org.sqlite.SQLiteException;
+import org.sqlite.SQLiteMetricsListener;
+import org.sqlite.SQLiteTraceListener;
+import org.sqlite.SQLiteTransactionEvent;
+import org.sqlite.SQLiteTransactionListener;
+import org.sqlite.SQLiteUpdateBatch;
+import org.sqlite.SQLiteUpdateBatchListener;
 import org.sqlite.SQLiteUpdateListener;
 
 /*
@@ -49,6 +69,20 @@ public abstract class DB implements Codes {
     private final SQLiteConfig config;
     private final AtomicBoolean closed = new AtomicBoolean(true);
 
+    /**
+     * Lock of the connection state: opening and closing, preparing and finalizing statements,
+     * handlers and anything that reads the changes of the last statement. Statements have locks of
+     * their own, see {@link SafeStmtPtr}; when both are needed the connection lock is always taken
+     * first.
+     */
+    private final ConnectionLock lock = new ConnectionLock();
+
+    /** Orders the locks of two connections with the same identity hash, see {@link #lockWith}. */
+    private static final ReentrantLock tieLock = new ReentrantLock();
+
+    /** True if SQLite serializes the use of the connection itself (SQLITE_OPEN_FULLMUTEX). */
+    private volatile boolean serialized = false;
+
     /** The "begin;"and "commit;" statement handles. */
     volatile SafeStmtPtr begin;
 
@@ -57,13 +91,53 @@ public abstract class DB implements Codes {
     /** Tracer for statements to avoid unfinalized statements on db close. */
     private final Set<SafeStmtPtr> stmts = ConcurrentHashMap.newKeySet();
 
-    private final Set<SQLiteUpdateListener> updateListeners = new HashSet<>();
-    private final Set<SQLiteCommitListener> commitListeners = new HashSet<>();
+    /** Open BLOB handles, closed with the database. */
+    private final Set<NativeHandle> blobs = ConcurrentHashMap.newKeySet();
+
+    /** Sessions recording the changes of this database, deleted with it. */
+    private final Set<NativeHandle> sessions = ConcurrentHashMap.newKeySet();
+
+    /** Incremental backups from or to this database, with the database at the other end. */
+    private final Map<NativeHandle, DB> backups = new ConcurrentHashMap<>();
+
+    /** Buffers that deserialized databases are read from in place, by lower case schema name. */
+    private final Map<String, ByteBuffer> sharedBuffers = new ConcurrentHashMap<>();
+
+    /** Idle statements kept for reuse, or null if statement caching is disabled. */
+    private final StatementCache statementCache;
+
+    /** Collects the cost of statements, or null if no metrics listener is set. */
+    private volatile StatementMetrics metrics;
+
+    /** Receives the trace events, or null if tracing is disabled. */
+    private volatile SQLiteTraceListener traceListener;
+
+    private final Set<SQLiteUpdateListener> updateListeners = new CopyOnWriteArraySet<>();
+    private final Set<SQLiteCommitListener> commitListeners = new CopyOnWriteArraySet<>();
+    private final Set<SQLiteUpdateBatchListener> updateBatchListeners =
+            new CopyOnWriteArraySet<>();
+    private final Set<TransactionDispatcher> transactionDispatchers = new CopyOnWriteArraySet<>();
+
+    /** Number of the last transaction reported to the transaction listeners. */
+    private long transactionSequence;
+
+    /** Rows changed by the current transaction, for the transaction listeners. */
+    private final List<SQLiteUpdateBatch> transactionChanges = new ArrayList<>();
+
+    /** Ends of transactions not yet queued for the transaction listeners, see {@link #lock}. */
+    private final List<SQLiteTransactionEvent> endedTransactions = new ArrayList<>();
 
     public DB(String url, String fileName, SQLiteConfig config) throws SQLException {
         this.url = url;
         this.fileName = fileName;
         this.config = config;
+        this.statementCache =
+                config.getStatementCacheSize() > 0
+                        ? new StatementCache(
+                                this,
+                                config.getStatementCacheSize(),
+                                config.getStatementCacheBytes())
+                        : null;
     }
 
     public String getUrl() {
@@ -78,6 +152,53 @@ public abstract class DB implements Codes {
         return config;
     }
 
+    /**
+     * Returns the lock of the connection state. Hold it to run several calls that must not be
+     * interleaved with other threads using the connection, such as a statement and a call to {@link
+     * #changes()}. Its holder never waits for another thread inside SQLite, so functions and
+     * listeners may take it while a statement is stepped.
+     *
+     * @return The lock of the connection.
+     */
+    public final ReentrantLock getLock() {
+        return lock;
+    }
+
+    /**
+     * @return True if SQLite serializes the use of the connection, so that statements may be used
+     *     by different threads at the same time; false if the driver must serialize all use of the
+     *     connection (SQLITE_OPEN_NOMUTEX).
+     */
+    public final boolean isSerialized() {
+        return serialized;
+    }
+
+    /** @return The statement cache, or null if statement caching is disabled. */
+    StatementCache getStatementCache() {
+        return statementCache;
+    }
+
+    /**
+     * Sets the listener that receives the cost of each statement execution. Statements that are
+     * running when the listener changes are not reported.
+     *
+     * @param listener The listener, or null to stop collecting metrics.
+     */
+    public final void setMetricsListener(SQLiteMetricsListener listener) {
+        metrics = listener != null ? new StatementMetrics(this, listener) : null;
+    }
+
+    /** @return The listener that receives the cost of statements, or null if none is set. */
+    public final SQLiteMetricsListener getMetricsListener() {
+        StatementMetrics m = metrics;
+        return m != null ? m.getListener() : null;
+    }
+
+    /** @return The collector of statement metrics, or null if no listener is set. */
+    final StatementMetrics getMetrics() {
+        return metrics;
+    }
+
     // WRAPPER FUNCTIONS ////////////////////////////////////////////
 
     /**
@@ -121,6 +242,54 @@ public abstract class DB implements Codes {
      */
     abstract String errmsg() throws SQLException;
 
+    /**
+     * @return True if the connection has a mutex, i.e. it was opened in serialized threading mode.
+     * @throws SQLException
+     * @see <a
+     *     href="http://www.sqlite.org/c3ref/db_mutex.html">http://www.sqlite.org/c3ref/db_mutex.html</a>
+     */
+    abstract boolean db_mutex() throws SQLException;
+
+    /**
+     * Enters the mutex of the connection if no other thread holds it.
+     *
+     * @return SQLITE_OK if the mutex was entered, SQLITE_BUSY if another thread holds it, or
+     *     SQLITE_MISUSE if the connection has no mutex or is closed.
+     * @see <a
+     *     href="http://www.sqlite.org/c3ref/mutex_alloc.html">http://www.sqlite.org/c3ref/mutex_alloc.html</a>
+     */
+    abstract int mutex_try();
+
+    /** Waits until no other thread holds the mutex of the connection, without entering it. */
+    abstract void mutex_wait();
+
+    /** Leaves the mutex of the connection entered with {@link #mutex_try()}. */
+    abstract void mutex_leave();
+
+    /**
+     * Reads the counters of the connection, see {@link org.sqlite.SQLiteConnectionStatus}.
+     *
+     * @param count Number of counters to read, starting from 0 (SQLITE_DBSTATUS_LOOKASIDE_USED).
+     * @param reset True to reset the counters after reading them.
+     * @return The current and highwater value of each counter, one pair after the other.
+     * @throws SQLException
+     * @see <a
+     *     href="https://www.sqlite.org/c3ref/db_status.html">https://www.sqlite.org/c3ref/db_status.html</a>
+     */
+    public abstract int[] db_status(int count, boolean reset) throws SQLException;
+
+    /**
+     * Reads the counters of the library, see {@link org.sqlite.SQLiteMemoryStatus}.
+     *
+     * @param count Number of counters to read, starting from 0 (SQLITE_STATUS_MEMORY_USED).
+     * @param reset True to reset the highwater marks after reading them.
+     * @return The current and highwater value of each counter, one pair after the other.
+     * @throws SQLException
+     * @see <a
+     *     href="https://www.sqlite.org/c3ref/status.html">https://www.sqlite.org/c3ref/status.html</a>
+     */
+    public abstract long[] status64(int count, boolean reset) throws SQLException;
+
     /**
      * Returns the value for SQLITE_VERSION, SQLITE_VERSION_NUMBER, and SQLITE_SOURCE_ID C
      * preprocessor macros that are associated with the library.
@@ -184,21 +353,26 @@ public abstract class DB implements Codes {
      * @see <a
      *     href="http://www.sqlite.org/c3ref/exec.html">http://www.sqlite.org/c3ref/exec.html</a>
      */
-    public final synchronized void exec(String sql, boolean autoCommit) throws SQLException {
-        SafeStmtPtr pointer = prepare(sql);
+    public final void exec(String sql, boolean autoCommit) throws SQLException {
+        lock.lock();
         try {
-            int rc = pointer.safeRunInt(DB::step);
-            switch (rc) {
-                case SQLITE_DONE:
-                    ensureAutoCommit(autoCommit);
-                    return;
-                case SQLITE_ROW:
-                    return;
-                default:
-                    throwex(rc);
+            SafeStmtPtr pointer = prepare(sql);
+            try {
+                int rc = pointer.safeRunInt(DB::step);
+                switch (rc) {
+                    case SQLITE_DONE:
+                        ensureAutoCommit(autoCommit);
+                        return;
+                    case SQLITE_ROW:
+                        return;
+                    default:
+                        throwex(rc);
+                }
+            } finally {
+                pointer.close();
             }
         } finally {
-            pointer.close();
+            lock.unlock();
         }
     }
 
@@ -212,16 +386,22 @@ public abstract class DB implements Codes {
      * @see <a
      *     href="http://www.sqlite.org/c3ref/open.html">http://www.sqlite.org/c3ref/open.html</a>
      */
-    public final synchronized void open(String file, int openFlags) throws SQLException {
-        _open(file, openFlags);
-        closed.set(false);
+    public final void open(String file, int openFlags) throws SQLException {
+        lock.lock();
+        try {
+            _open(file, openFlags);
+            closed.set(false);
+            serialized = db_mutex();
 
-        if (fileName.startsWith("file:") && !fileName.contains("cache=")) {
-            // URI cache overrides flags
-            shared_cache(config.isEnabledSharedCache());
+            if (fileName.startsWith("file:") && !fileName.contains("cache=")) {
+                // URI cache overrides flags
+                shared_cache(config.isEnabledSharedCache());
+            }
+            enable_load_extension(config.isEnabledLoadExtension());
+            busy_timeout(config.getBusyTimeout());
+        } finally {
+            lock.unlock();
         }
-        enable_load_extension(config.isEnabledLoadExtension());
-        busy_timeout(config.getBusyTimeout());
     }
 
     /**
@@ -232,44 +412,84 @@ public abstract class DB implements Codes {
      * @see <a
      *     href="http://www.sqlite.org/c3ref/close.html">http://www.sqlite.org/c3ref/close.html</a>
      */
-    public final synchronized void close() throws SQLException {
-        // finalize any remaining statements before closing db
-        for (SafeStmtPtr element : stmts) {
-            element.close();
-        }
+    public final void close() throws SQLException {
+        lock.lock();
+        try {
+            // SQLite frees its mutex with the connection
+            lock.leaveMutex();
+
+            // finalize any remaining statements before closing db
+            for (SafeStmtPtr element : stmts) {
+                element.close();
+            }
+
+            // clean up commit object
+            if (begin != null) begin.close();
+            if (commit != null) commit.close();
+
+            if (statementCache != null) statementCache.clear();
+
+            for (NativeHandle blob : blobs) {
+                blob_close(blob.pointer);
+            }
+            blobs.clear();
+
+            for (NativeHandle session : sessions) {
+                session_delete(session.pointer);
+            }
+            sessions.clear();
 
-        // clean up commit object
-        if (begin != null) begin.close();
-        if (commit != null) commit.close();
+            for (Map.Entry<NativeHandle, DB> backup : backups.entrySet()) {
+                backup_finish(backup.getKey().pointer);
+                backup.getValue().backups.remove(backup.getKey());
+            }
+            backups.clear();
 
-        closed.set(true);
-        _close();
+            closed.set(true);
+            lock.awaitMutexWaiters();
+            _close();
+            sharedBuffers.clear();
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
-     * Complies the an SQL statement.
+     * Complies the an SQL statement, or takes it from the statement cache if it was compiled
+     * before.
      *
      * @param stmt The SQL statement to compile.
      * @throws SQLException
      * @see <a
      *     href="http://www.sqlite.org/c3ref/prepare.html">http://www.sqlite.org/c3ref/prepare.html</a>
      */
-    public final synchronized void prepare(CoreStatement stmt) throws SQLException {
+    public final void prepare(CoreStatement stmt) throws SQLException {
         if (stmt.sql == null) {
             throw new NullPointerException();
         }
-        if (stmt.pointer != null) {
-            stmt.pointer.close();
-        }
-        stmt.pointer = prepare(stmt.sql);
-        final boolean added = stmts.add(stmt.pointer);
-        if (!added) {
-            throw new IllegalStateException("Already added pointer to statements set");
+        lock.lock();
+        try {
+            if (stmt.pointer != null) {
+                stmt.pointer.close();
+            }
+            if (statementCache != null) {
+                long ptr = statementCache.take(stmt.sql);
+                stmt.pointer = ptr != 0 ? new SafeStmtPtr(this, ptr) : prepare(stmt.sql);
+                stmt.pointer.cacheKey = stmt.sql;
+            } else {
+                stmt.pointer = prepare(stmt.sql);
+            }
+            final boolean added = stmts.add(stmt.pointer);
+            if (!added) {
+                throw new IllegalStateException("Already added pointer to statements set");
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
     /**
-     * Destroys a statement.
+     * Destroys a statement, or resets it and keeps it in the statement cache.
      *
      * @param safePtr the pointer wrapper to remove from internal structures
      * @param ptr the raw pointer to free
@@ -278,11 +498,19 @@ public abstract class DB implements Codes {
      * @see <a
      *     href="http://www.sqlite.org/c3ref/finalize.html">http://www.sqlite.org/c3ref/finalize.html</a>
      */
-    public synchronized int finalize(SafeStmtPtr safePtr, long ptr) throws SQLException {
+    public int finalize(SafeStmtPtr safePtr, long ptr) throws SQLException {
+        lock.lock();
         try {
+            if (safePtr.cacheKey != null
+                    && statementCache != null
+                    && !isClosed()
+                    && statementCache.put(safePtr.cacheKey, ptr)) {
+                return SQLITE_OK;
+            }
             return finalize(ptr);
         } finally {
             stmts.remove(safePtr);
+            lock.unlock();
         }
     }
 
@@ -362,6 +590,44 @@ public abstract class DB implements Codes {
      */
     public abstract int reset(long stmt) throws SQLException;
 
+    /**
+     * @param stmt Pointer to the statement.
+     * @param op Counter to read, one of the SQLITE_STMTSTATUS_ codes.
+     * @param reset True to reset the counter to zero after reading it.
+     * @return Value of the counter.
+     * @throws SQLException
+     * @see <a
+     *     href="https://www.sqlite.org/c3ref/stmt_status.html">https://www.sqlite.org/c3ref/stmt_status.html</a>
+     */
+    public abstract int stmt_status(long stmt, int op, boolean reset) throws SQLException;
+
+    /**
+     * @param stmt Pointer to the statement.
+     * @return The SQL text the statement was prepared from.
+     * @throws SQLException
+     * @see <a
+     *     href="https://www.sqlite.org/c3ref/expanded_sql.html">https://www.sqlite.org/c3ref/expanded_sql.html</a>
+     */
+    public abstract String stmt_sql(long stmt) throws SQLException;
+
+    /**
+     * Binds and steps a statement once for every row of a batch, stopping at the first row that
+     * fails. The statement is reset before each row but not after the last one.
+     *
+     * @param stmt Pointer to the statement.
+     * @param count Number of rows.
+     * @param types Datatype code of every parameter of every row.
+     * @param values Values of the parameters, see {@link ParameterBatch}.
+     * @param bytes UTF-8 text and blob values of the parameters.
+     * @param changes Receives the number of rows changed by each row of the batch. For the row that
+     *     failed, it receives the result code of the failed bind or step instead.
+     * @return Number of rows executed successfully; count if there was no error.
+     * @throws SQLException
+     */
+    abstract int execute_batch(
+            long stmt, int count, byte[] types, long[] values, byte[] bytes, long[] changes)
+            throws SQLException;
+
     /**
      * Reset all bindings on a prepared statement (reset all host parameters to NULL).
      *
@@ -441,6 +707,19 @@ public abstract class DB implements Codes {
      */
     public abstract String column_text(long stmt, int col) throws SQLException;
 
+    /**
+     * Copies the value of a column as UTF-8 text into a buffer, without creating a String.
+     *
+     * @param stmt Pointer to the statement.
+     * @param col Number of column.
+     * @param buffer Buffer to copy the text into; nothing is copied if it is null or too small.
+     * @return Length of the text in bytes, or -1 if the value is NULL.
+     * @throws SQLException
+     * @see <a
+     *     href="http://www.sqlite.org/c3ref/column_blob.html">http://www.sqlite.org/c3ref/column_blob.html</a>
+     */
+    public abstract int column_text_copy(long stmt, int col, byte[] buffer) throws SQLException;
+
     /**
      * @param stmt Pointer to the statement.
      * @param col Number of column.
@@ -481,6 +760,29 @@ public abstract class DB implements Codes {
      */
     public abstract int column_int(long stmt, int col) throws SQLException;
 
+    /**
+     * Steps a statement up to the given number of rows and copies the values of every row into a
+     * single buffer, so the rows can be read without further calls into the native library. The
+     * layout of the buffer is decoded by {@link RowBlock}.
+     *
+     * @param stmt Pointer to the statement.
+     * @param maxRows Maximum number of rows to step.
+     * @return Buffer holding the final step status, the number of rows and their values.
+     * @throws SQLException
+     * @see <a
+     *     href="http://www.sqlite.org/c3ref/step.html">http://www.sqlite.org/c3ref/step.html</a>
+     */
+    public abstract byte[] step_block(long stmt, int maxRows) throws SQLException;
+
+    /**
+     * Renders a REAL value as TEXT the way SQLite does when a REAL column is read as text.
+     *
+     * @param value The value.
+     * @return The text form of the value.
+     * @throws SQLException
+     */
+    public abstract String format_real(double value) throws SQLException;
+
     /**
      * Binds NULL value to prepared statements with the pointer to the statement object and the
      * index of the SQL parameter to be set to NULL.
@@ -562,6 +864,24 @@ public abstract class DB implements Codes {
      */
     abstract int bind_blob(long stmt, int pos, byte[] v) throws SQLException;
 
+    /**
+     * Binds the bytes of a stream as blob or text value to prepared statements. The stream is
+     * copied in chunks into memory that is handed over to SQLite.
+     *
+     * @param stmt Pointer to the statement.
+     * @param pos Index of the SQL parameter to be set.
+     * @param in The stream to read the value from.
+     * @param length Number of bytes to read, or -1 to read until the end of the stream.
+     * @param text True to bind the bytes as UTF-8 text, false as a blob.
+     * @return <a href="http://www.sqlite.org/c3ref/c_abort.html">Result Codes</a>
+     * @throws SQLException
+     * @throws IOException if the stream could not be read or ended early.
+     * @see <a
+     *     href="http://www.sqlite.org/c3ref/bind_blob.html">http://www.sqlite.org/c3ref/bind_blob.html</a>
+     */
+    abstract int bind_stream(long stmt, int pos, InputStream in, long length, boolean text)
+            throws SQLException, IOException;
+
     /**
      * Sets the result of an SQL function as NULL with the pointer to the SQLite database context.
      *
@@ -731,6 +1051,28 @@ public abstract class DB implements Codes {
      */
     public abstract int destroy_function(String name) throws SQLException;
 
+    /**
+     * Create a batch function with given name and the function object, as an eponymous virtual
+     * table.
+     *
+     * @param name The function name to be created.
+     * @param f Batch function object.
+     * @return <a href="https://www.sqlite.org/c3ref/c_abort.html">Result Codes</a>
+     * @throws SQLException
+     * @see <a
+     *     href="https://www.sqlite.org/c3ref/create_module.html">https://www.sqlite.org/c3ref/create_module.html</a>
+     */
+    public abstract int create_batch_function(String name, BatchFunction f) throws SQLException;
+
+    /**
+     * De-registers a batch function
+     *
+     * @param name Name of the function to de-registered.
+     * @return <a href="https://www.sqlite.org/c3ref/c_abort.html">Result Codes</a>
+     * @throws SQLException
+     */
+    public abstract int destroy_batch_function(String name) throws SQLException;
+
     /**
      * Create a user defined collation with given collation name and the collation object.
      *
@@ -772,6 +1114,54 @@ public abstract class DB implements Codes {
     public abstract int restore(String dbName, String sourceFileName, ProgressObserver observer)
             throws SQLException;
 
+    /**
+     * Starts an incremental backup of a database of this connection to a database of another.
+     *
+     * @param schema Name of the database to copy.
+     * @param dest Connection to copy to.
+     * @param destSchema Name of the database of the destination to overwrite.
+     * @return Pointer to the backup handle.
+     * @throws SQLException
+     * @see <a
+     *     href="https://www.sqlite.org/c3ref/backup_finish.html#sqlite3backupinit">https://www.sqlite.org/c3ref/backup_finish.html#sqlite3backupinit</a>
+     */
+    abstract long backup_init(String schema, DB dest, String destSchema) throws SQLException;
+
+    /**
+     * @param backup Pointer to the backup handle.
+     * @param pages Number of pages to copy, or a negative number to copy all remaining pages.
+     * @return SQLITE_OK if pages remain, SQLITE_DONE when complete, SQLITE_BUSY or SQLITE_LOCKED
+     *     if a database was locked, or an error code.
+     * @throws SQLException
+     * @see <a
+     *     href="https://www.sqlite.org/c3ref/backup_finish.html#sqlite3backupstep">https://www.sqlite.org/c3ref/backup_finish.html#sqlite3backupstep</a>
+     */
+    abstract int backup_step(long backup, int pages) throws SQLException;
+
+    /**
+     * @param backup Pointer to the backup handle.
+     * @return Number of pages left to copy as of the last step.
+     * @throws SQLException
+     */
+    abstract int backup_remaining(long backup) throws SQLException;
+
+    /**
+     * @param backup Pointer to the backup handle.
+     * @return Number of pages of the source database as of the last step.
+     * @throws SQLException
+     */
+    abstract int backup_pagecount(long backup) throws SQLException;
+
+    /**
+     * @param backup Pointer to the backup handle.
+     * @return <a href="https://www.sqlite.org/c3ref/c_abort.html">Result Codes</a> of the last
+     *     step that failed, if any.
+     * @throws SQLException
+     * @see <a
+     *     href="https://www.sqlite.org/c3ref/backup_finish.html#sqlite3backupfinish">https://www.sqlite.org/c3ref/backup_finish.html#sqlite3backupfinish</a>
+     */
+    abstract int backup_finish(long backup) throws SQLException;
+
     /**
      * @param id The id of the limit.
      * @param value The new value of the limit.
@@ -782,132 +1172,1044 @@ public abstract class DB implements Codes {
      */
     public abstract int limit(int id, int value) throws SQLException;
 
-    public interface ProgressObserver {
-        void progress(int remaining, int pageCount);
-    }
-
-    /** Progress handler */
-    public abstract void register_progress_handler(int vmCalls, ProgressHandler progressHandler)
+    /**
+     * Opens a BLOB for incremental I/O.
+     *
+     * @param database Name of the database: "main", "temp" or the name of an attached database.
+     * @param table Name of the table.
+     * @param column Name of the column.
+     * @param rowId Rowid of the row.
+     * @param writable True to open the BLOB for reading and writing; false to only read it.
+     * @return Pointer to the BLOB handle.
+     * @throws SQLException
+     * @see <a
+     *     href="https://www.sqlite.org/c3ref/blob_open.html">https://www.sqlite.org/c3ref/blob_open.html</a>
+     */
+    abstract long blob_open(
+            String database, String table, String column, long rowId, boolean writable)
             throws SQLException;
 
-    public abstract void clear_progress_handler() throws SQLException;
-
     /**
-     * Returns an array describing the attributes (not null, primary key and auto increment) of
-     * columns.
-     *
-     * @param stmt Pointer to the statement.
-     * @return Column attribute array.<br>
-     *     index[col][0] = true if column constrained NOT NULL;<br>
-     *     index[col][1] = true if column is part of the primary key; <br>
-     *     index[col][2] = true if column is auto-increment.
+     * @param blob Pointer to the BLOB handle.
+     * @param rowId Rowid of the row to move the handle to.
+     * @return <a href="https://www.sqlite.org/c3ref/c_abort.html">Result Codes</a>
      * @throws SQLException
+     * @see <a
+     *     href="https://www.sqlite.org/c3ref/blob_reopen.html">https://www.sqlite.org/c3ref/blob_reopen.html</a>
      */
-    abstract boolean[][] column_metadata(long stmt) throws SQLException;
+    abstract int blob_reopen(long blob, long rowId) throws SQLException;
 
-    // COMPOUND FUNCTIONS ////////////////////////////////////////////
+    /**
+     * @param blob Pointer to the BLOB handle.
+     * @return <a href="https://www.sqlite.org/c3ref/c_abort.html">Result Codes</a>
+     * @throws SQLException
+     * @see <a
+     *     href="https://www.sqlite.org/c3ref/blob_close.html">https://www.sqlite.org/c3ref/blob_close.html</a>
+     */
+    abstract int blob_close(long blob) throws SQLException;
 
     /**
-     * Returns an array of column names in the result set of the SELECT statement.
-     *
-     * @param stmt Stmt object.
-     * @return String array of column names.
+     * @param blob Pointer to the BLOB handle.
+     * @return Size of the BLOB in bytes.
      * @throws SQLException
+     * @see <a
+     *     href="https://www.sqlite.org/c3ref/blob_bytes.html">https://www.sqlite.org/c3ref/blob_bytes.html</a>
      */
-    public final synchronized String[] column_names(long stmt) throws SQLException {
-        String[] names = new String[column_count(stmt)];
-        for (int i = 0; i < names.length; i++) {
-            names[i] = column_name(stmt, i);
-        }
-        return names;
-    }
+    abstract int blob_bytes(long blob) throws SQLException;
 
     /**
-     * Bind values to prepared statements
+     * Reads bytes of a BLOB into an array.
      *
-     * @param stmt Pointer to the statement.
-     * @param pos Index of the SQL parameter to be set to NULL.
-     * @param v Value to bind to the parameter.
-     * @return <a href="http://www.sqlite.org/c3ref/c_abort.html">Result Codes</a>
+     * @param blob Pointer to the BLOB handle.
+     * @param buffer Array to read into.
+     * @param bufferOffset Index in the array of the first byte read.
+     * @param length Number of bytes to read.
+     * @param offset Offset in the BLOB of the first byte to read.
+     * @return <a href="https://www.sqlite.org/c3ref/c_abort.html">Result Codes</a>
      * @throws SQLException
      * @see <a
-     *     href="http://www.sqlite.org/c3ref/bind_blob.html">http://www.sqlite.org/c3ref/bind_blob.html</a>
+     *     href="https://www.sqlite.org/c3ref/blob_read.html">https://www.sqlite.org/c3ref/blob_read.html</a>
      */
-    final synchronized int sqlbind(long stmt, int pos, Object v) throws SQLException {
-        pos++;
-        if (v == null) {
-            return bind_null(stmt, pos);
-        } else if (v instanceof Integer) {
-            return bind_int(stmt, pos, (Integer) v);
-        } else if (v instanceof Short) {
-            return bind_int(stmt, pos, ((Short) v).intValue());
-        } else if (v instanceof Long) {
-            return bind_long(stmt, pos, (Long) v);
-        } else if (v instanceof Float) {
-            return bind_double(stmt, pos, ((Float) v).doubleValue());
-        } else if (v instanceof Double) {
-            return bind_double(stmt, pos, (Double) v);
-        } else if (v instanceof String) {
-            return bind_text(stmt, pos, (String) v);
-        } else if (v instanceof byte[]) {
-            return bind_blob(stmt, pos, (byte[]) v);
-        } else {
-            throw new SQLException("unexpected param type: " + v.getClass());
-        }
-    }
+    abstract int blob_read(long blob, byte[] buffer, int bufferOffset, int length, int offset)
+            throws SQLException;
 
     /**
-     * Submits a batch of commands to the database for execution.
+     * Reads bytes of a BLOB directly into the memory of a direct buffer.
      *
-     * @see java.sql.Statement#executeBatch()
-     * @param stmt Pointer of Stmt object.
-     * @param count Number of SQL statements.
-     * @param vals Array of parameter values.
+     * @param blob Pointer to the BLOB handle.
+     * @param buffer Direct buffer to read into; its position is not changed.
+     * @param bufferOffset Index in the buffer of the first byte read.
+     * @param length Number of bytes to read.
+     * @param offset Offset in the BLOB of the first byte to read.
+     * @return <a href="https://www.sqlite.org/c3ref/c_abort.html">Result Codes</a>
+     * @throws SQLException
+     */
+    abstract int blob_read_direct(
+            long blob, ByteBuffer buffer, int bufferOffset, int length, int offset)
+            throws SQLException;
+
+    /**
+     * Writes bytes of an array into a BLOB.
+     *
+     * @param blob Pointer to the BLOB handle.
+     * @param buffer Array to write from.
+     * @param bufferOffset Index in the array of the first byte to write.
+     * @param length Number of bytes to write.
+     * @param offset Offset in the BLOB of the first byte written.
+     * @return <a href="https://www.sqlite.org/c3ref/c_abort.html">Result Codes</a>
+     * @throws SQLException
+     * @see <a
+     *     href="https://www.sqlite.org/c3ref/blob_write.html">https://www.sqlite.org/c3ref/blob_write.html</a>
+     */
+    abstract int blob_write(long blob, byte[] buffer, int bufferOffset, int length, int offset)
+            throws SQLException;
+
+    /**
+     * Writes bytes directly from the memory of a direct buffer into a BLOB.
+     *
+     * @param blob Pointer to the BLOB handle.
+     * @param buffer Direct buffer to write from; its position is not changed.
+     * @param bufferOffset Index in the buffer of the first byte to write.
+     * @param length Number of bytes to write.
+     * @param offset Offset in the BLOB of the first byte written.
+     * @return <a href="https://www.sqlite.org/c3ref/c_abort.html">Result Codes</a>
+     * @throws SQLException
+     */
+    abstract int blob_write_direct(
+            long blob, ByteBuffer buffer, int bufferOffset, int length, int offset)
+            throws SQLException;
+
+    /**
+     * Copies the content of a database into a new direct buffer.
+     *
+     * @param schema Name of the database: "main", "temp" or the name of an attached database.
+     * @return A direct buffer holding the database file, positioned at 0.
+     * @throws SQLException if the database does not exist or is too large for a buffer.
+     * @see <a
+     *     href="https://www.sqlite.org/c3ref/serialize.html">https://www.sqlite.org/c3ref/serialize.html</a>
+     */
+    abstract ByteBuffer _serialize(String schema) throws SQLException;
+
+    /**
+     * Replaces a database with an in-memory database holding a copy of the bytes of an array.
+     *
+     * @param schema Name of the database: "main" or the name of an attached database.
+     * @param data Array holding the database file.
+     * @param offset Index in the array of the first byte of the file.
+     * @param length Size of the file in bytes.
+     * @param readOnly True to open the database read-only.
+     * @return <a href="https://www.sqlite.org/c3ref/c_abort.html">Result Codes</a>
+     * @throws SQLException
+     * @see <a
+     *     href="https://www.sqlite.org/c3ref/deserialize.html">https://www.sqlite.org/c3ref/deserialize.html</a>
+     */
+    abstract int _deserialize(String schema, byte[] data, int offset, int length, boolean readOnly)
+            throws SQLException;
+
+    /**
+     * Replaces a database with an in-memory database holding the bytes of a direct buffer. A
+     * read-only database is used in place, in which case the memory of the buffer must stay valid
+     * and unchanged while the database uses it; a writable one is copied.
+     *
+     * @param schema Name of the database: "main" or the name of an attached database.
+     * @param data Direct buffer holding the database file; its position is not changed.
+     * @param offset Index in the buffer of the first byte of the file.
+     * @param length Size of the file in bytes.
+     * @param readOnly True to open the database read-only, using the buffer in place.
+     * @return <a href="https://www.sqlite.org/c3ref/c_abort.html">Result Codes</a>
+     * @throws SQLException
+     * @see <a
+     *     href="https://www.sqlite.org/c3ref/deserialize.html">https://www.sqlite.org/c3ref/deserialize.html</a>
+     */
+    abstract int _deserialize_direct(
+            String schema, ByteBuffer data, int offset, int length, boolean readOnly)
+            throws SQLException;
+
+    /**
+     * Creates a session recording the changes made to a database.
+     *
+     * @param schema Name of the database: "main", "temp" or the name of an attached database.
+     * @return Pointer to the session.
+     * @throws SQLException
+     * @see <a
+     *     href="https://www.sqlite.org/session/sqlite3session_create.html">https://www.sqlite.org/session/sqlite3session_create.html</a>
+     */
+    abstract long session_create(String schema) throws SQLException;
+
+    /**
+     * @param session Pointer to the session.
+     * @param table Name of the table to record, or null to record all tables.
+     * @return <a href="https://www.sqlite.org/c3ref/c_abort.html">Result Codes</a>
+     * @throws SQLException
+     * @see <a
+     *     href="https://www.sqlite.org/session/sqlite3session_attach.html">https://www.sqlite.org/session/sqlite3session_attach.html</a>
+     */
+    abstract int session_attach(long session, String table) throws SQLException;
+
+    /**
+     * @param session Pointer to the session.
+     * @param enable 1 to record changes, 0 to stop, or -1 to only query the state.
+     * @return 1 if the session records changes, otherwise 0.
+     * @throws SQLException
+     * @see <a
+     *     href="https://www.sqlite.org/session/sqlite3session_enable.html">https://www.sqlite.org/session/sqlite3session_enable.html</a>
+     */
+    abstract int session_enable(long session, int enable) throws SQLException;
+
+    /**
+     * @param session Pointer to the session.
+     * @param indirect 1 to flag the changes recorded as indirect, 0 not to, or -1 to only query.
+     * @return 1 if the changes recorded are flagged as indirect, otherwise 0.
+     * @throws SQLException
+     * @see <a
+     *     href="https://www.sqlite.org/session/sqlite3session_indirect.html">https://www.sqlite.org/session/sqlite3session_indirect.html</a>
+     */
+    abstract int session_indirect(long session, int indirect) throws SQLException;
+
+    /**
+     * @param session Pointer to the session.
+     * @return True if no change was recorded.
+     * @throws SQLException
+     */
+    abstract boolean session_isempty(long session) throws SQLException;
+
+    /**
+     * @param session Pointer to the session.
+     * @param patchset True for a patchset, which omits the original values of updated and deleted
+     *     rows but their primary key, false for a changeset.
+     * @return A direct buffer holding the changeset, positioned at 0.
+     * @throws SQLException
+     * @see <a
+     *     href="https://www.sqlite.org/session/sqlite3session_changeset.html">https://www.sqlite.org/session/sqlite3session_changeset.html</a>
+     */
+    abstract ByteBuffer session_changeset(long session, boolean patchset) throws SQLException;
+
+    /**
+     * Writes the changes recorded by a session to a stream, without holding them in memory.
+     *
+     * @param session Pointer to the session.
+     * @param patchset True for a patchset, false for a changeset.
+     * @param out Stream to write to.
+     * @return <a href="https://www.sqlite.org/c3ref/c_abort.html">Result Codes</a>
+     * @throws SQLException
+     * @throws IOException if the stream could not be written.
+     * @see <a
+     *     href="https://www.sqlite.org/session/sqlite3session_changeset_strm.html">https://www.sqlite.org/session/sqlite3session_changeset_strm.html</a>
+     */
+    abstract int session_changeset_stream(long session, boolean patchset, OutputStream out)
+            throws SQLException, IOException;
+
+    /**
+     * @param session Pointer to the session.
+     * @throws SQLException
+     * @see <a
+     *     href="https://www.sqlite.org/session/sqlite3session_delete.html">https://www.sqlite.org/session/sqlite3session_delete.html</a>
+     */
+    abstract void session_delete(long session) throws SQLException;
+
+    /**
+     * Applies the changes of a changeset or patchset held in an array.
+     *
+     * @param data Array holding the changeset.
+     * @param offset Index in the array of the first byte of the changeset.
+     * @param length Size of the changeset in bytes.
+     * @param handler Called for each change that conflicts with the database.
+     * @return <a href="https://www.sqlite.org/c3ref/c_abort.html">Result Codes</a>
+     * @throws SQLException
+     * @see <a
+     *     href="https://www.sqlite.org/session/sqlite3changeset_apply.html">https://www.sqlite.org/session/sqlite3changeset_apply.html</a>
+     */
+    abstract int changeset_apply(
+            byte[] data, int offset, int length, ChangesetConflictHandler handler)
+            throws SQLException;
+
+    /**
+     * Applies the changes of a changeset or patchset read in place from a direct buffer.
+     *
+     * @param data Direct buffer holding the changeset; its position is not changed.
+     * @param offset Index in the buffer of the first byte of the changeset.
+     * @param length Size of the changeset in bytes.
+     * @param handler Called for each change that conflicts with the database.
+     * @return <a href="https://www.sqlite.org/c3ref/c_abort.html">Result Codes</a>
+     * @throws SQLException
+     */
+    abstract int changeset_apply_direct(
+            ByteBuffer data, int offset, int length, ChangesetConflictHandler handler)
+            throws SQLException;
+
+    /**
+     * Applies the changes of a changeset or patchset read from a stream as they are applied.
+     *
+     * @param in Stream to read the changeset from.
+     * @param handler Called for each change that conflicts with the database.
+     * @return <a href="https://www.sqlite.org/c3ref/c_abort.html">Result Codes</a>
+     * @throws SQLException
+     * @throws IOException if the stream could not be read.
+     */
+    abstract int changeset_apply_stream(InputStream in, ChangesetConflictHandler handler)
+            throws SQLException, IOException;
+
+    public interface ProgressObserver {
+        void progress(int remaining, int pageCount);
+    }
+
+    /** Decides what to do with a change of a changeset that conflicts with the database. */
+    public interface ChangesetConflictHandler {
+        /**
+         * @param type SQLITE_CHANGESET_DATA, NOTFOUND, CONFLICT, CONSTRAINT or FOREIGN_KEY.
+         * @param table Name of the table of the change.
+         * @param op SQLITE_INSERT, SQLITE_UPDATE or SQLITE_DELETE.
+         * @param indirect True if the change was made by a trigger or a foreign key action.
+         * @param oldValues The values of the row before an update or delete, or null.
+         * @param newValues The values of the row after an update or insert, or null.
+         * @param conflictValues The values of the row in the database for the DATA and CONFLICT
+         *     types, or null.
+         * @return SQLITE_CHANGESET_OMIT, REPLACE or ABORT.
+         */
+        int onConflict(
+                int type,
+                String table,
+                int op,
+                boolean indirect,
+                Object[] oldValues,
+                Object[] newValues,
+                Object[] conflictValues)
+                throws SQLException;
+    }
+
+    /** Progress handler */
+    public abstract void register_progress_handler(int vmCalls, ProgressHandler progressHandler)
+            throws SQLException;
+
+    public abstract void clear_progress_handler() throws SQLException;
+
+    /**
+     * Returns an array describing the attributes (not null, primary key and auto increment) of
+     * columns.
+     *
+     * @param stmt Pointer to the statement.
+     * @return Column attribute array.<br>
+     *     index[col][0] = true if column constrained NOT NULL;<br>
+     *     index[col][1] = true if column is part of the primary key; <br>
+     *     index[col][2] = true if column is auto-increment.
+     * @throws SQLException
+     */
+    abstract boolean[][] column_metadata(long stmt) throws SQLException;
+
+    // COMPOUND FUNCTIONS ////////////////////////////////////////////
+
+    /**
+     * Opens a BLOB for incremental I/O, see {@link org.sqlite.SQLiteBlob}. The handle is closed
+     * with the database if it is still open then.
+     *
+     * @return The BLOB handle.
+     * @throws SQLException
+     * @see #blob_open(String, String, String, long, boolean)
+     */
+    public final NativeHandle openBlob(
+            String database, String table, String column, long rowId, boolean writable)
+            throws SQLException {
+        lock.lock();
+        try {
+            if (isClosed()) {
+                throw new SQLException("The database has been closed");
+            }
+            NativeHandle blob =
+                    new NativeHandle(blob_open(database, table, column, rowId, writable));
+            blobs.add(blob);
+            return blob;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes a BLOB handle; does nothing if it is closed already.
+     *
+     * @param blob The BLOB handle.
+     * @throws SQLException if a write to the BLOB failed.
+     */
+    public final void closeBlob(NativeHandle blob) throws SQLException {
+        lock.lock();
+        try {
+            if (blobs.remove(blob)) {
+                int rc = blob_close(blob.pointer);
+                if (rc != SQLITE_OK) {
+                    throw newSQLException(rc);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param blob The BLOB handle.
+     * @return Size of the BLOB in bytes.
+     * @throws SQLException
+     */
+    public final int blobBytes(NativeHandle blob) throws SQLException {
+        lock.lock();
+        try {
+            ensureBlob(blob);
+            return blob_bytes(blob.pointer);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Moves a BLOB handle to the same column of another row.
+     *
+     * @param blob The BLOB handle.
+     * @param rowId Rowid of the other row.
+     * @throws SQLException
+     */
+    public final void reopenBlob(NativeHandle blob, long rowId) throws SQLException {
+        lock.lock();
+        try {
+            ensureBlob(blob);
+            int rc = blob_reopen(blob.pointer, rowId);
+            if (rc != SQLITE_OK) {
+                throw newSQLException(rc);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads the remaining bytes of a buffer from a BLOB. Direct buffers are read into without a
+     * copy in Java.
+     *
+     * @param blob The BLOB handle.
+     * @param dst Buffer to read into; its position is advanced by the number of bytes read.
+     * @param offset Offset in the BLOB of the first byte to read.
+     * @throws SQLException
+     */
+    public final void readBlob(NativeHandle blob, ByteBuffer dst, int offset) throws SQLException {
+        if (dst.isReadOnly()) {
+            throw new ReadOnlyBufferException();
+        }
+        int length = dst.remaining();
+        lock.lock();
+        try {
+            ensureBlob(blob);
+            int rc =
+                    dst.isDirect()
+                            ? blob_read_direct(blob.pointer, dst, dst.position(), length, offset)
+                            : blob_read(
+                                    blob.pointer,
+                                    dst.array(),
+                                    dst.arrayOffset() + dst.position(),
+                                    length,
+                                    offset);
+            if (rc != SQLITE_OK) {
+                throw newSQLException(rc);
+            }
+        } finally {
+            lock.unlock();
+        }
+        dst.position(dst.position() + length);
+    }
+
+    /**
+     * Writes the remaining bytes of a buffer into a BLOB. Direct buffers are written from without
+     * a copy in Java.
+     *
+     * @param blob The BLOB handle.
+     * @param src Buffer to write from; its position is advanced by the number of bytes written.
+     * @param offset Offset in the BLOB of the first byte written.
+     * @throws SQLException
+     */
+    public final void writeBlob(NativeHandle blob, ByteBuffer src, int offset) throws SQLException {
+        int length = src.remaining();
+        lock.lock();
+        try {
+            ensureBlob(blob);
+            int rc;
+            if (src.isDirect()) {
+                rc = blob_write_direct(blob.pointer, src, src.position(), length, offset);
+            } else if (src.hasArray()) {
+                rc =
+                        blob_write(
+                                blob.pointer,
+                                src.array(),
+                                src.arrayOffset() + src.position(),
+                                length,
+                                offset);
+            } else {
+                // read-only heap buffer
+                byte[] bytes = new byte[length];
+                src.duplicate().get(bytes);
+                rc = blob_write(blob.pointer, bytes, 0, length, offset);
+            }
+            if (rc != SQLITE_OK) {
+                throw newSQLException(rc);
+            }
+        } finally {
+            lock.unlock();
+        }
+        src.position(src.position() + length);
+    }
+
+    private void ensureBlob(NativeHandle blob) throws SQLException {
+        if (!blobs.contains(blob)) {
+            throw new SQLException("The blob has been closed");
+        }
+    }
+
+    /**
+     * Starts an incremental backup of a database of this connection to a database of another, see
+     * {@link org.sqlite.SQLiteBackup}. The handle is finished with either database if it is still
+     * open then.
+     *
+     * @return The backup handle.
+     * @throws SQLException
+     * @see #backup_init(String, DB, String)
+     */
+    public final NativeHandle openBackup(String schema, DB dest, String destSchema)
+            throws SQLException {
+        lockWith(dest);
+        try {
+            if (isClosed() || dest.isClosed()) {
+                throw new SQLException("The database has been closed");
+            }
+            NativeHandle backup = new NativeHandle(backup_init(schema, dest, destSchema));
+            backups.put(backup, dest);
+            dest.backups.put(backup, this);
+            return backup;
+        } finally {
+            unlockWith(dest);
+        }
+    }
+
+    /**
+     * Copies pages of an incremental backup, holding both connections only for this step.
+     *
+     * @param backup The backup handle.
+     * @param dest The destination of the backup.
+     * @param pages Number of pages to copy, or a negative number to copy all remaining pages.
+     * @return SQLITE_OK if pages remain, SQLITE_DONE when complete, or SQLITE_BUSY or
+     *     SQLITE_LOCKED if a database was locked and the step should be retried.
+     * @throws SQLException if the backup failed.
+     */
+    public final int stepBackup(NativeHandle backup, DB dest, int pages) throws SQLException {
+        lockWith(dest);
+        try {
+            ensureBackup(backup);
+            int rc = backup_step(backup.pointer, pages);
+            switch (rc & 0xFF) {
+                case SQLITE_OK:
+                case SQLITE_DONE:
+                case SQLITE_BUSY:
+                case SQLITE_LOCKED:
+                    return rc;
+                default:
+                    throw dest.newSQLException(rc);
+            }
+        } finally {
+            unlockWith(dest);
+        }
+    }
+
+    /**
+     * @param backup The backup handle.
+     * @return Number of pages left to copy as of the last step.
+     * @throws SQLException
+     */
+    public final int backupRemaining(NativeHandle backup) throws SQLException {
+        lock.lock();
+        try {
+            ensureBackup(backup);
+            return backup_remaining(backup.pointer);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param backup The backup handle.
+     * @return Number of pages of the source database as of the last step.
+     * @throws SQLException
+     */
+    public final int backupPageCount(NativeHandle backup) throws SQLException {
+        lock.lock();
+        try {
+            ensureBackup(backup);
+            return backup_pagecount(backup.pointer);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Finishes an incremental backup; does nothing if it is finished already.
+     *
+     * @param backup The backup handle.
+     * @throws SQLException if a step of the backup failed.
+     */
+    public final void finishBackup(NativeHandle backup) throws SQLException {
+        lock.lock();
+        try {
+            DB dest = backups.remove(backup);
+            if (dest != null) {
+                dest.backups.remove(backup);
+                int rc = backup_finish(backup.pointer);
+                if (rc != SQLITE_OK) {
+                    throw dest.newSQLException(rc);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes the locks of this connection and another in the same order on every thread, so that
+     * backups running in opposite directions between the two cannot deadlock.
+     *
+     * @param other The other connection.
+     */
+    private void lockWith(DB other) {
+        int hash = System.identityHashCode(this);
+        int otherHash = System.identityHashCode(other);
+        if (hash < otherHash) {
+            lock.lock();
+            other.lock.lock();
+        } else if (hash > otherHash) {
+            other.lock.lock();
+            lock.lock();
+        } else {
+            tieLock.lock();
+            try {
+                lock.lock();
+                other.lock.lock();
+            } finally {
+                tieLock.unlock();
+            }
+        }
+    }
+
+    private void unlockWith(DB other) {
+        other.lock.unlock();
+        lock.unlock();
+    }
+
+    private void ensureBackup(NativeHandle backup) throws SQLException {
+        if (!backups.containsKey(backup)) {
+            throw new SQLException("The backup has been finished");
+        }
+    }
+
+    /**
+     * Creates a session recording the changes made to a database through this connection, see
+     * {@link org.sqlite.session.SQLiteSession}. The session is deleted with the database if it is
+     * still open then.
+     *
+     * @return The session handle.
+     * @throws SQLException
+     * @see #session_create(String)
+     */
+    public final NativeHandle openSession(String schema) throws SQLException {
+        lock.lock();
+        try {
+            if (isClosed()) {
+                throw new SQLException("The database has been closed");
+            }
+            NativeHandle session = new NativeHandle(session_create(schema));
+            sessions.add(session);
+            return session;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param session The session handle.
+     * @param table Name of the table to record, or null to record all tables.
+     * @throws SQLException
+     * @see #session_attach(long, String)
+     */
+    public final void attachSession(NativeHandle session, String table) throws SQLException {
+        lock.lock();
+        try {
+            ensureSession(session);
+            int rc = session_attach(session.pointer, table);
+            if (rc != SQLITE_OK) {
+                throw newSQLException(rc);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param session The session handle.
+     * @param enable 1 to record changes, 0 to stop, or -1 to only query the state.
+     * @return True if the session records changes.
+     * @throws SQLException
+     * @see #session_enable(long, int)
+     */
+    public final boolean enableSession(NativeHandle session, int enable) throws SQLException {
+        lock.lock();
+        try {
+            ensureSession(session);
+            return session_enable(session.pointer, enable) != 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param session The session handle.
+     * @param indirect 1 to flag the changes recorded as indirect, 0 not to, or -1 to only query.
+     * @return True if the changes recorded are flagged as indirect.
+     * @throws SQLException
+     * @see #session_indirect(long, int)
+     */
+    public final boolean setSessionIndirect(NativeHandle session, int indirect)
+            throws SQLException {
+        lock.lock();
+        try {
+            ensureSession(session);
+            return session_indirect(session.pointer, indirect) != 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param session The session handle.
+     * @return True if no change was recorded.
+     * @throws SQLException
+     */
+    public final boolean isSessionEmpty(NativeHandle session) throws SQLException {
+        lock.lock();
+        try {
+            ensureSession(session);
+            return session_isempty(session.pointer);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param session The session handle.
+     * @param patchset True for a patchset, false for a changeset.
+     * @return A direct buffer holding the changes recorded, positioned at 0.
+     * @throws SQLException
+     * @see #session_changeset(long, boolean)
+     */
+    public final ByteBuffer sessionChangeset(NativeHandle session, boolean patchset)
+            throws SQLException {
+        lock.lock();
+        try {
+            ensureSession(session);
+            return session_changeset(session.pointer, patchset);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param session The session handle.
+     * @param patchset True for a patchset, false for a changeset.
+     * @param out Stream to write the changes recorded to.
+     * @throws SQLException if the changes could not be read or written.
+     * @see #session_changeset_stream(long, boolean, OutputStream)
+     */
+    public final void writeSessionChangeset(
+            NativeHandle session, boolean patchset, OutputStream out) throws SQLException {
+        lock.lock();
+        try {
+            ensureSession(session);
+            int rc;
+            try {
+                rc = session_changeset_stream(session.pointer, patchset, out);
+            } catch (IOException e) {
+                throw new SQLException("Error writing stream", e);
+            }
+            if (rc != SQLITE_OK) {
+                throw newSQLException(rc);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Deletes a session; does nothing if it is deleted already.
+     *
+     * @param session The session handle.
+     * @throws SQLException
+     */
+    public final void closeSession(NativeHandle session) throws SQLException {
+        lock.lock();
+        try {
+            if (sessions.remove(session)) {
+                session_delete(session.pointer);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void ensureSession(NativeHandle session) throws SQLException {
+        if (!sessions.contains(session)) {
+            throw new SQLException("The session has been closed");
+        }
+    }
+
+    /**
+     * Applies the changes of the remaining bytes of a buffer holding a changeset or patchset, in a
+     * single transaction. A direct buffer is read in place, any other buffer is copied.
+     *
+     * @param data Buffer holding the changeset; its position is not changed.
+     * @param handler Called for each change that conflicts with the database.
+     * @throws SQLException if the changeset is invalid or the handler aborted.
+     * @see #changeset_apply(byte[], int, int, ChangesetConflictHandler)
+     */
+    public final void applyChangeset(ByteBuffer data, ChangesetConflictHandler handler)
+            throws SQLException {
+        lock.lock();
+        try {
+            if (isClosed()) {
+                throw new SQLException("The database has been closed");
+            }
+            int rc;
+            if (data.isDirect()) {
+                rc = changeset_apply_direct(data, data.position(), data.remaining(), handler);
+            } else if (data.hasArray()) {
+                rc =
+                        changeset_apply(
+                                data.array(),
+                                data.arrayOffset() + data.position(),
+                                data.remaining(),
+                                handler);
+            } else {
+                byte[] copy = new byte[data.remaining()];
+                data.duplicate().get(copy);
+                rc = changeset_apply(copy, 0, copy.length, handler);
+            }
+            if (rc != SQLITE_OK) {
+                throw newSQLException(rc);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Applies the changes of a changeset or patchset read from a stream, in a single transaction.
+     *
+     * @param in Stream to read the changeset from.
+     * @param handler Called for each change that conflicts with the database.
+     * @throws SQLException if the changeset is invalid or could not be read, or the handler
+     *     aborted.
+     * @see #changeset_apply_stream(InputStream, ChangesetConflictHandler)
+     */
+    public final void applyChangeset(InputStream in, ChangesetConflictHandler handler)
+            throws SQLException {
+        lock.lock();
+        try {
+            if (isClosed()) {
+                throw new SQLException("The database has been closed");
+            }
+            int rc;
+            try {
+                rc = changeset_apply_stream(in, handler);
+            } catch (IOException e) {
+                throw new SQLException("Error reading stream", e);
+            }
+            if (rc != SQLITE_OK) {
+                throw newSQLException(rc);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Copies the content of a database into a new direct buffer.
+     *
+     * @param schema Name of the database.
+     * @return A direct buffer holding the database file, positioned at 0.
+     * @throws SQLException
+     * @see #_serialize(String)
+     */
+    public final ByteBuffer serialize(String schema) throws SQLException {
+        lock.lock();
+        try {
+            if (isClosed()) {
+                throw new SQLException("The database has been closed");
+            }
+            return _serialize(schema);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Replaces a database with an in-memory database holding the remaining bytes of a buffer. A
+     * direct buffer opened read-only is used in place and kept until the database is replaced
+     * again or closed; any other buffer is copied.
+     *
+     * @param schema Name of the database.
+     * @param data Buffer holding the database file; its position is not changed.
+     * @param readOnly True to open the database read-only.
+     * @throws SQLException
+     * @see #_deserialize(String, byte[], int, int, boolean)
+     * @see #_deserialize_direct(String, ByteBuffer, int, int, boolean)
+     */
+    public final void deserialize(String schema, ByteBuffer data, boolean readOnly)
+            throws SQLException {
+        lock.lock();
+        try {
+            if (isClosed()) {
+                throw new SQLException("The database has been closed");
+            }
+            String key = schema.toLowerCase(Locale.ROOT);
+            boolean shared = readOnly && data.isDirect();
+            int rc;
+            if (data.isDirect()) {
+                rc = _deserialize_direct(schema, data, data.position(), data.remaining(), readOnly);
+            } else if (data.hasArray()) {
+                rc =
+                        _deserialize(
+                                schema,
+                                data.array(),
+                                data.arrayOffset() + data.position(),
+                                data.remaining(),
+                                readOnly);
+            } else {
+                byte[] copy = new byte[data.remaining()];
+                data.duplicate().get(copy);
+                rc = _deserialize(schema, copy, 0, copy.length, readOnly);
+            }
+            if (rc != SQLITE_OK) {
+                throw newSQLException(rc);
+            }
+            if (shared) {
+                sharedBuffers.put(key, data.duplicate());
+            } else {
+                sharedBuffers.remove(key);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns an array of column names in the result set of the SELECT statement.
+     *
+     * @param stmt Stmt object.
+     * @return String array of column names.
+     * @throws SQLException
+     */
+    public final String[] column_names(long stmt) throws SQLException {
+        String[] names = new String[column_count(stmt)];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = column_name(stmt, i);
+        }
+        return names;
+    }
+
+    /**
+     * Bind values to prepared statements
+     *
+     * @param stmt Pointer to the statement.
+     * @param pos Index of the SQL parameter to be set to NULL.
+     * @param v Value to bind to the parameter.
+     * @return <a href="http://www.sqlite.org/c3ref/c_abort.html">Result Codes</a>
+     * @throws SQLException
+     * @see <a
+     *     href="http://www.sqlite.org/c3ref/bind_blob.html">http://www.sqlite.org/c3ref/bind_blob.html</a>
+     */
+    final int sqlbind(long stmt, int pos, Object v) throws SQLException {
+        pos++;
+        if (v == null) {
+            return bind_null(stmt, pos);
+        } else if (v instanceof Integer) {
+            return bind_int(stmt, pos, (Integer) v);
+        } else if (v instanceof Short) {
+            return bind_int(stmt, pos, ((Short) v).intValue());
+        } else if (v instanceof Long) {
+            return bind_long(stmt, pos, (Long) v);
+        } else if (v instanceof Float) {
+            return bind_double(stmt, pos, ((Float) v).doubleValue());
+        } else if (v instanceof Double) {
+            return bind_double(stmt, pos, (Double) v);
+        } else if (v instanceof String) {
+            return bind_text(stmt, pos, (String) v);
+        } else if (v instanceof byte[]) {
+            return bind_blob(stmt, pos, (byte[]) v);
+        } else if (v instanceof StreamParameter) {
+            StreamParameter stream = (StreamParameter) v;
+            stream.consume();
+            try {
+                return bind_stream(stmt, pos, stream.in, stream.length, stream.text);
+            } catch (IOException e) {
+                throw new SQLException("Error reading stream", e);
+            }
+        } else {
+            throw new SQLException("unexpected param type: " + v.getClass());
+        }
+    }
+
+    /**
+     * Submits a batch of commands to the database for execution.
+     *
+     * @see java.sql.Statement#executeBatch()
+     * @param stmt Pointer of Stmt object.
+     * @param batch Parameter values of the commands.
      * @return Array of the number of rows changed or inserted or deleted for each command if all
      *     commands execute successfully;
      * @throws SQLException if statement is not open or is being used elsewhere
      */
-    final synchronized long[] executeBatch(
-            SafeStmtPtr stmt, int count, Object[] vals, boolean autoCommit) throws SQLException {
-        return stmt.safeRun((db, ptr) -> this.executeBatch(ptr, count, vals, autoCommit));
+    final long[] executeBatch(SafeStmtPtr stmt, ParameterBatch batch, boolean autoCommit)
+            throws SQLException {
+        lock.lock();
+        try {
+            return stmt.safeRun((db, ptr) -> this.executeBatch(ptr, batch, autoCommit));
+        } finally {
+            lock.unlock();
+        }
     }
 
-    private synchronized long[] executeBatch(
-            long stmt, int count, Object[] vals, boolean autoCommit) throws SQLException {
-        if (count < 1) {
-            throw new SQLException("count (" + count + ") < 1");
+    private long[] executeBatch(long stmt, ParameterBatch batch, boolean autoCommit)
+            throws SQLException {
+        if (batch.count < 1) {
+            throw new SQLException("count (" + batch.count + ") < 1");
         }
 
-        final int params = bind_parameter_count(stmt);
-
-        int rc;
-        long[] changes = new long[count];
+        long[] changes = new long[batch.count];
 
         try {
-            for (int i = 0; i < count; i++) {
-                reset(stmt);
-                for (int j = 0; j < params; j++) {
-                    rc = sqlbind(stmt, j, vals[(i * params) + j]);
-                    if (rc != SQLITE_OK) {
-                        throwex(rc);
-                    }
-                }
-
-                rc = step(stmt);
-                if (rc != SQLITE_DONE) {
+            reset(stmt);
+            StatementMetrics m = metrics;
+            long start = m != null ? System.nanoTime() : 0;
+            int executed =
+                    execute_batch(
+                            stmt, batch.count, batch.types, batch.values, batch.bytes, changes);
+            if (m != null) {
+                m.stepped(stmt, Math.min(executed + 1, batch.count), 0, System.nanoTime() - start);
+            }
+            if (executed < batch.count) {
+                int rc = (int) changes[executed];
+                changes[executed] = 0;
+                if (rc == SQLITE_ROW) {
                     reset(stmt);
-                    if (rc == SQLITE_ROW) {
-                        throw new BatchUpdateException(
-                                "batch entry " + i + ": query returns results",
-                                null,
-                                0,
-                                changes,
-                                null);
-                    }
-                    throwex(rc);
+                    throw new BatchUpdateException(
+                            "batch entry " + executed + ": query returns results",
+                            null,
+                            0,
+                            changes,
+                            null);
                 }
-
-                changes[i] = changes();
+                SQLException e = newSQLException(rc);
+                reset(stmt);
+                throw e;
             }
         } finally {
             ensureAutoCommit(autoCommit);
@@ -925,8 +2227,7 @@ public abstract class DB implements Codes {
      * @return True if a row of ResultSet is ready; false otherwise.
      * @throws SQLException
      */
-    public final synchronized boolean execute(CoreStatement stmt, Object[] vals)
-            throws SQLException {
+    public final boolean execute(CoreStatement stmt, Object[] vals) throws SQLException {
         int statusCode = stmt.pointer.safeRunInt((db, ptr) -> execute(ptr, vals));
         switch (statusCode & 0xFF) {
             case SQLITE_DONE:
@@ -945,7 +2246,7 @@ public abstract class DB implements Codes {
         }
     }
 
-    private synchronized int execute(long ptr, Object[] vals) throws SQLException {
+    private int execute(long ptr, Object[] vals) throws SQLException {
         if (vals != null) {
             final int params = bind_parameter_count(ptr);
             if (params > vals.length) {
@@ -979,18 +2280,23 @@ public abstract class DB implements Codes {
      * @see <a
      *     href="http://www.sqlite.org/c3ref/exec.html">http://www.sqlite.org/c3ref/exec.html</a>
      */
-    final synchronized boolean execute(String sql, boolean autoCommit) throws SQLException {
-        int statusCode = _exec(sql);
-        switch (statusCode) {
-            case SQLITE_OK:
-                return false;
-            case SQLITE_DONE:
-                ensureAutoCommit(autoCommit);
-                return false;
-            case SQLITE_ROW:
-                return true;
-            default:
-                throw newSQLException(statusCode);
+    final boolean execute(String sql, boolean autoCommit) throws SQLException {
+        lock.lock();
+        try {
+            int statusCode = _exec(sql);
+            switch (statusCode) {
+                case SQLITE_OK:
+                    return false;
+                case SQLITE_DONE:
+                    ensureAutoCommit(autoCommit);
+                    return false;
+                case SQLITE_ROW:
+                    return true;
+                default:
+                    throw newSQLException(statusCode);
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -1004,56 +2310,281 @@ public abstract class DB implements Codes {
      *     completed SQL.
      * @throws SQLException
      */
-    public final synchronized long executeUpdate(CoreStatement stmt, Object[] vals)
+    public final long executeUpdate(CoreStatement stmt, Object[] vals) throws SQLException {
+        // no other statement may run until the changes of this one are read
+        lock.lock();
+        try {
+            try {
+                if (execute(stmt, vals)) {
+                    throw new SQLException("query returns results");
+                }
+            } finally {
+                if (!stmt.pointer.isClosed()) {
+                    stmt.pointer.safeRunInt(DB::reset);
+                }
+            }
+            return changes();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    abstract void set_commit_listener(boolean enabled);
+
+    /**
+     * Registers the update hook of the connection.
+     *
+     * @param rows True to report each row change to {@link #onUpdate(int, String, String, long)}.
+     * @param batchCapacity Number of row changes to buffer before reporting them to {@link
+     *     #onUpdateBatch(int, byte[], int[], long[], String[], String[])}, or 0 not to buffer them.
+     */
+    abstract void set_update_listener(boolean rows, int batchCapacity);
+
+    /**
+     * Empties the buffer of row changes.
+     *
+     * @param deliver True to report the buffered changes, false to drop them.
+     */
+    abstract void flush_updates(boolean deliver);
+
+    /**
+     * Registers the trace callback of the connection.
+     *
+     * @param mask The SQLITE_TRACE_* events to report, or 0 to disable tracing.
+     * @param thresholdNanos Minimum time of the statements reported by profile events.
+     * @param sampleRate Report one in this number of statement and row events.
+     * @throws SQLException
+     */
+    abstract void set_trace(int mask, long thresholdNanos, int sampleRate) throws SQLException;
+
+    /**
+     * Sets the listener that receives the trace events of the connection.
+     *
+     * @param listener The listener, or null to disable tracing.
+     * @param events The events to report.
+     * @param thresholdNanos Minimum time in nanoseconds of the statements reported to {@link
+     *     SQLiteTraceListener#onProfile(String, long)}.
+     * @param sampleRate Report one in this number of statement and row events.
+     * @throws SQLException
+     */
+    public final void setTraceListener(
+            SQLiteTraceListener listener,
+            Set<SQLiteTraceListener.Event> events,
+            long thresholdNanos,
+            int sampleRate)
             throws SQLException {
+        if (thresholdNanos < 0) {
+            throw new IllegalArgumentException("negative threshold: " + thresholdNanos);
+        }
+        if (sampleRate < 1) {
+            throw new IllegalArgumentException("sampleRate must be at least 1: " + sampleRate);
+        }
+        int mask = 0;
+        if (listener != null) {
+            for (SQLiteTraceListener.Event event : events) {
+                mask |= event.mask;
+            }
+        }
+        lock.lock();
+        try {
+            SQLiteTraceListener previous = traceListener;
+            traceListener = mask != 0 ? listener : null;
+            try {
+                set_trace(mask, thresholdNanos, sampleRate);
+            } catch (SQLException | RuntimeException e) {
+                traceListener = previous;
+                throw e;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @return The listener that receives the trace events, or null if tracing is disabled. */
+    public final SQLiteTraceListener getTraceListener() {
+        return traceListener;
+    }
+
+    public void addUpdateListener(SQLiteUpdateListener listener) {
+        lock.lock();
         try {
-            if (execute(stmt, vals)) {
-                throw new SQLException("query returns results");
+            if (updateListeners.add(listener) && updateListeners.size() == 1) {
+                setUpdateHook();
             }
         } finally {
-            if (!stmt.pointer.isClosed()) {
-                stmt.pointer.safeRunInt(DB::reset);
+            lock.unlock();
+        }
+    }
+
+    public void addCommitListener(SQLiteCommitListener listener) {
+        lock.lock();
+        try {
+            if (commitListeners.add(listener) && commitListeners.size() == 1) {
+                setCommitHook();
             }
+        } finally {
+            lock.unlock();
         }
-        return changes();
     }
 
-    abstract void set_commit_listener(boolean enabled);
+    public void removeUpdateListener(SQLiteUpdateListener listener) {
+        lock.lock();
+        try {
+            if (updateListeners.remove(listener) && updateListeners.isEmpty()) {
+                setUpdateHook();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
 
-    abstract void set_update_listener(boolean enabled);
+    public void removeCommitListener(SQLiteCommitListener listener) {
+        lock.lock();
+        try {
+            if (commitListeners.remove(listener) && commitListeners.isEmpty()) {
+                set_commit_listener(false);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
 
-    public synchronized void addUpdateListener(SQLiteUpdateListener listener) {
-        if (updateListeners.add(listener) && updateListeners.size() == 1) {
-            set_update_listener(true);
+    /**
+     * Adds a listener receiving the changed rows in batches, buffered in native memory until the
+     * transaction commits.
+     *
+     * @param listener The listener.
+     */
+    public void addUpdateBatchListener(SQLiteUpdateBatchListener listener) {
+        lock.lock();
+        try {
+            if (updateBatchListeners.add(listener) && updateBatchListeners.size() == 1) {
+                setUpdateHook();
+                setCommitHook();
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
-    public synchronized void addCommitListener(SQLiteCommitListener listener) {
-        if (commitListeners.add(listener) && commitListeners.size() == 1) {
-            set_commit_listener(true);
+    public void removeUpdateBatchListener(SQLiteUpdateBatchListener listener) {
+        lock.lock();
+        try {
+            if (updateBatchListeners.remove(listener) && updateBatchListeners.isEmpty()) {
+                setUpdateHook();
+                setCommitHook();
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
-    public synchronized void removeUpdateListener(SQLiteUpdateListener listener) {
-        if (updateListeners.remove(listener) && updateListeners.isEmpty()) {
-            set_update_listener(false);
+    /**
+     * Adds a listener receiving the end of each transaction on an executor, with the rows changed
+     * by the transaction.
+     *
+     * @param listener The listener.
+     * @param executor Runs the deliveries to the listener.
+     * @param maxPending Number of events waiting for the listener, beyond which they are dropped.
+     */
+    public void addTransactionListener(
+            SQLiteTransactionListener listener, Executor executor, int maxPending) {
+        if (listener == null || executor == null) {
+            throw new NullPointerException();
+        }
+        if (maxPending < 1) {
+            throw new IllegalArgumentException("maxPending must be at least 1: " + maxPending);
+        }
+        lock.lock();
+        try {
+            for (TransactionDispatcher dispatcher : transactionDispatchers) {
+                if (dispatcher.getListener() == listener) {
+                    return;
+                }
+            }
+            transactionDispatchers.add(new TransactionDispatcher(listener, executor, maxPending));
+            if (transactionDispatchers.size() == 1) {
+                setUpdateHook();
+                setCommitHook();
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
-    public synchronized void removeCommitListener(SQLiteCommitListener listener) {
-        if (commitListeners.remove(listener) && commitListeners.isEmpty()) {
-            set_commit_listener(false);
+    public void removeTransactionListener(SQLiteTransactionListener listener) {
+        lock.lock();
+        try {
+            for (TransactionDispatcher dispatcher : transactionDispatchers) {
+                if (dispatcher.getListener() == listener) {
+                    transactionDispatchers.remove(dispatcher);
+                    if (transactionDispatchers.isEmpty()) {
+                        transactionChanges.clear();
+                        endedTransactions.clear();
+                        setUpdateHook();
+                        setCommitHook();
+                    }
+                    return;
+                }
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
-    void onUpdate(int type, String database, String table, long rowId) {
-        Set<SQLiteUpdateListener> listeners;
+    /**
+     * Queues the ends of transactions for the transaction listeners after a statement was stepped
+     * without the connection lock, by releasing the lock as soon as it is taken.
+     */
+    void queueEndedTransactions() {
+        // the hooks run on the stepping thread, which sees the events it added
+        if (!endedTransactions.isEmpty()) {
+            lock.lock();
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes the lock of a statement used by another thread. On a serialized connection that thread
+     * may be waiting for the mutex of SQLite, which the holder of the connection lock has entered:
+     * the mutex is left until the statement lock is taken.
+     *
+     * @param statement The lock of the statement.
+     */
+    void lockStatement(ReentrantLock statement) {
+        if (!lock.isHeldByCurrentThread() || !lock.leaveMutex()) {
+            statement.lock();
+            return;
+        }
+        statement.lock();
+        lock.enterMutex();
+    }
+
+    private boolean isBufferingUpdates() {
+        return !updateBatchListeners.isEmpty() || !transactionDispatchers.isEmpty();
+    }
+
+    private void setUpdateHook() {
+        if (isClosed()) {
+            // the hooks were cleared with the connection
+            return;
+        }
+        // one hook serves all kinds of listeners
+        set_update_listener(
+                !updateListeners.isEmpty(), isBufferingUpdates() ? SQLiteUpdateBatch.MAX_SIZE : 0);
+    }
 
-        synchronized (this) {
-            listeners = new HashSet<>(updateListeners);
+    private void setCommitHook() {
+        if (isClosed()) {
+            return;
         }
+        // the buffered changes are delivered or dropped by the commit and rollback hooks
+        set_commit_listener(!commitListeners.isEmpty() || isBufferingUpdates());
+    }
 
-        for (SQLiteUpdateListener listener : listeners) {
+    void onUpdate(int type, String database, String table, long rowId) {
+        // called while a statement is stepped, possibly without the connection lock
+        for (SQLiteUpdateListener listener : updateListeners) {
             SQLiteUpdateListener.Type operationType;
 
             switch (type) {
@@ -1074,14 +2605,68 @@ public abstract class DB implements Codes {
         }
     }
 
-    void onCommit(boolean commit) {
-        Set<SQLiteCommitListener> listeners;
+    void onTrace(int type, ByteBuffer sql, long nanos) {
+        // called while a statement is stepped, the SQL is only valid during the call
+        SQLiteTraceListener listener = traceListener;
+        if (listener == null) {
+            return;
+        }
+        String text = NativeDB.utf8ByteBufferToString(sql);
+        switch (type) {
+            case 0x01:
+                listener.onStatement(text);
+                break;
+            case 0x02:
+                listener.onProfile(text, nanos);
+                break;
+            case 0x04:
+                listener.onRow(text);
+                break;
+            default:
+                throw new AssertionError("Unknown type: " + type);
+        }
+    }
 
-        synchronized (this) {
-            listeners = new HashSet<>(commitListeners);
+    void onUpdateBatch(
+            int size,
+            byte[] types,
+            int[] tables,
+            long[] rowIds,
+            String[] databaseNames,
+            String[] tableNames) {
+        // called when the buffer is full or from flush_updates
+        SQLiteUpdateBatch batch =
+                new SQLiteUpdateBatch(size, types, tables, rowIds, databaseNames, tableNames);
+        if (!transactionDispatchers.isEmpty()) {
+            transactionChanges.add(batch);
         }
+        for (SQLiteUpdateBatchListener listener : updateBatchListeners) {
+            listener.onUpdates(batch);
+        }
+    }
 
-        for (SQLiteCommitListener listener : listeners) {
+    void onCommit(boolean commit) {
+        if (isBufferingUpdates()) {
+            flush_updates(commit);
+            if (!commit) {
+                for (SQLiteUpdateBatchListener listener : updateBatchListeners) {
+                    listener.onRollback();
+                }
+            }
+        }
+        if (!transactionDispatchers.isEmpty()) {
+            SQLiteTransactionEvent event =
+                    new SQLiteTransactionEvent(
+                            ++transactionSequence,
+                            commit,
+                            commit
+                                    ? new ArrayList<>(transactionChanges)
+                                    : Collections.<SQLiteUpdateBatch>emptyList());
+            transactionChanges.clear();
+            // queued once the commit returned, when the lock is released
+            endedTransactions.add(event);
+        }
+        for (SQLiteCommitListener listener : commitListeners) {
             if (commit) listener.onCommit();
             else listener.onRollback();
         }
@@ -1184,18 +2769,17 @@ public abstract class DB implements Codes {
     }
 
     private void ensureBeginAndCommit() throws SQLException {
-        if (begin == null) {
-            synchronized (this) {
+        if (begin == null || commit == null) {
+            lock.lock();
+            try {
                 if (begin == null) {
                     begin = prepare("begin;");
                 }
-            }
-        }
-        if (commit == null) {
-            synchronized (this) {
                 if (commit == null) {
                     commit = prepare("commit;");
                 }
+            } finally {
+                lock.unlock();
             }
         }
     }
@@ -1216,4 +2800,104 @@ public abstract class DB implements Codes {
             reset(commitPtr);
         }
     }
+
+    /**
+     * The lock of the connection. When a thread releases its outermost hold of the lock, the
+     * commits it made have returned and their changes are visible to other connections: the ends
+     * of transactions are only then queued for the transaction listeners, and their delivery is
+     * scheduled once the lock is released, so that an executor running the listeners on the
+     * calling thread does not hold it.
+     *
+     * <p>On a serialized connection, the outermost holder of the lock also holds the mutex of
+     * SQLite. A thread stepping a statement holds that mutex without the lock, and the functions
+     * and listeners it runs may take the lock, so the mutex is never waited for with the lock held:
+     * while another thread holds the mutex, the lock is released until the mutex is left.
+     */
+    private final class ConnectionLock extends ReentrantLock {
+        private static final long serialVersionUID = 1L;
+
+        /** True if the holder of the lock entered the mutex of SQLite. */
+        private boolean mutexEntered = false;
+
+        /** Number of threads waiting for the mutex of SQLite without the lock. */
+        private final AtomicInteger mutexWaiters = new AtomicInteger();
+
+        @Override
+        public void lock() {
+            super.lock();
+            if (getHoldCount() == 1 && serialized) {
+                enterMutex();
+            }
+        }
+
+        /** Enters the mutex of SQLite, releasing all holds of the lock while waiting for it. */
+        void enterMutex() {
+            int rc;
+            while ((rc = mutex_try()) == SQLITE_BUSY) {
+                int holds = getHoldCount();
+                // counted while the lock is held, so that the connection is not closed meanwhile
+                mutexWaiters.incrementAndGet();
+                for (int i = 0; i < holds; i++) {
+                    super.unlock();
+                }
+                try {
+                    mutex_wait();
+                } finally {
+                    mutexWaiters.decrementAndGet();
+                    for (int i = 0; i < holds; i++) {
+                        super.lock();
+                    }
+                }
+            }
+            mutexEntered = rc == SQLITE_OK;
+        }
+
+        /**
+         * Leaves the mutex of SQLite while the lock is still held.
+         *
+         * @return True if the holder of the lock had entered the mutex.
+         */
+        boolean leaveMutex() {
+            if (!mutexEntered) {
+                return false;
+            }
+            mutexEntered = false;
+            mutex_leave();
+            return true;
+        }
+
+        /** Waits until no thread waits for the mutex of SQLite, before it is freed. */
+        void awaitMutexWaiters() {
+            // the waiters only need the mutex, which no thread keeps once the statements are closed
+            while (mutexWaiters.get() > 0) {
+                Thread.yield();
+            }
+        }
+
+        @Override
+        public void unlock() {
+            if (getHoldCount() != 1) {
+                super.unlock();
+                return;
+            }
+            boolean ended = !endedTransactions.isEmpty();
+            // queued in order while the lock is held, delivered once it is released
+            try {
+                for (SQLiteTransactionEvent event : endedTransactions) {
+                    for (TransactionDispatcher dispatcher : transactionDispatchers) {
+                        dispatcher.queue(event);
+                    }
+                }
+            } finally {
+                endedTransactions.clear();
+                leaveMutex();
+                super.unlock();
+            }
+            if (ended) {
+                for (TransactionDispatcher dispatcher : transactionDispatchers) {
+                    dispatcher.schedule();
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,301 @@
+package org.sqlite.core;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.sql.SQLException;
+import org.sqlite.SQLiteConfig;
+
+/**
+ * A {@link NativeDB} that calls the primitive column and bind functions of SQLite through the
+ * Foreign Function &amp; Memory API (Java 22+) instead of JNI, without the JNI frame. These
+ * functions never call back into Java. On connections opened with SQLITE_OPEN_NOMUTEX, whose use
+ * is serialized by the lock of the connection, they are linked as critical downcalls, which also
+ * skip the thread state transitions. In serialized mode they may wait on the mutex of the
+ * connection, which a critical downcall must not do since it holds off safepoints, so they are
+ * normal downcalls. Everything else, including stepping statements and all callbacks, still goes
+ * through JNI.
+ *
+ * <p>The API is looked up reflectively, so the driver still runs on Java 8. ForeignDB is used when
+ * the JVM provides the API and native access is enabled for the driver (for example with {@code
+ * --enable-native-access=ALL-UNNAMED}). Set the system property {@code org.sqlite.ffm} to {@code
+ * false} to always use JNI, or to {@code true} to use the API even if native access was not
+ * enabled explicitly.
+ */
+public final class ForeignDB extends NativeDB {
+    // order of the addresses returned by NativeDB.entry_points()
+    private static final int COLUMN_TYPE = 0;
+    private static final int COLUMN_INT = 1;
+    private static final int COLUMN_INT64 = 2;
+    private static final int COLUMN_DOUBLE = 3;
+    private static final int BIND_NULL = 4;
+    private static final int BIND_INT = 5;
+    private static final int BIND_INT64 = 6;
+    private static final int BIND_DOUBLE = 7;
+
+    private static final MethodHandle[] downcalls = link(false);
+    private static final MethodHandle[] criticalDowncalls = linkCritical();
+
+    private static final MethodHandle columnType = downcall(downcalls, COLUMN_TYPE);
+    private static final MethodHandle columnInt = downcall(downcalls, COLUMN_INT);
+    private static final MethodHandle columnInt64 = downcall(downcalls, COLUMN_INT64);
+    private static final MethodHandle columnDouble = downcall(downcalls, COLUMN_DOUBLE);
+    private static final MethodHandle bindNull = downcall(downcalls, BIND_NULL);
+    private static final MethodHandle bindInt = downcall(downcalls, BIND_INT);
+    private static final MethodHandle bindInt64 = downcall(downcalls, BIND_INT64);
+    private static final MethodHandle bindDouble = downcall(downcalls, BIND_DOUBLE);
+
+    private static final MethodHandle criticalColumnType = downcall(criticalDowncalls, COLUMN_TYPE);
+    private static final MethodHandle criticalColumnInt = downcall(criticalDowncalls, COLUMN_INT);
+    private static final MethodHandle criticalColumnInt64 =
+            downcall(criticalDowncalls, COLUMN_INT64);
+    private static final MethodHandle criticalColumnDouble =
+            downcall(criticalDowncalls, COLUMN_DOUBLE);
+    private static final MethodHandle criticalBindNull = downcall(criticalDowncalls, BIND_NULL);
+    private static final MethodHandle criticalBindInt = downcall(criticalDowncalls, BIND_INT);
+    private static final MethodHandle criticalBindInt64 = downcall(criticalDowncalls, BIND_INT64);
+    private static final MethodHandle criticalBindDouble = downcall(criticalDowncalls, BIND_DOUBLE);
+
+    public ForeignDB(String url, String fileName, SQLiteConfig config) throws SQLException {
+        super(url, fileName, config);
+    }
+
+    /**
+     * Checks if the Foreign Function &amp; Memory API can be used to call SQLite. The native
+     * library must be loaded first.
+     *
+     * @return True if connections should be opened with a ForeignDB; false for a NativeDB.
+     */
+    public static boolean isAvailable() {
+        String enabled = System.getProperty("org.sqlite.ffm");
+        if ("false".equalsIgnoreCase(enabled)) {
+            return false;
+        }
+        return downcalls != null && ("true".equalsIgnoreCase(enabled) || nativeAccessEnabled());
+    }
+
+    private static boolean nativeAccessEnabled() {
+        try {
+            Object module = Class.class.getMethod("getModule").invoke(ForeignDB.class);
+            return (Boolean) module.getClass().getMethod("isNativeAccessEnabled").invoke(module);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    private static MethodHandle downcall(MethodHandle[] handles, int entryPoint) {
+        return handles == null ? null : handles[entryPoint];
+    }
+
+    /** @return The critical handles, or the others if the JVM cannot link critical downcalls. */
+    private static MethodHandle[] linkCritical() {
+        if (downcalls == null) {
+            return null;
+        }
+        MethodHandle[] handles = link(true);
+        return handles == null ? downcalls : handles;
+    }
+
+    /**
+     * Links the downcall handles for the entry points of the native library.
+     *
+     * @param critical True to link critical downcalls, which must not block.
+     * @return The handles, or null if the Foreign Function &amp; Memory API is not available.
+     */
+    private static MethodHandle[] link(boolean critical) {
+        try {
+            Class<?> linkerClass = Class.forName("java.lang.foreign.Linker");
+            Class<?> optionClass = Class.forName("java.lang.foreign.Linker$Option");
+            Class<?> layoutClass = Class.forName("java.lang.foreign.MemoryLayout");
+            Class<?> valueLayoutClass = Class.forName("java.lang.foreign.ValueLayout");
+            Class<?> descriptorClass = Class.forName("java.lang.foreign.FunctionDescriptor");
+            Class<?> segmentClass = Class.forName("java.lang.foreign.MemorySegment");
+
+            // pointers are passed as the jlong handles used everywhere else, so only 64-bit
+            Object address = valueLayoutClass.getField("ADDRESS").get(null);
+            if ((Long) layoutClass.getMethod("byteSize").invoke(address) != 8) {
+                return null;
+            }
+            Object jint = valueLayoutClass.getField("JAVA_INT").get(null);
+            Object jlong = valueLayoutClass.getField("JAVA_LONG").get(null);
+            Object jdouble = valueLayoutClass.getField("JAVA_DOUBLE").get(null);
+
+            Object linker = linkerClass.getMethod("nativeLinker").invoke(null);
+            Object options = Array.newInstance(optionClass, critical ? 1 : 0);
+            if (critical) {
+                Method option = optionClass.getMethod("critical", boolean.class);
+                Array.set(options, 0, option.invoke(null, false));
+            }
+            Method descriptor =
+                    descriptorClass.getMethod(
+                            "of", layoutClass, Array.newInstance(layoutClass, 0).getClass());
+            Method ofAddress = segmentClass.getMethod("ofAddress", long.class);
+            Method downcallHandle =
+                    linkerClass.getMethod(
+                            "downcallHandle", segmentClass, descriptorClass, options.getClass());
+
+            // result layout followed by the argument layouts; sqlite3_stmt* is passed as a long
+            Object[][] signatures = new Object[8][];
+            signatures[COLUMN_TYPE] = new Object[] {jint, jlong, jint};
+            signatures[COLUMN_INT] = new Object[] {jint, jlong, jint};
+            signatures[COLUMN_INT64] = new Object[] {jlong, jlong, jint};
+            signatures[COLUMN_DOUBLE] = new Object[] {jdouble, jlong, jint};
+            signatures[BIND_NULL] = new Object[] {jint, jlong, jint};
+            signatures[BIND_INT] = new Object[] {jint, jlong, jint, jint};
+            signatures[BIND_INT64] = new Object[] {jint, jlong, jint, jlong};
+            signatures[BIND_DOUBLE] = new Object[] {jint, jlong, jint, jdouble};
+
+            long[] entryPoints = entry_points();
+            if (entryPoints.length != signatures.length) {
+                return null;
+            }
+
+            MethodHandle[] handles = new MethodHandle[signatures.length];
+            for (int i = 0; i < signatures.length; i++) {
+                Object args = Array.newInstance(layoutClass, signatures[i].length - 1);
+                for (int arg = 1; arg < signatures[i].length; arg++) {
+                    Array.set(args, arg - 1, signatures[i][arg]);
+                }
+                handles[i] =
+                        (MethodHandle)
+                                downcallHandle.invoke(
+                                        linker,
+                                        ofAddress.invoke(null, entryPoints[i]),
+                                        descriptor.invoke(null, signatures[i][0], args),
+                                        options);
+            }
+            return handles;
+        } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+            // older JVM, or a native library without entry points
+            return null;
+        }
+    }
+
+    private static SQLException downcallFailed(Throwable e) {
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        }
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        return new SQLException("SQLite downcall failed", e);
+    }
+
+    private static void checkStmt(long stmt) throws SQLException {
+        if (stmt == 0) {
+            throwex("The prepared statement has been finalized");
+        }
+    }
+
+    /** @see org.sqlite.core.DB#column_type(long, int) */
+    @Override
+    public int column_type(long stmt, int col) throws SQLException {
+        checkStmt(stmt);
+        try {
+            if (isSerialized()) {
+                return (int) columnType.invokeExact(stmt, col);
+            }
+            return (int) criticalColumnType.invokeExact(stmt, col);
+        } catch (Throwable e) {
+            throw downcallFailed(e);
+        }
+    }
+
+    /** @see org.sqlite.core.DB#column_int(long, int) */
+    @Override
+    public int column_int(long stmt, int col) throws SQLException {
+        checkStmt(stmt);
+        try {
+            if (isSerialized()) {
+                return (int) columnInt.invokeExact(stmt, col);
+            }
+            return (int) criticalColumnInt.invokeExact(stmt, col);
+        } catch (Throwable e) {
+            throw downcallFailed(e);
+        }
+    }
+
+    /** @see org.sqlite.core.DB#column_long(long, int) */
+    @Override
+    public long column_long(long stmt, int col) throws SQLException {
+        checkStmt(stmt);
+        try {
+            if (isSerialized()) {
+                return (long) columnInt64.invokeExact(stmt, col);
+            }
+            return (long) criticalColumnInt64.invokeExact(stmt, col);
+        } catch (Throwable e) {
+            throw downcallFailed(e);
+        }
+    }
+
+    /** @see org.sqlite.core.DB#column_double(long, int) */
+    @Override
+    public double column_double(long stmt, int col) throws SQLException {
+        checkStmt(stmt);
+        try {
+            if (isSerialized()) {
+                return (double) columnDouble.invokeExact(stmt, col);
+            }
+            return (double) criticalColumnDouble.invokeExact(stmt, col);
+        } catch (Throwable e) {
+            throw downcallFailed(e);
+        }
+    }
+
+    /** @see org.sqlite.core.DB#bind_null(long, int) */
+    @Override
+    int bind_null(long stmt, int pos) throws SQLException {
+        checkStmt(stmt);
+        try {
+            if (isSerialized()) {
+                return (int) bindNull.invokeExact(stmt, pos);
+            }
+            return (int) criticalBindNull.invokeExact(stmt, pos);
+        } catch (Throwable e) {
+            throw downcallFailed(e);
+        }
+    }
+
+    /** @see org.sqlite.core.DB#bind_int(long, int, int) */
+    @Override
+    int bind_int(long stmt, int pos, int v) throws SQLException {
+        checkStmt(stmt);
+        try {
+            if (isSerialized()) {
+                return (int) bindInt.invokeExact(stmt, pos, v);
+            }
+            return (int) criticalBindInt.invokeExact(stmt, pos, v);
+        } catch (Throwable e) {
+            throw downcallFailed(e);
+        }
+    }
+
+    /** @see org.sqlite.core.DB#bind_long(long, int, long) */
+    @Override
+    int bind_long(long stmt, int pos, long v) throws SQLException {
+        checkStmt(stmt);
+        try {
+            if (isSerialized()) {
+                return (int) bindInt64.invokeExact(stmt, pos, v);
+            }
+            return (int) criticalBindInt64.invokeExact(stmt, pos, v);
+        } catch (Throwable e) {
+            throw downcallFailed(e);
+        }
+    }
+
+    /** @see org.sqlite.core.DB#bind_double(long, int, double) */
+    @Override
+    int bind_double(long stmt, int pos, double v) throws SQLException {
+        checkStmt(stmt);
+        try {
+            if (isSerialized()) {
+                return (int) bindDouble.invokeExact(stmt, pos, v);
+            }
+            return (int) criticalBindDouble.invokeExact(stmt, pos, v);
+        } catch (Throwable e) {
+            throw downcallFailed(e);
+        }
+    }
+}
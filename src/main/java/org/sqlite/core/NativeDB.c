@@ -34,6 +34,7 @@ static jmethodID mth_stringToUtf8ByteArray = 0;
 static jmethodID mth_throwex = 0;
 static jmethodID mth_throwexcode = 0;
 static jmethodID mth_throwexmsg = 0;
+static jmethodID mth_utf8ByteBufferToString = 0;
 
 static jclass  fclass = 0;
 static jfieldID func_context = 0,
@@ -53,12 +54,45 @@ static jclass  wclass = 0;
 static jmethodID w_mth_inverse = 0;
 static jmethodID w_mth_xvalue = 0;
 
+static jclass  packedclass = 0;
+static jfieldID packed_buffer = 0,
+                packed_objects = 0,
+                packed_result = 0;
+static jmethodID mth_packed_call = 0;
+
+static jclass  packedaggclass = 0;
+static jclass  packedwinclass = 0;
+static jfieldID packed_state = 0;
+static jmethodID mth_packed_aggr_call = 0;
+
+static jclass  batchfclass = 0;
+static jmethodID mth_batch_new = 0;
+static jmethodID mth_batch_call = 0;
+static jfieldID batch_doubles = 0,
+                batch_longs = 0,
+                batch_types = 0,
+                batch_outputs = 0;
+
 static jclass pclass = 0;
 static jclass phandleclass = 0;
 static jmethodID pmethod = 0;
 
 static jmethodID exp_msg = 0;
 
+static jclass ioexclass = 0;
+static jmethodID mth_read = 0;
+static jclass bbclass = 0;
+static jmethodID mth_allocate_direct = 0;
+static jmethodID mth_write = 0;
+static jclass objclass = 0;
+static jclass stringclass = 0;
+static jclass longclass = 0;
+static jmethodID mth_long_valueof = 0;
+static jclass doubleclass = 0;
+static jmethodID mth_double_valueof = 0;
+static jclass conflictclass = 0;
+static jmethodID mth_conflict = 0;
+
 static void * toref(jlong value)
 {
     void * ret;
@@ -135,6 +169,63 @@ static jobject utf8BytesToDirectByteBuffer(JNIEnv *env, const char* bytes, int n
     return result;
 }
 
+// Decodes well-formed UTF-8 to UTF-16; out must hold at least nbytes code units.
+// Returns the number of code units, or -1 if the bytes are not well-formed UTF-8.
+static int utf8BytesToUtf16(const unsigned char *in, int nbytes, jchar *out)
+{
+    int i = 0, n = 0;
+    unsigned int c, c1, c2, c3, cp;
+
+    while (i < nbytes)
+    {
+        c = in[i];
+        if (c < 0x80)
+        {
+            out[n++] = (jchar) c;
+            i += 1;
+        }
+        else if (c >= 0xC2 && c <= 0xDF)
+        {
+            if (i + 1 >= nbytes) return -1;
+            c1 = in[i + 1];
+            if ((c1 & 0xC0) != 0x80) return -1;
+            out[n++] = (jchar) (((c & 0x1F) << 6) | (c1 & 0x3F));
+            i += 2;
+        }
+        else if (c >= 0xE0 && c <= 0xEF)
+        {
+            if (i + 2 >= nbytes) return -1;
+            c1 = in[i + 1];
+            c2 = in[i + 2];
+            if ((c1 & 0xC0) != 0x80 || (c2 & 0xC0) != 0x80) return -1;
+            if (c == 0xE0 && c1 < 0xA0) return -1; // overlong
+            if (c == 0xED && c1 > 0x9F) return -1; // surrogate
+            out[n++] = (jchar) (((c & 0x0F) << 12) | ((c1 & 0x3F) << 6) | (c2 & 0x3F));
+            i += 3;
+        }
+        else if (c >= 0xF0 && c <= 0xF4)
+        {
+            if (i + 3 >= nbytes) return -1;
+            c1 = in[i + 1];
+            c2 = in[i + 2];
+            c3 = in[i + 3];
+            if ((c1 & 0xC0) != 0x80 || (c2 & 0xC0) != 0x80 || (c3 & 0xC0) != 0x80) return -1;
+            if (c == 0xF0 && c1 < 0x90) return -1; // overlong
+            if (c == 0xF4 && c1 > 0x8F) return -1; // above U+10FFFF
+            cp = (((c & 0x07) << 18) | ((c1 & 0x3F) << 12) | ((c2 & 0x3F) << 6) | (c3 & 0x3F)) - 0x10000;
+            out[n++] = (jchar) (0xD800 + (cp >> 10));
+            out[n++] = (jchar) (0xDC00 + (cp & 0x3FF));
+            i += 4;
+        }
+        else
+        {
+            return -1;
+        }
+    }
+
+    return n;
+}
+
 static void utf8JavaByteArrayToUtf8Bytes(JNIEnv *env, jbyteArray utf8bytes, char** bytes, int* nbytes)
 {
     jsize utf8bytes_length;
@@ -265,8 +356,26 @@ struct CollationData {
 struct UDFData {
     JavaVM *vm;
     jobject func;
+    // buffer and objects of a Function.Packed, otherwise 0
+    char *packed;
+    jobjectArray objects;
+    // state buffer of a Function.PackedAggregate, otherwise 0
+    char *state;
+    int state_size;
 };
 
+// Layout of the buffer of Function.Packed
+#define PACKED_MAX_ARGS 127
+#define PACKED_SLOT_SIZE 16
+#define PACKED_RESULT_TYPE 4
+#define PACKED_VALUE 8
+
+// Calls of Function.PackedAggregate
+#define PACKED_STEP 0
+#define PACKED_FINAL 1
+#define PACKED_INVERSE 2
+#define PACKED_XVALUE 3
+
 /* Returns the sqlite3_value for the given arg of the given function.
  * If 0 is returned, an exception has been thrown to report the reason. */
 static sqlite3_value * tovalue(JNIEnv *env, jobject function, jint arg)
@@ -349,6 +458,180 @@ void xFunc(sqlite3_context *context, int args, sqlite3_value** value)
     xCall(context, args, value, 0, fmethod);
 }
 
+/* Copies the arguments into the buffer of a Function.Packed. Returns 0 and
+ * sets the error of the context if they cannot be copied. */
+static int pack_args(JNIEnv *env, struct UDFData *udf, sqlite3_context *context,
+                     int args, sqlite3_value **value)
+{
+    char *buffer = udf->packed;
+
+    if (args > PACKED_MAX_ARGS) {
+        sqlite3_result_error(context, "too many arguments", -1);
+        return 0;
+    }
+    *(jint *) buffer = args;
+    *(jint *) (buffer + PACKED_RESULT_TYPE) = SQLITE_NULL;
+
+    for (int i = 0; i < args; i++) {
+        char *slot = buffer + (i + 1) * PACKED_SLOT_SIZE;
+        int type = sqlite3_value_type(value[i]);
+        jobject object = 0;
+
+        switch (type) {
+            case SQLITE_INTEGER:
+                *(jlong *) (slot + PACKED_VALUE) = sqlite3_value_int64(value[i]);
+                break;
+            case SQLITE_FLOAT:
+                *(jdouble *) (slot + PACKED_VALUE) = sqlite3_value_double(value[i]);
+                break;
+            case SQLITE_TEXT: {
+                // functions are registered as UTF-16, so this does not convert
+                const jchar *chars = sqlite3_value_text16(value[i]);
+                if (chars) {
+                    object = (*env)->NewString(env, chars, sqlite3_value_bytes16(value[i]) / 2);
+                }
+                break;
+            }
+            case SQLITE_BLOB: {
+                int size = sqlite3_value_bytes(value[i]);
+                object = (*env)->NewByteArray(env, size);
+                if (object && size > 0) {
+                    (*env)->SetByteArrayRegion(env, object, 0, size, sqlite3_value_blob(value[i]));
+                }
+                break;
+            }
+        }
+        if (type == SQLITE_TEXT || type == SQLITE_BLOB) {
+            if (!object) {
+                if ((*env)->ExceptionCheck(env)) xFunc_error(context, env);
+                else sqlite3_result_error_nomem(context);
+                // do not keep the arguments copied so far
+                for (int j = 0; j < i; j++) {
+                    (*env)->SetObjectArrayElement(env, udf->objects, j, 0);
+                }
+                return 0;
+            }
+            (*env)->SetObjectArrayElement(env, udf->objects, i, object);
+            (*env)->DeleteLocalRef(env, object);
+        }
+        *(jint *) slot = type;
+    }
+    return 1;
+}
+
+/* Sets the result of the context from the buffer of a Function.Packed. */
+static void unpack_result(JNIEnv *env, struct UDFData *udf, jobject func, sqlite3_context *context)
+{
+    char *buffer = udf->packed;
+    jobject result;
+
+    switch (*(jint *) (buffer + PACKED_RESULT_TYPE)) {
+        case SQLITE_INTEGER:
+            sqlite3_result_int64(context, *(jlong *) (buffer + PACKED_VALUE));
+            break;
+        case SQLITE_FLOAT:
+            sqlite3_result_double(context, *(jdouble *) (buffer + PACKED_VALUE));
+            break;
+        case SQLITE_TEXT:
+            result = (*env)->GetObjectField(env, func, packed_result);
+            if (result) {
+                const jchar *chars = (*env)->GetStringCritical(env, result, 0);
+                if (!chars) { sqlite3_result_error_nomem(context); break; }
+                sqlite3_result_text16(context, chars,
+                                      (*env)->GetStringLength(env, result) * 2, SQLITE_TRANSIENT);
+                (*env)->ReleaseStringCritical(env, result, chars);
+            } else {
+                sqlite3_result_null(context);
+            }
+            (*env)->SetObjectField(env, func, packed_result, 0);
+            break;
+        case SQLITE_BLOB:
+            result = (*env)->GetObjectField(env, func, packed_result);
+            if (result) {
+                jsize size = (*env)->GetArrayLength(env, result);
+                void *bytes = (*env)->GetPrimitiveArrayCritical(env, result, 0);
+                if (!bytes) { sqlite3_result_error_nomem(context); break; }
+                sqlite3_result_blob(context, bytes, size, SQLITE_TRANSIENT);
+                (*env)->ReleasePrimitiveArrayCritical(env, result, bytes, JNI_ABORT);
+            } else {
+                sqlite3_result_null(context);
+            }
+            (*env)->SetObjectField(env, func, packed_result, 0);
+            break;
+        default:
+            sqlite3_result_null(context);
+    }
+}
+
+void xFuncPacked(sqlite3_context *context, int args, sqlite3_value** value)
+{
+    JNIEnv *env;
+    struct UDFData *udf = (struct UDFData*)sqlite3_user_data(context);
+    (*udf->vm)->AttachCurrentThread(udf->vm, (void **)&env, 0);
+
+    if (!pack_args(env, udf, context, args, value)) return;
+
+    (*env)->CallVoidMethod(env, udf->func, mth_packed_call);
+    if ((*env)->ExceptionCheck(env)) {
+        xFunc_error(context, env);
+        return;
+    }
+    unpack_result(env, udf, udf->func, context);
+}
+
+/* Calls a Function.PackedAggregate with the state of the group of the context, which SQLite
+ * allocates, zeroed, for the first call of a group. */
+static void xCallPackedAggregate(sqlite3_context *context, int op, int args, sqlite3_value** value)
+{
+    JNIEnv *env;
+    struct UDFData *udf = (struct UDFData*)sqlite3_user_data(context);
+    char *state;
+    (*udf->vm)->AttachCurrentThread(udf->vm, (void **)&env, 0);
+
+    state = sqlite3_aggregate_context(context, udf->state_size);
+    if (!state) { sqlite3_result_error_nomem(context); return; }
+
+    if (op == PACKED_STEP || op == PACKED_INVERSE) {
+        if (!pack_args(env, udf, context, args, value)) return;
+    } else {
+        *(jint *) udf->packed = 0;
+        *(jint *) (udf->packed + PACKED_RESULT_TYPE) = SQLITE_NULL;
+    }
+
+    memcpy(udf->state, state, udf->state_size);
+    (*env)->CallVoidMethod(env, udf->func, mth_packed_aggr_call, (jint) op);
+    // copied back even on error, to keep the handle of an object state set before it
+    memcpy(state, udf->state, udf->state_size);
+
+    if ((*env)->ExceptionCheck(env)) {
+        xFunc_error(context, env);
+        return;
+    }
+    if (op == PACKED_FINAL || op == PACKED_XVALUE) {
+        unpack_result(env, udf, udf->func, context);
+    }
+}
+
+void xStepPacked(sqlite3_context *context, int args, sqlite3_value** value)
+{
+    xCallPackedAggregate(context, PACKED_STEP, args, value);
+}
+
+void xInversePacked(sqlite3_context *context, int args, sqlite3_value** value)
+{
+    xCallPackedAggregate(context, PACKED_INVERSE, args, value);
+}
+
+void xValuePacked(sqlite3_context *context)
+{
+    xCallPackedAggregate(context, PACKED_XVALUE, 0, 0);
+}
+
+void xFinalPacked(sqlite3_context *context)
+{
+    xCallPackedAggregate(context, PACKED_FINAL, 0, 0);
+}
+
 static jobject* get_initialized_udf_context(sqlite3_context *context) {
     // clone the Function.Aggregate instance and store a pointer
     // in SQLite's aggregate_context (clean up in xFinal)
@@ -452,6 +735,8 @@ JNIEXPORT jint JNICALL JNI_OnLoad(JavaVM *vm, void *reserved)
     mth_throwex = (*env)->GetMethodID(env, dbclass, "throwex", "()V");
     mth_throwexcode = (*env)->GetMethodID(env, dbclass, "throwex", "(I)V");
     mth_throwexmsg = (*env)->GetStaticMethodID(env, dbclass, "throwex", "(Ljava/lang/String;)V");
+    mth_utf8ByteBufferToString = (*env)->GetStaticMethodID(
+            env, dbclass, "utf8ByteBufferToString", "(Ljava/nio/ByteBuffer;)Ljava/lang/String;");
 
     fclass = (*env)->FindClass(env, "org/sqlite/Function");
     if (!fclass) return JNI_ERR;
@@ -479,6 +764,38 @@ JNIEXPORT jint JNICALL JNI_OnLoad(JavaVM *vm, void *reserved)
     w_mth_inverse = (*env)->GetMethodID(env, wclass, "xInverse", "()V");
     w_mth_xvalue = (*env)->GetMethodID(env, wclass, "xValue", "()V");
 
+    packedclass = (*env)->FindClass(env, "org/sqlite/Function$Packed");
+    if (!packedclass) return JNI_ERR;
+    packedclass = (*env)->NewWeakGlobalRef(env, packedclass);
+    packed_buffer = (*env)->GetFieldID(env, packedclass, "buffer", "Ljava/nio/ByteBuffer;");
+    packed_objects = (*env)->GetFieldID(env, packedclass, "objects", "[Ljava/lang/Object;");
+    packed_result = (*env)->GetFieldID(env, packedclass, "result", "Ljava/lang/Object;");
+    mth_packed_call = (*env)->GetMethodID(env, packedclass, "xCallPacked", "()V");
+
+    packedaggclass = (*env)->FindClass(env, "org/sqlite/Function$PackedAggregate");
+    if (!packedaggclass) return JNI_ERR;
+    packedaggclass = (*env)->NewWeakGlobalRef(env, packedaggclass);
+    packed_state = (*env)->GetFieldID(env, packedaggclass, "state", "Ljava/nio/ByteBuffer;");
+    mth_packed_aggr_call = (*env)->GetMethodID(env, packedaggclass, "xCallAggregate", "(I)V");
+
+    packedwinclass = (*env)->FindClass(env, "org/sqlite/Function$PackedWindow");
+    if (!packedwinclass) return JNI_ERR;
+    packedwinclass = (*env)->NewWeakGlobalRef(env, packedwinclass);
+
+    batchfclass = (*env)->FindClass(env, "org/sqlite/BatchFunction");
+    if (!batchfclass) return JNI_ERR;
+    batchfclass = (*env)->NewWeakGlobalRef(env, batchfclass);
+    mth_batch_new = (*env)->GetMethodID(
+            env, batchfclass, "newBatch", "()Lorg/sqlite/BatchFunction$Batch;");
+    mth_batch_call = (*env)->GetMethodID(
+            env, batchfclass, "xCallBatch", "(Lorg/sqlite/BatchFunction$Batch;I)V");
+    jclass batchclass = (*env)->FindClass(env, "org/sqlite/BatchFunction$Batch");
+    if (!batchclass) return JNI_ERR;
+    batch_doubles = (*env)->GetFieldID(env, batchclass, "doubles", "[[D");
+    batch_longs = (*env)->GetFieldID(env, batchclass, "longs", "[[J");
+    batch_types = (*env)->GetFieldID(env, batchclass, "types", "[[B");
+    batch_outputs = (*env)->GetFieldID(env, batchclass, "outputs", "[[D");
+
     pclass = (*env)->FindClass(env, "org/sqlite/core/DB$ProgressObserver");
     if(!pclass) return JNI_ERR;
     pclass = (*env)->NewWeakGlobalRef(env, pclass);
@@ -492,6 +809,50 @@ JNIEXPORT jint JNICALL JNI_OnLoad(JavaVM *vm, void *reserved)
     exp_msg = (*env)->GetMethodID(
             env, exclass, "toString", "()Ljava/lang/String;");
 
+    ioexclass = (*env)->FindClass(env, "java/io/IOException");
+    if (!ioexclass) return JNI_ERR;
+    ioexclass = (*env)->NewWeakGlobalRef(env, ioexclass);
+
+    jclass isclass = (*env)->FindClass(env, "java/io/InputStream");
+    if (!isclass) return JNI_ERR;
+    mth_read = (*env)->GetMethodID(env, isclass, "read", "([BII)I");
+
+    bbclass = (*env)->FindClass(env, "java/nio/ByteBuffer");
+    if (!bbclass) return JNI_ERR;
+    bbclass = (*env)->NewWeakGlobalRef(env, bbclass);
+    mth_allocate_direct = (*env)->GetStaticMethodID(
+            env, bbclass, "allocateDirect", "(I)Ljava/nio/ByteBuffer;");
+
+    jclass osclass = (*env)->FindClass(env, "java/io/OutputStream");
+    if (!osclass) return JNI_ERR;
+    mth_write = (*env)->GetMethodID(env, osclass, "write", "([BII)V");
+
+    objclass = (*env)->FindClass(env, "java/lang/Object");
+    if (!objclass) return JNI_ERR;
+    objclass = (*env)->NewWeakGlobalRef(env, objclass);
+
+    stringclass = (*env)->FindClass(env, "java/lang/String");
+    if (!stringclass) return JNI_ERR;
+    stringclass = (*env)->NewWeakGlobalRef(env, stringclass);
+
+    longclass = (*env)->FindClass(env, "java/lang/Long");
+    if (!longclass) return JNI_ERR;
+    longclass = (*env)->NewWeakGlobalRef(env, longclass);
+    mth_long_valueof = (*env)->GetStaticMethodID(
+            env, longclass, "valueOf", "(J)Ljava/lang/Long;");
+
+    doubleclass = (*env)->FindClass(env, "java/lang/Double");
+    if (!doubleclass) return JNI_ERR;
+    doubleclass = (*env)->NewWeakGlobalRef(env, doubleclass);
+    mth_double_valueof = (*env)->GetStaticMethodID(
+            env, doubleclass, "valueOf", "(D)Ljava/lang/Double;");
+
+    conflictclass = (*env)->FindClass(env, "org/sqlite/core/DB$ChangesetConflictHandler");
+    if (!conflictclass) return JNI_ERR;
+    conflictclass = (*env)->NewWeakGlobalRef(env, conflictclass);
+    mth_conflict = (*env)->GetMethodID(env, conflictclass, "onConflict",
+            "(ILjava/lang/String;IZ[Ljava/lang/Object;[Ljava/lang/Object;[Ljava/lang/Object;)I");
+
     return JNI_VERSION_1_2;
 }
 
@@ -512,10 +873,27 @@ JNIEXPORT void JNICALL JNI_OnUnload(JavaVM *vm, void *reserved) {
     if (aclass) (*env)->DeleteWeakGlobalRef(env, aclass);
 
     if (wclass) (*env)->DeleteWeakGlobalRef(env, wclass);
+    if (packedclass) (*env)->DeleteWeakGlobalRef(env, packedclass);
+    if (packedaggclass) (*env)->DeleteWeakGlobalRef(env, packedaggclass);
+    if (packedwinclass) (*env)->DeleteWeakGlobalRef(env, packedwinclass);
+    if (batchfclass) (*env)->DeleteWeakGlobalRef(env, batchfclass);
 
     if (pclass) (*env)->DeleteWeakGlobalRef(env, pclass);
 
     if (phandleclass) (*env)->DeleteWeakGlobalRef(env, phandleclass);
+
+    if (ioexclass) (*env)->DeleteWeakGlobalRef(env, ioexclass);
+
+    if (bbclass) (*env)->DeleteWeakGlobalRef(env, bbclass);
+
+    if (objclass) (*env)->DeleteWeakGlobalRef(env, objclass);
+    if (stringclass) (*env)->DeleteWeakGlobalRef(env, stringclass);
+
+    if (longclass) (*env)->DeleteWeakGlobalRef(env, longclass);
+
+    if (doubleclass) (*env)->DeleteWeakGlobalRef(env, doubleclass);
+
+    if (conflictclass) (*env)->DeleteWeakGlobalRef(env, conflictclass);
 }
 
 
@@ -593,7 +971,7 @@ JNIEXPORT void JNICALL Java_org_sqlite_core_NativeDB_interrupt(JNIEnv *env, jobj
     sqlite3_interrupt(db);
 }
 
-JNIEXPORT void JNICALL Java_org_sqlite_core_NativeDB_busy_1timeout(
+JNIEXPORT void JNICALL Java_org_sqlite_core_NativeDB__1busy_1timeout(
     JNIEnv *env, jobject this, jint ms)
 {
     sqlite3 *db = gethandle(env, this);
@@ -650,7 +1028,7 @@ void change_busy_handler(JNIEnv *env, jobject nativeDB, jobject busyHandler)
     set_new_handler(env, nativeDB, "busyHandler", busyHandlerContext, &free_busy_handler);
 }
 
-JNIEXPORT void JNICALL Java_org_sqlite_core_NativeDB_busy_1handler(
+JNIEXPORT void JNICALL Java_org_sqlite_core_NativeDB__1busy_1handler(
     JNIEnv *env, jobject nativeDB, jobject busyHandler) {
     change_busy_handler(env, nativeDB, busyHandler);
 }
@@ -716,10 +1094,13 @@ JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB__1exec_1utf8(
 }
 
 
-JNIEXPORT jobject JNICALL Java_org_sqlite_core_NativeDB_errmsg_1utf8(JNIEnv *env, jobject this)
+JNIEXPORT jbyteArray JNICALL Java_org_sqlite_core_NativeDB_errmsg_1utf8(JNIEnv *env, jobject this)
 {
     sqlite3 *db;
+    sqlite3_mutex *mutex;
     const char *str;
+    jbyteArray msg = NULL;
+    jsize length;
 
     db = gethandle(env, this);
     if (!db)
@@ -727,10 +1108,119 @@ JNIEXPORT jobject JNICALL Java_org_sqlite_core_NativeDB_errmsg_1utf8(JNIEnv *env
         throwex_db_closed(env);
         return NULL;
     }
-    
+
+    // other threads may use the connection, copy the message before it changes
+    mutex = sqlite3_db_mutex(db);
+    sqlite3_mutex_enter(mutex);
     str = (const char*) sqlite3_errmsg(db);
-    if (!str) return NULL;
-    return utf8BytesToDirectByteBuffer(env, str, strlen(str));
+    if (str)
+    {
+        length = (jsize) strlen(str);
+        msg = (*env)->NewByteArray(env, length);
+        if (msg) (*env)->SetByteArrayRegion(env, msg, 0, length, (const jbyte*) str);
+    }
+    sqlite3_mutex_leave(mutex);
+
+    if (str && !msg) throwex_outofmemory(env);
+    return msg;
+}
+
+JNIEXPORT jboolean JNICALL Java_org_sqlite_core_NativeDB_db_1mutex(JNIEnv *env, jobject this)
+{
+    sqlite3 *db = gethandle(env, this);
+    if (!db)
+    {
+        throwex_db_closed(env);
+        return JNI_FALSE;
+    }
+
+    return sqlite3_db_mutex(db) ? JNI_TRUE : JNI_FALSE;
+}
+
+JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_mutex_1try(JNIEnv *env, jobject this)
+{
+    sqlite3 *db = gethandle(env, this);
+    sqlite3_mutex *mutex = db ? sqlite3_db_mutex(db) : 0;
+    if (!mutex) return SQLITE_MISUSE;
+
+    return sqlite3_mutex_try(mutex);
+}
+
+JNIEXPORT void JNICALL Java_org_sqlite_core_NativeDB_mutex_1wait(JNIEnv *env, jobject this)
+{
+    sqlite3 *db = gethandle(env, this);
+    sqlite3_mutex *mutex = db ? sqlite3_db_mutex(db) : 0;
+    if (!mutex) return;
+
+    // only waits until the thread holding the mutex leaves it
+    sqlite3_mutex_enter(mutex);
+    sqlite3_mutex_leave(mutex);
+}
+
+JNIEXPORT void JNICALL Java_org_sqlite_core_NativeDB_mutex_1leave(JNIEnv *env, jobject this)
+{
+    sqlite3 *db = gethandle(env, this);
+    sqlite3_mutex *mutex = db ? sqlite3_db_mutex(db) : 0;
+    if (mutex) sqlite3_mutex_leave(mutex);
+}
+
+JNIEXPORT jintArray JNICALL Java_org_sqlite_core_NativeDB__1db_1status(
+        JNIEnv *env, jobject this, jint count, jboolean reset)
+{
+    sqlite3 *db = gethandle(env, this);
+    jintArray result;
+    jint values[2];
+    int op, current, highwater;
+
+    if (!db)
+    {
+        throwex_db_closed(env);
+        return NULL;
+    }
+
+    result = (*env)->NewIntArray(env, count * 2);
+    if (!result)
+    {
+        throwex_outofmemory(env);
+        return NULL;
+    }
+
+    for (op = 0; op < count; op++)
+    {
+        current = highwater = 0;
+        // counters unknown to this version of SQLite stay zero
+        sqlite3_db_status(db, op, &current, &highwater, reset ? 1 : 0);
+        values[0] = current;
+        values[1] = highwater;
+        (*env)->SetIntArrayRegion(env, result, op * 2, 2, values);
+    }
+    return result;
+}
+
+JNIEXPORT jlongArray JNICALL Java_org_sqlite_core_NativeDB_status64(
+        JNIEnv *env, jobject this, jint count, jboolean reset)
+{
+    jlongArray result;
+    jlong values[2];
+    sqlite3_int64 current, highwater;
+    int op;
+
+    result = (*env)->NewLongArray(env, count * 2);
+    if (!result)
+    {
+        throwex_outofmemory(env);
+        return NULL;
+    }
+
+    for (op = 0; op < count; op++)
+    {
+        current = highwater = 0;
+        sqlite3_status64(op, &current, &highwater, reset ? 1 : 0);
+        values[0] = current;
+        values[1] = highwater;
+        (*env)->SetLongArrayRegion(env, result, op * 2, 2, values);
+    }
+    return result;
 }
 
 JNIEXPORT jobject JNICALL Java_org_sqlite_core_NativeDB_libversion_1utf8(
@@ -766,7 +1256,7 @@ JNIEXPORT jlong JNICALL Java_org_sqlite_core_NativeDB_total_1changes(
     return sqlite3_total_changes64(db);
 }
 
-JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_finalize(
+JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB__1finalize(
         JNIEnv *env, jobject this, jlong stmt)
 {
     if (!stmt)
@@ -778,7 +1268,7 @@ JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_finalize(
     return sqlite3_finalize(toref(stmt));
 }
 
-JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_step(
+JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB__1step(
         JNIEnv *env, jobject this, jlong stmt)
 {
     if (!stmt)
@@ -790,7 +1280,19 @@ JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_step(
     return sqlite3_step(toref(stmt));
 }
 
-JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_reset(
+JNIEXPORT jboolean JNICALL Java_org_sqlite_core_NativeDB_stmt_1busy(
+        JNIEnv *env, jobject this, jlong stmt)
+{
+    if (!stmt)
+    {
+        throwex_stmt_finalized(env);
+        return JNI_FALSE;
+    }
+
+    return sqlite3_stmt_busy(toref(stmt)) ? JNI_TRUE : JNI_FALSE;
+}
+
+JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB__1reset(
         JNIEnv *env, jobject this, jlong stmt)
 {
     if (!stmt)
@@ -802,6 +1304,122 @@ JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_reset(
     return sqlite3_reset(toref(stmt));
 }
 
+JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_stmt_1status(
+        JNIEnv *env, jobject this, jlong stmt, jint op, jboolean reset)
+{
+    if (!stmt)
+    {
+        throwex_stmt_finalized(env);
+        return 0;
+    }
+
+    return sqlite3_stmt_status(toref(stmt), op, reset ? 1 : 0);
+}
+
+JNIEXPORT jobject JNICALL Java_org_sqlite_core_NativeDB_stmt_1sql_1utf8(
+        JNIEnv *env, jobject this, jlong stmt)
+{
+    const char *str;
+
+    if (!stmt)
+    {
+        throwex_stmt_finalized(env);
+        return NULL;
+    }
+
+    str = sqlite3_sql(toref(stmt));
+    if (!str) return NULL;
+    return utf8BytesToDirectByteBuffer(env, str, strlen(str));
+}
+
+JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_execute_1batch(
+        JNIEnv *env, jobject this, jlong stmt, jint count, jbyteArray types,
+        jlongArray values, jbyteArray bytes, jlongArray changes)
+{
+    sqlite3_stmt *dbstmt = toref(stmt);
+    sqlite3 *db;
+    jbyte *t;
+    jlong *v;
+    jbyte *b;
+    jlong *c;
+    int params, row, param, cell, rc;
+    double d;
+
+    if (!stmt)
+    {
+        throwex_stmt_finalized(env);
+        return 0;
+    }
+
+    db = sqlite3_db_handle(dbstmt);
+    params = sqlite3_bind_parameter_count(dbstmt);
+
+    // the arrays are copied rather than pinned: stepping may call back into Java
+    t = (*env)->GetByteArrayElements(env, types, 0);
+    v = (*env)->GetLongArrayElements(env, values, 0);
+    b = (*env)->GetByteArrayElements(env, bytes, 0);
+    c = (*env)->GetLongArrayElements(env, changes, 0);
+    if (!t || !v || !b || !c)
+    {
+        if (t) (*env)->ReleaseByteArrayElements(env, types, t, JNI_ABORT);
+        if (v) (*env)->ReleaseLongArrayElements(env, values, v, JNI_ABORT);
+        if (b) (*env)->ReleaseByteArrayElements(env, bytes, b, JNI_ABORT);
+        if (c) (*env)->ReleaseLongArrayElements(env, changes, c, JNI_ABORT);
+        throwex_outofmemory(env);
+        return 0;
+    }
+
+    for (row = 0; row < count; row++)
+    {
+        if (row > 0) sqlite3_reset(dbstmt);
+
+        rc = SQLITE_OK;
+        for (param = 0, cell = row * params; param < params && rc == SQLITE_OK; param++, cell++)
+        {
+            switch (t[cell])
+            {
+                case SQLITE_INTEGER:
+                    rc = sqlite3_bind_int64(dbstmt, param + 1, v[cell]);
+                    break;
+                case SQLITE_FLOAT:
+                    memcpy(&d, &v[cell], sizeof(d));
+                    rc = sqlite3_bind_double(dbstmt, param + 1, d);
+                    break;
+                case SQLITE_TEXT:
+                    // offset in the high 32 bits of the value, length in the low 32 bits
+                    rc = sqlite3_bind_text(dbstmt, param + 1,
+                            (const char *) b + (v[cell] >> 32), (int) (v[cell] & 0xFFFFFFFF),
+                            SQLITE_TRANSIENT);
+                    break;
+                case SQLITE_BLOB:
+                    rc = sqlite3_bind_blob(dbstmt, param + 1,
+                            b + (v[cell] >> 32), (int) (v[cell] & 0xFFFFFFFF),
+                            SQLITE_TRANSIENT);
+                    break;
+                default:
+                    rc = sqlite3_bind_null(dbstmt, param + 1);
+                    break;
+            }
+        }
+
+        if (rc == SQLITE_OK) rc = sqlite3_step(dbstmt);
+        if (rc != SQLITE_DONE || (*env)->ExceptionCheck(env))
+        {
+            // the failed row gets the result code instead of a change count
+            c[row] = rc;
+            break;
+        }
+        c[row] = sqlite3_changes64(db);
+    }
+
+    (*env)->ReleaseByteArrayElements(env, types, t, JNI_ABORT);
+    (*env)->ReleaseLongArrayElements(env, values, v, JNI_ABORT);
+    (*env)->ReleaseByteArrayElements(env, bytes, b, JNI_ABORT);
+    (*env)->ReleaseLongArrayElements(env, changes, c, 0);
+
+    return row;
+}
+
 JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_clear_1bindings(
         JNIEnv *env, jobject this, jlong stmt)
 {
@@ -899,11 +1517,50 @@ JNIEXPORT jobject JNICALL Java_org_sqlite_core_NativeDB_column_1name_1utf8(
     return utf8BytesToDirectByteBuffer(env, str, strlen(str));
 }
 
-JNIEXPORT jobject JNICALL Java_org_sqlite_core_NativeDB_column_1text_1utf8(
+// Decodes UTF-8 text of SQLite to a Java string, replacing malformed input.
+static jstring utf8BytesToJavaString(JNIEnv *env, const unsigned char *bytes, int nbytes)
+{
+    int nchars, i;
+    jchar stackchars[256];
+    jchar *chars;
+    jstring text;
+
+    // ASCII without NUL is also valid modified UTF-8
+    for (i = 0; i < nbytes && bytes[i] > 0 && bytes[i] < 0x80; i++);
+    if (i == nbytes)
+    {
+        return (*env)->NewStringUTF(env, (const char*) bytes);
+    }
+
+    chars = nbytes <= (int) (sizeof(stackchars) / sizeof(stackchars[0]))
+            ? stackchars : malloc(nbytes * sizeof(jchar));
+    if (!chars)
+    {
+        throwex_outofmemory(env);
+        return NULL;
+    }
+
+    nchars = utf8BytesToUtf16(bytes, nbytes, chars);
+    if (nchars >= 0)
+    {
+        text = (*env)->NewString(env, chars, nchars);
+    }
+    else
+    {
+        // let the Java decoder replace malformed input
+        text = (*env)->CallStaticObjectMethod(env, dbclass, mth_utf8ByteBufferToString,
+                utf8BytesToDirectByteBuffer(env, (const char*) bytes, nbytes));
+    }
+
+    if (chars != stackchars) free(chars);
+    return text;
+}
+
+JNIEXPORT jstring JNICALL Java_org_sqlite_core_NativeDB_column_1text(
         JNIEnv *env, jobject this, jlong stmt, jint col)
 {
     sqlite3 *db;
-    const char *bytes;
+    const unsigned char *bytes;
     int nbytes;
 
     db = gethandle(env, this);
@@ -919,49 +1576,85 @@ JNIEXPORT jobject JNICALL Java_org_sqlite_core_NativeDB_column_1text_1utf8(
         return NULL;
     }
 
-    bytes = (const char*) sqlite3_column_text(toref(stmt), col);
+    bytes = sqlite3_column_text(toref(stmt), col);
     nbytes = sqlite3_column_bytes(toref(stmt), col);
 
-    if (!bytes && sqlite3_errcode(db) == SQLITE_NOMEM)
+    if (!bytes)
     {
-        throwex_outofmemory(env);
+        if (sqlite3_errcode(db) == SQLITE_NOMEM) throwex_outofmemory(env);
         return NULL;
     }
 
-    return utf8BytesToDirectByteBuffer(env, bytes, nbytes);
+    return utf8BytesToJavaString(env, bytes, nbytes);
 }
 
-JNIEXPORT jbyteArray JNICALL Java_org_sqlite_core_NativeDB_column_1blob(
-        JNIEnv *env, jobject this, jlong stmt, jint col)
+JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_column_1text_1copy(
+        JNIEnv *env, jobject this, jlong stmt, jint col, jbyteArray buffer)
 {
     sqlite3 *db;
-    int type;
-    int length;
-    jbyteArray jBlob;
-    const void *blob;
+    const char *bytes;
+    int nbytes;
 
     db = gethandle(env, this);
     if (!db)
     {
         throwex_db_closed(env);
-        return NULL;
+        return -1;
     }
 
     if (!stmt)
     {
         throwex_stmt_finalized(env);
-        return NULL;
+        return -1;
     }
 
-    // The value returned by sqlite3_column_type() is only meaningful if no type conversions have occurred
-    type = sqlite3_column_type(toref(stmt), col);
-    blob = sqlite3_column_blob(toref(stmt), col);
-    if (!blob && sqlite3_errcode(db) == SQLITE_NOMEM)
+    bytes = (const char*) sqlite3_column_text(toref(stmt), col);
+    nbytes = sqlite3_column_bytes(toref(stmt), col);
+
+    if (!bytes)
     {
-        throwex_outofmemory(env);
-        return NULL;
+        if (sqlite3_errcode(db) == SQLITE_NOMEM) throwex_outofmemory(env);
+        return -1;
     }
-    if (!blob) {
+
+    if (buffer && nbytes <= (*env)->GetArrayLength(env, buffer))
+    {
+        (*env)->SetByteArrayRegion(env, buffer, 0, nbytes, (const jbyte*) bytes);
+    }
+    return nbytes;
+}
+
+JNIEXPORT jbyteArray JNICALL Java_org_sqlite_core_NativeDB_column_1blob(
+        JNIEnv *env, jobject this, jlong stmt, jint col)
+{
+    sqlite3 *db;
+    int type;
+    int length;
+    jbyteArray jBlob;
+    const void *blob;
+
+    db = gethandle(env, this);
+    if (!db)
+    {
+        throwex_db_closed(env);
+        return NULL;
+    }
+
+    if (!stmt)
+    {
+        throwex_stmt_finalized(env);
+        return NULL;
+    }
+
+    // The value returned by sqlite3_column_type() is only meaningful if no type conversions have occurred
+    type = sqlite3_column_type(toref(stmt), col);
+    blob = sqlite3_column_blob(toref(stmt), col);
+    if (!blob && sqlite3_errcode(db) == SQLITE_NOMEM)
+    {
+        throwex_outofmemory(env);
+        return NULL;
+    }
+    if (!blob) {
         if (type == SQLITE_NULL) {
             return NULL;
         }
@@ -1018,6 +1711,215 @@ JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_column_1int(
     return sqlite3_column_int(toref(stmt), col);
 }
 
+JNIEXPORT jstring JNICALL Java_org_sqlite_core_NativeDB_format_1real(
+        JNIEnv *env, jobject this, jdouble value)
+{
+    // same conversion as sqlite3_column_text() applies to a REAL value
+    char text[64];
+
+    sqlite3_snprintf(sizeof(text), text, "%!.15g", value);
+    return (*env)->NewStringUTF(env, text);
+}
+
+/*
+ * Turns the memory statistics of the library on or off. Only succeeds before SQLite
+ * is initialized, i.e. before the first connection of the process is opened.
+ */
+JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_config_1memstatus(
+        JNIEnv *env, jclass cls, jboolean enable)
+{
+    return sqlite3_config(SQLITE_CONFIG_MEMSTATUS, enable ? 1 : 0);
+}
+
+/*
+ * Addresses of the SQLite functions ForeignDB calls through the Foreign Function
+ * & Memory API. The order must match the constants declared in ForeignDB.
+ */
+JNIEXPORT jlongArray JNICALL Java_org_sqlite_core_NativeDB_entry_1points(
+        JNIEnv *env, jclass cls)
+{
+    void *functions[] = {
+        (void*) sqlite3_column_type,
+        (void*) sqlite3_column_int,
+        (void*) sqlite3_column_int64,
+        (void*) sqlite3_column_double,
+        (void*) sqlite3_bind_null,
+        (void*) sqlite3_bind_int,
+        (void*) sqlite3_bind_int64,
+        (void*) sqlite3_bind_double
+    };
+    jsize count = sizeof(functions) / sizeof(functions[0]);
+    jlong addresses[sizeof(functions) / sizeof(functions[0])];
+    jlongArray result;
+    jsize i;
+
+    for (i = 0; i < count; i++)
+    {
+        addresses[i] = fromref(functions[i]);
+    }
+
+    result = (*env)->NewLongArray(env, count);
+    if (!result)
+    {
+        throwex_outofmemory(env);
+        return NULL;
+    }
+    (*env)->SetLongArrayRegion(env, result, 0, count, addresses);
+    return result;
+}
+
+// Soft limit on the size of a row block. A block always holds at least one row,
+// but no further rows are stepped once the buffer has grown past this size.
+#define ROW_BLOCK_SOFT_LIMIT (1024 * 1024)
+
+typedef struct {
+    char *data;
+    size_t size;
+    size_t capacity;
+} RowBlockBuffer;
+
+static int rowblock_reserve(RowBlockBuffer *buf, size_t n)
+{
+    size_t capacity;
+    char *data;
+
+    if (buf->size + n <= buf->capacity) return 1;
+
+    capacity = buf->capacity ? buf->capacity : 4096;
+    while (capacity < buf->size + n) capacity *= 2;
+
+    data = realloc(buf->data, capacity);
+    if (!data) return 0;
+
+    buf->data = data;
+    buf->capacity = capacity;
+    return 1;
+}
+
+static void rowblock_put(RowBlockBuffer *buf, const void *src, size_t n)
+{
+    if (n == 0) return;
+    memcpy(buf->data + buf->size, src, n);
+    buf->size += n;
+}
+
+/*
+ * Steps the statement up to maxRows times and copies every returned row into a
+ * single byte array, so a result set can consume many rows per JNI call.
+ *
+ * Layout (native byte order):
+ *   int32 status    SQLITE_ROW if more rows may follow, SQLITE_DONE, or an error code
+ *   int32 rowCount
+ *   per row, per column: int8 type, followed by
+ *     SQLITE_INTEGER  int64 value
+ *     SQLITE_FLOAT    double value
+ *     SQLITE_TEXT     int32 length + UTF-8 bytes
+ *     SQLITE_BLOB     int32 length + bytes
+ *     SQLITE_NULL     nothing
+ *
+ * The first row of a result set is stepped by execute(), so this is only
+ * called to advance past the current row.
+ */
+JNIEXPORT jbyteArray JNICALL Java_org_sqlite_core_NativeDB__1step_1block(
+        JNIEnv *env, jobject this, jlong stmt, jint maxRows)
+{
+    sqlite3 *db;
+    sqlite3_stmt *dbstmt;
+    RowBlockBuffer buf = { 0, 0, 0 };
+    jbyteArray block;
+    jint header[2];
+    int columns, rows = 0, rc = SQLITE_ROW, col;
+
+    db = gethandle(env, this);
+    if (!db)
+    {
+        throwex_db_closed(env);
+        return NULL;
+    }
+
+    if (!stmt)
+    {
+        throwex_stmt_finalized(env);
+        return NULL;
+    }
+
+    dbstmt = toref(stmt);
+    columns = sqlite3_column_count(dbstmt);
+
+    if (!rowblock_reserve(&buf, sizeof(header))) goto oom;
+    buf.size = sizeof(header);
+
+    while (rows < maxRows && buf.size < ROW_BLOCK_SOFT_LIMIT)
+    {
+        rc = sqlite3_step(dbstmt);
+        if (rc != SQLITE_ROW) break;
+
+        for (col = 0; col < columns; col++)
+        {
+            jbyte type = (jbyte) sqlite3_column_type(dbstmt, col);
+            sqlite3_int64 lval;
+            double dval;
+            const void *bytes;
+            jint nbytes;
+
+            switch (type)
+            {
+                case SQLITE_INTEGER:
+                    lval = sqlite3_column_int64(dbstmt, col);
+                    if (!rowblock_reserve(&buf, 1 + sizeof(lval))) goto oom;
+                    rowblock_put(&buf, &type, 1);
+                    rowblock_put(&buf, &lval, sizeof(lval));
+                    break;
+                case SQLITE_FLOAT:
+                    dval = sqlite3_column_double(dbstmt, col);
+                    if (!rowblock_reserve(&buf, 1 + sizeof(dval))) goto oom;
+                    rowblock_put(&buf, &type, 1);
+                    rowblock_put(&buf, &dval, sizeof(dval));
+                    break;
+                case SQLITE_TEXT:
+                case SQLITE_BLOB:
+                    bytes = type == SQLITE_TEXT
+                            ? (const void*) sqlite3_column_text(dbstmt, col)
+                            : sqlite3_column_blob(dbstmt, col);
+                    nbytes = sqlite3_column_bytes(dbstmt, col);
+                    if (!bytes && nbytes > 0) goto oom;
+                    if (!bytes && sqlite3_errcode(db) == SQLITE_NOMEM) goto oom;
+                    if (!rowblock_reserve(&buf, 1 + sizeof(nbytes) + nbytes)) goto oom;
+                    rowblock_put(&buf, &type, 1);
+                    rowblock_put(&buf, &nbytes, sizeof(nbytes));
+                    rowblock_put(&buf, bytes, nbytes);
+                    break;
+                default:
+                    if (!rowblock_reserve(&buf, 1)) goto oom;
+                    rowblock_put(&buf, &type, 1);
+                    break;
+            }
+        }
+        rows++;
+    }
+
+    header[0] = rc;
+    header[1] = rows;
+    memcpy(buf.data, header, sizeof(header));
+
+    block = (*env)->NewByteArray(env, (jsize) buf.size);
+    if (!block)
+    {
+        free(buf.data);
+        throwex_outofmemory(env);
+        return NULL;
+    }
+    (*env)->SetByteArrayRegion(env, block, 0, (jsize) buf.size, (const jbyte*) buf.data);
+    free(buf.data);
+
+    return block;
+
+oom:
+    free(buf.data);
+    throwex_outofmemory(env);
+    return NULL;
+}
+
 JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_bind_1null(
         JNIEnv *env, jobject this, jlong stmt, jint pos)
 {
@@ -1109,6 +2011,79 @@ JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_bind_1blob(
     return rc;
 }
 
+// size of the chunks copied between a Java array and a BLOB or a bound value
+#define BLOB_COPY_BUFFER_SIZE 65536
+
+JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_bind_1stream(
+        JNIEnv *env, jobject this, jlong stmt, jint pos, jobject in, jlong length, jboolean text)
+{
+    jbyteArray chunk;
+    char *buf, *grown;
+    sqlite3_int64 size = 0, capacity;
+    jint n, want;
+
+    if (!stmt)
+    {
+        throwex_stmt_finalized(env);
+        return SQLITE_MISUSE;
+    }
+
+    // the value is read into memory owned by SQLite, of its exact size if it is known
+    capacity = length >= 0 ? length : BLOB_COPY_BUFFER_SIZE;
+    buf = sqlite3_malloc64(capacity > 0 ? capacity : 1);
+    if (!buf)
+    {
+        throwex_outofmemory(env);
+        return SQLITE_NOMEM;
+    }
+    chunk = (*env)->NewByteArray(env, BLOB_COPY_BUFFER_SIZE);
+    if (!chunk)
+    {
+        sqlite3_free(buf);
+        return SQLITE_NOMEM;
+    }
+
+    while (length < 0 || size < length)
+    {
+        want = length < 0 || length - size > BLOB_COPY_BUFFER_SIZE
+                ? BLOB_COPY_BUFFER_SIZE : (jint) (length - size);
+        if (size + want > capacity)
+        {
+            while (size + want > capacity) capacity *= 2;
+            grown = sqlite3_realloc64(buf, capacity);
+            if (!grown)
+            {
+                throwex_outofmemory(env);
+                break;
+            }
+            buf = grown;
+        }
+
+        n = (*env)->CallIntMethod(env, in, mth_read, chunk, 0, want);
+        if ((*env)->ExceptionCheck(env)) break;
+        if (n < 0)
+        {
+            if (length < 0) break;
+            (*env)->ThrowNew(env, ioexclass, "End of stream has been reached");
+            break;
+        }
+        (*env)->GetByteArrayRegion(env, chunk, 0, n, (jbyte*) buf + size);
+        size += n;
+    }
+
+    (*env)->DeleteLocalRef(env, chunk);
+    if ((*env)->ExceptionCheck(env))
+    {
+        sqlite3_free(buf);
+        return SQLITE_ERROR;
+    }
+
+    // SQLite frees the memory when the value is no longer bound, or if binding fails
+    return text
+            ? sqlite3_bind_text64(toref(stmt), pos, buf, size, &sqlite3_free, SQLITE_UTF8)
+            : sqlite3_bind_blob64(toref(stmt), pos, buf, size, &sqlite3_free);
+}
+
 JNIEXPORT void JNICALL Java_org_sqlite_core_NativeDB_result_1null(
         JNIEnv *env, jobject this, jlong context)
 {
@@ -1270,6 +2245,7 @@ void free_udf_func(void *udfToFree) {
     (*udf->vm)->AttachCurrentThread(udf->vm, (void **)&env, 0);
 
     (*env)->DeleteGlobalRef(env, udf->func);
+    if (udf->objects) (*env)->DeleteGlobalRef(env, udf->objects);
     free(udf);
 }
 
@@ -1288,11 +2264,40 @@ JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_create_1function_1utf8(
     isWindow = (*env)->IsInstanceOf(env, func, wclass);
     udf->func = (*env)->NewGlobalRef(env, func);
     (*env)->GetJavaVM(env, &udf->vm);
+    udf->packed = 0;
+    udf->objects = 0;
+    if ((*env)->IsInstanceOf(env, func, packedclass)) {
+        jobject buffer = (*env)->GetObjectField(env, func, packed_buffer);
+        jobject objects = (*env)->GetObjectField(env, func, packed_objects);
+        udf->packed = (*env)->GetDirectBufferAddress(env, buffer);
+        udf->objects = (*env)->NewGlobalRef(env, objects);
+    }
+    udf->state = 0;
+    udf->state_size = 0;
+    if ((*env)->IsInstanceOf(env, func, packedaggclass)) {
+        jobject state = (*env)->GetObjectField(env, func, packed_state);
+        udf->state = (*env)->GetDirectBufferAddress(env, state);
+        udf->state_size = (int) (*env)->GetDirectBufferCapacity(env, state);
+        isWindow = (*env)->IsInstanceOf(env, func, packedwinclass);
+    }
 
     utf8JavaByteArrayToUtf8Bytes(env, name, &name_bytes, NULL);
     if (!name_bytes) { throwex_outofmemory(env); return 0; }
 
-    if (isAgg) {
+    if (udf->state) {
+        ret = sqlite3_create_window_function(
+                gethandle(env, nativeDB),
+                name_bytes,            // function name
+                nArgs,                 // number of args
+                SQLITE_UTF16 | flags,  // preferred chars
+                udf,
+                &xStepPacked,
+                &xFinalPacked,
+                isWindow ? &xValuePacked : NULL,
+                isWindow ? &xInversePacked : NULL,
+                &free_udf_func         // Cleanup function
+        );
+    } else if (isAgg) {
         ret = sqlite3_create_window_function(
                 gethandle(env, nativeDB),
                 name_bytes,            // function name
@@ -1312,7 +2317,7 @@ JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_create_1function_1utf8(
                 nArgs,                 // number of args
                 SQLITE_UTF16 | flags,  // preferred chars
                 udf,
-                &xFunc,
+                udf->packed ? &xFuncPacked : &xFunc,
                 NULL,
                 NULL,
                 &free_udf_func         // Cleanup function
@@ -1388,98 +2393,520 @@ JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_destroy_1collation_1utf8(
     return ret;
 }
 
-JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_limit(JNIEnv *env, jobject this, jint id, jint value)
-{
-    sqlite3* db;
+// BATCH FUNCTIONS ////////////////////////////////////////////////////
 
-    db = gethandle(env, this);
+// A batch function is an eponymous-only virtual table: its hidden column takes a query, whose
+// rows are copied a batch at a time into the arrays of a BatchFunction.Batch, so that Java
+// computes the output columns of the whole batch in a single upcall.
 
-    if (!db)
-    {
-        throwex_db_closed(env);
-        return 0;
-    }
+struct BatchModule {
+    JavaVM *vm;
+    jobject func;       // global ref to the BatchFunction
+    char *schema;
+    int inputs;
+    int outputs;
+    int capacity;
+};
 
-    return sqlite3_limit(db, id, value);
+struct BatchTable {
+    sqlite3_vtab base;
+    sqlite3 *db;
+    struct BatchModule *module;
+};
+
+struct BatchCursor {
+    sqlite3_vtab_cursor base;
+    sqlite3_stmt *stmt;         // the query, or 0 once it has no more rows
+    jobject batch;              // global ref to the BatchFunction.Batch
+    sqlite3_value **values;     // [input * capacity + row], copies of the values of the query
+    double *doubles;
+    sqlite3_int64 *longs;
+    jbyte *types;
+    double *outputs;            // [output * capacity + row]
+    int size;
+    int row;
+    sqlite3_int64 rowid;
+};
+
+static void free_batch_module(void *p)
+{
+    JNIEnv *env;
+    struct BatchModule *module = (struct BatchModule *) p;
+    (*module->vm)->AttachCurrentThread(module->vm, (void **)&env, 0);
+
+    (*env)->DeleteGlobalRef(env, module->func);
+    freeUtf8Bytes(module->schema);
+    free(module);
 }
 
-// COMPOUND FUNCTIONS ///////////////////////////////////////////////
+static int batch_connect(
+        sqlite3 *db, void *aux, int argc, const char *const *argv,
+        sqlite3_vtab **vtab, char **err)
+{
+    struct BatchModule *module = (struct BatchModule *) aux;
+    struct BatchTable *table;
+    int rc;
 
-JNIEXPORT jobjectArray JNICALL Java_org_sqlite_core_NativeDB_column_1metadata(
-        JNIEnv *env, jobject this, jlong stmt)
+    rc = sqlite3_declare_vtab(db, module->schema);
+    if (rc != SQLITE_OK) return rc;
+    // the query is arbitrary SQL: do not run it from the schema
+    sqlite3_vtab_config(db, SQLITE_VTAB_DIRECTONLY);
+
+    table = (struct BatchTable *) sqlite3_malloc(sizeof(struct BatchTable));
+    if (!table) return SQLITE_NOMEM;
+    memset(table, 0, sizeof(struct BatchTable));
+    table->db = db;
+    table->module = module;
+    *vtab = &table->base;
+    return SQLITE_OK;
+}
+
+static int batch_disconnect(sqlite3_vtab *vtab)
 {
-    const char *zTableName, *zColumnName;
-    int pNotNull, pPrimaryKey, pAutoinc, i, colCount;
-    jobjectArray array;
-    jbooleanArray colData;
-    jboolean* colDataRaw;
-    sqlite3 *db;
-    sqlite3_stmt *dbstmt;
+    sqlite3_free(vtab);
+    return SQLITE_OK;
+}
 
-    db = gethandle(env, this);
-    if (!db)
-    {
-        throwex_db_closed(env);
-        return NULL;
+static int batch_best_index(sqlite3_vtab *vtab, sqlite3_index_info *info)
+{
+    struct BatchModule *module = ((struct BatchTable *) vtab)->module;
+    int query = module->inputs + module->outputs;
+    int i, unusable = 0;
+
+    for (i = 0; i < info->nConstraint; i++) {
+        if (info->aConstraint[i].iColumn != query) continue;
+        if (!info->aConstraint[i].usable) { unusable = 1; continue; }
+        if (info->aConstraint[i].op != SQLITE_INDEX_CONSTRAINT_EQ) continue;
+        info->aConstraintUsage[i].argvIndex = 1;
+        info->aConstraintUsage[i].omit = 1;
+        info->idxNum = 1;
+        info->estimatedCost = 1000;
+        return SQLITE_OK;
     }
+    // a plan where the query is known is to be found later
+    if (unusable) return SQLITE_CONSTRAINT;
+    info->idxNum = 0;
+    info->estimatedCost = 1e300;
+    return SQLITE_OK;
+}
 
-    if (!stmt)
-    {
-        throwex_stmt_finalized(env);
-        return NULL;
+static void batch_release(struct BatchCursor *cursor, int count)
+{
+    int i;
+    for (i = 0; i < count; i++) {
+        sqlite3_value_free(cursor->values[i]);
+        cursor->values[i] = 0;
     }
+}
 
-    dbstmt = toref(stmt);
-
-    colCount = sqlite3_column_count(dbstmt);
-    array = (*env)->NewObjectArray(
-        env, colCount, (*env)->FindClass(env, "[Z"), NULL) ;
-    if (!array) { throwex_outofmemory(env); return 0; }
+static int batch_open(sqlite3_vtab *vtab, sqlite3_vtab_cursor **out)
+{
+    struct BatchModule *module = ((struct BatchTable *) vtab)->module;
+    struct BatchCursor *cursor;
+    JNIEnv *env;
+    jobject batch;
+    int inputs = module->inputs * module->capacity;
+    int outputs = module->outputs * module->capacity;
 
-    colDataRaw = (jboolean*)malloc(3 * sizeof(jboolean));
-    if (!colDataRaw) { throwex_outofmemory(env); return 0; }
+    (*module->vm)->AttachCurrentThread(module->vm, (void **)&env, 0);
 
-    for (i = 0; i < colCount; i++) {
-        // load passed column name and table name
-        zColumnName = sqlite3_column_name(dbstmt, i);
-        zTableName  = sqlite3_column_table_name(dbstmt, i);
+    cursor = (struct BatchCursor *) sqlite3_malloc(sizeof(struct BatchCursor));
+    if (!cursor) return SQLITE_NOMEM;
+    memset(cursor, 0, sizeof(struct BatchCursor));
 
-        pNotNull = 0;
-        pPrimaryKey = 0;
-        pAutoinc = 0;
+    batch = (*env)->CallObjectMethod(env, module->func, mth_batch_new);
+    if (!batch) {
+        (*env)->ExceptionClear(env);
+        sqlite3_free(cursor);
+        return SQLITE_NOMEM;
+    }
+    cursor->batch = (*env)->NewGlobalRef(env, batch);
+    (*env)->DeleteLocalRef(env, batch);
+
+    // one allocation holds every column, the largest items first to keep them aligned
+    cursor->values = (sqlite3_value **) sqlite3_malloc64(
+            (sqlite3_uint64) inputs * (sizeof(sqlite3_value *) + 2 * sizeof(double) + 1)
+            + (sqlite3_uint64) outputs * sizeof(double));
+    if (!cursor->values) {
+        (*env)->DeleteGlobalRef(env, cursor->batch);
+        sqlite3_free(cursor);
+        return SQLITE_NOMEM;
+    }
+    memset(cursor->values, 0, inputs * sizeof(sqlite3_value *));
+    cursor->doubles = (double *) (cursor->values + inputs);
+    cursor->longs = (sqlite3_int64 *) (cursor->doubles + inputs);
+    cursor->outputs = (double *) (cursor->longs + inputs);
+    cursor->types = (jbyte *) (cursor->outputs + outputs);
+
+    *out = &cursor->base;
+    return SQLITE_OK;
+}
 
-        // request metadata for column and load into output variables
-        if (zTableName && zColumnName) {
-            sqlite3_table_column_metadata(
-                db, 0, zTableName, zColumnName,
-                0, 0, &pNotNull, &pPrimaryKey, &pAutoinc
-            );
-        }
+static int batch_close(sqlite3_vtab_cursor *cur)
+{
+    struct BatchCursor *cursor = (struct BatchCursor *) cur;
+    struct BatchModule *module = ((struct BatchTable *) cur->pVtab)->module;
+    JNIEnv *env;
 
-        // load relevant metadata into 2nd dimension of return results
-        colDataRaw[0] = pNotNull;
-        colDataRaw[1] = pPrimaryKey;
-        colDataRaw[2] = pAutoinc;
+    (*module->vm)->AttachCurrentThread(module->vm, (void **)&env, 0);
 
-        colData = (*env)->NewBooleanArray(env, 3);
-        if (!colData) { throwex_outofmemory(env); return 0; }
+    batch_release(cursor, module->inputs * module->capacity);
+    sqlite3_finalize(cursor->stmt);
+    (*env)->DeleteGlobalRef(env, cursor->batch);
+    sqlite3_free(cursor->values);
+    sqlite3_free(cursor);
+    return SQLITE_OK;
+}
 
-        (*env)->SetBooleanArrayRegion(env, colData, 0, 3, colDataRaw);
-        (*env)->SetObjectArrayElement(env, array, i, colData);
-    }
+/* copies an exception thrown by the function to the error message of the table */
+static int batch_error(JNIEnv *env, sqlite3_vtab *vtab)
+{
+    jstring msg;
+    char *msg_bytes;
+    int msg_nbytes;
+    jthrowable ex = (*env)->ExceptionOccurred(env);
 
-    free(colDataRaw);
+    (*env)->ExceptionClear(env);
+    sqlite3_free(vtab->zErrMsg);
+    vtab->zErrMsg = 0;
 
-    return array;
-}
+    msg = (jstring)(*env)->CallObjectMethod(env, ex, exp_msg);
+    if (!msg) { vtab->zErrMsg = sqlite3_mprintf("unknown error"); return SQLITE_ERROR; }
 
-// backup function
+    stringToUtf8Bytes(env, msg, &msg_bytes, &msg_nbytes);
+    if (!msg_bytes) return SQLITE_NOMEM;
 
-void reportProgress(JNIEnv* env, jobject func, int remaining, int pageCount) {
-  if(!func)
-    return;
+    vtab->zErrMsg = sqlite3_mprintf("%s", msg_bytes);
+    freeUtf8Bytes(msg_bytes);
+    return SQLITE_ERROR;
+}
 
-  (*env)->CallVoidMethod(env, func, pmethod, remaining, pageCount);
+/* copies a column array of the batch to ('B', 'J', 'D') or from ('d') the Java arrays */
+static int batch_copy(JNIEnv *env, jobject batch, jfieldID field, char type, void *values,
+        int count, int capacity, int size)
+{
+    jobjectArray columns = (jobjectArray) (*env)->GetObjectField(env, batch, field);
+    int i;
+
+    for (i = 0; i < count; i++) {
+        jarray column = (jarray) (*env)->GetObjectArrayElement(env, columns, i);
+        switch (type) {
+            case 'B':
+                (*env)->SetByteArrayRegion(env, column, 0, size, (jbyte *) values + i * capacity);
+                break;
+            case 'J':
+                (*env)->SetLongArrayRegion(env, column, 0, size, (jlong *) values + i * capacity);
+                break;
+            case 'D':
+                (*env)->SetDoubleArrayRegion(
+                        env, column, 0, size, (jdouble *) values + i * capacity);
+                break;
+            default:
+                (*env)->GetDoubleArrayRegion(
+                        env, column, 0, size, (jdouble *) values + i * capacity);
+        }
+        (*env)->DeleteLocalRef(env, column);
+    }
+    (*env)->DeleteLocalRef(env, columns);
+    return (*env)->ExceptionCheck(env) ? SQLITE_ERROR : SQLITE_OK;
+}
+
+/* reads the next batch of rows of the query, and computes their output columns */
+static int batch_fill(struct BatchCursor *cursor)
+{
+    sqlite3_vtab *vtab = cursor->base.pVtab;
+    struct BatchTable *table = (struct BatchTable *) vtab;
+    struct BatchModule *module = table->module;
+    int capacity = module->capacity;
+    int i, rc;
+    JNIEnv *env;
+
+    batch_release(cursor, module->inputs * capacity);
+    cursor->rowid += cursor->size;
+    cursor->size = 0;
+    cursor->row = 0;
+
+    while (cursor->stmt && cursor->size < capacity) {
+        rc = sqlite3_step(cursor->stmt);
+        if (rc == SQLITE_DONE) {
+            sqlite3_finalize(cursor->stmt);
+            cursor->stmt = 0;
+            break;
+        }
+        if (rc != SQLITE_ROW) {
+            sqlite3_free(vtab->zErrMsg);
+            vtab->zErrMsg = sqlite3_mprintf("%s", sqlite3_errmsg(table->db));
+            return rc;
+        }
+        for (i = 0; i < module->inputs; i++) {
+            int index = i * capacity + cursor->size;
+            sqlite3_value *value = sqlite3_column_value(cursor->stmt, i);
+            cursor->types[index] = (jbyte) sqlite3_value_type(value);
+            cursor->values[index] = sqlite3_value_dup(value);
+            if (!cursor->values[index]) return SQLITE_NOMEM;
+            cursor->doubles[index] = sqlite3_value_double(cursor->values[index]);
+            cursor->longs[index] = sqlite3_value_int64(cursor->values[index]);
+        }
+        cursor->size++;
+    }
+    if (cursor->size == 0) return SQLITE_OK;
+
+    (*module->vm)->AttachCurrentThread(module->vm, (void **)&env, 0);
+
+    if (batch_copy(env, cursor->batch, batch_doubles, 'D', cursor->doubles, module->inputs,
+                capacity, cursor->size) != SQLITE_OK
+            || batch_copy(env, cursor->batch, batch_longs, 'J', cursor->longs, module->inputs,
+                capacity, cursor->size) != SQLITE_OK
+            || batch_copy(env, cursor->batch, batch_types, 'B', cursor->types, module->inputs,
+                capacity, cursor->size) != SQLITE_OK) {
+        return batch_error(env, vtab);
+    }
+    (*env)->CallVoidMethod(env, module->func, mth_batch_call, cursor->batch, cursor->size);
+    if ((*env)->ExceptionCheck(env)
+            || batch_copy(env, cursor->batch, batch_outputs, 'd', cursor->outputs,
+                module->outputs, capacity, cursor->size) != SQLITE_OK) {
+        return batch_error(env, vtab);
+    }
+    return SQLITE_OK;
+}
+
+static int batch_filter(
+        sqlite3_vtab_cursor *cur, int idxNum, const char *idxStr,
+        int argc, sqlite3_value **argv)
+{
+    struct BatchCursor *cursor = (struct BatchCursor *) cur;
+    struct BatchTable *table = (struct BatchTable *) cur->pVtab;
+    const char *sql;
+    int rc;
+
+    batch_release(cursor, table->module->inputs * table->module->capacity);
+    sqlite3_finalize(cursor->stmt);
+    cursor->stmt = 0;
+    cursor->size = 0;
+    cursor->rowid = 1;
+
+    sql = idxNum == 1 ? (const char *) sqlite3_value_text(argv[0]) : 0;
+    if (!sql) {
+        sqlite3_free(cur->pVtab->zErrMsg);
+        cur->pVtab->zErrMsg = sqlite3_mprintf("a batch function takes a query as argument");
+        return SQLITE_ERROR;
+    }
+    rc = sqlite3_prepare_v2(table->db, sql, -1, &cursor->stmt, 0);
+    if (rc != SQLITE_OK) {
+        sqlite3_free(cur->pVtab->zErrMsg);
+        cur->pVtab->zErrMsg = sqlite3_mprintf("%s", sqlite3_errmsg(table->db));
+        return rc;
+    }
+    if (!cursor->stmt || sqlite3_column_count(cursor->stmt) != table->module->inputs) {
+        sqlite3_free(cur->pVtab->zErrMsg);
+        cur->pVtab->zErrMsg = sqlite3_mprintf(
+                "the query of a batch function must return %d columns", table->module->inputs);
+        return SQLITE_ERROR;
+    }
+    return batch_fill(cursor);
+}
+
+static int batch_next(sqlite3_vtab_cursor *cur)
+{
+    struct BatchCursor *cursor = (struct BatchCursor *) cur;
+
+    cursor->row++;
+    return cursor->row < cursor->size ? SQLITE_OK : batch_fill(cursor);
+}
+
+static int batch_eof(sqlite3_vtab_cursor *cur)
+{
+    struct BatchCursor *cursor = (struct BatchCursor *) cur;
+    return cursor->row >= cursor->size;
+}
+
+static int batch_column(sqlite3_vtab_cursor *cur, sqlite3_context *context, int column)
+{
+    struct BatchCursor *cursor = (struct BatchCursor *) cur;
+    struct BatchModule *module = ((struct BatchTable *) cur->pVtab)->module;
+    double value;
+
+    if (column < module->inputs) {
+        sqlite3_result_value(context, cursor->values[column * module->capacity + cursor->row]);
+    } else if (column < module->inputs + module->outputs) {
+        value = cursor->outputs[(column - module->inputs) * module->capacity + cursor->row];
+        // NaN stands for NULL
+        if (value != value) sqlite3_result_null(context);
+        else sqlite3_result_double(context, value);
+    } else {
+        sqlite3_result_null(context);
+    }
+    return SQLITE_OK;
+}
+
+static int batch_rowid(sqlite3_vtab_cursor *cur, sqlite3_int64 *rowid)
+{
+    struct BatchCursor *cursor = (struct BatchCursor *) cur;
+    *rowid = cursor->rowid + cursor->row;
+    return SQLITE_OK;
+}
+
+static sqlite3_module batch_module = {
+    0,                  // iVersion
+    0,                  // xCreate: eponymous only
+    batch_connect,
+    batch_best_index,
+    batch_disconnect,
+    0,                  // xDestroy
+    batch_open,
+    batch_close,
+    batch_filter,
+    batch_next,
+    batch_eof,
+    batch_column,
+    batch_rowid,
+    0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0
+};
+
+JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_create_1batch_1function_1utf8(
+        JNIEnv *env, jobject nativeDB, jbyteArray name, jobject func, jbyteArray schema,
+        jint inputs, jint outputs, jint capacity)
+{
+    jint ret = 0;
+    char *name_bytes;
+    struct BatchModule *module;
+
+    module = (struct BatchModule *) malloc(sizeof(struct BatchModule));
+    if (!module) { throwex_outofmemory(env); return 0; }
+
+    utf8JavaByteArrayToUtf8Bytes(env, schema, &module->schema, NULL);
+    if (!module->schema) { free(module); throwex_outofmemory(env); return 0; }
+
+    utf8JavaByteArrayToUtf8Bytes(env, name, &name_bytes, NULL);
+    if (!name_bytes) {
+        freeUtf8Bytes(module->schema);
+        free(module);
+        throwex_outofmemory(env);
+        return 0;
+    }
+
+    (*env)->GetJavaVM(env, &module->vm);
+    module->func = (*env)->NewGlobalRef(env, func);
+    module->inputs = inputs;
+    module->outputs = outputs;
+    module->capacity = capacity;
+
+    // the module is freed by SQLite, even if it cannot be registered
+    ret = sqlite3_create_module_v2(
+            gethandle(env, nativeDB), name_bytes, &batch_module, module, &free_batch_module);
+
+    freeUtf8Bytes(name_bytes);
+
+    return ret;
+}
+
+JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_destroy_1batch_1function_1utf8(
+        JNIEnv *env, jobject nativeDB, jbyteArray name)
+{
+    jint ret = 0;
+    char *name_bytes;
+
+    utf8JavaByteArrayToUtf8Bytes(env, name, &name_bytes, NULL);
+    if (!name_bytes) { throwex_outofmemory(env); return 0; }
+
+    ret = sqlite3_create_module_v2(gethandle(env, nativeDB), name_bytes, 0, 0, 0);
+    freeUtf8Bytes(name_bytes);
+
+    return ret;
+}
+
+JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB__1limit(JNIEnv *env, jobject this, jint id, jint value)
+{
+    sqlite3* db;
+
+    db = gethandle(env, this);
+
+    if (!db)
+    {
+        throwex_db_closed(env);
+        return 0;
+    }
+
+    return sqlite3_limit(db, id, value);
+}
+
+// COMPOUND FUNCTIONS ///////////////////////////////////////////////
+
+JNIEXPORT jobjectArray JNICALL Java_org_sqlite_core_NativeDB_column_1metadata(
+        JNIEnv *env, jobject this, jlong stmt)
+{
+    const char *zTableName, *zColumnName;
+    int pNotNull, pPrimaryKey, pAutoinc, i, colCount;
+    jobjectArray array;
+    jbooleanArray colData;
+    jboolean* colDataRaw;
+    sqlite3 *db;
+    sqlite3_stmt *dbstmt;
+
+    db = gethandle(env, this);
+    if (!db)
+    {
+        throwex_db_closed(env);
+        return NULL;
+    }
+
+    if (!stmt)
+    {
+        throwex_stmt_finalized(env);
+        return NULL;
+    }
+
+    dbstmt = toref(stmt);
+
+    colCount = sqlite3_column_count(dbstmt);
+    array = (*env)->NewObjectArray(
+        env, colCount, (*env)->FindClass(env, "[Z"), NULL) ;
+    if (!array) { throwex_outofmemory(env); return 0; }
+
+    colDataRaw = (jboolean*)malloc(3 * sizeof(jboolean));
+    if (!colDataRaw) { throwex_outofmemory(env); return 0; }
+
+    for (i = 0; i < colCount; i++) {
+        // load passed column name and table name
+        zColumnName = sqlite3_column_name(dbstmt, i);
+        zTableName  = sqlite3_column_table_name(dbstmt, i);
+
+        pNotNull = 0;
+        pPrimaryKey = 0;
+        pAutoinc = 0;
+
+        // request metadata for column and load into output variables
+        if (zTableName && zColumnName) {
+            sqlite3_table_column_metadata(
+                db, 0, zTableName, zColumnName,
+                0, 0, &pNotNull, &pPrimaryKey, &pAutoinc
+            );
+        }
+
+        // load relevant metadata into 2nd dimension of return results
+        colDataRaw[0] = pNotNull;
+        colDataRaw[1] = pPrimaryKey;
+        colDataRaw[2] = pAutoinc;
+
+        colData = (*env)->NewBooleanArray(env, 3);
+        if (!colData) { throwex_outofmemory(env); return 0; }
+
+        (*env)->SetBooleanArrayRegion(env, colData, 0, 3, colDataRaw);
+        (*env)->SetObjectArrayElement(env, array, i, colData);
+    }
+
+    free(colDataRaw);
+
+    return array;
+}
+
+// backup function
+
+void reportProgress(JNIEnv* env, jobject func, int remaining, int pageCount) {
+  if(!func)
+    return;
+
+  (*env)->CallVoidMethod(env, func, pmethod, remaining, pageCount);
 }
 
 
@@ -1550,7 +2977,10 @@ JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_backup(
     /* Open the sqlite3_backup object used to accomplish the transfer */
     pBackup = sqlite3_backup_init(pFile, "main", pDb, dDBName);
     if( pBackup ){
-      while((rc = sqlite3_backup_step(pBackup,100))==SQLITE_OK ){}
+      while((rc = sqlite3_backup_step(pBackup,100))==SQLITE_OK ){
+        reportProgress(env, observer,
+                sqlite3_backup_remaining(pBackup), sqlite3_backup_pagecount(pBackup));
+      }
 
       /* Release resources allocated by backup_init(). */
       (void)sqlite3_backup_finish(pBackup);
@@ -1625,6 +3055,8 @@ JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_restore(
                 if( nTimeout++ >= 3 ) break;
                 sqlite3_sleep(100);
             }
+            reportProgress(env, observer,
+                    sqlite3_backup_remaining(pBackup), sqlite3_backup_pagecount(pBackup));
         }
       /* Release resources allocated by backup_init(). */
       (void)sqlite3_backup_finish(pBackup);
@@ -1646,104 +3078,997 @@ JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_restore(
 }
 
 
-// Progress handler
-
-struct ProgressHandlerContext {
-    JavaVM *vm;
-    jmethodID mth;
-    jobject phandler;
-};
-
-static void free_progress_handler(JNIEnv *env, void *toFree) {
-    struct ProgressHandlerContext* progressHandlerContext = (struct ProgressHandlerContext*) toFree;
-    (*env)->DeleteGlobalRef(env, progressHandlerContext->phandler);
-    free(toFree);
-}
-
-static int progress_handler_function(void *ctx) {
-    JNIEnv *env = 0;
-    struct ProgressHandlerContext* progressHandlerContext = (struct ProgressHandlerContext*) ctx;
-    (*progressHandlerContext->vm)->AttachCurrentThread(progressHandlerContext->vm, (void **)&env, 0);
-    jint rv = (*env)->CallIntMethod(env, progressHandlerContext->phandler, progressHandlerContext->mth);
-    return rv;
-}
+// Incremental BLOB I/O
 
-static void change_progress_handler(JNIEnv *env, jobject nativeDB, jobject progressHandler, jint vmCalls)
+JNIEXPORT jlong JNICALL Java_org_sqlite_core_NativeDB_blob_1open_1utf8(
+        JNIEnv *env, jobject this, jbyteArray database, jbyteArray table, jbyteArray column,
+        jlong rowId, jboolean writable)
 {
     sqlite3 *db;
+    sqlite3_blob *blob = NULL;
+    char *database_bytes, *table_bytes, *column_bytes;
+    int rc;
 
-    db = gethandle(env, nativeDB);
-    if (!db){
+    db = gethandle(env, this);
+    if (!db)
+    {
         throwex_db_closed(env);
-        return;
+        return 0;
     }
 
-    struct ProgressHandlerContext* progressHandlerContext = NULL;
-
-    if (progressHandler) {
-        progressHandlerContext = (struct ProgressHandlerContext*) malloc(sizeof(struct ProgressHandlerContext));
-        (*env)->GetJavaVM(env, &progressHandlerContext->vm);
-
-        progressHandlerContext->phandler = (*env)->NewGlobalRef(env, progressHandler);
-        progressHandlerContext->mth = (*env)->GetMethodID(  env,
-                                                   (*env)->GetObjectClass(env, progressHandlerContext->phandler),
-                                                   "progress",
-                                                   "()I");
+    utf8JavaByteArrayToUtf8Bytes(env, database, &database_bytes, NULL);
+    utf8JavaByteArrayToUtf8Bytes(env, table, &table_bytes, NULL);
+    utf8JavaByteArrayToUtf8Bytes(env, column, &column_bytes, NULL);
+    if (!database_bytes || !table_bytes || !column_bytes)
+    {
+        freeUtf8Bytes(database_bytes);
+        freeUtf8Bytes(table_bytes);
+        freeUtf8Bytes(column_bytes);
+        if (!(*env)->ExceptionCheck(env)) throwex_errorcode(env, this, SQLITE_MISUSE);
+        return 0;
     }
 
-    if (progressHandlerContext) {
-        sqlite3_progress_handler(gethandle(env, nativeDB), vmCalls, &progress_handler_function, progressHandlerContext);
-    } else {
-        sqlite3_progress_handler(gethandle(env, nativeDB), 0, NULL, NULL);
+    rc = sqlite3_blob_open(db, database_bytes, table_bytes, column_bytes, rowId,
+            writable ? 1 : 0, &blob);
+    freeUtf8Bytes(database_bytes);
+    freeUtf8Bytes(table_bytes);
+    freeUtf8Bytes(column_bytes);
+
+    if (rc != SQLITE_OK)
+    {
+        throwex_errorcode(env, this, rc);
+        return 0;
     }
+    return fromref(blob);
+}
 
-    set_new_handler(env, nativeDB, "progressHandler", progressHandlerContext, &free_progress_handler);
+JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_blob_1reopen(
+        JNIEnv *env, jobject this, jlong blob, jlong rowId)
+{
+    if (!blob) return SQLITE_MISUSE;
+    return sqlite3_blob_reopen(toref(blob), rowId);
 }
 
-JNIEXPORT void JNICALL Java_org_sqlite_core_NativeDB_register_1progress_1handler(
-  JNIEnv *env,
-  jobject nativeDB,
-  jint vmCalls,
-  jobject progressHandler
-)
+JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_blob_1close(
+        JNIEnv *env, jobject this, jlong blob)
 {
-    change_progress_handler(env, nativeDB, progressHandler, vmCalls);
+    if (!blob) return SQLITE_MISUSE;
+    return sqlite3_blob_close(toref(blob));
 }
 
-JNIEXPORT void JNICALL Java_org_sqlite_core_NativeDB_clear_1progress_1handler(
-  JNIEnv *env,
-  jobject nativeDB
-)
+JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_blob_1bytes(
+        JNIEnv *env, jobject this, jlong blob)
 {
-    change_progress_handler(env, nativeDB, NULL, 0);
+    if (!blob) return 0;
+    return sqlite3_blob_bytes(toref(blob));
 }
 
-// Update hook
+JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_blob_1read(
+        JNIEnv *env, jobject this, jlong blob, jbyteArray buffer, jint bufferOffset,
+        jint length, jint offset)
+{
+    char stackbuf[4096];
+    char *buf;
+    int size, n, rc = SQLITE_OK;
 
-struct UpdateHandlerContext {
-    JavaVM *vm;
-    jobject handler;
-    jmethodID method;
-};
+    if (!blob) return SQLITE_MISUSE;
 
+    // copy through a bounded native buffer, not a copy of the whole range
+    size = length < BLOB_COPY_BUFFER_SIZE ? length : BLOB_COPY_BUFFER_SIZE;
+    buf = size <= (int) sizeof(stackbuf) ? stackbuf : malloc(size);
+    if (!buf)
+    {
+        throwex_outofmemory(env);
+        return SQLITE_NOMEM;
+    }
 
-void update_hook(void *context, int type, char const *database, char const *table, sqlite3_int64 row) {
-    JNIEnv *env = 0;
-    struct UpdateHandlerContext* update_handler_context = (struct UpdateHandlerContext*) context;
-    (*update_handler_context->vm)->AttachCurrentThread(update_handler_context->vm, (void **)&env, 0);
+    while (length > 0)
+    {
+        n = length < size ? length : size;
+        rc = sqlite3_blob_read(toref(blob), buf, n, offset);
+        if (rc != SQLITE_OK) break;
+        (*env)->SetByteArrayRegion(env, buffer, bufferOffset, n, (const jbyte*) buf);
+        if ((*env)->ExceptionCheck(env)) break;
+        bufferOffset += n;
+        offset += n;
+        length -= n;
+    }
 
-    jstring databaseString = (*env)->NewStringUTF(env, database);
-    jstring tableString    = (*env)->NewStringUTF(env, table);
+    if (buf != stackbuf) free(buf);
+    return rc;
+}
 
-    (*env)->CallVoidMethod(env, update_handler_context->handler, update_handler_context->method, type, databaseString, tableString, row);
+JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_blob_1read_1direct(
+        JNIEnv *env, jobject this, jlong blob, jobject buffer, jint bufferOffset,
+        jint length, jint offset)
+{
+    char *address;
 
-    (*env)->DeleteLocalRef(env, databaseString);
-    (*env)->DeleteLocalRef(env, tableString);
+    if (!blob) return SQLITE_MISUSE;
+
+    address = (*env)->GetDirectBufferAddress(env, buffer);
+    if (!address) return SQLITE_MISUSE;
+
+    return sqlite3_blob_read(toref(blob), address + bufferOffset, length, offset);
 }
 
-static void free_update_handler(JNIEnv *env, void *ctx) {
-    struct UpdateHandlerContext* update_handler_context = (struct UpdateHandlerContext*) ctx;
+JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_blob_1write(
+        JNIEnv *env, jobject this, jlong blob, jbyteArray buffer, jint bufferOffset,
+        jint length, jint offset)
+{
+    char stackbuf[4096];
+    char *buf;
+    int size, n, rc = SQLITE_OK;
+
+    if (!blob) return SQLITE_MISUSE;
+
+    size = length < BLOB_COPY_BUFFER_SIZE ? length : BLOB_COPY_BUFFER_SIZE;
+    buf = size <= (int) sizeof(stackbuf) ? stackbuf : malloc(size);
+    if (!buf)
+    {
+        throwex_outofmemory(env);
+        return SQLITE_NOMEM;
+    }
+
+    while (length > 0)
+    {
+        n = length < size ? length : size;
+        (*env)->GetByteArrayRegion(env, buffer, bufferOffset, n, (jbyte*) buf);
+        if ((*env)->ExceptionCheck(env)) break;
+        rc = sqlite3_blob_write(toref(blob), buf, n, offset);
+        if (rc != SQLITE_OK) break;
+        bufferOffset += n;
+        offset += n;
+        length -= n;
+    }
+
+    if (buf != stackbuf) free(buf);
+    return rc;
+}
+
+JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_blob_1write_1direct(
+        JNIEnv *env, jobject this, jlong blob, jobject buffer, jint bufferOffset,
+        jint length, jint offset)
+{
+    char *address;
+
+    if (!blob) return SQLITE_MISUSE;
+
+    address = (*env)->GetDirectBufferAddress(env, buffer);
+    if (!address) return SQLITE_MISUSE;
+
+    return sqlite3_blob_write(toref(blob), address + bufferOffset, length, offset);
+}
+
+// Incremental backup
+
+JNIEXPORT jlong JNICALL Java_org_sqlite_core_NativeDB_backup_1init_1utf8(
+        JNIEnv *env, jobject this, jbyteArray schema, jobject dest, jbyteArray destSchema)
+{
+    sqlite3 *db, *dest_db;
+    sqlite3_backup *backup;
+    char *schema_bytes, *dest_schema_bytes;
+
+    db = gethandle(env, this);
+    dest_db = gethandle(env, dest);
+    if (!db || !dest_db)
+    {
+        throwex_db_closed(env);
+        return 0;
+    }
+
+    utf8JavaByteArrayToUtf8Bytes(env, schema, &schema_bytes, NULL);
+    utf8JavaByteArrayToUtf8Bytes(env, destSchema, &dest_schema_bytes, NULL);
+    if (!schema_bytes || !dest_schema_bytes)
+    {
+        freeUtf8Bytes(schema_bytes);
+        freeUtf8Bytes(dest_schema_bytes);
+        if (!(*env)->ExceptionCheck(env)) throwex_errorcode(env, this, SQLITE_MISUSE);
+        return 0;
+    }
+
+    backup = sqlite3_backup_init(dest_db, dest_schema_bytes, db, schema_bytes);
+    freeUtf8Bytes(schema_bytes);
+    freeUtf8Bytes(dest_schema_bytes);
+
+    // the error is stored in the destination connection
+    if (!backup)
+    {
+        throwex_errorcode(env, dest, sqlite3_errcode(dest_db));
+        return 0;
+    }
+    return fromref(backup);
+}
+
+JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_backup_1step(
+        JNIEnv *env, jobject this, jlong backup, jint pages)
+{
+    if (!backup) return SQLITE_MISUSE;
+    return sqlite3_backup_step(toref(backup), pages);
+}
+
+JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_backup_1remaining(
+        JNIEnv *env, jobject this, jlong backup)
+{
+    if (!backup) return 0;
+    return sqlite3_backup_remaining(toref(backup));
+}
+
+JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_backup_1pagecount(
+        JNIEnv *env, jobject this, jlong backup)
+{
+    if (!backup) return 0;
+    return sqlite3_backup_pagecount(toref(backup));
+}
+
+JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_backup_1finish(
+        JNIEnv *env, jobject this, jlong backup)
+{
+    if (!backup) return SQLITE_MISUSE;
+    return sqlite3_backup_finish(toref(backup));
+}
+
+// Serialization
+
+JNIEXPORT jobject JNICALL Java_org_sqlite_core_NativeDB_serialize_1utf8(
+        JNIEnv *env, jobject this, jbyteArray schema)
+{
+    sqlite3 *db;
+    char *schema_bytes;
+    unsigned char *data;
+    sqlite3_int64 size = -1;
+    int copied = 0;
+    jobject buffer;
+
+    db = gethandle(env, this);
+    if (!db)
+    {
+        throwex_db_closed(env);
+        return NULL;
+    }
+
+    utf8JavaByteArrayToUtf8Bytes(env, schema, &schema_bytes, NULL);
+    if (!schema_bytes)
+    {
+        if (!(*env)->ExceptionCheck(env)) throwex_errorcode(env, this, SQLITE_MISUSE);
+        return NULL;
+    }
+
+    // the pages of a database of the memdb VFS are read in place; for the
+    // others this only computes the size and SQLite makes a copy below
+    data = sqlite3_serialize(db, schema_bytes, &size, SQLITE_SERIALIZE_NOCOPY);
+    if (!data && size > 0)
+    {
+        data = sqlite3_serialize(db, schema_bytes, &size, 0);
+        copied = 1;
+    }
+    freeUtf8Bytes(schema_bytes);
+
+    if (size < 0)
+    {
+        throwex_msg(env, "Unknown database");
+        return NULL;
+    }
+    if (!data && size > 0)
+    {
+        throwex_outofmemory(env);
+        return NULL;
+    }
+    if (size > 0x7fffffff)
+    {
+        if (copied) sqlite3_free(data);
+        throwex_msg(env, "The database is too large to be serialized into a buffer");
+        return NULL;
+    }
+
+    buffer = (*env)->CallStaticObjectMethod(env, bbclass, mth_allocate_direct, (jint) size);
+    if (buffer && size > 0)
+    {
+        memcpy((*env)->GetDirectBufferAddress(env, buffer), data, (size_t) size);
+    }
+    if (copied) sqlite3_free(data);
+    return buffer;
+}
+
+static jint deserialize_schema(JNIEnv *env, jobject this, sqlite3 *db, jbyteArray schema,
+        unsigned char *data, jint length, unsigned int flags)
+{
+    char *schema_bytes;
+    int rc;
+
+    utf8JavaByteArrayToUtf8Bytes(env, schema, &schema_bytes, NULL);
+    if (!schema_bytes)
+    {
+        if (flags & SQLITE_DESERIALIZE_FREEONCLOSE) sqlite3_free(data);
+        return SQLITE_NOMEM;
+    }
+
+    // SQLite frees the data itself if this fails and it was to own it
+    rc = sqlite3_deserialize(db, schema_bytes, data, length, length, flags);
+    freeUtf8Bytes(schema_bytes);
+    return rc;
+}
+
+JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_deserialize_1utf8(
+        JNIEnv *env, jobject this, jbyteArray schema, jbyteArray data, jint offset,
+        jint length, jboolean readOnly)
+{
+    sqlite3 *db;
+    unsigned char *copy;
+
+    db = gethandle(env, this);
+    if (!db)
+    {
+        throwex_db_closed(env);
+        return SQLITE_MISUSE;
+    }
+
+    copy = sqlite3_malloc64(length > 0 ? length : 1);
+    if (!copy)
+    {
+        throwex_outofmemory(env);
+        return SQLITE_NOMEM;
+    }
+    (*env)->GetByteArrayRegion(env, data, offset, length, (jbyte *) copy);
+    if ((*env)->ExceptionCheck(env))
+    {
+        sqlite3_free(copy);
+        return SQLITE_MISUSE;
+    }
+
+    return deserialize_schema(env, this, db, schema, copy, length,
+            SQLITE_DESERIALIZE_FREEONCLOSE | SQLITE_DESERIALIZE_RESIZEABLE
+                    | (readOnly ? SQLITE_DESERIALIZE_READONLY : 0));
+}
+
+JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_deserialize_1direct_1utf8(
+        JNIEnv *env, jobject this, jbyteArray schema, jobject data, jint offset,
+        jint length, jboolean readOnly)
+{
+    sqlite3 *db;
+    unsigned char *address, *copy;
+
+    db = gethandle(env, this);
+    if (!db)
+    {
+        throwex_db_closed(env);
+        return SQLITE_MISUSE;
+    }
+
+    address = (*env)->GetDirectBufferAddress(env, data);
+    if (!address) return SQLITE_MISUSE;
+
+    // a read-only database is used in place, the caller keeps the buffer alive
+    if (readOnly)
+    {
+        return deserialize_schema(env, this, db, schema, address + offset, length,
+                SQLITE_DESERIALIZE_READONLY);
+    }
+
+    copy = sqlite3_malloc64(length > 0 ? length : 1);
+    if (!copy)
+    {
+        throwex_outofmemory(env);
+        return SQLITE_NOMEM;
+    }
+    memcpy(copy, address + offset, length);
+
+    return deserialize_schema(env, this, db, schema, copy, length,
+            SQLITE_DESERIALIZE_FREEONCLOSE | SQLITE_DESERIALIZE_RESIZEABLE);
+}
+
+
+// Session extension
+
+JNIEXPORT jlong JNICALL Java_org_sqlite_core_NativeDB_session_1create_1utf8(
+        JNIEnv *env, jobject this, jbyteArray schema)
+{
+    sqlite3 *db;
+    sqlite3_session *session = NULL;
+    char *schema_bytes;
+    int rc;
+
+    db = gethandle(env, this);
+    if (!db)
+    {
+        throwex_db_closed(env);
+        return 0;
+    }
+
+    utf8JavaByteArrayToUtf8Bytes(env, schema, &schema_bytes, NULL);
+    if (!schema_bytes)
+    {
+        if (!(*env)->ExceptionCheck(env)) throwex_errorcode(env, this, SQLITE_MISUSE);
+        return 0;
+    }
+
+    rc = sqlite3session_create(db, schema_bytes, &session);
+    freeUtf8Bytes(schema_bytes);
+
+    if (rc != SQLITE_OK)
+    {
+        throwex_errorcode(env, this, rc);
+        return 0;
+    }
+    return fromref(session);
+}
+
+JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_session_1attach_1utf8(
+        JNIEnv *env, jobject this, jlong session, jbyteArray table)
+{
+    char *table_bytes;
+    int rc;
+
+    if (!session) return SQLITE_MISUSE;
+
+    // a null table attaches all the tables of the database
+    utf8JavaByteArrayToUtf8Bytes(env, table, &table_bytes, NULL);
+    if (table && !table_bytes) return SQLITE_NOMEM;
+
+    rc = sqlite3session_attach(toref(session), table_bytes);
+    freeUtf8Bytes(table_bytes);
+    return rc;
+}
+
+JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_session_1enable(
+        JNIEnv *env, jobject this, jlong session, jint enable)
+{
+    if (!session) return 0;
+    return sqlite3session_enable(toref(session), enable);
+}
+
+JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_session_1indirect(
+        JNIEnv *env, jobject this, jlong session, jint indirect)
+{
+    if (!session) return 0;
+    return sqlite3session_indirect(toref(session), indirect);
+}
+
+JNIEXPORT jboolean JNICALL Java_org_sqlite_core_NativeDB_session_1isempty(
+        JNIEnv *env, jobject this, jlong session)
+{
+    if (!session) return JNI_TRUE;
+    return sqlite3session_isempty(toref(session)) ? JNI_TRUE : JNI_FALSE;
+}
+
+JNIEXPORT jobject JNICALL Java_org_sqlite_core_NativeDB_session_1changeset(
+        JNIEnv *env, jobject this, jlong session, jboolean patchset)
+{
+    void *data = NULL;
+    int size = 0, rc;
+    jobject buffer;
+
+    if (!session)
+    {
+        throwex_errorcode(env, this, SQLITE_MISUSE);
+        return NULL;
+    }
+
+    rc = patchset
+            ? sqlite3session_patchset(toref(session), &size, &data)
+            : sqlite3session_changeset(toref(session), &size, &data);
+    if (rc != SQLITE_OK)
+    {
+        throwex_errorcode(env, this, rc);
+        return NULL;
+    }
+
+    buffer = (*env)->CallStaticObjectMethod(env, bbclass, mth_allocate_direct, (jint) size);
+    if (buffer && size > 0)
+    {
+        memcpy((*env)->GetDirectBufferAddress(env, buffer), data, size);
+    }
+    sqlite3_free(data);
+    return buffer;
+}
+
+struct StreamContext {
+    JNIEnv *env;
+    jobject stream;
+    jbyteArray chunk;
+};
+
+static int stream_output(void *ctx, const void *data, int size)
+{
+    struct StreamContext *context = (struct StreamContext*) ctx;
+    JNIEnv *env = context->env;
+    int n;
+
+    while (size > 0)
+    {
+        n = size < BLOB_COPY_BUFFER_SIZE ? size : BLOB_COPY_BUFFER_SIZE;
+        (*env)->SetByteArrayRegion(env, context->chunk, 0, n, (const jbyte*) data);
+        (*env)->CallVoidMethod(env, context->stream, mth_write, context->chunk, 0, n);
+        if ((*env)->ExceptionCheck(env)) return SQLITE_IOERR;
+        data = (const char*) data + n;
+        size -= n;
+    }
+    return SQLITE_OK;
+}
+
+static int stream_input(void *ctx, void *data, int *size)
+{
+    struct StreamContext *context = (struct StreamContext*) ctx;
+    JNIEnv *env = context->env;
+    int want, n;
+
+    want = *size < BLOB_COPY_BUFFER_SIZE ? *size : BLOB_COPY_BUFFER_SIZE;
+    n = (*env)->CallIntMethod(env, context->stream, mth_read, context->chunk, 0, want);
+    if ((*env)->ExceptionCheck(env)) return SQLITE_IOERR;
+
+    // a size of 0 tells SQLite the end of the stream was reached
+    if (n < 0) n = 0;
+    (*env)->GetByteArrayRegion(env, context->chunk, 0, n, (jbyte*) data);
+    *size = n;
+    return SQLITE_OK;
+}
+
+JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_session_1changeset_1stream(
+        JNIEnv *env, jobject this, jlong session, jboolean patchset, jobject out)
+{
+    struct StreamContext context;
+    int rc;
+
+    if (!session) return SQLITE_MISUSE;
+
+    context.env = env;
+    context.stream = out;
+    context.chunk = (*env)->NewByteArray(env, BLOB_COPY_BUFFER_SIZE);
+    if (!context.chunk) return SQLITE_NOMEM;
+
+    rc = patchset
+            ? sqlite3session_patchset_strm(toref(session), stream_output, &context)
+            : sqlite3session_changeset_strm(toref(session), stream_output, &context);
+    (*env)->DeleteLocalRef(env, context.chunk);
+    return rc;
+}
+
+JNIEXPORT void JNICALL Java_org_sqlite_core_NativeDB_session_1delete(
+        JNIEnv *env, jobject this, jlong session)
+{
+    if (session) sqlite3session_delete(toref(session));
+}
+
+// Converts a value of a changeset; null for SQL NULL or a value the change does not hold.
+static jobject changeset_value(JNIEnv *env, sqlite3_value *value)
+{
+    jbyteArray bytes;
+    int size;
+
+    if (!value) return NULL;
+
+    switch (sqlite3_value_type(value))
+    {
+        case SQLITE_INTEGER:
+            return (*env)->CallStaticObjectMethod(env, longclass, mth_long_valueof,
+                    (jlong) sqlite3_value_int64(value));
+        case SQLITE_FLOAT:
+            return (*env)->CallStaticObjectMethod(env, doubleclass, mth_double_valueof,
+                    (jdouble) sqlite3_value_double(value));
+        case SQLITE_TEXT:
+            return utf8BytesToJavaString(env, sqlite3_value_text(value),
+                    sqlite3_value_bytes(value));
+        case SQLITE_BLOB:
+            size = sqlite3_value_bytes(value);
+            bytes = (*env)->NewByteArray(env, size);
+            if (bytes && size > 0)
+            {
+                (*env)->SetByteArrayRegion(env, bytes, 0, size,
+                        (const jbyte*) sqlite3_value_blob(value));
+            }
+            return bytes;
+        default:
+            return NULL;
+    }
+}
+
+static jobjectArray changeset_values(JNIEnv *env, sqlite3_changeset_iter *iter, int ncol,
+        int (*get)(sqlite3_changeset_iter*, int, sqlite3_value**))
+{
+    jobjectArray values;
+    jobject value;
+    sqlite3_value *v;
+    int i;
+
+    values = (*env)->NewObjectArray(env, ncol, objclass, NULL);
+    if (!values) return NULL;
+
+    for (i = 0; i < ncol; i++)
+    {
+        v = NULL;
+        if (get(iter, i, &v) != SQLITE_OK) v = NULL;
+        value = changeset_value(env, v);
+        if ((*env)->ExceptionCheck(env)) return NULL;
+        if (value)
+        {
+            (*env)->SetObjectArrayElement(env, values, i, value);
+            (*env)->DeleteLocalRef(env, value);
+        }
+    }
+    return values;
+}
+
+struct ConflictContext {
+    JNIEnv *env;
+    jobject handler;
+};
+
+static int changeset_conflict(void *ctx, int type, sqlite3_changeset_iter *iter)
+{
+    struct ConflictContext *context = (struct ConflictContext*) ctx;
+    JNIEnv *env = context->env;
+    const char *table;
+    int ncol, op, indirect, action;
+    jstring tableString;
+    jobjectArray oldValues = NULL, newValues = NULL, conflictValues = NULL;
+
+    if ((*env)->ExceptionCheck(env)) return SQLITE_CHANGESET_ABORT;
+    if (sqlite3changeset_op(iter, &table, &ncol, &op, &indirect) != SQLITE_OK)
+    {
+        return SQLITE_CHANGESET_ABORT;
+    }
+
+    // the values are only converted for conflicts, the changes applied cleanly cost nothing
+    if (op == SQLITE_UPDATE || op == SQLITE_DELETE)
+    {
+        oldValues = changeset_values(env, iter, ncol, sqlite3changeset_old);
+    }
+    if (op == SQLITE_UPDATE || op == SQLITE_INSERT)
+    {
+        newValues = changeset_values(env, iter, ncol, sqlite3changeset_new);
+    }
+    if (type == SQLITE_CHANGESET_DATA || type == SQLITE_CHANGESET_CONFLICT)
+    {
+        conflictValues = changeset_values(env, iter, ncol, sqlite3changeset_conflict);
+    }
+    tableString = utf8BytesToJavaString(env, (const unsigned char*) table, strlen(table));
+    if ((*env)->ExceptionCheck(env)) return SQLITE_CHANGESET_ABORT;
+
+    action = (*env)->CallIntMethod(env, context->handler, mth_conflict, type, tableString, op,
+            indirect ? JNI_TRUE : JNI_FALSE, oldValues, newValues, conflictValues);
+
+    (*env)->DeleteLocalRef(env, tableString);
+    if (oldValues) (*env)->DeleteLocalRef(env, oldValues);
+    if (newValues) (*env)->DeleteLocalRef(env, newValues);
+    if (conflictValues) (*env)->DeleteLocalRef(env, conflictValues);
+
+    if ((*env)->ExceptionCheck(env)) return SQLITE_CHANGESET_ABORT;
+    return action;
+}
+
+static jint apply_changeset(JNIEnv *env, sqlite3 *db, void *data, int size, jobject handler)
+{
+    struct ConflictContext context;
+
+    context.env = env;
+    context.handler = handler;
+    return sqlite3changeset_apply(db, size, data, NULL, changeset_conflict, &context);
+}
+
+JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_changeset_1apply(
+        JNIEnv *env, jobject this, jbyteArray data, jint offset, jint length, jobject handler)
+{
+    sqlite3 *db;
+    void *copy;
+    jint rc;
+
+    db = gethandle(env, this);
+    if (!db)
+    {
+        throwex_db_closed(env);
+        return SQLITE_MISUSE;
+    }
+
+    // the handler calls back into Java, so the array cannot be pinned meanwhile
+    copy = sqlite3_malloc(length > 0 ? length : 1);
+    if (!copy)
+    {
+        throwex_outofmemory(env);
+        return SQLITE_NOMEM;
+    }
+    (*env)->GetByteArrayRegion(env, data, offset, length, (jbyte*) copy);
+    if ((*env)->ExceptionCheck(env))
+    {
+        sqlite3_free(copy);
+        return SQLITE_MISUSE;
+    }
+
+    rc = apply_changeset(env, db, copy, length, handler);
+    sqlite3_free(copy);
+    return rc;
+}
+
+JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_changeset_1apply_1direct(
+        JNIEnv *env, jobject this, jobject data, jint offset, jint length, jobject handler)
+{
+    sqlite3 *db;
+    char *address;
+
+    db = gethandle(env, this);
+    if (!db)
+    {
+        throwex_db_closed(env);
+        return SQLITE_MISUSE;
+    }
+
+    address = (*env)->GetDirectBufferAddress(env, data);
+    if (!address) return SQLITE_MISUSE;
+
+    return apply_changeset(env, db, address + offset, length, handler);
+}
+
+JNIEXPORT jint JNICALL Java_org_sqlite_core_NativeDB_changeset_1apply_1stream(
+        JNIEnv *env, jobject this, jobject in, jobject handler)
+{
+    sqlite3 *db;
+    struct StreamContext input;
+    struct ConflictContext context;
+    jint rc;
+
+    db = gethandle(env, this);
+    if (!db)
+    {
+        throwex_db_closed(env);
+        return SQLITE_MISUSE;
+    }
+
+    input.env = env;
+    input.stream = in;
+    input.chunk = (*env)->NewByteArray(env, BLOB_COPY_BUFFER_SIZE);
+    if (!input.chunk) return SQLITE_NOMEM;
+
+    context.env = env;
+    context.handler = handler;
+    rc = sqlite3changeset_apply_strm(db, stream_input, &input, NULL, changeset_conflict, &context);
+    (*env)->DeleteLocalRef(env, input.chunk);
+    return rc;
+}
+
+// Progress handler
+
+struct ProgressHandlerContext {
+    JavaVM *vm;
+    jmethodID mth;
+    jobject phandler;
+};
+
+static void free_progress_handler(JNIEnv *env, void *toFree) {
+    struct ProgressHandlerContext* progressHandlerContext = (struct ProgressHandlerContext*) toFree;
+    (*env)->DeleteGlobalRef(env, progressHandlerContext->phandler);
+    free(toFree);
+}
+
+static int progress_handler_function(void *ctx) {
+    JNIEnv *env = 0;
+    struct ProgressHandlerContext* progressHandlerContext = (struct ProgressHandlerContext*) ctx;
+    (*progressHandlerContext->vm)->AttachCurrentThread(progressHandlerContext->vm, (void **)&env, 0);
+    jint rv = (*env)->CallIntMethod(env, progressHandlerContext->phandler, progressHandlerContext->mth);
+    return rv;
+}
+
+static void change_progress_handler(JNIEnv *env, jobject nativeDB, jobject progressHandler, jint vmCalls)
+{
+    sqlite3 *db;
+
+    db = gethandle(env, nativeDB);
+    if (!db){
+        throwex_db_closed(env);
+        return;
+    }
+
+    struct ProgressHandlerContext* progressHandlerContext = NULL;
+
+    if (progressHandler) {
+        progressHandlerContext = (struct ProgressHandlerContext*) malloc(sizeof(struct ProgressHandlerContext));
+        (*env)->GetJavaVM(env, &progressHandlerContext->vm);
+
+        progressHandlerContext->phandler = (*env)->NewGlobalRef(env, progressHandler);
+        progressHandlerContext->mth = (*env)->GetMethodID(  env,
+                                                   (*env)->GetObjectClass(env, progressHandlerContext->phandler),
+                                                   "progress",
+                                                   "()I");
+    }
+
+    if (progressHandlerContext) {
+        sqlite3_progress_handler(gethandle(env, nativeDB), vmCalls, &progress_handler_function, progressHandlerContext);
+    } else {
+        sqlite3_progress_handler(gethandle(env, nativeDB), 0, NULL, NULL);
+    }
+
+    set_new_handler(env, nativeDB, "progressHandler", progressHandlerContext, &free_progress_handler);
+}
+
+JNIEXPORT void JNICALL Java_org_sqlite_core_NativeDB__1register_1progress_1handler(
+  JNIEnv *env,
+  jobject nativeDB,
+  jint vmCalls,
+  jobject progressHandler
+)
+{
+    change_progress_handler(env, nativeDB, progressHandler, vmCalls);
+}
+
+JNIEXPORT void JNICALL Java_org_sqlite_core_NativeDB__1clear_1progress_1handler(
+  JNIEnv *env,
+  jobject nativeDB
+)
+{
+    change_progress_handler(env, nativeDB, NULL, 0);
+}
+
+// Update hook
+
+// Row changes are either reported one by one to DB.onUpdate, or buffered here
+// and reported in batches to DB.onUpdateBatch, or both. A batch only holds
+// primitives; the database and table names are interned once per connection.
+struct UpdateHandlerContext {
+    JavaVM *vm;
+    jobject handler;
+    jmethodID method;
+    jmethodID batch_method;
+    int capacity;
+    int count;
+    int allocated;
+    jbyte *types;
+    jint *names;
+    jlong *rowids;
+    char **databases;
+    char **tables;
+    int name_count;
+    int name_allocated;
+    int last_name;
+};
+
+static char *copy_update_name(char const *name)
+{
+    size_t size = strlen(name) + 1;
+    char *copy = malloc(size);
+    if (copy) memcpy(copy, name, size);
+    return copy;
+}
+
+static int intern_update_name(struct UpdateHandlerContext *ctx, char const *database, char const *table)
+{
+    int i = ctx->last_name;
+    if (i >= 0 && strcmp(ctx->tables[i], table) == 0 && strcmp(ctx->databases[i], database) == 0) {
+        return i;
+    }
+    for (i = 0; i < ctx->name_count; i++) {
+        if (strcmp(ctx->tables[i], table) == 0 && strcmp(ctx->databases[i], database) == 0) {
+            ctx->last_name = i;
+            return i;
+        }
+    }
+    if (ctx->name_count == ctx->name_allocated) {
+        int allocated = ctx->name_allocated ? ctx->name_allocated * 2 : 8;
+        char **databases = realloc(ctx->databases, allocated * sizeof(char *));
+        if (!databases) return -1;
+        ctx->databases = databases;
+        char **tables = realloc(ctx->tables, allocated * sizeof(char *));
+        if (!tables) return -1;
+        ctx->tables = tables;
+        ctx->name_allocated = allocated;
+    }
+    char *databaseCopy = copy_update_name(database);
+    char *tableCopy = copy_update_name(table);
+    if (!databaseCopy || !tableCopy) {
+        free(databaseCopy);
+        free(tableCopy);
+        return -1;
+    }
+    i = ctx->name_count++;
+    ctx->databases[i] = databaseCopy;
+    ctx->tables[i] = tableCopy;
+    ctx->last_name = i;
+    return i;
+}
+
+static jobjectArray new_update_names(JNIEnv *env, char **names, int count)
+{
+    jobjectArray array = (*env)->NewObjectArray(env, count, stringclass, NULL);
+    if (!array) return NULL;
+    for (int i = 0; i < count; i++) {
+        jstring name = (*env)->NewStringUTF(env, names[i]);
+        if (!name) return NULL;
+        (*env)->SetObjectArrayElement(env, array, i, name);
+        (*env)->DeleteLocalRef(env, name);
+    }
+    return array;
+}
+
+// Reports the buffered row changes to DB.onUpdateBatch and empties the buffer.
+static void flush_update_batch(JNIEnv *env, struct UpdateHandlerContext *ctx)
+{
+    int count = ctx->count;
+    if (count == 0) return;
+    ctx->count = 0;
+
+    jbyteArray types = (*env)->NewByteArray(env, count);
+    jintArray names = (*env)->NewIntArray(env, count);
+    jlongArray rowids = (*env)->NewLongArray(env, count);
+    jobjectArray databases = new_update_names(env, ctx->databases, ctx->name_count);
+    jobjectArray tables = databases ? new_update_names(env, ctx->tables, ctx->name_count) : NULL;
+    if (types && names && rowids && tables) {
+        (*env)->SetByteArrayRegion(env, types, 0, count, ctx->types);
+        (*env)->SetIntArrayRegion(env, names, 0, count, ctx->names);
+        (*env)->SetLongArrayRegion(env, rowids, 0, count, ctx->rowids);
+        (*env)->CallVoidMethod(env, ctx->handler, ctx->batch_method,
+                               count, types, names, rowids, databases, tables);
+    }
+    (*env)->DeleteLocalRef(env, types);
+    (*env)->DeleteLocalRef(env, names);
+    (*env)->DeleteLocalRef(env, rowids);
+    (*env)->DeleteLocalRef(env, databases);
+    (*env)->DeleteLocalRef(env, tables);
+}
+
+static void buffer_update(JNIEnv **env, struct UpdateHandlerContext *ctx, int type,
+                          char const *database, char const *table, sqlite3_int64 row)
+{
+    if (ctx->count == ctx->allocated) {
+        int allocated = ctx->allocated ? ctx->allocated * 2 : 256;
+        if (allocated > ctx->capacity) allocated = ctx->capacity;
+        jbyte *types = realloc(ctx->types, allocated * sizeof(jbyte));
+        if (types) ctx->types = types;
+        jint *names = realloc(ctx->names, allocated * sizeof(jint));
+        if (names) ctx->names = names;
+        jlong *rowids = realloc(ctx->rowids, allocated * sizeof(jlong));
+        if (rowids) ctx->rowids = rowids;
+        if (types && names && rowids) ctx->allocated = allocated;
+    }
+    int name = intern_update_name(ctx, database, table);
+    if (ctx->count == ctx->allocated || name < 0) {
+        // out of memory, the change is lost
+        return;
+    }
+    ctx->types[ctx->count] = (jbyte) type;
+    ctx->names[ctx->count] = name;
+    ctx->rowids[ctx->count] = row;
+    if (++ctx->count == ctx->capacity) {
+        if (!*env) (*ctx->vm)->AttachCurrentThread(ctx->vm, (void **)env, 0);
+        flush_update_batch(*env, ctx);
+    }
+}
+
+void update_hook(void *context, int type, char const *database, char const *table, sqlite3_int64 row) {
+    JNIEnv *env = 0;
+    struct UpdateHandlerContext* update_handler_context = (struct UpdateHandlerContext*) context;
+
+    if (update_handler_context->batch_method) {
+        buffer_update(&env, update_handler_context, type, database, table, row);
+    }
+    if (!update_handler_context->method) return;
+
+    if (!env) (*update_handler_context->vm)->AttachCurrentThread(update_handler_context->vm, (void **)&env, 0);
+
+    jstring databaseString = (*env)->NewStringUTF(env, database);
+    jstring tableString    = (*env)->NewStringUTF(env, table);
+
+    (*env)->CallVoidMethod(env, update_handler_context->handler, update_handler_context->method, type, databaseString, tableString, row);
+
+    (*env)->DeleteLocalRef(env, databaseString);
+    (*env)->DeleteLocalRef(env, tableString);
+}
+
+static struct UpdateHandlerContext *get_update_handler(JNIEnv *env, jobject nativeDB)
+{
+    jfieldID handlerField = (*env)->GetFieldID(env, dbclass, "updateListener", "J");
+    assert(handlerField);
+    return (struct UpdateHandlerContext *) toref((*env)->GetLongField(env, nativeDB, handlerField));
+}
+
+static void free_update_handler(JNIEnv *env, void *ctx) {
+    struct UpdateHandlerContext* update_handler_context = (struct UpdateHandlerContext*) ctx;
     (*env)->DeleteGlobalRef(env, update_handler_context->handler);
+    for (int i = 0; i < update_handler_context->name_count; i++) {
+        free(update_handler_context->databases[i]);
+        free(update_handler_context->tables[i]);
+    }
+    free(update_handler_context->databases);
+    free(update_handler_context->tables);
+    free(update_handler_context->types);
+    free(update_handler_context->names);
+    free(update_handler_context->rowids);
     free(ctx);
 }
 
@@ -1752,12 +4077,50 @@ static void clear_update_listener(JNIEnv *env, jobject nativeDB){
     set_new_handler(env, nativeDB, "updateListener", NULL, &free_update_handler);
 }
 
-JNIEXPORT void JNICALL Java_org_sqlite_core_NativeDB_set_1update_1listener(JNIEnv *env, jobject nativeDB, jboolean enabled) {
-    if (enabled) {
-        struct UpdateHandlerContext* update_handler_context = (struct UpdateHandlerContext*) malloc(sizeof(struct UpdateHandlerContext));
-        update_handler_context->method = (*env)->GetMethodID(env, dbclass, "onUpdate", "(ILjava/lang/String;Ljava/lang/String;J)V");
+JNIEXPORT void JNICALL Java_org_sqlite_core_NativeDB_set_1update_1listener(
+    JNIEnv *env, jobject nativeDB, jboolean rows, jint batchCapacity)
+{
+    if (rows || batchCapacity > 0) {
+        struct UpdateHandlerContext* update_handler_context = (struct UpdateHandlerContext*) calloc(1, sizeof(struct UpdateHandlerContext));
+        if (!update_handler_context) {
+            throwex_outofmemory(env);
+            return;
+        }
+        if (rows) {
+            update_handler_context->method = (*env)->GetMethodID(env, dbclass, "onUpdate", "(ILjava/lang/String;Ljava/lang/String;J)V");
+        }
+        if (batchCapacity > 0) {
+            update_handler_context->batch_method = (*env)->GetMethodID(env, dbclass, "onUpdateBatch", "(I[B[I[J[Ljava/lang/String;[Ljava/lang/String;)V");
+            update_handler_context->capacity = batchCapacity;
+        }
+        update_handler_context->last_name = -1;
         update_handler_context->handler = (*env)->NewGlobalRef(env, nativeDB);
         (*env)->GetJavaVM(env, &update_handler_context->vm);
+
+        // the changes buffered by the previous listener and their names are handed over as is,
+        // since the listeners may change in the middle of a transaction
+        struct UpdateHandlerContext *previous = get_update_handler(env, nativeDB);
+        if (previous && previous->batch_method && batchCapacity > 0) {
+            update_handler_context->count = previous->count;
+            update_handler_context->allocated = previous->allocated;
+            update_handler_context->types = previous->types;
+            update_handler_context->names = previous->names;
+            update_handler_context->rowids = previous->rowids;
+            update_handler_context->databases = previous->databases;
+            update_handler_context->tables = previous->tables;
+            update_handler_context->name_count = previous->name_count;
+            update_handler_context->name_allocated = previous->name_allocated;
+            update_handler_context->last_name = previous->last_name;
+            previous->count = previous->allocated = 0;
+            previous->types = NULL;
+            previous->names = NULL;
+            previous->rowids = NULL;
+            previous->databases = previous->tables = NULL;
+            previous->name_count = previous->name_allocated = 0;
+            if (update_handler_context->count >= batchCapacity) {
+                flush_update_batch(env, update_handler_context);
+            }
+        }
         sqlite3_update_hook(gethandle(env, nativeDB), &update_hook, update_handler_context);
         set_new_handler(env, nativeDB, "updateListener", update_handler_context, &free_update_handler);
     } else {
@@ -1765,6 +4128,126 @@ JNIEXPORT void JNICALL Java_org_sqlite_core_NativeDB_set_1update_1listener(JNIEn
     }
 }
 
+JNIEXPORT void JNICALL Java_org_sqlite_core_NativeDB_flush_1updates(
+    JNIEnv *env, jobject nativeDB, jboolean deliver)
+{
+    struct UpdateHandlerContext *ctx = get_update_handler(env, nativeDB);
+    if (!ctx || !ctx->batch_method) return;
+    if (deliver) {
+        flush_update_batch(env, ctx);
+    } else {
+        ctx->count = 0;
+    }
+}
+
+// Trace hook
+
+struct TraceHandlerContext {
+    JavaVM *vm;
+    jobject handler;
+    jmethodID method;
+    sqlite3_int64 threshold;
+    unsigned int sampleRate;
+    unsigned int statements;
+    unsigned int rows;
+};
+
+static int trace_hook(unsigned type, void *context, void *p, void *x) {
+    struct TraceHandlerContext *trace_handler_context = (struct TraceHandlerContext*) context;
+    sqlite3_stmt *stmt = (sqlite3_stmt*) p;
+    JNIEnv *env = 0;
+    const char *sql;
+    char *expanded = NULL;
+    sqlite3_int64 nanos = 0;
+    jobject buffer;
+
+    // filter here, so that the events that are not reported do not call into Java
+    switch (type)
+    {
+        case SQLITE_TRACE_STMT:
+            if (trace_handler_context->statements++ % trace_handler_context->sampleRate) return 0;
+            sql = (const char*) x;
+            // statements of triggers are reported as a comment naming the trigger
+            if (sql[0] != '-' || sql[1] != '-') {
+                sql = expanded = sqlite3_expanded_sql(stmt);
+            }
+            break;
+        case SQLITE_TRACE_PROFILE:
+            nanos = *(sqlite3_int64*) x;
+            if (nanos < trace_handler_context->threshold) return 0;
+            sql = expanded = sqlite3_expanded_sql(stmt);
+            break;
+        case SQLITE_TRACE_ROW:
+            if (trace_handler_context->rows++ % trace_handler_context->sampleRate) return 0;
+            sql = sqlite3_sql(stmt);
+            break;
+        default:
+            return 0;
+    }
+
+    // the expanded text is NULL if it is too long or memory is short
+    if (!sql) sql = sqlite3_sql(stmt);
+    if (!sql) return 0;
+
+    (*trace_handler_context->vm)->AttachCurrentThread(trace_handler_context->vm, (void **)&env, 0);
+    buffer = utf8BytesToDirectByteBuffer(env, sql, (int) strlen(sql));
+    if (buffer)
+    {
+        (*env)->CallVoidMethod(env, trace_handler_context->handler, trace_handler_context->method,
+                (jint) type, buffer, (jlong) nanos);
+        (*env)->DeleteLocalRef(env, buffer);
+    }
+
+    sqlite3_free(expanded);
+    return 0;
+}
+
+static void free_trace_handler(JNIEnv *env, void *ctx) {
+    struct TraceHandlerContext* trace_handler_context = (struct TraceHandlerContext*) ctx;
+    (*env)->DeleteGlobalRef(env, trace_handler_context->handler);
+    free(ctx);
+}
+
+static void clear_trace_listener(JNIEnv *env, jobject nativeDB, sqlite3 *db) {
+    sqlite3_trace_v2(db, 0, NULL, NULL);
+    set_new_handler(env, nativeDB, "traceHook", NULL, &free_trace_handler);
+}
+
+JNIEXPORT void JNICALL Java_org_sqlite_core_NativeDB_set_1trace(
+        JNIEnv *env, jobject nativeDB, jint mask, jlong thresholdNanos, jint sampleRate)
+{
+    sqlite3 *db = gethandle(env, nativeDB);
+    struct TraceHandlerContext *trace_handler_context;
+
+    if (!db)
+    {
+        throwex_db_closed(env);
+        return;
+    }
+
+    if (!mask)
+    {
+        clear_trace_listener(env, nativeDB, db);
+        return;
+    }
+
+    trace_handler_context = (struct TraceHandlerContext*) malloc(sizeof(struct TraceHandlerContext));
+    if (!trace_handler_context)
+    {
+        throwex_outofmemory(env);
+        return;
+    }
+    trace_handler_context->method = (*env)->GetMethodID(env, dbclass, "onTrace", "(ILjava/nio/ByteBuffer;J)V");
+    trace_handler_context->handler = (*env)->NewGlobalRef(env, nativeDB);
+    (*env)->GetJavaVM(env, &trace_handler_context->vm);
+    trace_handler_context->threshold = thresholdNanos;
+    trace_handler_context->sampleRate = sampleRate > 0 ? (unsigned int) sampleRate : 1;
+    trace_handler_context->statements = 0;
+    trace_handler_context->rows = 0;
+    sqlite3_trace_v2(db, (unsigned) mask, &trace_hook, trace_handler_context);
+    set_new_handler(env, nativeDB, "traceHook", trace_handler_context, &free_trace_handler);
+}
+
 // Commit hook
 
 struct CommitHandlerContext {
@@ -1796,7 +4279,7 @@ static void freeCommitHandlerCtx(JNIEnv *env, void *ctx) {
 
 void clear_commit_listener(JNIEnv *env, jobject nativeDB, sqlite3 *db) {
     sqlite3_commit_hook(db, NULL, NULL);
-    sqlite3_update_hook(db, NULL, NULL);
+    sqlite3_rollback_hook(db, NULL, NULL);
     set_new_handler(env, nativeDB, "commitListener", NULL, freeCommitHandlerCtx);
 }
 
@@ -1825,6 +4308,7 @@ JNIEXPORT void JNICALL Java_org_sqlite_core_NativeDB__1close(
         change_busy_handler(env, nativeDB, NULL);
         clear_commit_listener(env, nativeDB, db);
         clear_update_listener(env, nativeDB);
+        clear_trace_listener(env, nativeDB, db);
 
         if (sqlite3_close(db) != SQLITE_OK)
         {
@@ -16,9 +16,15 @@
 
 package org.sqlite.core;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
+import java.util.concurrent.locks.ReentrantLock;
+import org.sqlite.BatchFunction;
 import org.sqlite.BusyHandler;
 import org.sqlite.Collation;
 import org.sqlite.Function;
@@ -27,7 +33,7 @@ import org.sqlite.SQLiteConfig;
 import org.sqlite.SQLiteJDBCLoader;
 
 /** This class provides a thin JNI layer over the SQLite3 C API. */
-public final class NativeDB extends DB {
+public class NativeDB extends DB {
     /** SQLite connection handle. */
     private long pointer = 0;
 
@@ -39,6 +45,7 @@ public final class NativeDB extends DB {
             System.loadLibrary("sqlitejdbc");
             isLoaded = true;
             loadSucceeded = true;
+            configure();
         } else {
             // continue with non Android execution path
             isLoaded = false;
@@ -46,8 +53,12 @@ public final class NativeDB extends DB {
         }
     }
 
+    /** Busy handler waiting for locks in Java, or null if SQLite waits for them. */
+    private final BusyWait busyWait;
+
     public NativeDB(String url, String fileName, SQLiteConfig config) throws SQLException {
         super(url, fileName, config);
+        this.busyWait = config.isJavaBusyWait() ? new BusyWait(this) : null;
     }
 
     /**
@@ -63,38 +74,66 @@ public final class NativeDB extends DB {
         } finally {
             isLoaded = true;
         }
+        if (loadSucceeded) {
+            configure();
+        }
         return loadSucceeded;
     }
 
+    /**
+     * Applies the global configuration of SQLite read from the system properties, before the
+     * first connection is opened. The bundled library is built without memory statistics, which
+     * take a global mutex on every allocation; set {@code org.sqlite.memstatus} to {@code true} to
+     * enable them, for {@link org.sqlite.SQLiteMemoryStatus}.
+     */
+    private static void configure() {
+        if (Boolean.getBoolean("org.sqlite.memstatus")) {
+            // fails if SQLite was initialized already, e.g. by another class loader
+            config_memstatus(true);
+        }
+    }
+
     // WRAPPER FUNCTIONS ////////////////////////////////////////////
 
     /** @see org.sqlite.core.DB#_open(java.lang.String, int) */
     @Override
-    protected synchronized void _open(String file, int openFlags) throws SQLException {
-        _open_utf8(stringToUtf8ByteArray(file), openFlags);
+    protected void _open(String file, int openFlags) throws SQLException {
+        ReentrantLock lock = getLock();
+        lock.lock();
+        try {
+            _open_utf8(stringToUtf8ByteArray(file), openFlags);
+        } finally {
+            lock.unlock();
+        }
     }
 
-    synchronized native void _open_utf8(byte[] fileUtf8, int openFlags) throws SQLException;
+    native void _open_utf8(byte[] fileUtf8, int openFlags) throws SQLException;
 
     /** @see org.sqlite.core.DB#_close() */
     @Override
-    protected synchronized native void _close() throws SQLException;
+    protected native void _close() throws SQLException;
 
     /** @see org.sqlite.core.DB#_exec(java.lang.String) */
     @Override
-    public synchronized int _exec(String sql) throws SQLException {
-        return _exec_utf8(stringToUtf8ByteArray(sql));
+    public int _exec(String sql) throws SQLException {
+        ReentrantLock lock = getLock();
+        lock.lock();
+        try {
+            return _exec_utf8(stringToUtf8ByteArray(sql));
+        } finally {
+            lock.unlock();
+        }
     }
 
-    synchronized native int _exec_utf8(byte[] sqlUtf8) throws SQLException;
+    native int _exec_utf8(byte[] sqlUtf8) throws SQLException;
 
     /** @see org.sqlite.core.DB#shared_cache(boolean) */
     @Override
-    public synchronized native int shared_cache(boolean enable);
+    public native int shared_cache(boolean enable);
 
     /** @see org.sqlite.core.DB#enable_load_extension(boolean) */
     @Override
-    public synchronized native int enable_load_extension(boolean enable);
+    public native int enable_load_extension(boolean enable);
 
     /** @see org.sqlite.core.DB#interrupt() */
     @Override
@@ -102,34 +141,100 @@ public final class NativeDB extends DB {
 
     /** @see org.sqlite.core.DB#busy_timeout(int) */
     @Override
-    public synchronized native void busy_timeout(int ms);
+    public void busy_timeout(int ms) {
+        ReentrantLock lock = getLock();
+        lock.lock();
+        try {
+            if (busyWait != null) {
+                busyWait.setTimeout(ms);
+                _busy_handler(busyWait);
+            } else {
+                _busy_timeout(ms);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    native void _busy_timeout(int ms);
 
     /** busy handler pointer to JNI global busyhandler reference. */
     private long busyHandler = 0;
 
     /** @see org.sqlite.core.DB#busy_handler(BusyHandler) */
     @Override
-    public synchronized native void busy_handler(BusyHandler busyHandler);
+    public void busy_handler(BusyHandler busyHandler) {
+        ReentrantLock lock = getLock();
+        lock.lock();
+        try {
+            _busy_handler(busyHandler);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    native void _busy_handler(BusyHandler busyHandler);
 
     /** @see org.sqlite.core.DB#prepare(java.lang.String) */
     @Override
-    protected synchronized SafeStmtPtr prepare(String sql) throws SQLException {
-        return new SafeStmtPtr(this, prepare_utf8(stringToUtf8ByteArray(sql)));
+    protected SafeStmtPtr prepare(String sql) throws SQLException {
+        ReentrantLock lock = getLock();
+        lock.lock();
+        try {
+            return new SafeStmtPtr(this, prepare_utf8(stringToUtf8ByteArray(sql)));
+        } finally {
+            lock.unlock();
+        }
     }
 
-    synchronized native long prepare_utf8(byte[] sqlUtf8) throws SQLException;
+    native long prepare_utf8(byte[] sqlUtf8) throws SQLException;
 
     /** @see org.sqlite.core.DB#errmsg() */
     @Override
-    synchronized String errmsg() {
-        return utf8ByteBufferToString(errmsg_utf8());
+    String errmsg() {
+        byte[] msg = errmsg_utf8();
+        return msg == null ? null : new String(msg, StandardCharsets.UTF_8);
+    }
+
+    native byte[] errmsg_utf8();
+
+    /** @see org.sqlite.core.DB#db_mutex() */
+    @Override
+    native boolean db_mutex();
+
+    /** @see org.sqlite.core.DB#mutex_try() */
+    @Override
+    native int mutex_try();
+
+    /** @see org.sqlite.core.DB#mutex_wait() */
+    @Override
+    native void mutex_wait();
+
+    /** @see org.sqlite.core.DB#mutex_leave() */
+    @Override
+    native void mutex_leave();
+
+    /** @see org.sqlite.core.DB#db_status(int, boolean) */
+    @Override
+    public int[] db_status(int count, boolean reset) throws SQLException {
+        ReentrantLock lock = getLock();
+        lock.lock();
+        try {
+            return _db_status(count, reset);
+        } finally {
+            lock.unlock();
+        }
     }
 
-    synchronized native ByteBuffer errmsg_utf8();
+    native int[] _db_status(int count, boolean reset);
+
+    /** @see org.sqlite.core.DB#status64(int, boolean) */
+    @Override
+    public native long[] status64(int count, boolean reset);
 
     /** @see org.sqlite.core.DB#libversion() */
     @Override
-    public synchronized String libversion() {
+    public String libversion() {
         return utf8ByteBufferToString(libversion_utf8());
     }
 
@@ -137,216 +242,392 @@ public final class NativeDB extends DB {
 
     /** @see org.sqlite.core.DB#changes() */
     @Override
-    public synchronized native long changes();
+    public native long changes();
 
     /** @see org.sqlite.core.DB#total_changes() */
     @Override
-    public synchronized native long total_changes();
+    public native long total_changes();
 
     /** @see org.sqlite.core.DB#finalize(long) */
     @Override
-    protected synchronized native int finalize(long stmt);
+    protected int finalize(long stmt) throws SQLException {
+        StatementMetrics m = getMetrics();
+        int rc;
+        try {
+            if (m != null) m.finished(stmt);
+        } finally {
+            rc = _finalize(stmt);
+        }
+        return rc;
+    }
+
+    native int _finalize(long stmt);
 
     /** @see org.sqlite.core.DB#step(long) */
     @Override
-    public synchronized native int step(long stmt);
+    public int step(long stmt) throws SQLException {
+        StatementMetrics m = getMetrics();
+        if (m == null) {
+            return busyWait != null ? busyWait.step(stmt) : _step(stmt);
+        }
+        long start = System.nanoTime();
+        int rc = busyWait != null ? busyWait.step(stmt) : _step(stmt);
+        m.stepped(stmt, 1, rc == SQLITE_ROW ? 1 : 0, System.nanoTime() - start);
+        return rc;
+    }
+
+    native int _step(long stmt);
+
+    /**
+     * @param stmt Pointer to the statement.
+     * @return True if the statement has been stepped but not run to completion or reset.
+     * @see <a
+     *     href="https://www.sqlite.org/c3ref/stmt_busy.html">https://www.sqlite.org/c3ref/stmt_busy.html</a>
+     */
+    native boolean stmt_busy(long stmt);
 
     /** @see org.sqlite.core.DB#reset(long) */
     @Override
-    public synchronized native int reset(long stmt);
+    public int reset(long stmt) throws SQLException {
+        StatementMetrics m = getMetrics();
+        int rc;
+        try {
+            if (m != null) m.finished(stmt);
+        } finally {
+            rc = _reset(stmt);
+        }
+        return rc;
+    }
+
+    native int _reset(long stmt);
+
+    /** @see org.sqlite.core.DB#stmt_status(long, int, boolean) */
+    @Override
+    public native int stmt_status(long stmt, int op, boolean reset);
+
+    /** @see org.sqlite.core.DB#stmt_sql(long) */
+    @Override
+    public String stmt_sql(long stmt) {
+        return utf8ByteBufferToString(stmt_sql_utf8(stmt));
+    }
+
+    native ByteBuffer stmt_sql_utf8(long stmt);
+
+    /** @see org.sqlite.core.DB#execute_batch(long, int, byte[], long[], byte[], long[]) */
+    @Override
+    native int execute_batch(
+            long stmt, int count, byte[] types, long[] values, byte[] bytes, long[] changes);
 
     /** @see org.sqlite.core.DB#clear_bindings(long) */
     @Override
-    public synchronized native int clear_bindings(long stmt);
+    public native int clear_bindings(long stmt);
 
     /** @see org.sqlite.core.DB#bind_parameter_count(long) */
     @Override
-    synchronized native int bind_parameter_count(long stmt);
+    native int bind_parameter_count(long stmt);
 
     /** @see org.sqlite.core.DB#column_count(long) */
     @Override
-    public synchronized native int column_count(long stmt);
+    public native int column_count(long stmt);
 
     /** @see org.sqlite.core.DB#column_type(long, int) */
     @Override
-    public synchronized native int column_type(long stmt, int col);
+    public native int column_type(long stmt, int col) throws SQLException;
 
     /** @see org.sqlite.core.DB#column_decltype(long, int) */
     @Override
-    public synchronized String column_decltype(long stmt, int col) {
+    public String column_decltype(long stmt, int col) {
         return utf8ByteBufferToString(column_decltype_utf8(stmt, col));
     }
 
-    synchronized native ByteBuffer column_decltype_utf8(long stmt, int col);
+    native ByteBuffer column_decltype_utf8(long stmt, int col);
 
     /** @see org.sqlite.core.DB#column_table_name(long, int) */
     @Override
-    public synchronized String column_table_name(long stmt, int col) {
+    public String column_table_name(long stmt, int col) {
         return utf8ByteBufferToString(column_table_name_utf8(stmt, col));
     }
 
-    synchronized native ByteBuffer column_table_name_utf8(long stmt, int col);
+    native ByteBuffer column_table_name_utf8(long stmt, int col);
 
     /** @see org.sqlite.core.DB#column_name(long, int) */
     @Override
-    public synchronized String column_name(long stmt, int col) {
+    public String column_name(long stmt, int col) {
         return utf8ByteBufferToString(column_name_utf8(stmt, col));
     }
 
-    synchronized native ByteBuffer column_name_utf8(long stmt, int col);
+    native ByteBuffer column_name_utf8(long stmt, int col);
 
     /** @see org.sqlite.core.DB#column_text(long, int) */
     @Override
-    public synchronized String column_text(long stmt, int col) {
-        return utf8ByteBufferToString(column_text_utf8(stmt, col));
-    }
+    public native String column_text(long stmt, int col) throws SQLException;
 
-    synchronized native ByteBuffer column_text_utf8(long stmt, int col);
+    /** @see org.sqlite.core.DB#column_text_copy(long, int, byte[]) */
+    @Override
+    public native int column_text_copy(long stmt, int col, byte[] buffer)
+            throws SQLException;
 
     /** @see org.sqlite.core.DB#column_blob(long, int) */
     @Override
-    public synchronized native byte[] column_blob(long stmt, int col);
+    public native byte[] column_blob(long stmt, int col);
 
     /** @see org.sqlite.core.DB#column_double(long, int) */
     @Override
-    public synchronized native double column_double(long stmt, int col);
+    public native double column_double(long stmt, int col) throws SQLException;
 
     /** @see org.sqlite.core.DB#column_long(long, int) */
     @Override
-    public synchronized native long column_long(long stmt, int col);
+    public native long column_long(long stmt, int col) throws SQLException;
 
     /** @see org.sqlite.core.DB#column_int(long, int) */
     @Override
-    public synchronized native int column_int(long stmt, int col);
+    public native int column_int(long stmt, int col) throws SQLException;
+
+    /** @see org.sqlite.core.DB#step_block(long, int) */
+    @Override
+    public byte[] step_block(long stmt, int maxRows) throws SQLException {
+        StatementMetrics m = getMetrics();
+        if (m == null) {
+            return _step_block(stmt, maxRows);
+        }
+        long start = System.nanoTime();
+        byte[] block = _step_block(stmt, maxRows);
+        long nanos = System.nanoTime() - start;
+        if (block != null) {
+            ByteBuffer header = ByteBuffer.wrap(block).order(ByteOrder.nativeOrder());
+            int rows = header.getInt(4);
+            m.stepped(stmt, header.getInt(0) == SQLITE_ROW ? rows : rows + 1, rows, nanos);
+        }
+        return block;
+    }
+
+    native byte[] _step_block(long stmt, int maxRows);
+
+    /** @see org.sqlite.core.DB#format_real(double) */
+    @Override
+    public native String format_real(double value);
+
+    /**
+     * @return Addresses of the SQLite functions called by {@link ForeignDB}, in the order of its
+     *     entry point constants.
+     */
+    static native long[] entry_points();
+
+    /**
+     * @param enable True to collect the memory statistics of the library.
+     * @return SQLITE_OK, or SQLITE_MISUSE if SQLite was initialized already.
+     * @see <a
+     *     href="https://www.sqlite.org/c3ref/c_config_covering_index_scan.html#sqliteconfigmemstatus">https://www.sqlite.org/c3ref/c_config_covering_index_scan.html#sqliteconfigmemstatus</a>
+     */
+    static native int config_memstatus(boolean enable);
 
     /** @see org.sqlite.core.DB#bind_null(long, int) */
     @Override
-    synchronized native int bind_null(long stmt, int pos);
+    native int bind_null(long stmt, int pos) throws SQLException;
 
     /** @see org.sqlite.core.DB#bind_int(long, int, int) */
     @Override
-    synchronized native int bind_int(long stmt, int pos, int v);
+    native int bind_int(long stmt, int pos, int v) throws SQLException;
 
     /** @see org.sqlite.core.DB#bind_long(long, int, long) */
     @Override
-    synchronized native int bind_long(long stmt, int pos, long v);
+    native int bind_long(long stmt, int pos, long v) throws SQLException;
 
     /** @see org.sqlite.core.DB#bind_double(long, int, double) */
     @Override
-    synchronized native int bind_double(long stmt, int pos, double v);
+    native int bind_double(long stmt, int pos, double v) throws SQLException;
 
     /** @see org.sqlite.core.DB#bind_text(long, int, java.lang.String) */
     @Override
-    synchronized int bind_text(long stmt, int pos, String v) {
+    int bind_text(long stmt, int pos, String v) {
         return bind_text_utf8(stmt, pos, stringToUtf8ByteArray(v));
     }
 
-    synchronized native int bind_text_utf8(long stmt, int pos, byte[] vUtf8);
+    native int bind_text_utf8(long stmt, int pos, byte[] vUtf8);
 
     /** @see org.sqlite.core.DB#bind_blob(long, int, byte[]) */
     @Override
-    synchronized native int bind_blob(long stmt, int pos, byte[] v);
+    native int bind_blob(long stmt, int pos, byte[] v);
+
+    /** @see org.sqlite.core.DB#bind_stream(long, int, InputStream, long, boolean) */
+    @Override
+    native int bind_stream(long stmt, int pos, InputStream in, long length, boolean text)
+            throws IOException;
 
     /** @see org.sqlite.core.DB#result_null(long) */
     @Override
-    public synchronized native void result_null(long context);
+    public native void result_null(long context);
 
     /** @see org.sqlite.core.DB#result_text(long, java.lang.String) */
     @Override
-    public synchronized void result_text(long context, String val) {
+    public void result_text(long context, String val) {
         result_text_utf8(context, stringToUtf8ByteArray(val));
     }
 
-    synchronized native void result_text_utf8(long context, byte[] valUtf8);
+    native void result_text_utf8(long context, byte[] valUtf8);
 
     /** @see org.sqlite.core.DB#result_blob(long, byte[]) */
     @Override
-    public synchronized native void result_blob(long context, byte[] val);
+    public native void result_blob(long context, byte[] val);
 
     /** @see org.sqlite.core.DB#result_double(long, double) */
     @Override
-    public synchronized native void result_double(long context, double val);
+    public native void result_double(long context, double val);
 
     /** @see org.sqlite.core.DB#result_long(long, long) */
     @Override
-    public synchronized native void result_long(long context, long val);
+    public native void result_long(long context, long val);
 
     /** @see org.sqlite.core.DB#result_int(long, int) */
     @Override
-    public synchronized native void result_int(long context, int val);
+    public native void result_int(long context, int val);
 
     /** @see org.sqlite.core.DB#result_error(long, java.lang.String) */
     @Override
-    public synchronized void result_error(long context, String err) {
+    public void result_error(long context, String err) {
         result_error_utf8(context, stringToUtf8ByteArray(err));
     }
 
-    synchronized native void result_error_utf8(long context, byte[] errUtf8);
+    native void result_error_utf8(long context, byte[] errUtf8);
 
     /** @see org.sqlite.core.DB#value_text(org.sqlite.Function, int) */
     @Override
-    public synchronized String value_text(Function f, int arg) {
+    public String value_text(Function f, int arg) {
         return utf8ByteBufferToString(value_text_utf8(f, arg));
     }
 
-    synchronized native ByteBuffer value_text_utf8(Function f, int argUtf8);
+    native ByteBuffer value_text_utf8(Function f, int argUtf8);
 
     /** @see org.sqlite.core.DB#value_blob(org.sqlite.Function, int) */
     @Override
-    public synchronized native byte[] value_blob(Function f, int arg);
+    public native byte[] value_blob(Function f, int arg);
 
     /** @see org.sqlite.core.DB#value_double(org.sqlite.Function, int) */
     @Override
-    public synchronized native double value_double(Function f, int arg);
+    public native double value_double(Function f, int arg);
 
     /** @see org.sqlite.core.DB#value_long(org.sqlite.Function, int) */
     @Override
-    public synchronized native long value_long(Function f, int arg);
+    public native long value_long(Function f, int arg);
 
     /** @see org.sqlite.core.DB#value_int(org.sqlite.Function, int) */
     @Override
-    public synchronized native int value_int(Function f, int arg);
+    public native int value_int(Function f, int arg);
 
     /** @see org.sqlite.core.DB#value_type(org.sqlite.Function, int) */
     @Override
-    public synchronized native int value_type(Function f, int arg);
+    public native int value_type(Function f, int arg);
 
     /** @see org.sqlite.core.DB#create_function(java.lang.String, org.sqlite.Function, int, int) */
     @Override
-    public synchronized int create_function(String name, Function func, int nArgs, int flags)
+    public int create_function(String name, Function func, int nArgs, int flags)
             throws SQLException {
-        return create_function_utf8(nameToUtf8ByteArray("function", name), func, nArgs, flags);
+        ReentrantLock lock = getLock();
+        lock.lock();
+        try {
+            return create_function_utf8(nameToUtf8ByteArray("function", name), func, nArgs, flags);
+        } finally {
+            lock.unlock();
+        }
     }
 
-    synchronized native int create_function_utf8(
+    native int create_function_utf8(
             byte[] nameUtf8, Function func, int nArgs, int flags);
 
     /** @see org.sqlite.core.DB#destroy_function(java.lang.String) */
     @Override
-    public synchronized int destroy_function(String name) throws SQLException {
-        return destroy_function_utf8(nameToUtf8ByteArray("function", name));
+    public int destroy_function(String name) throws SQLException {
+        ReentrantLock lock = getLock();
+        lock.lock();
+        try {
+            return destroy_function_utf8(nameToUtf8ByteArray("function", name));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    native int destroy_function_utf8(byte[] nameUtf8);
+
+    /** @see org.sqlite.core.DB#create_batch_function(String, BatchFunction) */
+    @Override
+    public int create_batch_function(String name, BatchFunction func) throws SQLException {
+        ReentrantLock lock = getLock();
+        lock.lock();
+        try {
+            return create_batch_function_utf8(
+                    nameToUtf8ByteArray("function", name),
+                    func,
+                    stringToUtf8ByteArray(func.getSchema()),
+                    func.getInputCount(),
+                    func.getOutputCount(),
+                    func.getBatchSize());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    native int create_batch_function_utf8(
+            byte[] nameUtf8,
+            BatchFunction func,
+            byte[] schemaUtf8,
+            int inputs,
+            int outputs,
+            int batchSize);
+
+    /** @see org.sqlite.core.DB#destroy_batch_function(String) */
+    @Override
+    public int destroy_batch_function(String name) throws SQLException {
+        ReentrantLock lock = getLock();
+        lock.lock();
+        try {
+            return destroy_batch_function_utf8(nameToUtf8ByteArray("function", name));
+        } finally {
+            lock.unlock();
+        }
     }
 
-    synchronized native int destroy_function_utf8(byte[] nameUtf8);
+    native int destroy_batch_function_utf8(byte[] nameUtf8);
 
     /** @see org.sqlite.core.DB#create_collation(String, Collation) */
     @Override
-    public synchronized int create_collation(String name, Collation coll) throws SQLException {
-        return create_collation_utf8(nameToUtf8ByteArray("collation", name), coll);
+    public int create_collation(String name, Collation coll) throws SQLException {
+        ReentrantLock lock = getLock();
+        lock.lock();
+        try {
+            return create_collation_utf8(nameToUtf8ByteArray("collation", name), coll);
+        } finally {
+            lock.unlock();
+        }
     }
 
-    synchronized native int create_collation_utf8(byte[] nameUtf8, Collation coll);
+    native int create_collation_utf8(byte[] nameUtf8, Collation coll);
 
     /** @see org.sqlite.core.DB#destroy_collation(String) */
     @Override
-    public synchronized int destroy_collation(String name) throws SQLException {
-        return destroy_collation_utf8(nameToUtf8ByteArray("collation", name));
+    public int destroy_collation(String name) throws SQLException {
+        ReentrantLock lock = getLock();
+        lock.lock();
+        try {
+            return destroy_collation_utf8(nameToUtf8ByteArray("collation", name));
+        } finally {
+            lock.unlock();
+        }
     }
 
-    synchronized native int destroy_collation_utf8(byte[] nameUtf8);
+    native int destroy_collation_utf8(byte[] nameUtf8);
 
     @Override
-    public synchronized native int limit(int id, int value) throws SQLException;
+    public int limit(int id, int value) throws SQLException {
+        ReentrantLock lock = getLock();
+        lock.lock();
+        try {
+            return _limit(id, value);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    native int _limit(int id, int value) throws SQLException;
 
     private byte[] nameToUtf8ByteArray(String nameType, String name) throws SQLException {
         final byte[] nameUtf8 = stringToUtf8ByteArray(name);
@@ -363,10 +644,17 @@ public final class NativeDB extends DB {
     @Override
     public int backup(String dbName, String destFileName, ProgressObserver observer)
             throws SQLException {
-        return backup(stringToUtf8ByteArray(dbName), stringToUtf8ByteArray(destFileName), observer);
+        ReentrantLock lock = getLock();
+        lock.lock();
+        try {
+            return backup(
+                    stringToUtf8ByteArray(dbName), stringToUtf8ByteArray(destFileName), observer);
+        } finally {
+            lock.unlock();
+        }
     }
 
-    synchronized native int backup(
+    native int backup(
             byte[] dbNameUtf8, byte[] destFileNameUtf8, ProgressObserver observer)
             throws SQLException;
 
@@ -375,17 +663,192 @@ public final class NativeDB extends DB {
      *     org.sqlite.core.DB.ProgressObserver)
      */
     @Override
-    public synchronized int restore(String dbName, String sourceFileName, ProgressObserver observer)
+    public int restore(String dbName, String sourceFileName, ProgressObserver observer)
             throws SQLException {
-
-        return restore(
-                stringToUtf8ByteArray(dbName), stringToUtf8ByteArray(sourceFileName), observer);
+        ReentrantLock lock = getLock();
+        lock.lock();
+        try {
+            return restore(
+                    stringToUtf8ByteArray(dbName),
+                    stringToUtf8ByteArray(sourceFileName),
+                    observer);
+        } finally {
+            lock.unlock();
+        }
     }
 
-    synchronized native int restore(
+    native int restore(
             byte[] dbNameUtf8, byte[] sourceFileName, ProgressObserver observer)
             throws SQLException;
 
+    /** @see org.sqlite.core.DB#backup_init(String, DB, String) */
+    @Override
+    long backup_init(String schema, DB dest, String destSchema) throws SQLException {
+        if (!(dest instanceof NativeDB)) {
+            throw new SQLException("unsupported destination database");
+        }
+        return backup_init_utf8(
+                stringToUtf8ByteArray(schema), (NativeDB) dest, stringToUtf8ByteArray(destSchema));
+    }
+
+    native long backup_init_utf8(byte[] schemaUtf8, NativeDB dest, byte[] destSchemaUtf8)
+            throws SQLException;
+
+    /** @see org.sqlite.core.DB#backup_step(long, int) */
+    @Override
+    native int backup_step(long backup, int pages);
+
+    /** @see org.sqlite.core.DB#backup_remaining(long) */
+    @Override
+    native int backup_remaining(long backup);
+
+    /** @see org.sqlite.core.DB#backup_pagecount(long) */
+    @Override
+    native int backup_pagecount(long backup);
+
+    /** @see org.sqlite.core.DB#backup_finish(long) */
+    @Override
+    native int backup_finish(long backup);
+
+    /** @see org.sqlite.core.DB#blob_open(String, String, String, long, boolean) */
+    @Override
+    long blob_open(String database, String table, String column, long rowId, boolean writable)
+            throws SQLException {
+        return blob_open_utf8(
+                stringToUtf8ByteArray(database),
+                stringToUtf8ByteArray(table),
+                stringToUtf8ByteArray(column),
+                rowId,
+                writable);
+    }
+
+    native long blob_open_utf8(
+            byte[] databaseUtf8, byte[] tableUtf8, byte[] columnUtf8, long rowId, boolean writable)
+            throws SQLException;
+
+    /** @see org.sqlite.core.DB#blob_reopen(long, long) */
+    @Override
+    native int blob_reopen(long blob, long rowId);
+
+    /** @see org.sqlite.core.DB#blob_close(long) */
+    @Override
+    native int blob_close(long blob);
+
+    /** @see org.sqlite.core.DB#blob_bytes(long) */
+    @Override
+    native int blob_bytes(long blob);
+
+    /** @see org.sqlite.core.DB#blob_read(long, byte[], int, int, int) */
+    @Override
+    native int blob_read(long blob, byte[] buffer, int bufferOffset, int length, int offset);
+
+    /** @see org.sqlite.core.DB#blob_read_direct(long, ByteBuffer, int, int, int) */
+    @Override
+    native int blob_read_direct(
+            long blob, ByteBuffer buffer, int bufferOffset, int length, int offset);
+
+    /** @see org.sqlite.core.DB#blob_write(long, byte[], int, int, int) */
+    @Override
+    native int blob_write(long blob, byte[] buffer, int bufferOffset, int length, int offset);
+
+    /** @see org.sqlite.core.DB#blob_write_direct(long, ByteBuffer, int, int, int) */
+    @Override
+    native int blob_write_direct(
+            long blob, ByteBuffer buffer, int bufferOffset, int length, int offset);
+
+    /** @see org.sqlite.core.DB#_serialize(String) */
+    @Override
+    ByteBuffer _serialize(String schema) throws SQLException {
+        return serialize_utf8(stringToUtf8ByteArray(schema));
+    }
+
+    native ByteBuffer serialize_utf8(byte[] schemaUtf8) throws SQLException;
+
+    /** @see org.sqlite.core.DB#_deserialize(String, byte[], int, int, boolean) */
+    @Override
+    int _deserialize(String schema, byte[] data, int offset, int length, boolean readOnly)
+            throws SQLException {
+        return deserialize_utf8(stringToUtf8ByteArray(schema), data, offset, length, readOnly);
+    }
+
+    native int deserialize_utf8(
+            byte[] schemaUtf8, byte[] data, int offset, int length, boolean readOnly)
+            throws SQLException;
+
+    /** @see org.sqlite.core.DB#_deserialize_direct(String, ByteBuffer, int, int, boolean) */
+    @Override
+    int _deserialize_direct(
+            String schema, ByteBuffer data, int offset, int length, boolean readOnly)
+            throws SQLException {
+        return deserialize_direct_utf8(
+                stringToUtf8ByteArray(schema), data, offset, length, readOnly);
+    }
+
+    native int deserialize_direct_utf8(
+            byte[] schemaUtf8, ByteBuffer data, int offset, int length, boolean readOnly)
+            throws SQLException;
+
+    /** @see org.sqlite.core.DB#session_create(String) */
+    @Override
+    long session_create(String schema) throws SQLException {
+        return session_create_utf8(stringToUtf8ByteArray(schema));
+    }
+
+    native long session_create_utf8(byte[] schemaUtf8) throws SQLException;
+
+    /** @see org.sqlite.core.DB#session_attach(long, String) */
+    @Override
+    int session_attach(long session, String table) {
+        return session_attach_utf8(session, stringToUtf8ByteArray(table));
+    }
+
+    native int session_attach_utf8(long session, byte[] tableUtf8);
+
+    /** @see org.sqlite.core.DB#session_enable(long, int) */
+    @Override
+    native int session_enable(long session, int enable);
+
+    /** @see org.sqlite.core.DB#session_indirect(long, int) */
+    @Override
+    native int session_indirect(long session, int indirect);
+
+    /** @see org.sqlite.core.DB#session_isempty(long) */
+    @Override
+    native boolean session_isempty(long session);
+
+    /** @see org.sqlite.core.DB#session_changeset(long, boolean) */
+    @Override
+    native ByteBuffer session_changeset(long session, boolean patchset) throws SQLException;
+
+    /** @see org.sqlite.core.DB#session_changeset_stream(long, boolean, OutputStream) */
+    @Override
+    native int session_changeset_stream(long session, boolean patchset, OutputStream out)
+            throws IOException;
+
+    /** @see org.sqlite.core.DB#session_delete(long) */
+    @Override
+    native void session_delete(long session);
+
+    /** @see org.sqlite.core.DB#changeset_apply(byte[], int, int, ChangesetConflictHandler) */
+    @Override
+    native int changeset_apply(
+            byte[] data, int offset, int length, ChangesetConflictHandler handler)
+            throws SQLException;
+
+    /**
+     * @see org.sqlite.core.DB#changeset_apply_direct(ByteBuffer, int, int,
+     *     ChangesetConflictHandler)
+     */
+    @Override
+    native int changeset_apply_direct(
+            ByteBuffer data, int offset, int length, ChangesetConflictHandler handler)
+            throws SQLException;
+
+    /** @see org.sqlite.core.DB#changeset_apply_stream(InputStream, ChangesetConflictHandler) */
+    @Override
+    native int changeset_apply_stream(InputStream in, ChangesetConflictHandler handler)
+            throws SQLException, IOException;
+
     // COMPOUND FUNCTIONS (for optimisation) /////////////////////////
 
     /**
@@ -398,19 +861,28 @@ public final class NativeDB extends DB {
      * @see org.sqlite.core.DB#column_metadata(long)
      */
     @Override
-    synchronized native boolean[][] column_metadata(long stmt);
+    native boolean[][] column_metadata(long stmt);
 
     // pointer to commit listener structure, if enabled.
     private long commitListener = 0;
 
     @Override
-    synchronized native void set_commit_listener(boolean enabled);
+    native void set_commit_listener(boolean enabled);
 
     // pointer to update listener structure, if enabled.
     private long updateListener = 0;
 
     @Override
-    synchronized native void set_update_listener(boolean enabled);
+    native void set_update_listener(boolean rows, int batchCapacity);
+
+    @Override
+    native void flush_updates(boolean deliver);
+
+    // pointer to trace hook structure, if enabled.
+    private long traceHook = 0;
+
+    @Override
+    native void set_trace(int mask, long thresholdNanos, int sampleRate);
 
     /**
      * Throws an SQLException. Called from native code
@@ -441,10 +913,33 @@ public final class NativeDB extends DB {
     /** handler pointer to JNI global progressHandler reference. */
     private long progressHandler;
 
-    public synchronized native void register_progress_handler(
-            int vmCalls, ProgressHandler progressHandler) throws SQLException;
+    @Override
+    public void register_progress_handler(int vmCalls, ProgressHandler progressHandler)
+            throws SQLException {
+        ReentrantLock lock = getLock();
+        lock.lock();
+        try {
+            _register_progress_handler(vmCalls, progressHandler);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    native void _register_progress_handler(int vmCalls, ProgressHandler progressHandler)
+            throws SQLException;
+
+    @Override
+    public void clear_progress_handler() throws SQLException {
+        ReentrantLock lock = getLock();
+        lock.lock();
+        try {
+            _clear_progress_handler();
+        } finally {
+            lock.unlock();
+        }
+    }
 
-    public synchronized native void clear_progress_handler() throws SQLException;
+    native void _clear_progress_handler() throws SQLException;
 
     /**
      * Getter for native pointer to validate memory is properly cleaned up in unit tests
@@ -0,0 +1,15 @@
+package org.sqlite.core;
+
+/**
+ * A pointer to a native object of a connection that is closed explicitly: a BLOB handle, a backup
+ * or a session. The connection tracks the handles it opened rather than their pointers: SQLite
+ * reuses the memory of the objects it frees, so a pointer closed once may later be the pointer of
+ * another object, while a closed handle is never open again.
+ */
+public final class NativeHandle {
+    final long pointer;
+
+    NativeHandle(long pointer) {
+        this.pointer = pointer;
+    }
+}
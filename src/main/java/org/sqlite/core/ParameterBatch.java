@@ -0,0 +1,124 @@
+package org.sqlite.core;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+
+/**
+ * The parameter rows of a prepared statement batch, stored in primitive arrays so that they can be
+ * bound and stepped in a single call to {@link DB#execute_batch}. Every parameter of every row is a
+ * cell with a datatype code in {@link #types} and a value in {@link #values}: the integer, the bits
+ * of the double, or the offset (high 32 bits) and length (low 32 bits) of the UTF-8 text or blob
+ * in {@link #bytes}.
+ */
+final class ParameterBatch implements Codes {
+    final int params;
+    /** number of rows added */
+    int count = 0;
+    byte[] types;
+    long[] values;
+    byte[] bytes;
+    /** number of bytes used in bytes */
+    private int size = 0;
+
+    /** @param params Number of parameters of the statement. */
+    ParameterBatch(int params) {
+        this.params = params;
+        this.types = new byte[params * 16];
+        this.values = new long[params * 16];
+        this.bytes = new byte[256];
+    }
+
+    /**
+     * Adds a row of parameter values.
+     *
+     * @param row Values of the parameters; null if none were set.
+     * @throws SQLException if a value has a type that cannot be bound.
+     */
+    void add(Object[] row) throws SQLException {
+        int cell = count * params;
+        if (cell + params > types.length) {
+            int capacity = Math.max(cell + params, types.length * 2);
+            byte[] nt = new byte[capacity];
+            long[] nv = new long[capacity];
+            System.arraycopy(types, 0, nt, 0, cell);
+            System.arraycopy(values, 0, nv, 0, cell);
+            types = nt;
+            values = nv;
+        }
+
+        int mark = size;
+        try {
+            for (int i = 0; i < params; i++, cell++) {
+                set(cell, row == null ? null : row[i]);
+            }
+        } catch (SQLException e) {
+            size = mark;
+            throw e;
+        }
+        count++;
+    }
+
+    /** Removes all rows. */
+    void clear() {
+        count = 0;
+        size = 0;
+    }
+
+    private void set(int cell, Object v) throws SQLException {
+        if (v == null) {
+            types[cell] = SQLITE_NULL;
+        } else if (v instanceof Integer || v instanceof Short || v instanceof Long) {
+            types[cell] = SQLITE_INTEGER;
+            values[cell] = ((Number) v).longValue();
+        } else if (v instanceof Float || v instanceof Double) {
+            types[cell] = SQLITE_FLOAT;
+            values[cell] = Double.doubleToRawLongBits(((Number) v).doubleValue());
+        } else if (v instanceof String) {
+            types[cell] = SQLITE_TEXT;
+            values[cell] = text((String) v);
+        } else if (v instanceof byte[]) {
+            types[cell] = SQLITE_BLOB;
+            values[cell] = append((byte[]) v);
+        } else if (v instanceof StreamParameter) {
+            // rows are kept until the batch is executed, so streams are read now
+            StreamParameter stream = (StreamParameter) v;
+            types[cell] = (byte) (stream.text ? SQLITE_TEXT : SQLITE_BLOB);
+            values[cell] = append(stream.readAll());
+        } else {
+            throw new SQLException("unexpected param type: " + v.getClass());
+        }
+    }
+
+    /** @return offset and length of the UTF-8 bytes of the string in bytes */
+    private long text(String s) {
+        int length = s.length();
+        ensure(length);
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80) {
+                return append(s.getBytes(StandardCharsets.UTF_8));
+            }
+            bytes[size + i] = (byte) c;
+        }
+        long location = ((long) size << 32) | length;
+        size += length;
+        return location;
+    }
+
+    /** @return offset and length of the copy of the value in bytes */
+    private long append(byte[] v) {
+        ensure(v.length);
+        System.arraycopy(v, 0, bytes, size, v.length);
+        long location = ((long) size << 32) | v.length;
+        size += v.length;
+        return location;
+    }
+
+    private void ensure(int length) {
+        if (size + length > bytes.length) {
+            byte[] nb = new byte[Math.max(size + length, bytes.length * 2)];
+            System.arraycopy(bytes, 0, nb, 0, size);
+            bytes = nb;
+        }
+    }
+}
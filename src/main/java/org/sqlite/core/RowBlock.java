@@ -0,0 +1,269 @@
+package org.sqlite.core;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+
+/**
+ * A block of rows copied out of a statement by {@link DB#step_block(long, int)}. Values are read
+ * from the copy, converting between storage classes the same way the sqlite3_column_* functions
+ * do.
+ */
+public final class RowBlock implements Codes {
+    private final DB db;
+    private final ByteBuffer data;
+    private final int columns;
+    private final int status;
+    private final int rows;
+    /** offset of the type byte of every cell, row by row */
+    private final int[] offsets;
+    /** index of the current row, -1 before the first row */
+    private int row = -1;
+    /** index of the first cell of the current row in offsets */
+    private int current = 0;
+
+    /**
+     * @param db The database the rows were stepped from.
+     * @param block Buffer returned by {@link DB#step_block(long, int)}.
+     * @param columns Number of columns of the statement.
+     */
+    public RowBlock(DB db, byte[] block, int columns) {
+        this.db = db;
+        this.data = ByteBuffer.wrap(block).order(ByteOrder.nativeOrder());
+        this.columns = columns;
+        this.status = data.getInt(0);
+        this.rows = data.getInt(4);
+        this.offsets = new int[rows * columns];
+
+        int pos = 8;
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = pos;
+            switch (data.get(pos++)) {
+                case SQLITE_INTEGER:
+                case SQLITE_FLOAT:
+                    pos += 8;
+                    break;
+                case SQLITE_TEXT:
+                case SQLITE_BLOB:
+                    pos += 4 + data.getInt(pos);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * @return Result of the last step of the block: SQLITE_ROW if more rows may follow,
+     *     SQLITE_DONE or an error code.
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * Moves to the next row of the block.
+     *
+     * @return True if the block has another row; false otherwise.
+     */
+    public boolean next() {
+        if (row + 1 >= rows) {
+            return false;
+        }
+        current = ++row * columns;
+        return true;
+    }
+
+    /**
+     * @param col Column in [0,x-1] form.
+     * @return Datatype code of the value.
+     */
+    public int getColumnType(int col) {
+        return data.get(offsets[current + col]);
+    }
+
+    /**
+     * @param col Column in [0,x-1] form.
+     * @return The value as a long.
+     */
+    public long getLong(int col) {
+        int pos = offsets[current + col];
+        switch (data.get(pos)) {
+            case SQLITE_INTEGER:
+                return data.getLong(pos + 1);
+            case SQLITE_FLOAT:
+                return (long) data.getDouble(pos + 1);
+            case SQLITE_TEXT:
+            case SQLITE_BLOB:
+                return textToLong(pos + 5, data.getInt(pos + 1));
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * @param col Column in [0,x-1] form.
+     * @return The value as an int.
+     */
+    public int getInt(int col) {
+        return (int) getLong(col);
+    }
+
+    /**
+     * @param col Column in [0,x-1] form.
+     * @return The value as a double.
+     */
+    public double getDouble(int col) {
+        int pos = offsets[current + col];
+        switch (data.get(pos)) {
+            case SQLITE_INTEGER:
+                return (double) data.getLong(pos + 1);
+            case SQLITE_FLOAT:
+                return data.getDouble(pos + 1);
+            case SQLITE_TEXT:
+            case SQLITE_BLOB:
+                return textToDouble(pos + 5, data.getInt(pos + 1));
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * @param col Column in [0,x-1] form.
+     * @return The value as text; null for NULL.
+     */
+    public String getText(int col) throws SQLException {
+        int pos = offsets[current + col];
+        switch (data.get(pos)) {
+            case SQLITE_INTEGER:
+                return Long.toString(data.getLong(pos + 1));
+            case SQLITE_FLOAT:
+                return db.format_real(data.getDouble(pos + 1));
+            case SQLITE_TEXT:
+            case SQLITE_BLOB:
+                return new String(
+                        data.array(), pos + 5, data.getInt(pos + 1), StandardCharsets.UTF_8);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @param col Column in [0,x-1] form.
+     * @return The value as bytes; null for NULL.
+     */
+    public byte[] getBlob(int col) throws SQLException {
+        int pos = offsets[current + col];
+        byte[] blob;
+        switch (data.get(pos)) {
+            case SQLITE_INTEGER:
+            case SQLITE_FLOAT:
+                return getText(col).getBytes(StandardCharsets.UTF_8);
+            case SQLITE_TEXT:
+            case SQLITE_BLOB:
+                blob = new byte[data.getInt(pos + 1)];
+                System.arraycopy(data.array(), pos + 5, blob, 0, blob.length);
+                return blob;
+            default:
+                return null;
+        }
+    }
+
+    /** @return The array backing the block, for reading TEXT and BLOB values in place. */
+    public byte[] array() {
+        return data.array();
+    }
+
+    /**
+     * @param col Column in [0,x-1] form.
+     * @return Offset in {@link #array()} of the bytes of a TEXT or BLOB value; -1 for other types.
+     */
+    public int getBytesOffset(int col) {
+        int pos = offsets[current + col];
+        byte type = data.get(pos);
+        return type == SQLITE_TEXT || type == SQLITE_BLOB ? pos + 5 : -1;
+    }
+
+    /**
+     * @param col Column in [0,x-1] form.
+     * @return Length of the bytes of a TEXT or BLOB value; -1 for other types.
+     */
+    public int getBytesLength(int col) {
+        int pos = offsets[current + col];
+        byte type = data.get(pos);
+        return type == SQLITE_TEXT || type == SQLITE_BLOB ? data.getInt(pos + 1) : -1;
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || (b >= '\t' && b <= '\r');
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    /** Same rules as sqlite3Atoi64(): leading integer prefix, saturating on overflow. */
+    private long textToLong(int start, int length) {
+        int end = start + length;
+        int i = start;
+        while (i < end && isSpace(data.get(i))) i++;
+
+        boolean neg = false;
+        if (i < end && (data.get(i) == '-' || data.get(i) == '+')) {
+            neg = data.get(i++) == '-';
+        }
+
+        // accumulate negatively so that Long.MIN_VALUE can be represented
+        long value = 0;
+        boolean overflow = false;
+        for (; i < end && isDigit(data.get(i)); i++) {
+            int digit = data.get(i) - '0';
+            if (value < (Long.MIN_VALUE + digit) / 10) {
+                overflow = true;
+            } else if (!overflow) {
+                value = value * 10 - digit;
+            }
+        }
+
+        if (overflow) {
+            return neg ? Long.MIN_VALUE : Long.MAX_VALUE;
+        }
+        if (!neg) {
+            return value == Long.MIN_VALUE ? Long.MAX_VALUE : -value;
+        }
+        return value;
+    }
+
+    /** Same rules as sqlite3AtoF(): leading real number prefix, 0.0 if there is none. */
+    private double textToDouble(int start, int length) {
+        int end = start + length;
+        int i = start;
+        while (i < end && isSpace(data.get(i))) i++;
+
+        int from = i;
+        if (i < end && (data.get(i) == '-' || data.get(i) == '+')) i++;
+
+        int digits = 0;
+        for (; i < end && isDigit(data.get(i)); i++) digits++;
+        if (i < end && data.get(i) == '.') {
+            i++;
+            for (; i < end && isDigit(data.get(i)); i++) digits++;
+        }
+        if (digits == 0) {
+            return 0.0;
+        }
+
+        if (i < end && (data.get(i) == 'e' || data.get(i) == 'E')) {
+            int e = i + 1;
+            if (e < end && (data.get(e) == '-' || data.get(e) == '+')) e++;
+            if (e < end && isDigit(data.get(e))) {
+                i = e;
+                while (i < end && isDigit(data.get(i))) i++;
+            }
+        }
+
+        return Double.parseDouble(
+                new String(data.array(), from, i - from, StandardCharsets.US_ASCII));
+    }
+}
@@ -1,17 +1,30 @@
 package org.sqlite.core;
 
 import java.sql.SQLException;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * A class for safely wrapping calls to a native pointer to a statement, ensuring no other thread
- * has access to the pointer while it is run
+ * has access to the pointer while it is run.
+ *
+ * <p>Every statement has a lock of its own, so that different statements of a connection opened in
+ * serialized threading mode (the default, or SQLITE_OPEN_FULLMUTEX) can be used by different
+ * threads without waiting for each other in Java; SQLite itself still runs one call on the
+ * connection at a time. If the connection was opened with SQLITE_OPEN_NOMUTEX, SQLite does not
+ * serialize anything and the lock of the connection is taken as well. The lock of the connection is
+ * always taken before the lock of a statement, never after it. Callbacks that run while a statement
+ * is stepped, such as functions and listeners, may take the lock of the connection: its holder
+ * never waits for SQLite while holding it, see {@link DB#getLock()}.
  */
 public class SafeStmtPtr {
-    // store a reference to the DB, to lock it before any safe function is called. This avoids
-    // deadlocking by locking the DB. All calls with the raw pointer are synchronized with the DB
-    // anyways, so making a separate lock would be pointless
     private final DB db;
     private final long ptr;
+    private final ReentrantLock lock = new ReentrantLock();
+    // lock of the connection to take before the lock of this statement; null if SQLite serializes
+    // the use of the connection
+    private final ReentrantLock dbLock;
+    // SQL text the statement was prepared from, if it may be kept in the statement cache of the DB
+    String cacheKey;
 
     private volatile boolean closed = false;
     // to return on subsequent calls to close() after this ptr has been closed
@@ -23,13 +36,14 @@ public class SafeStmtPtr {
     /**
      * Construct a new Safe Pointer Wrapper to ensure a pointer is properly handled
      *
-     * @param db the database that made this pointer. Always locked before any safe run function is
-     *     executed to avoid deadlocks
+     * @param db the database that made this pointer. Locked before any safe run function is
+     *     executed if it does not serialize the use of the connection itself
      * @param ptr the raw pointer
      */
     public SafeStmtPtr(DB db, long ptr) {
         this.db = db;
         this.ptr = ptr;
+        this.dbLock = db.isSerialized() ? null : db.getLock();
     }
 
     /**
@@ -49,8 +63,19 @@ public class SafeStmtPtr {
      *     elsewhere
      */
     public int close() throws SQLException {
-        synchronized (db) {
-            return internalClose();
+        ReentrantLock connection = db.getLock();
+        connection.lock();
+        try {
+            if (!lock.tryLock()) {
+                db.lockStatement(lock);
+            }
+            try {
+                return internalClose();
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            connection.unlock();
         }
     }
 
@@ -79,9 +104,12 @@ public class SafeStmtPtr {
      * @throws SQLException if the pointer is utilized elsewhere
      */
     public <E extends Throwable> int safeRunInt(SafePtrIntFunction<E> run) throws SQLException, E {
-        synchronized (db) {
+        lock();
+        try {
             this.ensureOpen();
             return run.run(db, ptr);
+        } finally {
+            unlock();
         }
     }
 
@@ -94,9 +122,12 @@ public class SafeStmtPtr {
      */
     public <E extends Throwable> long safeRunLong(SafePtrLongFunction<E> run)
             throws SQLException, E {
-        synchronized (db) {
+        lock();
+        try {
             this.ensureOpen();
             return run.run(db, ptr);
+        } finally {
+            unlock();
         }
     }
 
@@ -109,9 +140,12 @@ public class SafeStmtPtr {
      */
     public <E extends Throwable> double safeRunDouble(SafePtrDoubleFunction<E> run)
             throws SQLException, E {
-        synchronized (db) {
+        lock();
+        try {
             this.ensureOpen();
             return run.run(db, ptr);
+        } finally {
+            unlock();
         }
     }
 
@@ -123,9 +157,12 @@ public class SafeStmtPtr {
      * @throws SQLException if the pointer is utilized elsewhere
      */
     public <T, E extends Throwable> T safeRun(SafePtrFunction<T, E> run) throws SQLException, E {
-        synchronized (db) {
+        lock();
+        try {
             this.ensureOpen();
             return run.run(db, ptr);
+        } finally {
+            unlock();
         }
     }
 
@@ -137,12 +174,30 @@ public class SafeStmtPtr {
      */
     public <E extends Throwable> void safeRunConsume(SafePtrConsumer<E> run)
             throws SQLException, E {
-        synchronized (db) {
+        lock();
+        try {
             this.ensureOpen();
             run.run(db, ptr);
+        } finally {
+            unlock();
         }
     }
 
+    private void lock() {
+        if (dbLock != null) {
+            dbLock.lock();
+            lock.lock();
+        } else if (!lock.tryLock()) {
+            db.lockStatement(lock);
+        }
+    }
+
+    private void unlock() {
+        lock.unlock();
+        if (dbLock != null) dbLock.unlock();
+        else db.queueEndedTransactions();
+    }
+
     private void ensureOpen() throws SQLException {
         if (this.closed) {
             throw new SQLException("stmt pointer is closed");
@@ -0,0 +1,120 @@
+package org.sqlite.core;
+
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Idle prepared statements of a connection, keyed by their SQL text and evicted in least recently
+ * used order once there are more than a maximum number of them or they use more than a maximum
+ * amount of memory. Statements are reset and their bindings cleared when they are put back, so a
+ * statement taken from the cache behaves as if it had just been prepared.
+ *
+ * <p>All methods must be called while holding the lock of the connection, see {@link DB#getLock()}.
+ */
+final class StatementCache implements Codes {
+    private static final int SQLITE_STMTSTATUS_MEMUSED = 99;
+
+    private final DB db;
+    private final int maxStatements;
+    private final long maxBytes;
+    /** SQL text to statement pointer and its memory use, in access order */
+    private final LinkedHashMap<String, long[]> statements = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long bytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * @param db The database the statements belong to.
+     * @param maxStatements Maximum number of statements to keep.
+     * @param maxBytes Maximum memory used by the statements to keep, in bytes; 0 for no limit.
+     */
+    StatementCache(DB db, int maxStatements, long maxBytes) {
+        this.db = db;
+        this.maxStatements = maxStatements;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Removes a statement from the cache.
+     *
+     * @param sql The SQL text of the statement.
+     * @return Pointer to the statement, or 0 if none was cached.
+     */
+    long take(String sql) {
+        long[] entry = statements.remove(sql);
+        if (entry == null) {
+            misses++;
+            return 0;
+        }
+        hits++;
+        bytes -= entry[1];
+        return entry[0];
+    }
+
+    /**
+     * Resets a statement that is no longer used and keeps it for the next statement prepared with
+     * the same SQL text, evicting others if needed.
+     *
+     * @param sql The SQL text of the statement.
+     * @param ptr Pointer to the statement.
+     * @return True if the statement was cached; false if it must be finalized by the caller.
+     * @throws SQLException
+     */
+    boolean put(String sql, long ptr) throws SQLException {
+        if (statements.containsKey(sql) || db.reset(ptr) != SQLITE_OK) {
+            return false;
+        }
+        db.clear_bindings(ptr);
+
+        long size = db.stmt_status(ptr, SQLITE_STMTSTATUS_MEMUSED, false);
+        if (maxBytes > 0 && size > maxBytes) {
+            return false;
+        }
+        statements.put(sql, new long[] {ptr, size});
+        bytes += size;
+
+        Iterator<long[]> eldest = statements.values().iterator();
+        while (statements.size() > maxStatements || (maxBytes > 0 && bytes > maxBytes)) {
+            long[] entry = eldest.next();
+            eldest.remove();
+            bytes -= entry[1];
+            db.finalize(entry[0]);
+        }
+        return true;
+    }
+
+    /**
+     * Finalizes all cached statements.
+     *
+     * @throws SQLException
+     */
+    void clear() throws SQLException {
+        for (long[] entry : statements.values()) {
+            db.finalize(entry[0]);
+        }
+        statements.clear();
+        bytes = 0;
+    }
+
+    /** @return Number of cached statements. */
+    int size() {
+        return statements.size();
+    }
+
+    /** @return Memory used by the cached statements, in bytes. */
+    long bytes() {
+        return bytes;
+    }
+
+    /** @return Number of statements prepared from the cache. */
+    long hits() {
+        return hits;
+    }
+
+    /** @return Number of statements that had to be compiled. */
+    long misses() {
+        return misses;
+    }
+}
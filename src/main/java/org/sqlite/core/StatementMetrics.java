@@ -0,0 +1,98 @@
+package org.sqlite.core;
+
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+import org.sqlite.SQLiteMetricsListener;
+import org.sqlite.SQLiteStatementMetrics;
+
+/**
+ * Collects the cost of the statements of a connection while they run, and publishes it to a
+ * listener when they are reset or finalized. A statement is only used by one thread at a time,
+ * under its lock, so the counters of an execution need no synchronization of their own.
+ */
+final class StatementMetrics {
+    private static final int SQLITE_STMTSTATUS_FULLSCAN_STEP = 1;
+    private static final int SQLITE_STMTSTATUS_SORT = 2;
+    private static final int SQLITE_STMTSTATUS_AUTOINDEX = 3;
+    private static final int SQLITE_STMTSTATUS_VM_STEP = 4;
+    private static final int SQLITE_STMTSTATUS_REPREPARE = 5;
+
+    private final DB db;
+    private final SQLiteMetricsListener listener;
+    /** statement pointer to the execution in progress */
+    private final ConcurrentHashMap<Long, Execution> executions = new ConcurrentHashMap<>();
+
+    StatementMetrics(DB db, SQLiteMetricsListener listener) {
+        this.db = db;
+        this.listener = listener;
+    }
+
+    SQLiteMetricsListener getListener() {
+        return listener;
+    }
+
+    /**
+     * Records steps of a statement.
+     *
+     * @param stmt Pointer to the statement.
+     * @param steps Number of steps.
+     * @param rows Number of rows returned by the steps.
+     * @param nanos Time spent stepping, in nanoseconds.
+     */
+    void stepped(long stmt, long steps, long rows, long nanos) {
+        Execution execution = executions.get(stmt);
+        if (execution == null) {
+            execution = new Execution(System.nanoTime() - nanos);
+            executions.put(stmt, execution);
+        }
+        execution.steps += steps;
+        execution.rows += rows;
+        execution.nativeNanos += nanos;
+    }
+
+    /**
+     * Publishes the metrics of a statement that is about to be reset or finalized, if it was
+     * stepped since the last time. An exception thrown by the listener is reported to the
+     * uncaught exception handler of the thread.
+     *
+     * @param stmt Pointer to the statement.
+     * @throws SQLException
+     */
+    void finished(long stmt) throws SQLException {
+        Execution execution = executions.remove(stmt);
+        if (execution == null) {
+            return;
+        }
+        long elapsed = System.nanoTime() - execution.started;
+        SQLiteStatementMetrics metrics =
+                new SQLiteStatementMetrics(
+                        db.stmt_sql(stmt),
+                        execution.steps,
+                        execution.rows,
+                        elapsed,
+                        execution.nativeNanos,
+                        db.stmt_status(stmt, SQLITE_STMTSTATUS_FULLSCAN_STEP, true),
+                        db.stmt_status(stmt, SQLITE_STMTSTATUS_SORT, true),
+                        db.stmt_status(stmt, SQLITE_STMTSTATUS_AUTOINDEX, true),
+                        db.stmt_status(stmt, SQLITE_STMTSTATUS_VM_STEP, true),
+                        db.stmt_status(stmt, SQLITE_STMTSTATUS_REPREPARE, true));
+        try {
+            listener.onStatement(metrics);
+        } catch (RuntimeException e) {
+            // the statement is still reset or finalized, the failure goes to the thread
+            Thread thread = Thread.currentThread();
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+        }
+    }
+
+    private static final class Execution {
+        final long started;
+        long steps;
+        long rows;
+        long nativeNanos;
+
+        Execution(long started) {
+            this.started = started;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package org.sqlite.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+
+/**
+ * A parameter value read from a stream when the statement is executed, see {@link
+ * CorePreparedStatement#batchStream}. The native library copies the stream in chunks into memory
+ * it hands over to SQLite, so the value never needs a Java array as large as itself.
+ */
+final class StreamParameter {
+    final InputStream in;
+    /** number of bytes to read, or -1 to read until the end of the stream */
+    final long length;
+    /** true to bind the bytes as UTF-8 text, false as a BLOB */
+    final boolean text;
+    /** true once the stream was read, it is not read a second time */
+    private boolean consumed = false;
+
+    StreamParameter(InputStream in, long length, boolean text) {
+        this.in = in;
+        this.length = length;
+        this.text = text;
+    }
+
+    /**
+     * @param reader The characters of the value.
+     * @param length Number of characters to read, or -1 to read until the end of the reader.
+     * @return A text parameter with the UTF-8 encoding of the characters.
+     */
+    static StreamParameter of(Reader reader, long length) {
+        return new StreamParameter(new Utf8Stream(reader, length), -1, true);
+    }
+
+    /**
+     * Marks the stream as read, before reading it.
+     *
+     * @throws SQLException if the stream was read already.
+     */
+    void consume() throws SQLException {
+        if (consumed) {
+            throw new SQLException("stream parameter must be set again");
+        }
+        consumed = true;
+    }
+
+    /**
+     * Reads the whole value, for statements whose parameters are copied such as batches.
+     *
+     * @return The bytes of the value.
+     * @throws SQLException if the stream could not be read or ended early.
+     */
+    byte[] readAll() throws SQLException {
+        consume();
+        ByteArrayOutputStream out =
+                new ByteArrayOutputStream(length >= 0 ? (int) Math.min(length, 1 << 16) : 8192);
+        byte[] buffer = new byte[8192];
+        try {
+            long remaining = length;
+            while (remaining != 0) {
+                int want = remaining < 0 ? buffer.length : (int) Math.min(buffer.length, remaining);
+                int n = in.read(buffer, 0, want);
+                if (n < 0) {
+                    if (length < 0) break;
+                    throw new IOException("End of stream has been reached");
+                }
+                out.write(buffer, 0, n);
+                if (remaining > 0) remaining -= n;
+            }
+        } catch (IOException e) {
+            throw new SQLException("Error reading stream", e);
+        }
+        return out.toByteArray();
+    }
+
+    /** Encodes the characters of a reader to UTF-8 as they are read. */
+    private static final class Utf8Stream extends InputStream {
+        private final Reader reader;
+        /** number of characters left to read, or -1 to read until the end of the reader */
+        private long remaining;
+        private final CharsetEncoder encoder =
+                StandardCharsets.UTF_8
+                        .newEncoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final CharBuffer chars = CharBuffer.allocate(8192);
+        // three bytes per char at most, four for a surrogate pair
+        private final ByteBuffer bytes = ByteBuffer.allocate(8192 * 3);
+        private boolean eof = false;
+
+        Utf8Stream(Reader reader, long length) {
+            this.reader = reader;
+            this.remaining = length;
+            eof = length == 0;
+            chars.flip();
+            bytes.flip();
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (!bytes.hasRemaining()) {
+                if (!encode()) return -1;
+            }
+            int n = Math.min(len, bytes.remaining());
+            bytes.get(b, off, n);
+            return n;
+        }
+
+        /** @return False if all characters were encoded and read already. */
+        private boolean encode() throws IOException {
+            if (eof && !chars.hasRemaining()) {
+                return false;
+            }
+            bytes.clear();
+            if (!eof) {
+                chars.compact();
+                if (remaining > 0 && remaining < chars.remaining()) {
+                    chars.limit(chars.position() + (int) remaining);
+                }
+                int n = reader.read(chars);
+                if (n < 0 && remaining > 0) {
+                    throw new IOException("End of stream has been reached");
+                }
+                if (n > 0 && remaining > 0) {
+                    remaining -= n;
+                }
+                eof = n < 0 || remaining == 0;
+                chars.flip();
+            }
+            encoder.encode(chars, bytes, eof);
+            if (eof && !chars.hasRemaining()) {
+                encoder.flush(bytes);
+            }
+            bytes.flip();
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package org.sqlite.core;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.sqlite.SQLiteTransactionEvent;
+import org.sqlite.SQLiteTransactionListener;
+
+/**
+ * Delivers the transaction events of a connection to a listener on an executor, one at a time and
+ * in order, whatever the number of threads of the executor. At most one task is submitted at a
+ * time; it delivers all the events queued meanwhile.
+ */
+final class TransactionDispatcher implements Runnable {
+    private final SQLiteTransactionListener listener;
+    private final Executor executor;
+    private final BlockingQueue<SQLiteTransactionEvent> events;
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /**
+     * @param listener The listener.
+     * @param executor Runs the deliveries.
+     * @param maxPending Number of events queued at most.
+     */
+    TransactionDispatcher(SQLiteTransactionListener listener, Executor executor, int maxPending) {
+        this.listener = listener;
+        this.executor = executor;
+        this.events = new ArrayBlockingQueue<>(maxPending);
+    }
+
+    SQLiteTransactionListener getListener() {
+        return listener;
+    }
+
+    /**
+     * Queues an event, called with the lock of the connection held once the commit or rollback
+     * returned, so that the events are queued in order. It never waits: when the queue is full the
+     * event is dropped.
+     */
+    void queue(SQLiteTransactionEvent event) {
+        events.offer(event);
+    }
+
+    /**
+     * Delivers the queued events, called once the lock of the connection is released. When the
+     * executor rejects the task the events are delivered on the calling thread.
+     */
+    void schedule() {
+        if (!events.isEmpty() && scheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                run();
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        do {
+            try {
+                SQLiteTransactionEvent event;
+                while ((event = events.poll()) != null) {
+                    try {
+                        listener.onTransaction(event);
+                    } catch (RuntimeException e) {
+                        Thread thread = Thread.currentThread();
+                        thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+                    }
+                }
+            } finally {
+                scheduled.set(false);
+            }
+            // an event may have been queued after the last poll, before the flag was cleared
+        } while (!events.isEmpty() && scheduled.compareAndSet(false, true));
+    }
+}
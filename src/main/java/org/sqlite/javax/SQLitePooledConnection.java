@@ -98,19 +98,28 @@ public class SQLitePooledConnection extends JDBC4PooledConnection {
                                         try {
                                             String name = method.getName();
                                             if ("close".equals(name)) {
-                                                ConnectionEvent event =
-                                                        new ConnectionEvent(
-                                                                SQLitePooledConnection.this);
-
-                                                for (int i = listeners.size() - 1; i >= 0; i--) {
-                                                    listeners.get(i).connectionClosed(event);
+                                                if (isClosed) {
+                                                    return null;
                                                 }
-
-                                                if (!physicalConn.getAutoCommit()) {
-                                                    physicalConn.rollback();
+                                                // reset before the listeners may hand the
+                                                // connection out again
+                                                try {
+                                                    if (!physicalConn.getAutoCommit()) {
+                                                        physicalConn.rollback();
+                                                    }
+                                                    physicalConn.setAutoCommit(true);
+                                                } finally {
+                                                    isClosed = true;
+
+                                                    ConnectionEvent event =
+                                                            new ConnectionEvent(
+                                                                    SQLitePooledConnection.this);
+                                                    for (int i = listeners.size() - 1;
+                                                            i >= 0;
+                                                            i--) {
+                                                        listeners.get(i).connectionClosed(event);
+                                                    }
                                                 }
-                                                physicalConn.setAutoCommit(true);
-                                                isClosed = true;
 
                                                 return null; // don't close physical connection
                                             } else if ("isClosed".equals(name)) {
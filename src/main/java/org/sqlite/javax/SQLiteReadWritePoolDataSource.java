@@ -0,0 +1,278 @@
+package org.sqlite.javax;
+
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import javax.sql.ConnectionEvent;
+import javax.sql.ConnectionEventListener;
+import javax.sql.DataSource;
+import org.sqlite.JDBC;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteConfig.JournalMode;
+import org.sqlite.SQLiteConfig.Pragma;
+import org.sqlite.SQLiteConnection;
+import org.sqlite.SQLiteDataSource;
+import org.sqlite.SQLiteErrorCode;
+import org.sqlite.SQLiteException;
+
+/**
+ * A bounded pool of connections to a database file that follows the single writer model of SQLite:
+ * one connection for writing, and a number of read-only connections for reading. The database is
+ * put in WAL journal mode so that the readers do not block the writer and the other way around.
+ *
+ * <p>{@link #getConnection()} returns the writer, waiting in first-come, first-served order while
+ * it is in use, so writers queue in Java rather than retrying on SQLITE_BUSY. {@link
+ * #getReadConnection()} returns one of the readers, opened with {@link
+ * org.sqlite.SQLiteOpenMode#READONLY}. Both wait at most the busy timeout of the configuration and
+ * fail with SQLITE_BUSY after that.
+ *
+ * <p>Closing a connection returns it to the pool. An open transaction is rolled back and
+ * auto-commit enabled again; connections that cannot be reset or were closed are discarded and
+ * replaced when needed. Statements should be closed before the connection, since an unfinished
+ * query keeps its read transaction open.
+ */
+public class SQLiteReadWritePoolDataSource implements DataSource, AutoCloseable {
+    /** Settings that write to the database, applied by the writer only. */
+    private static final Pragma[] WRITER_PRAGMAS = {
+        Pragma.JOURNAL_MODE,
+        Pragma.PAGE_SIZE,
+        Pragma.AUTO_VACUUM,
+        Pragma.INCREMENTAL_VACUUM,
+        Pragma.USER_VERSION,
+        Pragma.APPLICATION_ID,
+        Pragma.LEGACY_FILE_FORMAT
+    };
+
+    private final SQLiteDataSource dataSource;
+    private final int maxReaders;
+    private final Pool writer;
+    private final Pool readers;
+
+    private volatile boolean closed = false;
+    /** true once the writer opened the database and set its journal mode */
+    private volatile boolean initialized = false;
+
+    /**
+     * Creates a pool of connections to the database of a data source.
+     *
+     * @param dataSource The data source with the location and configuration of the database.
+     * @param maxReaders Maximum number of read-only connections.
+     */
+    public SQLiteReadWritePoolDataSource(SQLiteDataSource dataSource, int maxReaders) {
+        if (maxReaders < 1) {
+            throw new IllegalArgumentException("maxReaders must be at least 1: " + maxReaders);
+        }
+        this.dataSource = dataSource;
+        this.maxReaders = maxReaders;
+        this.writer = new Pool(new Semaphore(1, true), false);
+        this.readers = new Pool(new Semaphore(maxReaders), true);
+    }
+
+    /** @return Maximum number of read-only connections. */
+    public int getMaxReaders() {
+        return maxReaders;
+    }
+
+    /**
+     * Returns the connection for writing, waiting while it is used elsewhere.
+     *
+     * @see javax.sql.DataSource#getConnection()
+     */
+    public Connection getConnection() throws SQLException {
+        return writer.take();
+    }
+
+    /**
+     * Returns the connection for writing; the user name and password are ignored.
+     *
+     * @see javax.sql.DataSource#getConnection(java.lang.String, java.lang.String)
+     */
+    public Connection getConnection(String username, String password) throws SQLException {
+        return getConnection();
+    }
+
+    /**
+     * Returns a read-only connection, waiting while all of them are used elsewhere.
+     *
+     * @return A read-only connection.
+     * @throws SQLException if the pool is closed, the timeout elapsed or the connection could not
+     *     be opened.
+     */
+    public Connection getReadConnection() throws SQLException {
+        if (!initialized) {
+            // create the database and switch it to WAL before opening it read-only
+            getConnection().close();
+        }
+        return readers.take();
+    }
+
+    /**
+     * Closes the idle connections of the pool. Connections in use are closed when they are
+     * returned.
+     */
+    public void close() throws SQLException {
+        closed = true;
+        writer.clear();
+        readers.clear();
+    }
+
+    /** @see javax.sql.DataSource#getLogWriter() */
+    public PrintWriter getLogWriter() throws SQLException {
+        return dataSource.getLogWriter();
+    }
+
+    /** @see javax.sql.DataSource#setLogWriter(java.io.PrintWriter) */
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        dataSource.setLogWriter(out);
+    }
+
+    /** @see javax.sql.DataSource#setLoginTimeout(int) */
+    public void setLoginTimeout(int seconds) throws SQLException {
+        dataSource.setLoginTimeout(seconds);
+    }
+
+    /** @see javax.sql.DataSource#getLoginTimeout() */
+    public int getLoginTimeout() throws SQLException {
+        return dataSource.getLoginTimeout();
+    }
+
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return dataSource.getParentLogger();
+    }
+
+    /**
+     * Determines if this object wraps a given class.
+     *
+     * @param iface The class to check.
+     * @return True if it is an instance of the current class; false otherwise.
+     */
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+
+    /**
+     * Casts this object to the given class.
+     *
+     * @param iface The class to cast to.
+     * @return The casted class.
+     * @throws SQLException
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        return (T) this;
+    }
+
+    /** @return Configuration of the writer or of the readers, copied from the data source. */
+    private SQLiteConfig config(boolean readOnly) {
+        Properties prop = new Properties();
+        prop.putAll(dataSource.getConfig().toProperties());
+        SQLiteConfig config = new SQLiteConfig(prop);
+        if (readOnly) {
+            for (Pragma pragma : WRITER_PRAGMAS) {
+                prop.remove(pragma.pragmaName);
+            }
+            config.setReadOnly(true);
+        } else {
+            config.setJournalMode(JournalMode.WAL);
+        }
+        return config;
+    }
+
+    private static void closeQuietly(SQLitePooledConnection pooled) {
+        try {
+            pooled.close();
+        } catch (SQLException e) {
+            // discarded anyway
+        }
+    }
+
+    /** Idle connections of one kind and the permits to use one. */
+    private final class Pool implements ConnectionEventListener {
+        private final Semaphore permits;
+        private final boolean readOnly;
+        private final ConcurrentLinkedQueue<SQLitePooledConnection> idle =
+                new ConcurrentLinkedQueue<>();
+
+        Pool(Semaphore permits, boolean readOnly) {
+            this.permits = permits;
+            this.readOnly = readOnly;
+        }
+
+        Connection take() throws SQLException {
+            if (closed) {
+                throw new SQLException("connection pool is closed");
+            }
+            int timeout = dataSource.getConfig().getBusyTimeout();
+            try {
+                if (!permits.tryAcquire(Math.max(timeout, 0), TimeUnit.MILLISECONDS)) {
+                    throw new SQLiteException(
+                            String.format(
+                                    "[SQLITE_BUSY] no %s connection available within %d ms",
+                                    readOnly ? "read" : "write", timeout),
+                            SQLiteErrorCode.SQLITE_BUSY);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("interrupted while waiting for a connection", e);
+            }
+
+            SQLitePooledConnection pooled = idle.poll();
+            try {
+                if (pooled == null) {
+                    SQLiteConfig config = config(readOnly);
+                    pooled =
+                            new SQLitePooledConnection(
+                                    JDBC.createConnection(
+                                            dataSource.getUrl(), config.toProperties()));
+                    pooled.addConnectionEventListener(this);
+                    if (!readOnly) initialized = true;
+                }
+                return pooled.getConnection();
+            } catch (SQLException | RuntimeException e) {
+                if (pooled != null) closeQuietly(pooled);
+                permits.release();
+                throw e;
+            }
+        }
+
+        void clear() {
+            for (SQLitePooledConnection pooled; (pooled = idle.poll()) != null; ) {
+                closeQuietly(pooled);
+            }
+        }
+
+        /** Keeps a returned connection if it was reset, otherwise discards it. */
+        public void connectionClosed(ConnectionEvent event) {
+            SQLitePooledConnection pooled = (SQLitePooledConnection) event.getSource();
+            SQLiteConnection physical = pooled.getPhysicalConn();
+            boolean reusable;
+            try {
+                reusable =
+                        !closed && physical != null && !physical.isClosed()
+                                && physical.getAutoCommit();
+            } catch (SQLException e) {
+                reusable = false;
+            }
+
+            if (reusable) {
+                idle.offer(pooled);
+            } else {
+                closeQuietly(pooled);
+            }
+            permits.release();
+            if (closed) {
+                // close() may have run before the connection was put back
+                clear();
+            }
+        }
+
+        /** Connections that failed are discarded when they are closed. */
+        public void connectionErrorOccurred(ConnectionEvent event) {}
+    }
+}
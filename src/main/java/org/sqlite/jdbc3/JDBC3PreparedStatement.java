@@ -95,22 +95,6 @@ public abstract class JDBC3PreparedStatement extends CorePreparedStatement {
         return conn.getDatabase().executeUpdate(this, batch);
     }
 
-    /** @see java.sql.PreparedStatement#addBatch() */
-    public void addBatch() throws SQLException {
-        checkOpen();
-        batchPos += paramCount;
-        batchQueryCount++;
-        if (batch == null) {
-            batch = new Object[paramCount];
-        }
-        if (batchPos + paramCount > batch.length) {
-            Object[] nb = new Object[batch.length * 2];
-            System.arraycopy(batch, 0, nb, 0, batch.length);
-            batch = nb;
-        }
-        System.arraycopy(batch, batchPos - paramCount, batch, batchPos, paramCount);
-    }
-
     // ParameterMetaData FUNCTIONS //////////////////////////////////
 
     /** @see java.sql.PreparedStatement#getParameterMetaData() */
@@ -175,6 +159,12 @@ public abstract class JDBC3PreparedStatement extends CorePreparedStatement {
         batch(pos, value == null ? null : value.toString());
     }
 
+    /**
+     * Streams of at least this many bytes or characters are read when the statement is executed,
+     * straight into memory handed over to SQLite, instead of into an array when they are set.
+     */
+    protected static final int STREAM_THRESHOLD = 64 * 1024;
+
     /**
      * Reads given number of bytes from an input stream.
      *
@@ -214,13 +204,22 @@ public abstract class JDBC3PreparedStatement extends CorePreparedStatement {
         }
     }
 
-    /** @see java.sql.PreparedStatement#setBinaryStream(int, java.io.InputStream, int) */
+    /**
+     * Streams of 64 KiB or more are read when the statement is executed, so the stream must stay
+     * open until then and be set again to execute the statement again.
+     *
+     * @see java.sql.PreparedStatement#setBinaryStream(int, java.io.InputStream, int)
+     */
     public void setBinaryStream(int pos, InputStream istream, int length) throws SQLException {
         if (istream == null && length == 0) {
             setBytes(pos, null);
         }
 
-        setBytes(pos, readBytes(istream, length));
+        if (length >= STREAM_THRESHOLD) {
+            batchStream(pos, istream, length, false);
+        } else {
+            setBytes(pos, readBytes(istream, length));
+        }
     }
 
     /** @see java.sql.PreparedStatement#setAsciiStream(int, java.io.InputStream, int) */
@@ -228,12 +227,22 @@ public abstract class JDBC3PreparedStatement extends CorePreparedStatement {
         setUnicodeStream(pos, istream, length);
     }
 
-    /** @see java.sql.PreparedStatement#setUnicodeStream(int, java.io.InputStream, int) */
+    /**
+     * Streams of 64 KiB or more are read when the statement is executed, so the stream must stay
+     * open until then and be set again to execute the statement again.
+     *
+     * @see java.sql.PreparedStatement#setUnicodeStream(int, java.io.InputStream, int)
+     */
     public void setUnicodeStream(int pos, InputStream istream, int length) throws SQLException {
         if (istream == null && length == 0) {
             setString(pos, null);
         }
 
+        if (length >= STREAM_THRESHOLD) {
+            batchStream(pos, istream, length, true);
+            return;
+        }
+
         try {
             setString(pos, new String(readBytes(istream, length), "UTF-8"));
         } catch (UnsupportedEncodingException e) {
@@ -336,20 +345,36 @@ public abstract class JDBC3PreparedStatement extends CorePreparedStatement {
         batch(pos, value);
     }
 
-    /** @see java.sql.PreparedStatement#setCharacterStream(int, java.io.Reader, int) */
+    /**
+     * Readers of 64 Ki characters or more are read when the statement is executed, so the reader
+     * must stay open until then and be set again to execute the statement again.
+     *
+     * @see java.sql.PreparedStatement#setCharacterStream(int, java.io.Reader, int)
+     */
     public void setCharacterStream(int pos, Reader reader, int length) throws SQLException {
+        if (length >= STREAM_THRESHOLD) {
+            batchStream(pos, reader, length);
+            return;
+        }
+        if (length < 0) {
+            throw new SQLException("Error reading stream. Length should be non-negative");
+        }
+
         try {
-            // copy chars from reader to StringBuffer
-            StringBuffer sb = new StringBuffer();
-            char[] cbuf = new char[8192];
-            int cnt;
+            // copy the given number of chars from the reader
+            char[] cbuf = new char[length];
+            int total = 0;
 
-            while ((cnt = reader.read(cbuf)) > 0) {
-                sb.append(cbuf, 0, cnt);
+            while (total < length) {
+                int cnt = reader.read(cbuf, total, length - total);
+                if (cnt == -1) {
+                    throw new IOException("End of stream has been reached");
+                }
+                total += cnt;
             }
 
             // set as string
-            setString(pos, sb.toString());
+            setString(pos, new String(cbuf));
         } catch (IOException e) {
             throw new SQLException(
                     "Cannot read from character stream, exception message: " + e.getMessage());
@@ -5,6 +5,8 @@ import java.io.InputStream;
 import java.io.Reader;
 import java.io.StringReader;
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.sql.Date;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
@@ -22,9 +24,21 @@ import java.util.regex.Pattern;
 import org.sqlite.core.CoreResultSet;
 import org.sqlite.core.CoreStatement;
 import org.sqlite.core.DB;
+import org.sqlite.core.RowBlock;
 import org.sqlite.date.FastDateFormat;
 
 public abstract class JDBC3ResultSet extends CoreResultSet {
+    /** per-statement buffer text is copied into for the text views, grown on demand */
+    private byte[] textBuffer;
+    /** location of the text loaded by loadText() */
+    private byte[] textArray;
+    private int textOffset;
+    private int textLength;
+    /** views returned by getTextBuffer() and getCharSequence(), reused between calls */
+    private ByteBuffer textView;
+    private byte[] textViewArray;
+    private AsciiSequence asciiView;
+
     // ResultSet Functions //////////////////////////////////////////
 
     protected JDBC3ResultSet(CoreStatement stmt) {
@@ -69,7 +83,7 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
         }
 
         // do the real work
-        int statusCode = stmt.pointer.safeRunInt(DB::step);
+        int statusCode = stepRow();
         switch (statusCode) {
             case SQLITE_DONE:
                 close(); // agressive closing to avoid writer starvation
@@ -84,6 +98,38 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
         }
     }
 
+    /**
+     * Steps to the next row. With a fetch size greater than 1, rows are stepped in blocks of up to
+     * the fetch size rows and read from the current block until it is used up.
+     *
+     * @return SQLITE_ROW if a row is available, otherwise the result of the last step.
+     */
+    private int stepRow() throws SQLException {
+        if (block != null) {
+            if (block.next()) {
+                return SQLITE_ROW;
+            }
+            int statusCode = block.getStatus();
+            block = null;
+            if (statusCode != SQLITE_ROW) {
+                return statusCode;
+            }
+        }
+        if (limitRows <= 1) {
+            return stmt.pointer.safeRunInt(DB::step);
+        }
+
+        // never step the statement past maxRows
+        int rows = maxRows != 0 ? (int) Math.min(limitRows, maxRows - row) : limitRows;
+        byte[] rowData = stmt.pointer.safeRun((db, ptr) -> db.step_block(ptr, rows));
+        RowBlock next = new RowBlock(getDatabase(), rowData, cols.length);
+        if (!next.next()) {
+            return next.getStatus();
+        }
+        block = next;
+        return SQLITE_ROW;
+    }
+
     /** @see java.sql.ResultSet#getType() */
     public int getType() throws SQLException {
         return ResultSet.TYPE_FORWARD_ONLY;
@@ -221,6 +267,9 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
 
     /** @see java.sql.ResultSet#getBytes(int) */
     public byte[] getBytes(int col) throws SQLException {
+        if (block != null) {
+            return block.getBlob(markCol(col));
+        }
         return stmt.pointer.safeRun((db, ptr) -> db.column_blob(ptr, markCol(col)));
     }
 
@@ -342,6 +391,9 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
 
     /** @see java.sql.ResultSet#getInt(int) */
     public int getInt(int col) throws SQLException {
+        if (block != null) {
+            return block.getInt(markCol(col));
+        }
         return stmt.pointer.safeRunInt((db, ptr) -> db.column_int(ptr, markCol(col)));
     }
 
@@ -380,6 +432,135 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
         return getString(findColumn(col));
     }
 
+    /**
+     * Returns the value of a column as UTF-8 text without creating a String. The text is between
+     * the position and the limit of the returned read-only buffer. The buffer is reused: it is only
+     * valid until the next call to this method or {@link #getCharSequence(int)}, or until the
+     * cursor moves.
+     *
+     * @param col The first column is 1, the second is 2, ...
+     * @return The text of the column, or null if the value is NULL.
+     * @throws SQLException
+     */
+    public ByteBuffer getTextBuffer(int col) throws SQLException {
+        if (!loadText(markCol(col))) {
+            return null;
+        }
+        if (textView == null || textViewArray != textArray) {
+            textView = ByteBuffer.wrap(textArray).asReadOnlyBuffer();
+            textViewArray = textArray;
+        }
+        textView.clear();
+        textView.position(textOffset);
+        textView.limit(textOffset + textLength);
+        return textView;
+    }
+
+    /**
+     * Returns the value of a column as a CharSequence. ASCII text is not decoded: the returned
+     * sequence reads it in place and is only valid until the next call to this method or {@link
+     * #getTextBuffer(int)}, or until the cursor moves. Call toString() to keep the value.
+     *
+     * @param col The first column is 1, the second is 2, ...
+     * @return The text of the column, or null if the value is NULL.
+     * @throws SQLException
+     */
+    public CharSequence getCharSequence(int col) throws SQLException {
+        if (!loadText(markCol(col))) {
+            return null;
+        }
+        for (int i = textOffset; i < textOffset + textLength; i++) {
+            if (textArray[i] < 0) {
+                return new String(textArray, textOffset, textLength, StandardCharsets.UTF_8);
+            }
+        }
+        if (asciiView == null) {
+            asciiView = new AsciiSequence();
+        }
+        asciiView.set(textArray, textOffset, textLength);
+        return asciiView;
+    }
+
+    /**
+     * Points textArray, textOffset and textLength at the UTF-8 text of a column, copying it into
+     * the buffer of the statement unless it can be read from the current row block.
+     *
+     * @param col Column in [0,x-1] form.
+     * @return False if the value is NULL.
+     */
+    private boolean loadText(int col) throws SQLException {
+        if (block != null) {
+            switch (block.getColumnType(col)) {
+                case SQLITE_NULL:
+                    return false;
+                case SQLITE_TEXT:
+                case SQLITE_BLOB:
+                    textArray = block.array();
+                    textOffset = block.getBytesOffset(col);
+                    textLength = block.getBytesLength(col);
+                    return true;
+                default:
+                    textArray = block.getText(col).getBytes(StandardCharsets.UTF_8);
+                    textOffset = 0;
+                    textLength = textArray.length;
+                    return true;
+            }
+        }
+
+        if (textBuffer == null) {
+            textBuffer = new byte[256];
+        }
+        int length =
+                stmt.pointer.safeRunInt(
+                        (db, ptr) -> {
+                            int len = db.column_text_copy(ptr, col, textBuffer);
+                            if (len > textBuffer.length) {
+                                textBuffer = new byte[Math.max(len, 2 * textBuffer.length)];
+                                db.column_text_copy(ptr, col, textBuffer);
+                            }
+                            return len;
+                        });
+        if (length < 0) {
+            return false;
+        }
+        textArray = textBuffer;
+        textOffset = 0;
+        textLength = length;
+        return true;
+    }
+
+    /** A CharSequence over ASCII bytes. */
+    private static final class AsciiSequence implements CharSequence {
+        private byte[] bytes;
+        private int offset;
+        private int length;
+
+        void set(byte[] bytes, int offset, int length) {
+            this.bytes = bytes;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public int length() {
+            return length;
+        }
+
+        public char charAt(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+            }
+            return (char) bytes[offset + index];
+        }
+
+        public CharSequence subSequence(int start, int end) {
+            return toString().substring(start, end);
+        }
+
+        public String toString() {
+            return new String(bytes, offset, length, StandardCharsets.US_ASCII);
+        }
+    }
+
     /** @see java.sql.ResultSet#getTime(int) */
     public Time getTime(int col) throws SQLException {
         DB db = getDatabase();
@@ -963,18 +1144,30 @@ public abstract class JDBC3ResultSet extends CoreResultSet {
     }
 
     private int safeGetColumnType(int col) throws SQLException {
+        if (block != null) {
+            return block.getColumnType(col);
+        }
         return stmt.pointer.safeRunInt((db, ptr) -> db.column_type(ptr, col));
     }
 
     private long safeGetLongCol(int col) throws SQLException {
+        if (block != null) {
+            return block.getLong(markCol(col));
+        }
         return stmt.pointer.safeRunLong((db, ptr) -> db.column_long(ptr, markCol(col)));
     }
 
     private double safeGetDoubleCol(int col) throws SQLException {
+        if (block != null) {
+            return block.getDouble(markCol(col));
+        }
         return stmt.pointer.safeRunDouble((db, ptr) -> db.column_double(ptr, markCol(col)));
     }
 
     private String safeGetColumnText(int col) throws SQLException {
+        if (block != null) {
+            return block.getText(markCol(col));
+        }
         return stmt.pointer.safeRun((db, ptr) -> db.column_text(ptr, markCol(col)));
     }
 
@@ -6,6 +6,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.SQLWarning;
 import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
 import org.sqlite.ExtendedCommand;
 import org.sqlite.ExtendedCommand.SQLExtension;
 import org.sqlite.SQLiteConnection;
@@ -90,6 +91,9 @@ public abstract class JDBC3Statement extends CoreStatement {
             // execute extended command
             ext.execute(db);
         } else {
+            // no other statement may run until the changes of this one are counted
+            ReentrantLock lock = db.getLock();
+            lock.lock();
             try {
                 changes = db.total_changes();
 
@@ -99,6 +103,7 @@ public abstract class JDBC3Statement extends CoreStatement {
 
                 changes = db.total_changes() - changes;
             } finally {
+                lock.unlock();
                 internalClose();
             }
         }
@@ -184,7 +189,9 @@ public abstract class JDBC3Statement extends CoreStatement {
 
         long[] changes = new long[batchPos];
         DB db = conn.getDatabase();
-        synchronized (db) {
+        ReentrantLock lock = db.getLock();
+        lock.lock();
+        try {
             try {
                 for (int i = 0; i < changes.length; i++) {
                     try {
@@ -201,6 +208,8 @@ public abstract class JDBC3Statement extends CoreStatement {
             } finally {
                 clearBatch();
             }
+        } finally {
+            lock.unlock();
         }
 
         return changes;
@@ -54,8 +54,7 @@ public class JDBC4PreparedStatement extends JDBC3PreparedStatement
 
     public void setBlob(int parameterIndex, InputStream inputStream, long length)
             throws SQLException {
-        // TODO Support this
-        throw new SQLFeatureNotSupportedException();
+        setBinaryStream(parameterIndex, inputStream, length);
     }
 
     public void setNClob(int parameterIndex, Reader reader, long length) throws SQLException {
@@ -69,35 +68,44 @@ public class JDBC4PreparedStatement extends JDBC3PreparedStatement
     }
 
     public void setAsciiStream(int parameterIndex, InputStream x, long length) throws SQLException {
-        // TODO Support this
-        throw new SQLFeatureNotSupportedException();
+        if (length < STREAM_THRESHOLD) {
+            setAsciiStream(parameterIndex, x, (int) length);
+        } else {
+            batchStream(parameterIndex, x, length, true);
+        }
     }
 
     public void setBinaryStream(int parameterIndex, InputStream x, long length)
             throws SQLException {
-        // TODO Support this
-        throw new SQLFeatureNotSupportedException();
+        if (length < STREAM_THRESHOLD) {
+            setBinaryStream(parameterIndex, x, (int) length);
+        } else {
+            batchStream(parameterIndex, x, length, false);
+        }
     }
 
     public void setCharacterStream(int parameterIndex, Reader reader, long length)
             throws SQLException {
-        // TODO Support this
-        throw new SQLFeatureNotSupportedException();
+        if (length < STREAM_THRESHOLD) {
+            setCharacterStream(parameterIndex, reader, (int) length);
+        } else {
+            batchStream(parameterIndex, reader, length);
+        }
     }
 
+    /** The stream is read until its end when the statement is executed. */
     public void setAsciiStream(int parameterIndex, InputStream x) throws SQLException {
-        // TODO Support this
-        throw new SQLFeatureNotSupportedException();
+        batchStream(parameterIndex, x, -1, true);
     }
 
+    /** The stream is read until its end when the statement is executed. */
     public void setBinaryStream(int parameterIndex, InputStream x) throws SQLException {
-        // TODO Support this
-        throw new SQLFeatureNotSupportedException();
+        batchStream(parameterIndex, x, -1, false);
     }
 
+    /** The reader is read until its end when the statement is executed. */
     public void setCharacterStream(int parameterIndex, Reader reader) throws SQLException {
-        // TODO Support this
-        throw new SQLFeatureNotSupportedException();
+        batchStream(parameterIndex, reader, -1);
     }
 
     public void setNCharacterStream(int parameterIndex, Reader value) throws SQLException {
@@ -111,8 +119,7 @@ public class JDBC4PreparedStatement extends JDBC3PreparedStatement
     }
 
     public void setBlob(int parameterIndex, InputStream inputStream) throws SQLException {
-        // TODO Support this
-        throw new SQLFeatureNotSupportedException();
+        setBinaryStream(parameterIndex, inputStream);
     }
 
     public void setNClob(int parameterIndex, Reader reader) throws SQLException {
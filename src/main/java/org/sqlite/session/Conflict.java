@@ -0,0 +1,137 @@
+package org.sqlite.session;
+
+/**
+ * A change of a changeset that conflicts with the database it is applied to, passed to a {@link
+ * ConflictHandler}. The values are Long, Double, String, byte[] or null, in the order of the
+ * columns of the table; null also stands for a column an update does not change.
+ *
+ * @see <a
+ *     href="https://www.sqlite.org/session/c_changeset_conflict.html">https://www.sqlite.org/session/c_changeset_conflict.html</a>
+ */
+public final class Conflict {
+
+    /** Why a change conflicts with the database. */
+    public enum Type {
+        /**
+         * The row to update or delete exists, but its values are not the original values of the
+         * change; the values of the row are given by {@link #getConflictingValues()}.
+         */
+        DATA(1),
+        /** The row to update or delete does not exist. */
+        NOT_FOUND(2),
+        /**
+         * The primary key of the row to insert already exists; the values of the row are given by
+         * {@link #getConflictingValues()}.
+         */
+        CONFLICT(3),
+        /** The change violates a constraint of the table. */
+        CONSTRAINT(4),
+        /** Foreign key constraints are violated once all the changes were applied. */
+        FOREIGN_KEY(5);
+
+        /** The SQLITE_CHANGESET_* constant of the type. */
+        public final int code;
+
+        Type(int code) {
+            this.code = code;
+        }
+
+        static Type of(int code) {
+            for (Type type : values()) {
+                if (type.code == code) {
+                    return type;
+                }
+            }
+            throw new IllegalArgumentException("unknown conflict type: " + code);
+        }
+    }
+
+    /** The kind of change. */
+    public enum Operation {
+        INSERT(18),
+        UPDATE(23),
+        DELETE(9);
+
+        /** The SQLITE_INSERT, SQLITE_UPDATE or SQLITE_DELETE constant of the operation. */
+        public final int code;
+
+        Operation(int code) {
+            this.code = code;
+        }
+
+        static Operation of(int code) {
+            for (Operation op : values()) {
+                if (op.code == code) {
+                    return op;
+                }
+            }
+            throw new IllegalArgumentException("unknown operation: " + code);
+        }
+    }
+
+    private final Type type;
+    private final String table;
+    private final Operation operation;
+    private final boolean indirect;
+    private final Object[] oldValues;
+    private final Object[] newValues;
+    private final Object[] conflictingValues;
+
+    Conflict(
+            Type type,
+            String table,
+            Operation operation,
+            boolean indirect,
+            Object[] oldValues,
+            Object[] newValues,
+            Object[] conflictingValues) {
+        this.type = type;
+        this.table = table;
+        this.operation = operation;
+        this.indirect = indirect;
+        this.oldValues = oldValues;
+        this.newValues = newValues;
+        this.conflictingValues = conflictingValues;
+    }
+
+    /** @return Why the change conflicts with the database. */
+    public Type getType() {
+        return type;
+    }
+
+    /** @return Name of the table of the change. */
+    public String getTable() {
+        return table;
+    }
+
+    /** @return The kind of change. */
+    public Operation getOperation() {
+        return operation;
+    }
+
+    /** @return True if the change was made by a trigger or a foreign key action. */
+    public boolean isIndirect() {
+        return indirect;
+    }
+
+    /**
+     * @return The values of the row before an update or delete, or null for an insert. A patchset
+     *     only holds the primary key of the row.
+     */
+    public Object[] getOldValues() {
+        return oldValues;
+    }
+
+    /** @return The values of the row after an update or insert, or null for a delete. */
+    public Object[] getNewValues() {
+        return newValues;
+    }
+
+    /**
+     * @return The values of the row in the database for the {@link Type#DATA} and {@link
+     *     Type#CONFLICT} types, otherwise null.
+     */
+    public Object[] getConflictingValues() {
+        return conflictingValues;
+    }
+}
@@ -0,0 +1,51 @@
+package org.sqlite.session;
+
+import java.sql.SQLException;
+
+/**
+ * Decides what to do with each change of a changeset that conflicts with the database it is
+ * applied to, see {@link SQLiteChangeset#apply(org.sqlite.SQLiteConnection, java.nio.ByteBuffer,
+ * ConflictHandler)}. The changes that apply cleanly never reach the handler.
+ *
+ * <p>It is called while the changeset is applied, so it must not use the connection. Exceptions
+ * abort the whole changeset and are thrown to the code that applied it.
+ *
+ * @see <a
+ *     href="https://www.sqlite.org/session/sqlite3changeset_apply.html">https://www.sqlite.org/session/sqlite3changeset_apply.html</a>
+ */
+@FunctionalInterface
+public interface ConflictHandler {
+
+    /** What to do with a conflicting change. */
+    enum Action {
+        /** Skip the change. */
+        OMIT(0),
+        /**
+         * Overwrite the row of the database with the change; only for the {@link
+         * Conflict.Type#DATA} and {@link Conflict.Type#CONFLICT} types.
+         */
+        REPLACE(1),
+        /** Roll back all the changes applied and fail with SQLITE_ABORT. */
+        ABORT(2);
+
+        /** The SQLITE_CHANGESET_* constant of the action. */
+        public final int code;
+
+        Action(int code) {
+            this.code = code;
+        }
+    }
+
+    /** Skips every conflicting change. */
+    ConflictHandler OMIT = conflict -> Action.OMIT;
+
+    /** Aborts at the first conflicting change. */
+    ConflictHandler ABORT = conflict -> Action.ABORT;
+
+    /**
+     * @param conflict The conflicting change.
+     * @return What to do with the change.
+     * @throws SQLException to abort the changeset.
+     */
+    Action onConflict(Conflict conflict) throws SQLException;
+}
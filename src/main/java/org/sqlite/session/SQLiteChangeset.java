@@ -0,0 +1,75 @@
+package org.sqlite.session;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.sql.SQLException;
+import org.sqlite.SQLiteConnection;
+import org.sqlite.core.DB;
+
+/**
+ * Applies changesets and patchsets recorded by a {@link SQLiteSession}, on the same or another
+ * database. All the changes of a changeset are applied in a single transaction, or none if it is
+ * aborted.
+ *
+ * @see <a
+ *     href="https://www.sqlite.org/session/sqlite3changeset_apply.html">https://www.sqlite.org/session/sqlite3changeset_apply.html</a>
+ */
+public final class SQLiteChangeset {
+    private SQLiteChangeset() {}
+
+    /**
+     * Applies the changes of the remaining bytes of a buffer to the main database of a
+     * connection. A direct buffer is read in place; any other buffer is copied first.
+     *
+     * @param conn The connection.
+     * @param changeset Buffer holding a changeset or patchset; its position is not changed.
+     * @param handler Decides what to do with the conflicting changes, or null to abort at the
+     *     first one.
+     * @throws SQLException if the changeset is invalid or was aborted.
+     */
+    public static void apply(SQLiteConnection conn, ByteBuffer changeset, ConflictHandler handler)
+            throws SQLException {
+        conn.getDatabase().applyChangeset(changeset, adapt(handler));
+    }
+
+    /**
+     * Applies the changes of a changeset read from a stream to the main database of a connection,
+     * in chunks, without reading it in memory first.
+     *
+     * @param conn The connection.
+     * @param in Stream holding a changeset or patchset; it is not closed.
+     * @param handler Decides what to do with the conflicting changes, or null to abort at the
+     *     first one.
+     * @throws SQLException if the changeset is invalid, could not be read or was aborted.
+     */
+    public static void apply(SQLiteConnection conn, InputStream in, ConflictHandler handler)
+            throws SQLException {
+        conn.getDatabase().applyChangeset(in, adapt(handler));
+    }
+
+    private static DB.ChangesetConflictHandler adapt(ConflictHandler handler) {
+        ConflictHandler h = handler != null ? handler : ConflictHandler.ABORT;
+        return (type, table, op, indirect, oldValues, newValues, conflictValues) -> {
+            Conflict conflict =
+                    new Conflict(
+                            Conflict.Type.of(type),
+                            table,
+                            Conflict.Operation.of(op),
+                            indirect,
+                            oldValues,
+                            newValues,
+                            conflictValues);
+            ConflictHandler.Action action = h.onConflict(conflict);
+            if (action == null) {
+                throw new SQLException("the conflict handler returned no action");
+            }
+            if (action == ConflictHandler.Action.REPLACE
+                    && conflict.getType() != Conflict.Type.DATA
+                    && conflict.getType() != Conflict.Type.CONFLICT) {
+                throw new SQLException(
+                        "a conflict of type " + conflict.getType() + " cannot be replaced");
+            }
+            return action.code;
+        };
+    }
+}
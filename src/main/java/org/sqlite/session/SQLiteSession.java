@@ -0,0 +1,146 @@
+package org.sqlite.session;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.sql.SQLException;
+import org.sqlite.SQLiteConnection;
+import org.sqlite.core.DB;
+import org.sqlite.core.NativeHandle;
+
+/**
+ * Records the changes made to the tables of a database through a connection, to replay them on
+ * another database with {@link SQLiteChangeset}. SQLite records each changed row once, with its
+ * original and final values, as the changes are made, so nothing has to be read back to find out
+ * what changed. Only tables with a primary key are recorded.
+ *
+ * <p>Close the session when done, otherwise it is deleted with the connection.
+ *
+ * @see <a href="https://www.sqlite.org/sessionintro.html">https://www.sqlite.org/sessionintro.html</a>
+ */
+public class SQLiteSession implements AutoCloseable {
+    private final DB db;
+    private final NativeHandle handle;
+
+    private SQLiteSession(DB db, NativeHandle handle) {
+        this.db = db;
+        this.handle = handle;
+    }
+
+    /**
+     * Creates a session recording the changes made to a database through a connection. No table
+     * is recorded until it is attached.
+     *
+     * @param conn The connection.
+     * @param schema Name of the database: "main", "temp" or the name of an attached database.
+     * @return The session, to close when done.
+     * @throws SQLException
+     */
+    public static SQLiteSession create(SQLiteConnection conn, String schema) throws SQLException {
+        DB db = conn.getDatabase();
+        return new SQLiteSession(db, db.openSession(schema));
+    }
+
+    /**
+     * Starts recording the changes of a table. A table that does not exist yet is recorded once
+     * created.
+     *
+     * @param table Name of the table.
+     * @throws SQLException
+     */
+    public void attach(String table) throws SQLException {
+        if (table == null) {
+            throw new NullPointerException("table");
+        }
+        db.attachSession(handle, table);
+    }
+
+    /**
+     * Starts recording the changes of all the tables of the database, including the tables
+     * created later.
+     *
+     * @throws SQLException
+     */
+    public void attachAll() throws SQLException {
+        db.attachSession(handle, null);
+    }
+
+    /**
+     * Pauses or resumes the recording; the changes made meanwhile are not recorded.
+     *
+     * @param enabled True to record changes.
+     * @throws SQLException
+     */
+    public void setEnabled(boolean enabled) throws SQLException {
+        db.enableSession(handle, enabled ? 1 : 0);
+    }
+
+    /** @return True if the session records changes, which is the default. */
+    public boolean isEnabled() throws SQLException {
+        return db.enableSession(handle, -1);
+    }
+
+    /**
+     * Flags the changes recorded from now on as indirect, as if they were made by triggers.
+     *
+     * @param indirect True to flag the changes as indirect.
+     * @throws SQLException
+     */
+    public void setIndirect(boolean indirect) throws SQLException {
+        db.setSessionIndirect(handle, indirect ? 1 : 0);
+    }
+
+    /** @return True if the changes recorded are flagged as indirect. */
+    public boolean isIndirect() throws SQLException {
+        return db.setSessionIndirect(handle, -1);
+    }
+
+    /** @return True if no change was recorded. */
+    public boolean isEmpty() throws SQLException {
+        return db.isSessionEmpty(handle);
+    }
+
+    /**
+     * @return A direct buffer holding a changeset of the changes recorded, positioned at 0.
+     * @throws SQLException
+     */
+    public ByteBuffer changeset() throws SQLException {
+        return db.sessionChangeset(handle, false);
+    }
+
+    /**
+     * @return A direct buffer holding a patchset of the changes recorded, positioned at 0. A
+     *     patchset is smaller than a changeset as it only holds the primary key of deleted rows
+     *     and the new values of updated columns, but conflicts are detected with less precision.
+     * @throws SQLException
+     */
+    public ByteBuffer patchset() throws SQLException {
+        return db.sessionChangeset(handle, true);
+    }
+
+    /**
+     * Writes a changeset of the changes recorded to a stream, in chunks, without building it in
+     * memory first.
+     *
+     * @param out Stream to write to; it is not closed.
+     * @throws SQLException if the stream could not be written.
+     */
+    public void writeChangeset(OutputStream out) throws SQLException {
+        db.writeSessionChangeset(handle, false, out);
+    }
+
+    /**
+     * Writes a patchset of the changes recorded to a stream, in chunks.
+     *
+     * @param out Stream to write to; it is not closed.
+     * @throws SQLException if the stream could not be written.
+     * @see #patchset()
+     */
+    public void writePatchset(OutputStream out) throws SQLException {
+        db.writeSessionChangeset(handle, true, out);
+    }
+
+    /** Deletes the session. Does nothing if it is closed already. */
+    public void close() throws SQLException {
+        db.closeSession(handle);
+    }
+}
@@ -10,6 +10,9 @@
 package org.sqlite;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
@@ -18,6 +21,11 @@ import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 import org.junit.jupiter.api.Test;
 
 public class BackupTest {
@@ -74,4 +82,138 @@ public class BackupTest {
         // System.err.println("backup done.");
 
     }
+
+    private static SQLiteConnection sampleDatabase() throws SQLException {
+        SQLiteConnection conn = (SQLiteConnection) DriverManager.getConnection("jdbc:sqlite:");
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("create table sample(id integer primary key, name)");
+            stmt.executeUpdate(
+                    "insert into sample with recursive n(i) as (select 1 union all select i + 1"
+                            + " from n where i < 5000) select i, hex(randomblob(100)) from n");
+        }
+        return conn;
+    }
+
+    private static int count(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("select count(*) from sample")) {
+            return rs.getInt(1);
+        }
+    }
+
+    @Test
+    public void incrementalToConnection() throws SQLException {
+        try (SQLiteConnection source = sampleDatabase();
+                SQLiteConnection target =
+                        (SQLiteConnection) DriverManager.getConnection("jdbc:sqlite:");
+                SQLiteBackup backup = source.backup("main", target, "main")) {
+            assertFalse(backup.step(10));
+            int pageCount = backup.getPageCount();
+            assertTrue(pageCount > 10);
+            assertEquals(pageCount - 10, backup.getRemaining());
+
+            // the source is free between steps, and its own writes are copied along
+            try (Statement stmt = source.createStatement()) {
+                stmt.executeUpdate("insert into sample values (5001, 'leo')");
+            }
+            while (!backup.step(10)) {}
+            assertTrue(backup.isDone());
+            assertEquals(0, backup.getRemaining());
+            assertEquals(5001, count(target));
+        }
+    }
+
+    @Test
+    public void throttledToFile() throws SQLException, IOException {
+        File tmpFile = File.createTempFile("backup-test3", ".sqlite");
+        tmpFile.deleteOnExit();
+
+        List<Integer> remaining = new ArrayList<>();
+        try (SQLiteConnection source = sampleDatabase()) {
+            try (SQLiteBackup backup = source.backup("main", tmpFile.getAbsolutePath())) {
+                long start = System.nanoTime();
+                backup.run(50, 2000, (left, total) -> remaining.add(left));
+                int pageCount = backup.getPageCount();
+                // at least the time to copy all but the first step at 2000 pages per second
+                long minNanos = (pageCount - 50) * 1_000_000_000L / 2000;
+                assertTrue(System.nanoTime() - start >= minNanos);
+                assertEquals((pageCount + 49) / 50, remaining.size());
+                assertEquals(0, (int) remaining.get(remaining.size() - 1));
+            }
+        }
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + tmpFile)) {
+            assertEquals(5000, count(conn));
+        }
+    }
+
+    @Test
+    public void finishedWithConnection() throws SQLException {
+        SQLiteConnection target = (SQLiteConnection) DriverManager.getConnection("jdbc:sqlite:");
+        try (SQLiteConnection source = sampleDatabase()) {
+            SQLiteBackup backup = source.backup("main", target, "main");
+            backup.step(1);
+            target.close();
+            assertThrows(SQLException.class, () -> backup.step(1));
+            backup.close();
+        }
+    }
+
+    @Test
+    public void finishedHandle() throws SQLException {
+        try (SQLiteConnection source = sampleDatabase();
+                SQLiteConnection target =
+                        (SQLiteConnection) DriverManager.getConnection("jdbc:sqlite:")) {
+            SQLiteBackup one = source.backup("main", target, "main");
+            one.close();
+            // SQLite may reuse the memory of the finished backup for the next one
+            try (SQLiteBackup two = source.backup("main", target, "main")) {
+                assertThrows(SQLException.class, one::getRemaining);
+                one.close();
+                assertFalse(two.step(10));
+                while (!two.step(100)) {}
+            }
+            assertEquals(5000, count(target));
+        }
+    }
+
+    @Test
+    public void oppositeDirections() throws Exception {
+        SQLiteConnection one = sampleDatabase();
+        SQLiteConnection two = sampleDatabase();
+        List<Throwable> failures = new CopyOnWriteArrayList<>();
+        Thread[] threads = {
+            new Thread(() -> copyRepeatedly(one, two, failures)),
+            new Thread(() -> copyRepeatedly(two, one, failures))
+        };
+        for (Thread thread : threads) {
+            thread.setDaemon(true);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(20));
+            // closing a deadlocked connection would block too
+            assertFalse(thread.isAlive(), "deadlock");
+        }
+        try {
+            assertEquals(Collections.emptyList(), failures);
+            assertEquals(5000, count(one));
+            assertEquals(5000, count(two));
+        } finally {
+            one.close();
+            two.close();
+        }
+    }
+
+    private static void copyRepeatedly(
+            SQLiteConnection source, SQLiteConnection target, List<Throwable> failures) {
+        try {
+            for (int i = 0; i < 50; i++) {
+                try (SQLiteBackup backup = source.backup("main", target, "main")) {
+                    while (!backup.step(1)) {}
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            failures.add(e);
+        }
+    }
 }
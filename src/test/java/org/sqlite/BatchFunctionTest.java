@@ -0,0 +1,169 @@
+package org.sqlite;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.sqlite.core.Codes;
+
+public class BatchFunctionTest {
+    private Connection conn;
+    private Statement stat;
+    private final List<Integer> sizes = new ArrayList<>();
+
+    /** Sums the two input columns, NULL if either is NULL. */
+    private final BatchFunction sum =
+            new BatchFunction(new String[] {"id", "a", "b"}, new String[] {"sum"}, 4) {
+                @Override
+                protected void xBatch(Batch batch) throws SQLException {
+                    sizes.add(batch.size());
+                    long[] a = batch.getLongs(1);
+                    double[] b = batch.getDoubles(2);
+                    double[] out = batch.getOutput(0);
+                    for (int i = 0; i < batch.size(); i++) {
+                        if (batch.getLongs(0)[i] < 0) {
+                            throw new SQLException("negative id");
+                        }
+                        if (!batch.isNull(1, i) && !batch.isNull(2, i)) {
+                            out[i] = a[i] + b[i];
+                        }
+                    }
+                }
+            };
+
+    @BeforeEach
+    public void connect() throws Exception {
+        conn = DriverManager.getConnection("jdbc:sqlite:");
+        stat = conn.createStatement();
+        stat.executeUpdate("create table t (id integer primary key, a integer, b real)");
+        for (int i = 1; i <= 10; i++) {
+            stat.executeUpdate("insert into t values (" + i + ", " + i + ", " + i + ".5)");
+        }
+        stat.executeUpdate("insert into t values (11, null, 1)");
+        BatchFunction.create(conn, "sum2", sum);
+    }
+
+    @AfterEach
+    public void close() throws SQLException {
+        stat.close();
+        conn.close();
+    }
+
+    @Test
+    public void batches() throws SQLException {
+        try (ResultSet rs =
+                stat.executeQuery("select id, a, sum from sum2('select id, a, b from t')")) {
+            for (int i = 1; i <= 10; i++) {
+                assertTrue(rs.next());
+                assertEquals(i, rs.getInt(1));
+                assertEquals(i, rs.getObject(2));
+                assertEquals(2 * i + 0.5, rs.getDouble(3));
+            }
+            assertTrue(rs.next());
+            assertNull(rs.getObject(2));
+            assertNull(rs.getObject(3));
+            assertFalse(rs.next());
+        }
+        List<Integer> expected = new ArrayList<>();
+        expected.add(4);
+        expected.add(4);
+        expected.add(3);
+        assertEquals(expected, sizes);
+    }
+
+    @Test
+    public void filterOutput() throws SQLException {
+        try (ResultSet rs =
+                stat.executeQuery(
+                        "select count(*) from sum2('select id, a, b from t') where sum > 10")) {
+            assertEquals(6, rs.getInt(1));
+        }
+        // the function can be joined, the query being bound per row of the other table
+        try (ResultSet rs =
+                stat.executeQuery(
+                        "select s.id, s.sum from (select 'select id, a, b from t where id = 3' as"
+                                + " sql) q, sum2(q.sql) s")) {
+            assertEquals(3, rs.getInt(1));
+            assertEquals(6.5, rs.getDouble(2));
+        }
+    }
+
+    @Test
+    public void types() throws SQLException {
+        BatchFunction.create(
+                conn,
+                "typeof2",
+                new BatchFunction(new String[] {"v"}, new String[] {"type"}) {
+                    @Override
+                    protected void xBatch(Batch batch) {
+                        for (int i = 0; i < batch.size(); i++) {
+                            batch.getOutput(0)[i] = batch.getType(0, i);
+                        }
+                    }
+                });
+        try (ResultSet rs =
+                stat.executeQuery(
+                        "select v, type from typeof2("
+                                + "'select 1 union all select 1.5 union all select ''x'''"
+                                + " || ' union all select x''00'' union all select null')")) {
+            int[] types = {
+                Codes.SQLITE_INTEGER,
+                Codes.SQLITE_FLOAT,
+                Codes.SQLITE_TEXT,
+                Codes.SQLITE_BLOB,
+                Codes.SQLITE_NULL
+            };
+            for (int type : types) {
+                assertTrue(rs.next());
+                assertEquals(type, rs.getInt(2));
+            }
+            assertFalse(rs.next());
+        }
+    }
+
+    @Test
+    public void errors() throws SQLException {
+        stat.executeUpdate("insert into t values (-1, 1, 1)");
+        SQLException e =
+                assertThrows(
+                        SQLException.class,
+                        () -> stat.executeQuery("select * from sum2('select id, a, b from t')"));
+        assertTrue(e.getMessage().contains("negative id"), e.getMessage());
+
+        e =
+                assertThrows(
+                        SQLException.class,
+                        () -> stat.executeQuery("select * from sum2('select id, a from t')"));
+        assertTrue(e.getMessage().contains("3 columns"), e.getMessage());
+
+        assertThrows(SQLException.class, () -> stat.executeQuery("select * from sum2"));
+        assertThrows(SQLException.class, () -> stat.executeQuery("select * from sum2('nope')"));
+        assertThrows(
+                IllegalArgumentException.class,
+                () ->
+                        new BatchFunction(new String[] {"query"}, new String[0]) {
+                            @Override
+                            protected void xBatch(Batch batch) {}
+                        });
+    }
+
+    @Test
+    public void destroy() throws SQLException {
+        BatchFunction.destroy(conn, "sum2");
+        assertThrows(
+                SQLException.class,
+                () -> stat.executeQuery("select * from sum2('select id, a, b from t')"));
+    }
+}
@@ -0,0 +1,162 @@
+package org.sqlite;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class BlobTest {
+    private static final int SIZE = 200_000;
+
+    private SQLiteConnection conn;
+    private byte[] data;
+
+    @BeforeEach
+    public void connect() throws SQLException {
+        conn = (SQLiteConnection) new SQLiteConfig().createConnection("jdbc:sqlite:");
+        data = new byte[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            data[i] = (byte) (i * 31);
+        }
+        try (Statement stat = conn.createStatement()) {
+            stat.executeUpdate("create table t (id integer primary key, b blob)");
+            stat.executeUpdate("insert into t values (1, zeroblob(" + SIZE + "))");
+            stat.executeUpdate("insert into t values (2, x'0102')");
+        }
+    }
+
+    @AfterEach
+    public void close() throws SQLException {
+        conn.close();
+    }
+
+    @Test
+    public void writeAndReadDirect() throws SQLException {
+        try (SQLiteBlob blob = conn.openBlob("t", "b", 1, true)) {
+            assertEquals(SIZE, blob.length());
+            ByteBuffer src = ByteBuffer.allocateDirect(SIZE);
+            src.put(data).flip();
+            blob.write(src, 0);
+            assertEquals(SIZE, src.position());
+
+            ByteBuffer dst = ByteBuffer.allocateDirect(1000);
+            assertEquals(1000, blob.read(dst, 5000));
+            dst.flip();
+            for (int i = 0; i < 1000; i++) {
+                assertEquals(data[5000 + i], dst.get(i));
+            }
+
+            dst.clear();
+            assertEquals(500, blob.read(dst, SIZE - 500));
+            assertEquals(500, dst.position());
+            assertEquals(-1, blob.read(dst, SIZE));
+        }
+
+        try (PreparedStatement stat = conn.prepareStatement("select b from t where id = 1");
+                ResultSet rs = stat.executeQuery()) {
+            assertArrayEquals(data, rs.getBytes(1));
+        }
+    }
+
+    @Test
+    public void streams() throws Exception {
+        try (SQLiteBlob blob = conn.openBlob("t", "b", 1, true)) {
+            try (OutputStream out = blob.setBinaryStream(1)) {
+                for (int off = 0; off < SIZE; off += 7000) {
+                    out.write(data, off, Math.min(7000, SIZE - off));
+                }
+            }
+            byte[] read = new byte[SIZE];
+            try (InputStream in = blob.getBinaryStream()) {
+                int n = 0;
+                for (int r; (r = in.read(read, n, Math.min(4096, SIZE - n))) > 0; ) {
+                    n += r;
+                }
+                assertEquals(SIZE, n);
+                assertEquals(-1, in.read());
+            }
+            assertArrayEquals(data, read);
+
+            try (InputStream in = blob.getBinaryStream(11, 3)) {
+                assertEquals(data[10] & 0xFF, in.read());
+                assertEquals(2, in.skip(5));
+                assertEquals(-1, in.read());
+            }
+            byte[] part = blob.getBytes(SIZE - 1, 10);
+            assertArrayEquals(new byte[] {data[SIZE - 2], data[SIZE - 1]}, part);
+        }
+    }
+
+    @Test
+    public void reopen() throws SQLException {
+        try (SQLiteBlob blob = conn.openBlob("t", "b", 2, false)) {
+            assertArrayEquals(new byte[] {1, 2}, blob.getBytes(1, 2));
+            blob.reopen(1);
+            assertEquals(SIZE, blob.length());
+            assertThrows(SQLException.class, () -> blob.reopen(3));
+        }
+    }
+
+    @Test
+    public void cannotResize() throws SQLException {
+        try (SQLiteBlob blob = conn.openBlob("t", "b", 2, true)) {
+            assertThrows(SQLException.class, () -> blob.setBytes(2, new byte[] {1, 2}));
+            assertThrows(SQLException.class, () -> blob.truncate(1));
+            assertEquals(1, blob.setBytes(2, new byte[] {9}));
+            assertArrayEquals(new byte[] {1, 9}, blob.getBytes(1, 2));
+        }
+    }
+
+    @Test
+    public void readOnly() throws SQLException {
+        try (SQLiteBlob blob = conn.openBlob("t", "b", 2, false)) {
+            assertThrows(SQLException.class, () -> blob.setBytes(1, new byte[] {3}));
+            assertThrows(SQLException.class, () -> blob.setBinaryStream(1));
+        }
+    }
+
+    @Test
+    public void expiresWhenRowChanges() throws SQLException {
+        try (SQLiteBlob blob = conn.openBlob("t", "b", 2, false);
+                Statement stat = conn.createStatement()) {
+            stat.executeUpdate("update t set b = x'0304' where id = 2");
+            SQLiteException e = assertThrows(SQLiteException.class, () -> blob.getBytes(1, 2));
+            assertEquals(SQLiteErrorCode.SQLITE_ABORT, e.getResultCode());
+        }
+    }
+
+    @Test
+    public void missingRow() {
+        assertThrows(SQLException.class, () -> conn.openBlob("t", "b", 42, false));
+    }
+
+    @Test
+    public void closedHandle() throws SQLException {
+        SQLiteBlob one = conn.openBlob("t", "b", 1, false);
+        one.close();
+        // SQLite may reuse the memory of the closed handle for the next one
+        try (SQLiteBlob two = conn.openBlob("t", "b", 2, false)) {
+            assertThrows(SQLException.class, () -> one.getBytes(1, 2));
+            one.close();
+            assertArrayEquals(new byte[] {1, 2}, two.getBytes(1, 2));
+        }
+    }
+
+    @Test
+    public void closedWithConnection() throws SQLException {
+        SQLiteBlob blob = conn.openBlob("t", "b", 1, false);
+        conn.close();
+        assertThrows(SQLException.class, blob::length);
+        blob.close();
+    }
+}
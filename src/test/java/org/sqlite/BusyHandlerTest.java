@@ -1,17 +1,23 @@
 package org.sqlite;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -233,6 +239,56 @@ public class BusyHandlerTest {
         assertEquals(0, NativeDBHelper.getBusyHandler(database));
     }
 
+    @Test
+    public void javaBusyWait() throws Exception {
+        stat.executeUpdate("drop table if exists foo;");
+        stat.executeUpdate("create table foo (id integer);");
+
+        SQLiteConfig config = new SQLiteConfig();
+        config.setJavaBusyWait(true);
+        config.setBusyTimeout(10000);
+        try (Connection waiting = config.createConnection("jdbc:sqlite:target/test0.db");
+                PreparedStatement insert = waiting.prepareStatement("insert into foo values (2)")) {
+            conn.setAutoCommit(false);
+            stat.executeUpdate("insert into foo values (1)");
+
+            CompletableFuture<Integer> inserted =
+                    CompletableFuture.supplyAsync(
+                            () -> {
+                                try {
+                                    return insert.executeUpdate();
+                                } catch (SQLException e) {
+                                    throw new CompletionException(e);
+                                }
+                            });
+            Thread.sleep(200);
+            assertFalse(inserted.isDone());
+            conn.commit();
+            assertEquals(1, (int) inserted.get());
+        }
+    }
+
+    @Test
+    public void javaBusyWaitTimesOut() throws Exception {
+        stat.executeUpdate("drop table if exists foo;");
+        stat.executeUpdate("create table foo (id integer);");
+
+        SQLiteConfig config = new SQLiteConfig();
+        config.setJavaBusyWait(true);
+        config.setBusyTimeout(100);
+        try (Connection waiting = config.createConnection("jdbc:sqlite:target/test0.db");
+                PreparedStatement insert = waiting.prepareStatement("insert into foo values (2)")) {
+            conn.setAutoCommit(false);
+            stat.executeUpdate("insert into foo values (1)");
+
+            long start = System.nanoTime();
+            SQLiteException e = assertThrows(SQLiteException.class, insert::executeUpdate);
+            assertEquals(SQLiteErrorCode.SQLITE_BUSY, e.getResultCode());
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+            conn.rollback();
+        }
+    }
+
     private void setDummyHandler() throws SQLException {
         BusyHandler.setHandler(
                 conn,
@@ -0,0 +1,59 @@
+package org.sqlite;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class ConnectionStatusTest {
+    private SQLiteConnection conn;
+
+    @BeforeEach
+    public void connect() throws SQLException {
+        conn = (SQLiteConnection) new SQLiteConfig().createConnection("jdbc:sqlite:");
+    }
+
+    @AfterEach
+    public void close() throws SQLException {
+        conn.close();
+    }
+
+    @Test
+    public void cacheCounters() throws SQLException {
+        try (Statement stat = conn.createStatement()) {
+            stat.executeUpdate("create table t (id integer primary key, b blob)");
+            stat.executeUpdate(
+                    "with recursive n(i) as (select 1 union all select i + 1 from n where i < 100)"
+                            + " insert into t select i, randomblob(1000) from n");
+            conn.getStatus(true);
+            stat.executeQuery("select sum(length(b)) from t").close();
+        }
+        SQLiteConnectionStatus status = conn.getStatus();
+        assertTrue(status.getCacheHits() > 0, status.toString());
+        assertTrue(status.getCacheUsed() > 0);
+        assertTrue(status.getSchemaUsed() > 0);
+        assertTrue(status.getCacheHitRatio() > 0 && status.getCacheHitRatio() <= 1);
+
+        conn.getStatus(true);
+        assertEquals(0, conn.getStatus().getCacheHits());
+    }
+
+    @Test
+    public void memoryStatus() throws SQLException {
+        SQLiteMemoryStatus status = conn.getMemoryStatus();
+        assertTrue(status.getMemoryUsed() > 0, status.toString());
+        assertTrue(status.getMemoryHighwater() >= status.getMemoryUsed());
+        assertTrue(status.getMallocCount() > 0);
+    }
+
+    @Test
+    public void closed() throws SQLException {
+        conn.close();
+        assertThrows(SQLException.class, () -> conn.getStatus());
+    }
+}
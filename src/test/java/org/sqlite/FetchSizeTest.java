@@ -1,7 +1,9 @@
 package org.sqlite;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.sql.Connection;
@@ -9,6 +11,7 @@ import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -57,4 +60,95 @@ public class FetchSizeTest {
         assertTrue(rs.next());
         assertFalse(rs.next());
     }
+
+    @Test
+    public void fetchSizeReadsEveryRow() throws SQLException {
+        Statement stat = conn.createStatement();
+        stat.executeUpdate("create table t (id integer, r real, s text, b blob)");
+        stat.executeUpdate(
+                "with recursive c(x) as (select 1 union all select x + 1 from c where x < 1000) "
+                        + "insert into t select x, x / 4.0, 'row ' || x, "
+                        + "case when x % 3 = 0 then null else zeroblob(x % 5) end from c");
+
+        ResultSet rs = stat.executeQuery("select id, r, s, b from t order by id");
+        rs.setFetchSize(64);
+        for (int i = 1; i <= 1000; i++) {
+            assertTrue(rs.next());
+            assertEquals(i, rs.getRow());
+            assertEquals(i, rs.getInt(1));
+            assertEquals(i, rs.getLong("id"));
+            assertEquals(i / 4.0, rs.getDouble(2));
+            assertEquals("row " + i, rs.getString(3));
+            if (i % 3 == 0) {
+                assertNull(rs.getBytes(4));
+                assertTrue(rs.wasNull());
+            } else {
+                assertArrayEquals(new byte[i % 5], rs.getBytes(4));
+                assertFalse(rs.wasNull());
+            }
+        }
+        assertFalse(rs.next());
+        assertTrue(rs.isClosed());
+        stat.close();
+    }
+
+    @Test
+    public void fetchSizeConvertsLikeSQLite() throws SQLException {
+        Statement stat = conn.createStatement();
+        stat.executeUpdate("create table t (v)");
+        stat.executeUpdate(
+                "insert into t values (42), (0.1), (1e20), (-2.5), ('  -17abc'), ('3.5e2x'), "
+                        + "('abc'), ('99999999999999999999'), (x'3132'), (null)");
+
+        ResultSet rs = stat.executeQuery("select v from t");
+        String[] text = new String[10];
+        long[] longs = new long[10];
+        double[] doubles = new double[10];
+        for (int i = 0; rs.next(); i++) {
+            text[i] = rs.getString(1);
+            longs[i] = rs.getLong(1);
+            doubles[i] = rs.getDouble(1);
+        }
+
+        rs = stat.executeQuery("select v from t");
+        rs.setFetchSize(4);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(rs.next());
+            assertEquals(text[i], rs.getString(1));
+            assertEquals(longs[i], rs.getLong(1));
+            assertEquals(doubles[i], rs.getDouble(1));
+        }
+        assertFalse(rs.next());
+        stat.close();
+    }
+
+    @Test
+    public void fetchSizeWithMaxRows() throws SQLException {
+        Statement stat = conn.createStatement();
+        stat.executeUpdate("create table t (id)");
+        stat.executeUpdate(
+                "with recursive c(x) as (select 1 union all select x + 1 from c where x < 100) "
+                        + "insert into t select x from c");
+
+        stat.setMaxRows(10);
+        stat.setFetchSize(4);
+        ResultSet rs = stat.executeQuery("select id from t order by id");
+        assertEquals(4, rs.getFetchSize());
+        int count = 0;
+        while (rs.next()) {
+            assertEquals(++count, rs.getInt(1));
+        }
+        assertEquals(10, count);
+
+        // the fetch size of the statement applies to every result set it returns
+        stat.setMaxRows(0);
+        rs = stat.executeQuery("select id from t order by id");
+        assertEquals(4, rs.getFetchSize());
+        count = 0;
+        while (rs.next()) {
+            assertEquals(++count, rs.getInt(1));
+        }
+        assertEquals(100, count);
+        stat.close();
+    }
 }
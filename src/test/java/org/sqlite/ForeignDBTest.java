@@ -0,0 +1,61 @@
+package org.sqlite;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.sqlite.core.ForeignDB;
+
+public class ForeignDBTest {
+    @AfterEach
+    public void clearProperty() {
+        System.clearProperty("org.sqlite.ffm");
+    }
+
+    @Test
+    public void disabledByProperty() throws SQLException {
+        System.setProperty("org.sqlite.ffm", "false");
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:")) {
+            assertFalse(((SQLiteConnection) conn).getDatabase() instanceof ForeignDB);
+        }
+    }
+
+    @Test
+    public void bindAndReadPrimitives() throws SQLException {
+        System.setProperty("org.sqlite.ffm", "true");
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:")) {
+            assumeTrue(((SQLiteConnection) conn).getDatabase() instanceof ForeignDB);
+
+            conn.createStatement().executeUpdate("create table t (i, l, d, n)");
+            try (PreparedStatement prep =
+                    conn.prepareStatement("insert into t values (?, ?, ?, ?)")) {
+                for (int i = 0; i < 100; i++) {
+                    prep.setInt(1, i);
+                    prep.setLong(2, i * 10_000_000_000L);
+                    prep.setDouble(3, i / 4.0);
+                    prep.setNull(4, 0);
+                    prep.executeUpdate();
+                }
+            }
+
+            ResultSet rs = conn.createStatement().executeQuery("select i, l, d, n from t");
+            for (int i = 0; i < 100; i++) {
+                assertTrue(rs.next());
+                assertEquals(i, rs.getInt(1));
+                assertEquals(i * 10_000_000_000L, rs.getLong(2));
+                assertEquals(i / 4.0, rs.getDouble(3));
+                assertEquals(0, rs.getInt(4));
+                assertTrue(rs.wasNull());
+            }
+            assertFalse(rs.next());
+        }
+    }
+}
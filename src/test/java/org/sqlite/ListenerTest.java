@@ -6,12 +6,20 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.File;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -243,6 +251,235 @@ public class ListenerTest {
         assertEquals(0, NativeDBHelper.getCommitListener(database));
     }
 
+    /**
+     * Row changes are buffered until the transaction commits, delivered in batches bounded by
+     * {@link SQLiteUpdateBatch#MAX_SIZE}, and dropped on rollback.
+     *
+     * @throws Exception on test failure
+     */
+    @Test
+    public void testUpdateBatches() throws Exception {
+        final List<String> changes = new ArrayList<>();
+        final List<Integer> sizes = new ArrayList<>();
+        final AtomicInteger rollbacks = new AtomicInteger(0);
+        SQLiteUpdateBatchListener listener =
+                new SQLiteUpdateBatchListener() {
+                    @Override
+                    public void onUpdates(SQLiteUpdateBatch batch) {
+                        sizes.add(batch.size());
+                        for (int i = 0; i < batch.size(); i++) {
+                            changes.add(
+                                    batch.getType(i)
+                                            + " "
+                                            + batch.getDatabase(i)
+                                            + "."
+                                            + batch.getTable(i)
+                                            + " "
+                                            + batch.getRowId(i));
+                        }
+                    }
+
+                    @Override
+                    public void onRollback() {
+                        rollbacks.incrementAndGet();
+                    }
+                };
+        CountingSQLiteUpdateListener rowListener = new CountingSQLiteUpdateListener();
+        connectionOne.addUpdateBatchListener(listener);
+        connectionOne.addUpdateListener(rowListener);
+
+        try (Statement statement = connectionOne.createStatement()) {
+            statement.execute("CREATE TEMP TABLE other (id INTEGER PRIMARY KEY)");
+            statement.execute("INSERT INTO sample (description) VALUES ('a'), ('b')");
+            assertEquals(1, sizes.size());
+
+            connectionOne.setAutoCommit(false);
+            statement.execute("UPDATE sample SET description = 'c' WHERE id = 2");
+            statement.execute("INSERT INTO other VALUES (7)");
+            statement.execute("DELETE FROM sample WHERE id = 1");
+            assertEquals(1, sizes.size());
+            connectionOne.commit();
+
+            statement.execute("INSERT INTO other VALUES (8)");
+            connectionOne.rollback();
+            assertEquals(1, rollbacks.get());
+
+            connectionOne.removeUpdateListener(rowListener);
+            int rows = SQLiteUpdateBatch.MAX_SIZE + 10;
+            statement.execute(
+                    "WITH RECURSIVE n(i) AS (SELECT 100 UNION ALL SELECT i + 1 FROM n LIMIT "
+                            + rows
+                            + ") INSERT INTO other SELECT i FROM n");
+            connectionOne.commit();
+            connectionOne.setAutoCommit(true);
+        }
+
+        assertEquals(Arrays.asList(2, 3, SQLiteUpdateBatch.MAX_SIZE, 10), sizes);
+        assertEquals(
+                Arrays.asList(
+                        "INSERT main.sample 1",
+                        "INSERT main.sample 2",
+                        "UPDATE main.sample 2",
+                        "INSERT temp.other 7",
+                        "DELETE main.sample 1"),
+                changes.subList(0, 5));
+        assertEquals("INSERT temp.other 100", changes.get(5));
+        assertEquals(5 + SQLiteUpdateBatch.MAX_SIZE + 10, changes.size());
+        assertEquals(6, rowListener.getAllUpdates().size());
+
+        final DB database = connectionOne.getDatabase();
+        connectionOne.removeUpdateBatchListener(listener);
+        assertEquals(0, NativeDBHelper.getUpdateListener(database));
+        assertEquals(0, NativeDBHelper.getCommitListener(database));
+    }
+
+    /**
+     * The row changes buffered for the batch listeners are kept when a row listener is added or
+     * removed in the middle of the transaction.
+     *
+     * @throws Exception on test failure
+     */
+    @Test
+    public void testUpdateBatchesWhileRowListenerChanges() throws Exception {
+        final List<Long> rowIds = new ArrayList<>();
+        final List<Integer> sizes = new ArrayList<>();
+        SQLiteUpdateBatchListener listener =
+                new SQLiteUpdateBatchListener() {
+                    @Override
+                    public void onUpdates(SQLiteUpdateBatch batch) {
+                        sizes.add(batch.size());
+                        for (int i = 0; i < batch.size(); i++) {
+                            rowIds.add(batch.getRowId(i));
+                        }
+                    }
+
+                    @Override
+                    public void onRollback() {}
+                };
+        CountingSQLiteUpdateListener rowListener = new CountingSQLiteUpdateListener();
+        connectionOne.addUpdateBatchListener(listener);
+
+        try (Statement statement = connectionOne.createStatement()) {
+            connectionOne.setAutoCommit(false);
+            statement.execute("CREATE TEMP TABLE other (id INTEGER PRIMARY KEY)");
+            statement.execute("INSERT INTO sample (description) VALUES ('a'), ('b')");
+            connectionOne.addUpdateListener(rowListener);
+            statement.execute("INSERT INTO other VALUES (7)");
+            connectionOne.removeUpdateListener(rowListener);
+            statement.execute("DELETE FROM sample WHERE id > 0");
+            assertTrue(sizes.isEmpty());
+            connectionOne.commit();
+            connectionOne.setAutoCommit(true);
+        }
+
+        assertEquals(Arrays.asList(5), sizes);
+        assertEquals(Arrays.asList(1L, 2L, 7L, 1L, 2L), rowIds);
+        assertEquals(1, rowListener.getAllUpdates().size());
+        connectionOne.removeUpdateBatchListener(listener);
+    }
+
+    /**
+     * Transaction events are delivered in order on the executor, once the commit completed, and
+     * dropped when the listener falls behind.
+     *
+     * @throws Exception on test failure
+     */
+    @Test
+    public void testTransactionListener() throws Exception {
+        final BlockingQueue<String> events = new LinkedBlockingDeque<>();
+        final CountDownLatch resume = new CountDownLatch(1);
+        final Thread committer = Thread.currentThread();
+        SQLiteTransactionListener listener =
+                event -> {
+                    assertNotEquals(committer, Thread.currentThread());
+                    try (Statement statement = connectionTwo.createStatement();
+                            ResultSet rs = statement.executeQuery("SELECT count(*) FROM sample")) {
+                        events.add(
+                                event.getSequence()
+                                        + " "
+                                        + event.isCommitted()
+                                        + " "
+                                        + event.getChangeCount()
+                                        + " "
+                                        + rs.getInt(1));
+                    } catch (SQLException e) {
+                        throw new RuntimeException(e);
+                    }
+                    if (event.getSequence() == 3) {
+                        try {
+                            resume.await();
+                        } catch (InterruptedException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                };
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            connectionOne.addTransactionListener(listener, executor, 1);
+            try (Statement statement = connectionOne.createStatement()) {
+                statement.execute("INSERT INTO sample (description) VALUES ('a'), ('b')");
+                assertEquals("1 true 2 2", events.poll(10, TimeUnit.SECONDS));
+
+                connectionOne.setAutoCommit(false);
+                statement.execute("INSERT INTO sample (description) VALUES ('c')");
+                connectionOne.rollback();
+                assertEquals("2 false 0 2", events.poll(10, TimeUnit.SECONDS));
+
+                // 3 blocks the listener, 4 is queued and 5 is dropped
+                statement.execute("DELETE FROM sample WHERE id > 0");
+                connectionOne.commit();
+                assertEquals("3 true 2 0", events.poll(10, TimeUnit.SECONDS));
+                statement.execute("INSERT INTO sample (description) VALUES ('d')");
+                connectionOne.commit();
+                statement.execute("INSERT INTO sample (description) VALUES ('e')");
+                connectionOne.commit();
+                resume.countDown();
+                assertEquals("4 true 1 2", events.poll(10, TimeUnit.SECONDS));
+                connectionOne.setAutoCommit(true);
+            }
+            connectionOne.removeTransactionListener(listener);
+            assertEquals(0, NativeDBHelper.getUpdateListener(connectionOne.getDatabase()));
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void testTransactionListenerAfterCommit() throws Exception {
+        // a direct executor delivers as soon as the event is queued: the commit must be visible
+        final List<Integer> counts = new ArrayList<>();
+        final AtomicInteger locked = new AtomicInteger(0);
+        SQLiteTransactionListener listener =
+                event -> {
+                    // the lock of the connection is released before the listener runs
+                    if (connectionOne.getDatabase().getLock().isHeldByCurrentThread()) {
+                        locked.incrementAndGet();
+                    }
+                    try (Statement statement = connectionTwo.createStatement();
+                            ResultSet rs = statement.executeQuery("SELECT count(*) FROM sample")) {
+                        counts.add(rs.getInt(1));
+                    } catch (SQLException e) {
+                        throw new RuntimeException(e);
+                    }
+                };
+        connectionOne.addTransactionListener(listener, Runnable::run, 1);
+        try (PreparedStatement prep =
+                connectionOne.prepareStatement("INSERT INTO sample (description) VALUES (?)")) {
+            prep.setString(1, "a");
+            prep.execute();
+            prep.setString(1, "b");
+            prep.executeUpdate();
+        }
+        try (Statement statement = connectionOne.createStatement()) {
+            statement.execute("INSERT INTO sample (description) VALUES ('c')");
+        }
+        connectionOne.removeTransactionListener(listener);
+        assertEquals(Arrays.asList(1, 2, 3), counts);
+        assertEquals(0, locked.get());
+    }
+
     /** A helper class that simply counts the number of commits operations that were done. */
     static class CountingSQLiteCommitListener implements SQLiteCommitListener {
         final AtomicInteger committed = new AtomicInteger(0);
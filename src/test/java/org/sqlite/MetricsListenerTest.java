@@ -0,0 +1,141 @@
+package org.sqlite;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class MetricsListenerTest {
+    private SQLiteConnection conn;
+    private final List<SQLiteStatementMetrics> metrics = new ArrayList<>();
+
+    @BeforeEach
+    public void connect() throws SQLException {
+        conn = (SQLiteConnection) new SQLiteConfig().createConnection("jdbc:sqlite:");
+        try (Statement stat = conn.createStatement()) {
+            stat.executeUpdate("create table t (id integer primary key, v integer)");
+            stat.executeUpdate(
+                    "with recursive n(i) as (select 1 union all select i + 1 from n where i < 100)"
+                            + " insert into t select i, i % 10 from n");
+        }
+        conn.setMetricsListener(metrics::add);
+    }
+
+    @AfterEach
+    public void close() throws SQLException {
+        conn.close();
+    }
+
+    private SQLiteStatementMetrics find(String sql) {
+        for (SQLiteStatementMetrics m : metrics) {
+            if (m.getSql().equals(sql)) return m;
+        }
+        throw new AssertionError("no metrics for " + sql + " in " + metrics);
+    }
+
+    @Test
+    public void fullScan() throws SQLException {
+        String sql = "select id from t where v = 3";
+        try (Statement stat = conn.createStatement();
+                ResultSet rs = stat.executeQuery(sql)) {
+            while (rs.next()) {}
+        }
+        SQLiteStatementMetrics m = find(sql);
+        assertEquals(10, m.getRows());
+        assertEquals(11, m.getSteps());
+        assertTrue(m.getFullscanSteps() > 0);
+        assertTrue(m.getVmSteps() > 0);
+        assertTrue(m.getElapsedNanos() >= m.getNativeNanos());
+    }
+
+    @Test
+    public void indexedLookup() throws SQLException {
+        String sql = "select v from t where id = ?";
+        try (PreparedStatement prep = conn.prepareStatement(sql)) {
+            for (int i = 1; i <= 2; i++) {
+                prep.setInt(1, i);
+                try (ResultSet rs = prep.executeQuery()) {
+                    assertEquals(i, rs.getInt(1));
+                }
+            }
+        }
+        long executions = metrics.stream().filter(m -> m.getSql().equals(sql)).count();
+        assertEquals(2, executions);
+        assertEquals(0, find(sql).getFullscanSteps());
+    }
+
+    @Test
+    public void fetchSize() throws SQLException {
+        String sql = "select id from t order by v";
+        try (Statement stat = conn.createStatement()) {
+            stat.setFetchSize(32);
+            try (ResultSet rs = stat.executeQuery(sql)) {
+                while (rs.next()) {}
+            }
+        }
+        SQLiteStatementMetrics m = find(sql);
+        assertEquals(100, m.getRows());
+        assertEquals(101, m.getSteps());
+        assertTrue(m.getSorts() > 0);
+    }
+
+    @Test
+    public void batch() throws SQLException {
+        String sql = "insert into t (v) values (?)";
+        try (PreparedStatement prep = conn.prepareStatement(sql)) {
+            for (int i = 0; i < 5; i++) {
+                prep.setInt(1, i);
+                prep.addBatch();
+            }
+            prep.executeBatch();
+        }
+        SQLiteStatementMetrics m = find(sql);
+        assertEquals(5, m.getSteps());
+        assertEquals(0, m.getRows());
+    }
+
+    @Test
+    public void removeListener() throws SQLException {
+        conn.setMetricsListener(null);
+        assertNull(conn.getMetricsListener());
+        try (Statement stat = conn.createStatement()) {
+            stat.executeQuery("select count(*) from t").close();
+        }
+        assertTrue(metrics.isEmpty());
+    }
+
+    @Test
+    public void failingListener() throws SQLException {
+        List<Throwable> reported = new ArrayList<>();
+        Thread thread = Thread.currentThread();
+        Thread.UncaughtExceptionHandler handler = thread.getUncaughtExceptionHandler();
+        thread.setUncaughtExceptionHandler((t, e) -> reported.add(e));
+        try {
+            conn.setMetricsListener(
+                    m -> {
+                        throw new IllegalStateException("listener failed");
+                    });
+            try (Statement stat = conn.createStatement()) {
+                ResultSet rs = stat.executeQuery("select id from t");
+                assertTrue(rs.next());
+            }
+            // the statement was finalized, so it does not lock the table
+            try (Statement stat = conn.createStatement()) {
+                stat.executeUpdate("drop table t");
+            }
+        } finally {
+            thread.setUncaughtExceptionHandler(handler);
+        }
+        assertEquals(1, reported.size());
+        assertEquals("listener failed", reported.get(0).getMessage());
+    }
+}
@@ -1,5 +1,6 @@
 package org.sqlite;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
@@ -9,6 +10,7 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 import java.io.ByteArrayInputStream;
+import java.io.StringReader;
 import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.Date;
@@ -488,6 +490,54 @@ public class PrepStmtTest {
         rs.close();
     }
 
+    @Test
+    public void batchAllTypes() throws SQLException {
+        stat.executeUpdate("create table test (c1, c2, c3, c4, c5, c6);");
+        PreparedStatement prep = conn.prepareStatement("insert into test values (?,?,?,?,?,?);");
+        for (int i = 0; i < 1000; i++) {
+            prep.setLong(1, Long.MAX_VALUE - i);
+            prep.setDouble(2, i / 8.0);
+            prep.setString(3, i % 2 == 0 ? "row " + i : "行 " + i);
+            prep.setBytes(4, new byte[] {(byte) i, 0, 1});
+            prep.setNull(5, 0);
+            prep.setShort(6, (short) i);
+            prep.addBatch();
+        }
+        assertEquals(1000, prep.executeBatch().length);
+
+        ResultSet rs = stat.executeQuery("select * from test;");
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(rs.next());
+            assertEquals(Long.MAX_VALUE - i, rs.getLong(1));
+            assertEquals(i / 8.0, rs.getDouble(2));
+            assertEquals(i % 2 == 0 ? "row " + i : "行 " + i, rs.getString(3));
+            assertArrayEquals(new byte[] {(byte) i, 0, 1}, rs.getBytes(4));
+            assertNull(rs.getObject(5));
+            assertEquals(i, rs.getInt(6));
+        }
+        assertFalse(rs.next());
+        rs.close();
+    }
+
+    @Test
+    public void batchFailsAtRow() throws SQLException {
+        stat.executeUpdate("create table test (c1 primary key);");
+        PreparedStatement prep = conn.prepareStatement("insert into test values (?);");
+        for (int i : new int[] {1, 2, 1, 3}) {
+            prep.setInt(1, i);
+            prep.addBatch();
+        }
+        SQLException e = assertThrows(SQLException.class, prep::executeBatch);
+        assertTrue(e.getMessage().contains("UNIQUE"), e.getMessage());
+
+        // the batch is cleared, and the rows before the failed one were inserted
+        assertEquals(0, prep.executeBatch().length);
+        ResultSet rs = stat.executeQuery("select count(*) from test;");
+        assertTrue(rs.next());
+        assertEquals(2, rs.getInt(1));
+        rs.close();
+    }
+
     @Test
     public void paramMetaData() throws SQLException {
         PreparedStatement prep = conn.prepareStatement("select ?,?,?,?;");
@@ -727,6 +777,103 @@ public class PrepStmtTest {
         }
     }
 
+    @Test
+    public void largeStreams() throws SQLException {
+        byte[] bytes = new byte[200_000];
+        for (int i = 0; i < bytes.length; i++) bytes[i] = (byte) (i * 7);
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 100_000) sb.append(utf06);
+        String text = sb.toString();
+        byte[] textBytes = getUtf8Bytes(text);
+
+        stat.executeUpdate("create table s (b blob, c text, u text, n blob)");
+        PreparedStatement prep = conn.prepareStatement("insert into s values (?, ?, ?, ?)");
+        prep.setBinaryStream(1, new ByteArrayInputStream(bytes), bytes.length);
+        prep.setCharacterStream(2, new StringReader(text), text.length());
+        prep.setUnicodeStream(3, new ByteArrayInputStream(textBytes), textBytes.length);
+        prep.setBinaryStream(4, new ByteArrayInputStream(bytes));
+        assertEquals(1, prep.executeUpdate());
+
+        // streams are read when executed, and rows of a batch when added
+        prep.setBinaryStream(1, new ByteArrayInputStream(bytes), bytes.length);
+        prep.setCharacterStream(2, new StringReader(text));
+        prep.setAsciiStream(3, new ByteArrayInputStream(b2));
+        prep.setBlob(4, new ByteArrayInputStream(b1));
+        prep.addBatch();
+        prep.executeBatch();
+
+        ResultSet rs = stat.executeQuery("select b, c, u, n from s");
+        assertTrue(rs.next());
+        assertArrayEquals(bytes, rs.getBytes(1));
+        assertEquals(text, rs.getString(2));
+        assertEquals(text, rs.getString(3));
+        assertArrayEquals(bytes, rs.getBytes(4));
+        assertTrue(rs.next());
+        assertArrayEquals(bytes, rs.getBytes(1));
+        assertEquals(text, rs.getString(2));
+        assertEquals(new String(b2, StandardCharsets.UTF_8), rs.getString(3));
+        assertArrayEquals(b1, rs.getBytes(4));
+        assertFalse(rs.next());
+        rs.close();
+
+        prep.setBinaryStream(1, new ByteArrayInputStream(bytes), bytes.length + 1);
+        SQLException e = assertThrows(SQLException.class, prep::executeUpdate);
+        assertEquals("Error reading stream", e.getMessage());
+        prep.close();
+    }
+
+    @Test
+    public void streamsAreReadOnce() throws SQLException {
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 70_000) sb.append(utf06);
+        String text = sb.toString();
+
+        stat.executeUpdate("create table s (c text)");
+        PreparedStatement prep = conn.prepareStatement("insert into s values (?)");
+        prep.setCharacterStream(1, new StringReader(text), text.length());
+        assertEquals(1, prep.executeUpdate());
+        SQLException e = assertThrows(SQLException.class, prep::executeUpdate);
+        assertEquals("stream parameter must be set again", e.getMessage());
+
+        prep.setCharacterStream(1, new StringReader(text));
+        prep.addBatch();
+        assertThrows(SQLException.class, prep::addBatch);
+        prep.close();
+
+        ResultSet rs = stat.executeQuery("select count(*), min(c) = max(c) from s");
+        assertEquals(1, rs.getInt(1));
+        assertTrue(rs.getBoolean(2));
+        rs.close();
+    }
+
+    @Test
+    public void characterStreamLength() throws SQLException {
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 70_000) sb.append(utf06);
+        String text = sb.toString();
+
+        stat.executeUpdate("create table s (c text)");
+        PreparedStatement prep = conn.prepareStatement("insert into s values (?)");
+        prep.setCharacterStream(1, new StringReader(text), 5);
+        prep.executeUpdate();
+        prep.setCharacterStream(1, new StringReader(text), 66_000);
+        prep.executeUpdate();
+        prep.setCharacterStream(1, new StringReader(text), text.length() + 1);
+        assertThrows(SQLException.class, prep::executeUpdate);
+        assertThrows(
+                SQLException.class,
+                () -> prep.setCharacterStream(1, new StringReader("abc"), 4));
+        prep.close();
+
+        ResultSet rs = stat.executeQuery("select c from s order by length(c)");
+        assertTrue(rs.next());
+        assertEquals(text.substring(0, 5), rs.getString(1));
+        assertTrue(rs.next());
+        assertEquals(text.substring(0, 66_000), rs.getString(1));
+        assertFalse(rs.next());
+        rs.close();
+    }
+
     private void assertArrayEq(byte[] a, byte[] b) {
         assertNotNull(a);
         assertNotNull(b);
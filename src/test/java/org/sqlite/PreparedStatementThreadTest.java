@@ -7,6 +7,10 @@ import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -66,6 +70,166 @@ public class PreparedStatementThreadTest {
         }
     }
 
+    @Test
+    public void testConcurrentResultSetsSerialized() throws Exception {
+        testConcurrentResultSets(new SQLiteConfig(), true);
+    }
+
+    @Test
+    public void testConcurrentResultSetsNoMutex() throws Exception {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setOpenMode(SQLiteOpenMode.NOMUTEX);
+        testConcurrentResultSets(config, false);
+    }
+
+    /** Steps different statements of one connection from several threads at the same time. */
+    private void testConcurrentResultSets(SQLiteConfig config, boolean serialized)
+            throws Exception {
+        try (SQLiteConnection c = (SQLiteConnection) config.createConnection("jdbc:sqlite:")) {
+            assertEquals(serialized, c.getDatabase().isSerialized());
+            try (Statement s = c.createStatement()) {
+                s.executeUpdate("create table t (i integer)");
+                s.executeUpdate(
+                        "with recursive n(i) as (select 1 union all select i + 1 from n where i <"
+                                + " 1000) insert into t select i from n");
+            }
+
+            List<Future<Long>> sums = new ArrayList<>();
+            for (int task = 0; task < 4; task++) {
+                sums.add(
+                        executorService.submit(
+                                () -> {
+                                    long sum = 0;
+                                    for (int i = 0; i < 20; i++) {
+                                        try (PreparedStatement prep =
+                                                        c.prepareStatement("select i from t");
+                                                ResultSet rs = prep.executeQuery()) {
+                                            while (rs.next()) sum += rs.getLong(1);
+                                        }
+                                    }
+                                    return sum;
+                                }));
+            }
+            for (Future<Long> sum : sums) {
+                assertEquals(20 * 500500L, (long) sum.get());
+            }
+        }
+    }
+
+    /**
+     * A function that uses the connection while another thread prepares a statement must not
+     * deadlock: the other thread does not wait for the mutex of SQLite, held by the statement
+     * running the function, while holding the lock of the connection.
+     */
+    @Test
+    public void testReentrantFunctionWhilePreparing() throws Exception {
+        SQLiteConnection c =
+                (SQLiteConnection) new SQLiteConfig().createConnection("jdbc:sqlite:");
+        CountDownLatch inFunction = new CountDownLatch(1);
+        CountDownLatch preparing = new CountDownLatch(1);
+        Function.create(
+                c,
+                "reenter",
+                new Function() {
+                    @Override
+                    protected void xFunc() throws SQLException {
+                        inFunction.countDown();
+                        try {
+                            preparing.await();
+                            // let the other thread block in prepareStatement
+                            Thread.sleep(100);
+                        } catch (InterruptedException e) {
+                            throw new SQLException(e);
+                        }
+                        try (PreparedStatement prep = c.prepareStatement("select 41");
+                                ResultSet rs = prep.executeQuery()) {
+                            result(rs.getInt(1) + 1);
+                        }
+                    }
+                });
+
+        AtomicInteger result = new AtomicInteger();
+        Thread stepping =
+                new Thread(
+                        () -> {
+                            try (Statement s = c.createStatement();
+                                    ResultSet rs = s.executeQuery("select reenter()")) {
+                                result.set(rs.getInt(1));
+                            } catch (SQLException e) {
+                                result.set(-1);
+                            }
+                        });
+        Thread preparer =
+                new Thread(
+                        () -> {
+                            try {
+                                inFunction.await();
+                                preparing.countDown();
+                                c.prepareStatement("select 2").close();
+                            } catch (InterruptedException | SQLException e) {
+                                // the stepping thread reports the failure
+                            }
+                        });
+        stepping.setDaemon(true);
+        preparer.setDaemon(true);
+        stepping.start();
+        preparer.start();
+        stepping.join(10_000);
+        preparer.join(10_000);
+        // a deadlocked connection cannot be closed
+        assertFalse(stepping.isAlive() || preparer.isAlive(), "deadlock");
+        c.close();
+        assertEquals(42, result.get());
+    }
+
+    /**
+     * Closing a statement while another thread steps it must not deadlock: the stepping thread may
+     * wait for the mutex of SQLite, entered by the closing thread with the lock of the connection.
+     */
+    @Test
+    public void testCloseWhileStepping() throws Exception {
+        SQLiteConnection c =
+                (SQLiteConnection) new SQLiteConfig().createConnection("jdbc:sqlite:");
+        for (int i = 0; i < 20; i++) {
+            PreparedStatement prep =
+                    c.prepareStatement(
+                            "with recursive n(i) as (select 1 union all select i + 1 from n)"
+                                    + " select i from n limit 1000000");
+            ResultSet rs = prep.executeQuery();
+            CountDownLatch stepping = new CountDownLatch(1);
+            Thread reader =
+                    new Thread(
+                            () -> {
+                                try {
+                                    while (rs.next()) {
+                                        stepping.countDown();
+                                    }
+                                } catch (SQLException e) {
+                                    // closed by the other thread
+                                }
+                                stepping.countDown();
+                            });
+            reader.setDaemon(true);
+            reader.start();
+            stepping.await();
+            Thread closer =
+                    new Thread(
+                            () -> {
+                                try {
+                                    prep.close();
+                                } catch (SQLException e) {
+                                    // the reader may have closed the result set
+                                }
+                            });
+            closer.setDaemon(true);
+            closer.start();
+            reader.join(10_000);
+            closer.join(10_000);
+            assertFalse(reader.isAlive() || closer.isAlive(), "deadlock");
+        }
+        c.close();
+    }
+
     public void connect() throws SQLException {
         conn = DriverManager.getConnection("jdbc:sqlite:");
     }
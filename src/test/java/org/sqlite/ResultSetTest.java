@@ -2,9 +2,12 @@ package org.sqlite;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
@@ -14,6 +17,7 @@ import java.sql.Statement;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.sqlite.jdbc3.JDBC3ResultSet;
 
 public class ResultSetTest {
 
@@ -164,4 +168,83 @@ public class ResultSetTest {
         assertFalse(resultSet.next());
         assertEquals(1, resultSet.findColumn("id"));
     }
+
+    @Test
+    public void testDecodesTextLikeJava() throws SQLException {
+        String[] values = {
+            "ascii",
+            "",
+            "nul\0inside",
+            "é中\uD83D\uDE00",
+            "\uFFFF\uDBFF\uDFFF",
+            repeat("日本", 300)
+        };
+        PreparedStatement pstat = conn.prepareStatement("select ?");
+        for (String value : values) {
+            pstat.setString(1, value);
+            ResultSet resultSet = pstat.executeQuery();
+            assertTrue(resultSet.next());
+            assertEquals(value, resultSet.getString(1));
+        }
+
+        // malformed UTF-8 is decoded with replacement characters, like new String(bytes, UTF_8)
+        byte[] invalid = {
+            'a', (byte) 0xC3, 'b', (byte) 0xED, (byte) 0xA0, (byte) 0x80, (byte) 0xF0
+        };
+        pstat = conn.prepareStatement("select cast(? as text)");
+        pstat.setBytes(1, invalid);
+        ResultSet resultSet = pstat.executeQuery();
+        assertTrue(resultSet.next());
+        assertEquals(new String(invalid, StandardCharsets.UTF_8), resultSet.getString(1));
+    }
+
+    @Test
+    public void testTextViews() throws SQLException {
+        String large = repeat("x", 1000);
+        stat.executeUpdate("create table views (t)");
+        stat.executeUpdate(
+                "insert into views values ('abc'), (null), ('日本'), (42), ('" + large + "')");
+
+        for (int fetchSize : new int[] {0, 2}) {
+            stat.setFetchSize(fetchSize);
+            JDBC3ResultSet resultSet = (JDBC3ResultSet) stat.executeQuery("select t from views");
+
+            assertTrue(resultSet.next());
+            assertEquals("abc", resultSet.getCharSequence(1).toString());
+            assertEquals("b", resultSet.getCharSequence(1).subSequence(1, 2).toString());
+            assertEquals("abc", utf8(resultSet.getTextBuffer(1)));
+
+            assertTrue(resultSet.next());
+            assertNull(resultSet.getCharSequence(1));
+            assertNull(resultSet.getTextBuffer(1));
+            assertTrue(resultSet.wasNull());
+
+            assertTrue(resultSet.next());
+            assertEquals("日本", resultSet.getCharSequence(1).toString());
+            assertEquals("日本", utf8(resultSet.getTextBuffer(1)));
+
+            assertTrue(resultSet.next());
+            assertEquals("42", resultSet.getCharSequence(1).toString());
+            assertEquals("42", utf8(resultSet.getTextBuffer(1)));
+
+            assertTrue(resultSet.next());
+            assertEquals(large, resultSet.getCharSequence(1).toString());
+            assertEquals(large, utf8(resultSet.getTextBuffer(1)));
+            assertFalse(resultSet.next());
+        }
+    }
+
+    private static String utf8(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String repeat(String s, int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append(s);
+        }
+        return sb.toString();
+    }
 }
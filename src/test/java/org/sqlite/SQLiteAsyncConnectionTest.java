@@ -0,0 +1,177 @@
+package org.sqlite;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class SQLiteAsyncConnectionTest {
+    private SQLiteConnection conn;
+    private SQLiteAsyncConnection async;
+
+    @BeforeEach
+    public void connect() throws SQLException {
+        conn = (SQLiteConnection) new SQLiteConfig().createConnection("jdbc:sqlite:");
+        try (Statement stat = conn.createStatement()) {
+            stat.executeUpdate("create table t (id integer primary key, v text not null)");
+        }
+        async = new SQLiteAsyncConnection(conn);
+    }
+
+    @AfterEach
+    public void close() throws SQLException {
+        async.close();
+        conn.close();
+    }
+
+    @Test
+    public void updatesAndQuery() throws Exception {
+        List<CompletableFuture<Long>> inserts = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            inserts.add(async.executeUpdate("insert into t (v) values (?)", "v" + i));
+        }
+        for (CompletableFuture<Long> insert : inserts) {
+            assertEquals(1L, (long) insert.get(5, TimeUnit.SECONDS));
+        }
+        List<String> rows =
+                async.executeQuery("select v from t where id <= ?", rs -> rs.getString(1), 2)
+                        .get(5, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("v0", "v1"), rows);
+        assertTrue(conn.getAutoCommit());
+    }
+
+    @Test
+    public void failedUpdateDoesNotAffectOthers() throws Exception {
+        CompletableFuture<Long> first = async.executeUpdate("insert into t (v) values ('a')");
+        CompletableFuture<Long> failed = async.executeUpdate("insert into t (v) values (null)");
+        CompletableFuture<Long> last = async.executeUpdate("insert into t (v) values ('b')");
+
+        assertEquals(1L, (long) first.get(5, TimeUnit.SECONDS));
+        assertEquals(1L, (long) last.get(5, TimeUnit.SECONDS));
+        ExecutionException e =
+                assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof SQLException);
+        assertEquals(
+                Arrays.asList("a", "b"),
+                async.executeQuery("select v from t order by id", rs -> rs.getString(1))
+                        .get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void streamHonoursDemand() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            async.executeUpdate("insert into t (v) values (?)", "v" + i);
+        }
+        List<String> received = new ArrayList<>();
+        CountDownLatch firstBatch = new CountDownLatch(3);
+        CountDownLatch completed = new CountDownLatch(1);
+        SQLiteAsyncConnection.Subscription[] subscription =
+                new SQLiteAsyncConnection.Subscription[1];
+        Throwable[] error = new Throwable[1];
+
+        async.stream(
+                "select v from t order by id",
+                rs -> rs.getString(1),
+                new SQLiteAsyncConnection.Subscriber<String>() {
+                    public void onSubscribe(SQLiteAsyncConnection.Subscription s) {
+                        subscription[0] = s;
+                        s.request(3);
+                    }
+
+                    public void onNext(String item) {
+                        received.add(item);
+                        firstBatch.countDown();
+                    }
+
+                    public void onError(Throwable throwable) {
+                        error[0] = throwable;
+                        completed.countDown();
+                    }
+
+                    public void onComplete() {
+                        completed.countDown();
+                    }
+                });
+
+        assertTrue(firstBatch.await(5, TimeUnit.SECONDS));
+        // nothing more is delivered until requested, and other statements still run
+        CompletableFuture<Integer> count =
+                async.submit(
+                        c -> {
+                            try (Statement stat = c.createStatement()) {
+                                return stat.executeQuery("select count(*) from t").getInt(1);
+                            }
+                        });
+        assertEquals(10, (int) count.get(5, TimeUnit.SECONDS));
+        assertEquals(3, received.size());
+
+        subscription[0].request(Long.MAX_VALUE);
+        assertTrue(completed.await(5, TimeUnit.SECONDS));
+        assertNull(error[0]);
+        assertEquals(10, received.size());
+        assertEquals("v9", received.get(9));
+    }
+
+    @Test
+    public void writeCoalescing() throws Exception {
+        File dbFile = File.createTempFile("test-coalesce", ".db");
+        dbFile.deleteOnExit();
+        SQLiteDataSource ds = new SQLiteDataSource();
+        ds.setUrl("jdbc:sqlite:" + dbFile.getAbsolutePath());
+        assertThrows(SQLException.class, ds::getWriteCoalescer);
+        ds.setWriteCoalescing(50, 20);
+
+        SQLiteAsyncConnection coalescer = ds.getWriteCoalescer();
+        SQLiteConnection writer = coalescer.getConnection();
+        AtomicInteger commits = new AtomicInteger();
+        writer.addCommitListener(
+                new SQLiteCommitListener() {
+                    public void onCommit() {
+                        commits.incrementAndGet();
+                    }
+
+                    public void onRollback() {}
+                });
+        coalescer.submit(c -> c.createStatement().executeUpdate("create table t (v)")).get();
+        commits.set(0);
+
+        List<CompletableFuture<Long>> inserts = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            inserts.add(coalescer.executeUpdate("insert into t values (?)", i));
+        }
+        for (CompletableFuture<Long> insert : inserts) {
+            assertEquals(1L, (long) insert.get(5, TimeUnit.SECONDS));
+        }
+        assertTrue(commits.get() <= 10, "commits: " + commits.get());
+
+        coalescer.close();
+        assertTrue(ds.getWriteCoalescer() != coalescer);
+        ds.getWriteCoalescer().close();
+        dbFile.delete();
+    }
+
+    @Test
+    public void closed() throws Exception {
+        async.close();
+        ExecutionException e =
+                assertThrows(
+                        ExecutionException.class,
+                        () -> async.executeUpdate("insert into t (v) values ('a')").get());
+        assertTrue(e.getCause() instanceof SQLException);
+    }
+}
@@ -0,0 +1,109 @@
+package org.sqlite;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class SQLiteChangeNotifierTest {
+    private String url;
+    private final BlockingQueue<String> changes = new LinkedBlockingQueue<>();
+    private final SQLiteChangeNotifier.Listener listener =
+            (table, external) -> changes.add(table + (external ? " external" : ""));
+
+    @BeforeEach
+    public void createDatabase() throws Exception {
+        File tmpFile = File.createTempFile("test-changes", ".db");
+        tmpFile.deleteOnExit();
+        url = "jdbc:sqlite:" + tmpFile.getAbsolutePath();
+        try (Connection conn = DriverManager.getConnection(url);
+                Statement stat = conn.createStatement()) {
+            stat.executeUpdate("pragma journal_mode = wal");
+            stat.executeUpdate("create table t (id integer primary key)");
+            stat.executeUpdate("create table u (id integer primary key)");
+            stat.executeUpdate("create table v (id integer primary key)");
+        }
+    }
+
+    private SQLiteDataSource dataSource(long pollMillis) {
+        SQLiteDataSource ds = new SQLiteDataSource();
+        ds.setUrl(url);
+        ds.setChangeNotification(pollMillis);
+        return ds;
+    }
+
+    @Test
+    public void disabled() {
+        assertThrows(SQLException.class, () -> new SQLiteDataSource().getChangeNotifier());
+    }
+
+    @Test
+    public void localChanges() throws Exception {
+        SQLiteDataSource ds = dataSource(0);
+        try (SQLiteChangeNotifier notifier = ds.getChangeNotifier();
+                Connection conn = ds.getConnection();
+                Statement stat = conn.createStatement()) {
+            notifier.addListener("T", listener);
+            notifier.addListener("u", listener);
+
+            stat.executeUpdate("insert into t values (1), (2), (3)");
+            assertEquals("t", changes.poll(10, TimeUnit.SECONDS));
+
+            // one notification per table and transaction
+            conn.setAutoCommit(false);
+            stat.executeUpdate("insert into u values (1)");
+            stat.executeUpdate("insert into v values (1)");
+            stat.executeUpdate("update t set id = id + 10");
+            conn.commit();
+            Set<String> tables = new HashSet<>();
+            tables.add(changes.poll(10, TimeUnit.SECONDS));
+            tables.add(changes.poll(10, TimeUnit.SECONDS));
+            assertEquals(new HashSet<>(Arrays.asList("t", "u")), tables);
+
+            stat.executeUpdate("delete from u where id > 0");
+            conn.rollback();
+            stat.executeUpdate("delete from v where id > 0");
+            conn.commit();
+
+            notifier.removeListener("t", listener);
+            stat.executeUpdate("delete from t where id > 0");
+            conn.commit();
+            stat.executeUpdate("delete from u where id > 0");
+            conn.commit();
+            assertEquals("u", changes.poll(10, TimeUnit.SECONDS));
+            assertNull(changes.poll(100, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    @Test
+    public void externalChanges() throws Exception {
+        SQLiteDataSource ds = dataSource(10);
+        try (SQLiteChangeNotifier notifier = ds.getChangeNotifier()) {
+            notifier.addListener("t", listener);
+            assertNull(changes.poll(100, TimeUnit.MILLISECONDS));
+
+            try (Connection conn = DriverManager.getConnection(url);
+                    Statement stat = conn.createStatement()) {
+                stat.executeUpdate("insert into v values (1)");
+            }
+            assertEquals("t external", changes.poll(10, TimeUnit.SECONDS));
+        }
+        SQLiteChangeNotifier reopened = ds.getChangeNotifier();
+        assertFalse(reopened.isClosed());
+        reopened.close();
+    }
+}
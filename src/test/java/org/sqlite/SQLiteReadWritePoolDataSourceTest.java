@@ -0,0 +1,144 @@
+package org.sqlite;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.sqlite.javax.SQLiteReadWritePoolDataSource;
+
+public class SQLiteReadWritePoolDataSourceTest {
+    private File dbFile;
+    private SQLiteReadWritePoolDataSource pool;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        dbFile = File.createTempFile("test-pool", ".db");
+        dbFile.deleteOnExit();
+        SQLiteDataSource ds = new SQLiteDataSource();
+        ds.setUrl("jdbc:sqlite:" + dbFile.getAbsolutePath());
+        ds.getConfig().setBusyTimeout(200);
+        pool = new SQLiteReadWritePoolDataSource(ds, 2);
+        try (Connection conn = pool.getConnection();
+                Statement stat = conn.createStatement()) {
+            stat.executeUpdate("create table t (id integer)");
+            stat.executeUpdate("insert into t values (1)");
+        }
+    }
+
+    @AfterEach
+    public void tearDown() throws SQLException {
+        pool.close();
+        new File(dbFile.getAbsolutePath() + "-wal").delete();
+        new File(dbFile.getAbsolutePath() + "-shm").delete();
+        dbFile.delete();
+    }
+
+    @Test
+    public void readersAreReadOnly() throws SQLException {
+        try (Connection conn = pool.getReadConnection();
+                Statement stat = conn.createStatement()) {
+            try (ResultSet rs = stat.executeQuery("select count(*) from t")) {
+                assertEquals(1, rs.getInt(1));
+            }
+            assertThrows(SQLException.class, () -> stat.executeUpdate("insert into t values (2)"));
+        }
+    }
+
+    @Test
+    public void writerUsesWal() throws SQLException {
+        try (Connection conn = pool.getConnection();
+                Statement stat = conn.createStatement();
+                ResultSet rs = stat.executeQuery("pragma journal_mode")) {
+            assertEquals("wal", rs.getString(1));
+        }
+    }
+
+    @Test
+    public void readersDoNotBlockWriter() throws SQLException {
+        try (Connection reader = pool.getReadConnection();
+                Connection writer = pool.getConnection()) {
+            reader.setAutoCommit(false);
+            try (Statement stat = reader.createStatement();
+                    ResultSet rs = stat.executeQuery("select count(*) from t")) {
+                assertEquals(1, rs.getInt(1));
+            }
+            try (Statement stat = writer.createStatement()) {
+                stat.executeUpdate("insert into t values (2)");
+            }
+        }
+    }
+
+    @Test
+    public void writerIsExclusive() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Connection conn = pool.getConnection();
+            ExecutionException e =
+                    assertThrows(
+                            ExecutionException.class,
+                            () -> executor.submit(() -> pool.getConnection()).get());
+            assertTrue(e.getCause() instanceof SQLiteException);
+            assertEquals(
+                    SQLiteErrorCode.SQLITE_BUSY, ((SQLiteException) e.getCause()).getResultCode());
+
+            Future<Connection> next =
+                    executor.submit(
+                            () -> {
+                                Connection c = pool.getConnection();
+                                c.close();
+                                return c;
+                            });
+            Thread.sleep(50);
+            assertFalse(next.isDone());
+            conn.close();
+            assertTrue(next.get(5, TimeUnit.SECONDS).isClosed());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void readersAreBounded() throws SQLException {
+        try (Connection first = pool.getReadConnection();
+                Connection second = pool.getReadConnection()) {
+            assertThrows(SQLiteException.class, () -> pool.getReadConnection());
+        }
+        pool.getReadConnection().close();
+    }
+
+    @Test
+    public void transactionRolledBackOnReturn() throws SQLException {
+        try (Connection conn = pool.getConnection()) {
+            conn.setAutoCommit(false);
+            try (Statement stat = conn.createStatement()) {
+                stat.executeUpdate("insert into t values (2)");
+            }
+        }
+        try (Connection conn = pool.getConnection();
+                Statement stat = conn.createStatement();
+                ResultSet rs = stat.executeQuery("select count(*) from t")) {
+            assertTrue(conn.getAutoCommit());
+            assertEquals(1, rs.getInt(1));
+        }
+    }
+
+    @Test
+    public void closedPool() throws SQLException {
+        pool.close();
+        assertThrows(SQLException.class, () -> pool.getConnection());
+    }
+}
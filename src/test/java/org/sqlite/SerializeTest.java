@@ -0,0 +1,96 @@
+package org.sqlite;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class SerializeTest {
+    private SQLiteConnection source;
+    private SQLiteConnection target;
+
+    @BeforeEach
+    public void connect() throws SQLException {
+        source = (SQLiteConnection) new SQLiteConfig().createConnection("jdbc:sqlite:");
+        target = (SQLiteConnection) new SQLiteConfig().createConnection("jdbc:sqlite:");
+        try (Statement stat = source.createStatement()) {
+            stat.executeUpdate("create table t (id integer primary key, v text)");
+            stat.executeUpdate(
+                    "insert into t with recursive n(i) as (select 1 union all select i + 1 from n"
+                            + " where i < 1000) select i, 'value ' || i from n");
+        }
+    }
+
+    @AfterEach
+    public void close() throws SQLException {
+        source.close();
+        target.close();
+    }
+
+    private static int count(SQLiteConnection conn, String table) throws SQLException {
+        try (Statement stat = conn.createStatement();
+                ResultSet rs = stat.executeQuery("select count(*) from " + table)) {
+            return rs.getInt(1);
+        }
+    }
+
+    @Test
+    public void copy() throws SQLException {
+        ByteBuffer data = source.serialize("main");
+        assertTrue(data.isDirect());
+        assertEquals(0, data.position());
+        assertTrue(data.remaining() > 0);
+
+        target.deserialize("main", data, false);
+        assertEquals(1000, count(target, "t"));
+        try (Statement stat = target.createStatement()) {
+            // the copy grows beyond the size of the buffer
+            stat.executeUpdate("insert into t select id + 1000, v || v || v from t");
+        }
+        assertEquals(2000, count(target, "t"));
+        assertEquals(1000, count(source, "t"));
+    }
+
+    @Test
+    public void sharedReadOnly() throws SQLException {
+        ByteBuffer data = source.serialize("main");
+        target.deserialize("main", data, true);
+        assertEquals(1000, count(target, "t"));
+        try (Statement stat = target.createStatement()) {
+            assertThrows(SQLException.class, () -> stat.executeUpdate("delete from t"));
+        }
+        assertEquals(data, target.serialize("main"));
+    }
+
+    @Test
+    public void heapBuffer() throws SQLException {
+        ByteBuffer direct = source.serialize("main");
+        ByteBuffer heap = ByteBuffer.allocate(direct.remaining() + 10);
+        heap.position(10);
+        heap.put(direct.duplicate());
+        heap.position(10);
+
+        try (Statement stat = target.createStatement()) {
+            stat.executeUpdate("attach ':memory:' as snapshot");
+        }
+        target.deserialize("snapshot", heap, true);
+        assertEquals(10, heap.position());
+        assertEquals(1000, count(target, "snapshot.t"));
+        assertEquals(direct, target.serialize("snapshot"));
+    }
+
+    @Test
+    public void unknownDatabase() {
+        assertThrows(SQLException.class, () -> source.serialize("missing"));
+        assertThrows(
+                SQLException.class,
+                () -> target.deserialize("missing", source.serialize("main"), false));
+    }
+}
@@ -0,0 +1,167 @@
+package org.sqlite;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.sqlite.SQLiteTraceListener.Event;
+
+public class TraceListenerTest {
+    private SQLiteConnection conn;
+    private final Recorder recorder = new Recorder();
+
+    private static class Recorder implements SQLiteTraceListener {
+        final List<String> statements = new ArrayList<>();
+        final List<String> profiles = new ArrayList<>();
+        final List<Long> nanos = new ArrayList<>();
+        final List<String> rows = new ArrayList<>();
+
+        @Override
+        public void onStatement(String sql) {
+            statements.add(sql);
+        }
+
+        @Override
+        public void onProfile(String sql, long nanos) {
+            profiles.add(sql);
+            this.nanos.add(nanos);
+        }
+
+        @Override
+        public void onRow(String sql) {
+            rows.add(sql);
+        }
+    }
+
+    @BeforeEach
+    public void connect() throws SQLException {
+        conn = (SQLiteConnection) new SQLiteConfig().createConnection("jdbc:sqlite:");
+        try (Statement stat = conn.createStatement()) {
+            stat.executeUpdate("create table t (id integer primary key, v text)");
+            stat.executeUpdate("insert into t values (1, 'a'), (2, 'b'), (3, 'c')");
+        }
+    }
+
+    @AfterEach
+    public void close() throws SQLException {
+        conn.close();
+    }
+
+    private void query(String sql, Object param) throws SQLException {
+        try (PreparedStatement stat = conn.prepareStatement(sql)) {
+            stat.setObject(1, param);
+            try (ResultSet rs = stat.executeQuery()) {
+                while (rs.next()) {}
+            }
+        }
+    }
+
+    @Test
+    public void expandedSql() throws SQLException {
+        conn.setTraceListener(recorder, EnumSet.of(Event.STATEMENT, Event.PROFILE));
+        assertEquals(recorder, conn.getTraceListener());
+        query("select v from t where v > ?", "aé");
+
+        String expanded = "select v from t where v > 'aé'";
+        assertEquals(1, recorder.statements.size());
+        assertEquals(expanded, recorder.statements.get(0));
+        assertEquals(1, recorder.profiles.size());
+        assertEquals(expanded, recorder.profiles.get(0));
+        assertTrue(recorder.nanos.get(0) >= 0);
+        assertTrue(recorder.rows.isEmpty());
+    }
+
+    @Test
+    public void rows() throws SQLException {
+        conn.setTraceListener(recorder, EnumSet.of(Event.ROW));
+        query("select v from t where id >= ?", 2);
+        assertEquals(2, recorder.rows.size());
+        assertEquals("select v from t where id >= ?", recorder.rows.get(0));
+        assertTrue(recorder.statements.isEmpty());
+        assertTrue(recorder.profiles.isEmpty());
+    }
+
+    @Test
+    public void slowQueryThreshold() throws SQLException {
+        conn.setTraceListener(recorder, EnumSet.of(Event.PROFILE), Long.MAX_VALUE, 1);
+        query("select v from t where id = ?", 1);
+        assertTrue(recorder.profiles.isEmpty());
+
+        conn.setTraceListener(recorder, EnumSet.of(Event.PROFILE), 0, 1);
+        query("select v from t where id = ?", 1);
+        assertEquals(1, recorder.profiles.size());
+    }
+
+    @Test
+    public void sampling() throws SQLException {
+        conn.setTraceListener(recorder, EnumSet.of(Event.STATEMENT, Event.ROW), 0, 3);
+        try (Statement stat = conn.createStatement()) {
+            for (int i = 0; i < 6; i++) {
+                try (ResultSet rs = stat.executeQuery("select " + i)) {
+                    assertTrue(rs.next());
+                }
+            }
+            try (ResultSet rs =
+                    stat.executeQuery(
+                            "with recursive n(i) as (select 1 union all select i + 1 from n"
+                                    + " where i < 9) select i from n")) {
+                while (rs.next()) {}
+            }
+        }
+        assertEquals(3, recorder.statements.size());
+        assertEquals("select 0", recorder.statements.get(0));
+        assertEquals("select 3", recorder.statements.get(1));
+        // one row of the six single row queries, three of the nine rows
+        assertEquals(5, recorder.rows.size());
+    }
+
+    @Test
+    public void triggers() throws SQLException {
+        try (Statement stat = conn.createStatement()) {
+            stat.executeUpdate("create table log (id integer)");
+            stat.executeUpdate(
+                    "create trigger t_log after insert on t begin"
+                            + " insert into log values (new.id); end");
+            conn.setTraceListener(recorder, EnumSet.of(Event.STATEMENT));
+            stat.executeUpdate("insert into t values (4, 'd')");
+        }
+        // newer versions also report each statement of the trigger as a comment
+        assertEquals("insert into t values (4, 'd')", recorder.statements.get(0));
+        assertEquals("-- TRIGGER t_log", recorder.statements.get(1));
+    }
+
+    @Test
+    public void disable() throws SQLException {
+        conn.setTraceListener(recorder, EnumSet.allOf(Event.class));
+        conn.setTraceListener(null, EnumSet.allOf(Event.class));
+        assertNull(conn.getTraceListener());
+        query("select v from t where id = ?", 1);
+        assertTrue(recorder.statements.isEmpty());
+        assertTrue(recorder.profiles.isEmpty());
+        assertTrue(recorder.rows.isEmpty());
+
+        conn.setTraceListener(recorder, EnumSet.noneOf(Event.class));
+        assertNull(conn.getTraceListener());
+    }
+
+    @Test
+    public void invalidArguments() {
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> conn.setTraceListener(recorder, EnumSet.of(Event.PROFILE), -1, 1));
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> conn.setTraceListener(recorder, EnumSet.of(Event.ROW), 0, 0));
+    }
+}
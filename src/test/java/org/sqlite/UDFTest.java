@@ -2,6 +2,8 @@ package org.sqlite;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.sql.Connection;
@@ -10,6 +12,8 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import org.junit.jupiter.api.AfterEach;
@@ -381,6 +385,202 @@ public class UDFTest {
         assertEquals(9, rs.getInt(1));
     }
 
+    @Test
+    public void packed() throws SQLException {
+        Function.create(
+                conn,
+                "describe",
+                new Function.Packed() {
+                    @Override
+                    protected void xPacked() throws SQLException {
+                        StringBuilder sb = new StringBuilder();
+                        for (int i = 0; i < getArgCount(); i++) {
+                            sb.append(getType(i)).append(':').append(getText(i)).append(';');
+                        }
+                        setResult(sb.toString());
+                    }
+                });
+        Function.create(
+                conn,
+                "score",
+                new Function.Packed() {
+                    @Override
+                    protected void xPacked() throws SQLException {
+                        if (isNull(0)) {
+                            return;
+                        }
+                        if (getArgCount() > 2) {
+                            setResult(getBlob(2).length);
+                        } else {
+                            setResult(getLong(0) * 2 + getDouble(1));
+                        }
+                    }
+                });
+        Function.create(
+                conn,
+                "fail",
+                new Function.Packed() {
+                    @Override
+                    protected void xPacked() throws SQLException {
+                        throw new SQLException("failed " + getLong(0));
+                    }
+                });
+
+        ResultSet rs =
+                stat.executeQuery(
+                        "select describe(1, 2.5, 'éa', x'4142', null), score(3, '0.5'),"
+                                + " score(null, 1), score(1, 1, x'010203'), describe()");
+        assertTrue(rs.next());
+        assertEquals("1:1;2:2.5;3:éa;4:AB;5:null;", rs.getString(1));
+        assertEquals(6.5, rs.getDouble(2));
+        assertNull(rs.getObject(3));
+        assertEquals(3, rs.getInt(4));
+        assertEquals("", rs.getString(5));
+        rs.close();
+
+        stat.executeUpdate("create table t (x)");
+        stat.executeUpdate("insert into t values (1), (2), (3)");
+        rs = stat.executeQuery("select sum(score(x, x)) from t");
+        assertTrue(rs.next());
+        assertEquals(18.0, rs.getDouble(1));
+        rs.close();
+
+        SQLException e =
+                assertThrows(SQLException.class, () -> stat.executeQuery("select fail(7)"));
+        assertTrue(e.getMessage().contains("failed 7"));
+    }
+
+    @Test
+    public void packedAggregate() throws SQLException {
+        Function.create(
+                conn,
+                "mean",
+                new Function.PackedAggregate(1, 1) {
+                    @Override
+                    protected void xStep() throws SQLException {
+                        if (!isNull(0)) {
+                            setLongState(0, getLongState(0) + 1);
+                            setDoubleState(0, getDoubleState(0) + getDouble(0));
+                        }
+                    }
+
+                    @Override
+                    protected void xFinal() {
+                        if (getLongState(0) > 0) {
+                            setResult(getDoubleState(0) / getLongState(0));
+                        }
+                    }
+                });
+        Function.create(
+                conn,
+                "median",
+                new Function.PackedAggregate(0, 1) {
+                    @Override
+                    protected void xInit() {
+                        setDoubleState(0, Double.NaN);
+                    }
+
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    protected void xStep() throws SQLException {
+                        List<Double> values = (List<Double>) getObjectState();
+                        if (values == null) {
+                            values = new ArrayList<>();
+                            setObjectState(values);
+                        }
+                        values.add(getDouble(0));
+                    }
+
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    protected void xFinal() {
+                        List<Double> values = (List<Double>) getObjectState();
+                        if (values == null) {
+                            setResult(getDoubleState(0));
+                            return;
+                        }
+                        Collections.sort(values);
+                        setResult(values.get(values.size() / 2));
+                    }
+                });
+
+        stat.executeUpdate("create table t (g, x)");
+        try (PreparedStatement prep = conn.prepareStatement("insert into t values (?, ?)")) {
+            for (int i = 0; i < 1000; i++) {
+                prep.setInt(1, i % 100);
+                prep.setInt(2, i);
+                prep.addBatch();
+            }
+            prep.executeBatch();
+        }
+        stat.executeUpdate("insert into t values (100, null)");
+
+        ResultSet rs =
+                stat.executeQuery(
+                        "select g, mean(x), avg(x), median(x) from t group by g order by g");
+        for (int g = 0; g < 100; g++) {
+            assertTrue(rs.next());
+            assertEquals(g, rs.getInt(1));
+            assertEquals(rs.getDouble(3), rs.getDouble(2));
+            assertEquals(g + 500, rs.getDouble(4));
+        }
+        assertTrue(rs.next());
+        assertNull(rs.getObject(2));
+        assertEquals(0.0, rs.getDouble(4));
+        rs.close();
+
+        rs = stat.executeQuery("select mean(x), median(x) from t where g < 0");
+        assertTrue(rs.next());
+        assertNull(rs.getObject(1));
+        // xInit ran for the empty group, and SQLite turns NaN into NULL
+        assertNull(rs.getObject(2));
+        rs.close();
+    }
+
+    @Test
+    public void packedWindow() throws SQLException {
+        Function.create(
+                conn,
+                "mySum",
+                new Function.PackedWindow(1, 0) {
+                    @Override
+                    protected void xStep() throws SQLException {
+                        setLongState(0, getLongState(0) + getLong(0));
+                    }
+
+                    @Override
+                    protected void xInverse() throws SQLException {
+                        setLongState(0, getLongState(0) - getLong(0));
+                    }
+
+                    @Override
+                    protected void xValue() {
+                        setResult(getLongState(0));
+                    }
+
+                    @Override
+                    protected void xFinal() {
+                        setResult(getLongState(0));
+                    }
+                });
+        stat.executeUpdate("create table t (x)");
+        stat.executeUpdate("insert into t values (1), (2), (3), (4), (5)");
+
+        ResultSet rs =
+                stat.executeQuery(
+                        "select mySum(x) over (order by x rows between 1 preceding and 1"
+                                + " following) from t order by x");
+        for (int expected : new int[] {3, 6, 9, 12, 9}) {
+            assertTrue(rs.next());
+            assertEquals(expected, rs.getInt(1));
+        }
+        rs.close();
+
+        rs = stat.executeQuery("select mySum(x) from t");
+        assertEquals(15, rs.getInt(1));
+        rs.close();
+    }
+
     @Test
     public void destroy() throws SQLException {
         Function.create(
@@ -0,0 +1,146 @@
+package org.sqlite.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteConnection;
+
+public class StatementCacheTest {
+    private SQLiteConnection conn;
+    private StatementCache cache;
+
+    @BeforeEach
+    public void connect() throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setStatementCacheSize(2);
+        conn = (SQLiteConnection) config.createConnection("jdbc:sqlite:");
+        cache = conn.getDatabase().getStatementCache();
+        try (Statement stat = conn.createStatement()) {
+            stat.executeUpdate("create table t (id integer primary key, v)");
+        }
+    }
+
+    @AfterEach
+    public void close() throws SQLException {
+        conn.close();
+    }
+
+    @Test
+    public void disabledByDefault() throws SQLException {
+        try (SQLiteConnection other =
+                (SQLiteConnection) new SQLiteConfig().createConnection("jdbc:sqlite:")) {
+            assertNull(other.getDatabase().getStatementCache());
+        }
+    }
+
+    @Test
+    public void reusesClosedStatement() throws SQLException {
+        long misses = cache.misses();
+        for (int i = 0; i < 10; i++) {
+            try (PreparedStatement prep = conn.prepareStatement("insert into t (v) values (?)")) {
+                prep.setInt(1, i);
+                assertEquals(1, prep.executeUpdate());
+            }
+        }
+        assertEquals(misses + 1, cache.misses());
+
+        try (ResultSet rs = conn.createStatement().executeQuery("select count(*) from t")) {
+            assertEquals(10, rs.getInt(1));
+        }
+    }
+
+    @Test
+    public void clearsBindings() throws SQLException {
+        try (PreparedStatement prep = conn.prepareStatement("select ?")) {
+            prep.setString(1, "bound");
+            prep.executeQuery().close();
+        }
+        long hits = cache.hits();
+        try (PreparedStatement prep = conn.prepareStatement("select ?")) {
+            assertEquals(hits + 1, cache.hits());
+            ResultSet rs = prep.executeQuery();
+            assertTrue(rs.next());
+            assertNull(rs.getString(1));
+        }
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() throws SQLException {
+        conn.prepareStatement("select 1").close();
+        conn.prepareStatement("select 2").close();
+        conn.prepareStatement("select 1").close();
+        conn.prepareStatement("select 3").close();
+        assertEquals(2, cache.size());
+
+        long hits = cache.hits();
+        conn.prepareStatement("select 1").close();
+        conn.prepareStatement("select 3").close();
+        assertEquals(hits + 2, cache.hits());
+        conn.prepareStatement("select 2").close();
+        assertEquals(hits + 2, cache.hits());
+    }
+
+    @Test
+    public void evictsOverByteLimit() throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setStatementCacheSize(100);
+        config.setStatementCacheBytes(1);
+        try (SQLiteConnection other = (SQLiteConnection) config.createConnection("jdbc:sqlite:")) {
+            other.prepareStatement("select 1").close();
+            assertEquals(0, other.getDatabase().getStatementCache().size());
+        }
+    }
+
+    @Test
+    public void sameSqlOpenTwice() throws SQLException {
+        long misses = cache.misses();
+        PreparedStatement first = conn.prepareStatement("select ?");
+        PreparedStatement second = conn.prepareStatement("select ?");
+        first.setInt(1, 1);
+        second.setInt(1, 2);
+        ResultSet rs1 = first.executeQuery();
+        ResultSet rs2 = second.executeQuery();
+        assertEquals(1, rs1.getInt(1));
+        assertEquals(2, rs2.getInt(1));
+        first.close();
+        second.close();
+        assertEquals(misses + 2, cache.misses());
+
+        // a closed statement must not affect the one that reused its handle
+        long hits = cache.hits();
+        PreparedStatement third = conn.prepareStatement("select ?");
+        assertEquals(hits + 1, cache.hits());
+        first.close();
+        third.setInt(1, 3);
+        assertEquals(3, third.executeQuery().getInt(1));
+        third.close();
+    }
+
+    @Test
+    public void unfinishedStatementIsReset() throws SQLException {
+        Statement stat = conn.createStatement();
+        stat.executeUpdate("insert into t (v) values (1), (2), (3)");
+        ResultSet rs = stat.executeQuery("select v from t");
+        assertTrue(rs.next());
+        stat.close();
+
+        // the reset statement no longer holds the read transaction
+        stat = conn.createStatement();
+        stat.executeUpdate("drop table t");
+        rs = stat.executeQuery("select count(*) from sqlite_master");
+        assertTrue(rs.next());
+        assertEquals(0, rs.getInt(1));
+        assertFalse(rs.next());
+        stat.close();
+    }
+}
@@ -0,0 +1,227 @@
+package org.sqlite.session;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteConnection;
+import org.sqlite.SQLiteErrorCode;
+import org.sqlite.SQLiteException;
+
+public class SessionTest {
+    private static final String SCHEMA = "create table t (id integer primary key, v text, b blob)";
+
+    private SQLiteConnection edge;
+    private SQLiteConnection central;
+
+    @BeforeEach
+    public void connect() throws SQLException {
+        edge = (SQLiteConnection) new SQLiteConfig().createConnection("jdbc:sqlite:");
+        central = (SQLiteConnection) new SQLiteConfig().createConnection("jdbc:sqlite:");
+        for (SQLiteConnection conn : new SQLiteConnection[] {edge, central}) {
+            try (Statement stat = conn.createStatement()) {
+                stat.executeUpdate(SCHEMA);
+                stat.executeUpdate("insert into t values (1, 'a', null), (2, 'b', null)");
+            }
+        }
+    }
+
+    @AfterEach
+    public void close() throws SQLException {
+        edge.close();
+        central.close();
+    }
+
+    private void changeEdge() throws SQLException {
+        try (Statement stat = edge.createStatement()) {
+            stat.executeUpdate("insert into t values (3, 'c', x'0102')");
+            stat.executeUpdate("update t set v = 'éé' where id = 1");
+            stat.executeUpdate("delete from t where id = 2");
+        }
+    }
+
+    private static String rows(SQLiteConnection conn) throws SQLException {
+        StringBuilder rows = new StringBuilder();
+        try (Statement stat = conn.createStatement();
+                ResultSet rs = stat.executeQuery("select id, v, hex(b) from t order by id")) {
+            while (rs.next()) {
+                rows.append(rs.getInt(1)).append(rs.getString(2)).append(rs.getString(3));
+                rows.append(';');
+            }
+        }
+        return rows.toString();
+    }
+
+    @Test
+    public void replicate() throws SQLException {
+        try (SQLiteSession session = SQLiteSession.create(edge, "main")) {
+            session.attach("t");
+            assertTrue(session.isEmpty());
+            changeEdge();
+            assertFalse(session.isEmpty());
+
+            ByteBuffer changeset = session.changeset();
+            assertTrue(changeset.isDirect());
+            SQLiteChangeset.apply(central, changeset, null);
+            assertEquals(0, changeset.position());
+        }
+        assertEquals(rows(edge), rows(central));
+        assertEquals("1éé;3c0102;", rows(central));
+    }
+
+    @Test
+    public void streams() throws SQLException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (SQLiteSession session = SQLiteSession.create(edge, "main")) {
+            session.attachAll();
+            changeEdge();
+            session.writePatchset(out);
+            assertEquals(session.patchset().remaining(), out.size());
+        }
+        SQLiteChangeset.apply(central, new ByteArrayInputStream(out.toByteArray()), null);
+        assertEquals(rows(edge), rows(central));
+    }
+
+    @Test
+    public void heapBuffer() throws SQLException {
+        byte[] bytes;
+        try (SQLiteSession session = SQLiteSession.create(edge, "main")) {
+            session.attach("t");
+            changeEdge();
+            ByteBuffer changeset = session.changeset();
+            bytes = new byte[changeset.remaining()];
+            changeset.get(bytes);
+        }
+        SQLiteChangeset.apply(central, ByteBuffer.wrap(bytes), null);
+        assertEquals(rows(edge), rows(central));
+    }
+
+    @Test
+    public void disabled() throws SQLException {
+        try (SQLiteSession session = SQLiteSession.create(edge, "main")) {
+            session.attach("t");
+            assertTrue(session.isEnabled());
+            session.setEnabled(false);
+            changeEdge();
+            assertTrue(session.isEmpty());
+        }
+    }
+
+    @Test
+    public void conflicts() throws SQLException {
+        ByteBuffer changeset;
+        try (SQLiteSession session = SQLiteSession.create(edge, "main")) {
+            session.attach("t");
+            changeEdge();
+            changeset = session.changeset();
+        }
+        try (Statement stat = central.createStatement()) {
+            stat.executeUpdate("update t set v = 'z' where id = 1");
+            stat.executeUpdate("delete from t where id = 2");
+        }
+
+        // without a handler the first conflict rolls everything back
+        SQLiteException e =
+                assertThrows(
+                        SQLiteException.class,
+                        () -> SQLiteChangeset.apply(central, changeset, null));
+        assertEquals(SQLiteErrorCode.SQLITE_ABORT, e.getResultCode());
+        assertEquals("1z;", rows(central));
+
+        List<Conflict> conflicts = new ArrayList<>();
+        SQLiteChangeset.apply(
+                central,
+                changeset,
+                conflict -> {
+                    conflicts.add(conflict);
+                    return conflict.getType() == Conflict.Type.DATA
+                            ? ConflictHandler.Action.REPLACE
+                            : ConflictHandler.Action.OMIT;
+                });
+        assertEquals("1éé;3c0102;", rows(central));
+
+        assertEquals(2, conflicts.size());
+        Conflict data = conflicts.get(0);
+        assertEquals(Conflict.Type.DATA, data.getType());
+        assertEquals("t", data.getTable());
+        assertEquals(Conflict.Operation.UPDATE, data.getOperation());
+        assertFalse(data.isIndirect());
+        assertArrayEquals(new Object[] {1L, "a", null}, data.getOldValues());
+        assertArrayEquals(new Object[] {null, "éé", null}, data.getNewValues());
+        assertArrayEquals(new Object[] {1L, "z", null}, data.getConflictingValues());
+
+        Conflict notFound = conflicts.get(1);
+        assertEquals(Conflict.Type.NOT_FOUND, notFound.getType());
+        assertEquals(Conflict.Operation.DELETE, notFound.getOperation());
+        assertNull(notFound.getNewValues());
+        assertNull(notFound.getConflictingValues());
+    }
+
+    @Test
+    public void handlerException() throws SQLException {
+        ByteBuffer changeset;
+        try (SQLiteSession session = SQLiteSession.create(edge, "main")) {
+            session.attach("t");
+            changeEdge();
+            changeset = session.changeset();
+        }
+        try (Statement stat = central.createStatement()) {
+            stat.executeUpdate("delete from t where id = 2");
+        }
+        SQLException e =
+                assertThrows(
+                        SQLException.class,
+                        () ->
+                                SQLiteChangeset.apply(
+                                        central,
+                                        changeset,
+                                        conflict -> {
+                                            throw new SQLException("stop");
+                                        }));
+        assertEquals("stop", e.getMessage());
+        assertThrows(
+                SQLException.class,
+                () ->
+                        SQLiteChangeset.apply(
+                                central, changeset, conflict -> ConflictHandler.Action.REPLACE));
+        assertEquals("1a;", rows(central));
+    }
+
+    @Test
+    public void closedSession() throws SQLException {
+        SQLiteSession one = SQLiteSession.create(edge, "main");
+        one.close();
+        // SQLite may reuse the memory of the deleted session for the next one
+        try (SQLiteSession two = SQLiteSession.create(edge, "main")) {
+            two.attach("t");
+            assertThrows(SQLException.class, one::isEmpty);
+            one.close();
+            changeEdge();
+            assertFalse(two.isEmpty());
+        }
+    }
+
+    @Test
+    public void closedWithConnection() throws SQLException {
+        SQLiteSession session = SQLiteSession.create(edge, "main");
+        session.attach("t");
+        edge.close();
+        assertThrows(SQLException.class, session::isEmpty);
+        session.close();
+    }
+}